@@ -0,0 +1,86 @@
+package com.skcc.rental.adaptor;
+
+import com.skcc.rental.config.KafkaProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * Tells the Kafka consumers whether the Hikari connection pool is saturated, so they stop fetching records they
+ * could only process by queueing for a connection.
+ * <p>
+ * The pool counts as saturated once the share of connections in use reaches the pause usage or threads wait for a
+ * connection, and stays saturated until the usage dropped below the resume usage, so the consumers do not flap
+ * between paused and running.
+ */
+@Component
+public class DatabaseBackpressure {
+
+    private final Logger log = LoggerFactory.getLogger(DatabaseBackpressure.class);
+
+    private final KafkaProperties.ConsumerBackpressure properties;
+
+    private final HikariDataSource hikariDataSource;
+
+    private final Counter pauses;
+
+    private volatile boolean saturated;
+
+    public DatabaseBackpressure(DataSource dataSource, KafkaProperties kafkaProperties, MeterRegistry meterRegistry) {
+        this.properties = kafkaProperties.getConsumerBackpressure();
+        this.hikariDataSource = unwrap(dataSource);
+        this.pauses = Counter.builder("rental.kafka.consumer.backpressure.pauses")
+            .description("Times the consumers paused because the database connection pool was saturated")
+            .register(meterRegistry);
+        Gauge.builder("rental.kafka.consumer.backpressure.paused", this, backpressure -> backpressure.saturated ? 1 : 0)
+            .description("1 while the consumers are paused for the database connection pool")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Re-evaluate the pool usage.
+     *
+     * @return true while the consumers should stay paused.
+     */
+    public boolean isSaturated() {
+        if (!properties.isEnabled() || hikariDataSource == null) {
+            return false;
+        }
+        HikariPoolMXBean pool = hikariDataSource.getHikariPoolMXBean();
+        if (pool == null) {
+            // pool not started yet
+            return false;
+        }
+        double usage = (double) pool.getActiveConnections() / hikariDataSource.getMaximumPoolSize();
+        boolean waiting = pool.getThreadsAwaitingConnection() > 0;
+        synchronized (this) {
+            if (!saturated && (waiting || usage >= properties.getPauseUsage())) {
+                saturated = true;
+                pauses.increment();
+                log.warn("Database connection pool saturated ({} of {} in use, {} waiting), pausing Kafka consumers",
+                    pool.getActiveConnections(), hikariDataSource.getMaximumPoolSize(), pool.getThreadsAwaitingConnection());
+            } else if (saturated && !waiting && usage < properties.getResumeUsage()) {
+                saturated = false;
+                log.info("Database connection pool usage back to {} of {}, resuming Kafka consumers",
+                    pool.getActiveConnections(), hikariDataSource.getMaximumPoolSize());
+            }
+            return saturated;
+        }
+    }
+
+    private static HikariDataSource unwrap(DataSource dataSource) {
+        try {
+            return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.skcc.rental.adaptor;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Partitions records keyed by a numeric id (bookId, userId) on {@code id mod partitions}.
+ * <p>
+ * Sequential ids are spread evenly, and a consumer can tell which ids a partition holds without hashing, e.g. to
+ * shard its own state the same way. Topics with the same partition count put an id on the same partition number,
+ * so {@code topic_book} and {@code topic_catalog} stay co-partitioned. Other keys are hashed like Kafka's default
+ * partitioner. Enable with the producer property {@code partitioner.class}.
+ */
+public class EntityIdPartitioner implements Partitioner {
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+        int numPartitions = cluster.partitionCountForTopic(topic);
+        if (keyBytes == null) {
+            List<PartitionInfo> available = cluster.availablePartitionsForTopic(topic);
+            List<PartitionInfo> candidates = available.isEmpty() ? cluster.partitionsForTopic(topic) : available;
+            return candidates.get(ThreadLocalRandom.current().nextInt(candidates.size())).partition();
+        }
+        if (key instanceof String) {
+            try {
+                return (int) Math.floorMod(Long.parseLong((String) key), (long) numPartitions);
+            } catch (NumberFormatException e) {
+                // not an id, hash it below
+            }
+        }
+        return Utils.toPositive(Utils.murmur2(keyBytes)) % numPartitions;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+    }
+}
@@ -0,0 +1,42 @@
+package com.skcc.rental.adaptor;
+
+import com.skcc.rental.config.KafkaProperties;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Reports {@code OUT_OF_SERVICE} while this instance's partitions of {@code topic_rental} lag more records behind
+ * than {@code kafka.consumer-lag.readiness-threshold}, so it can be taken out of the readiness group's traffic while
+ * it catches up. New users would otherwise find no rental yet.
+ */
+@Component
+public class KafkaConsumerLagHealthIndicator extends AbstractHealthIndicator {
+
+    private final KafkaConsumerMonitor consumerMonitor;
+
+    private final KafkaProperties.ConsumerLag properties;
+
+    public KafkaConsumerLagHealthIndicator(KafkaConsumerMonitor consumerMonitor, KafkaProperties kafkaProperties) {
+        super("Kafka consumer lag health check failed");
+        this.consumerMonitor = consumerMonitor;
+        this.properties = kafkaProperties.getConsumerLag();
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        Map<Integer, Long> lag = consumerMonitor.getLag(RentalKafkaConsumer.TOPIC);
+        long totalLag = lag.values().stream().mapToLong(Long::longValue).sum();
+        if (totalLag > properties.getReadinessThreshold()) {
+            builder.outOfService();
+        } else {
+            builder.up();
+        }
+        builder.withDetail("topic", RentalKafkaConsumer.TOPIC)
+            .withDetail("lag", totalLag)
+            .withDetail("threshold", properties.getReadinessThreshold())
+            .withDetail("partitions", lag);
+    }
+}
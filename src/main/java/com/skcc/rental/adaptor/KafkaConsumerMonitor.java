@@ -0,0 +1,123 @@
+package com.skcc.rental.adaptor;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Poll, processing and lag meters of the Kafka consumers.
+ * <p>
+ * The lag of a partition is its end offset minus the consumer's position. The consumers are not thread-safe, so
+ * each refreshes the lag of its own partitions from its poll loop; readers only see the last refreshed values.
+ */
+@Component
+public class KafkaConsumerMonitor {
+
+    private static final Duration END_OFFSETS_TIMEOUT = Duration.ofSeconds(5);
+
+    private final Logger log = LoggerFactory.getLogger(KafkaConsumerMonitor.class);
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<TopicPartition, AtomicLong> lag = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> pollTimers = new ConcurrentHashMap<>();
+
+    private final Map<String, DistributionSummary> pollRecords = new ConcurrentHashMap<>();
+
+    private final Map<String, Timer> processingTimers = new ConcurrentHashMap<>();
+
+    public KafkaConsumerMonitor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void recordPoll(String topic, long durationNanos, int records) {
+        pollTimers.computeIfAbsent(topic, name -> Timer.builder("rental.kafka.consumer.poll")
+            .description("Time spent in poll()")
+            .tag("topic", name)
+            .register(meterRegistry))
+            .record(durationNanos, TimeUnit.NANOSECONDS);
+        pollRecords.computeIfAbsent(topic, name -> DistributionSummary.builder("rental.kafka.consumer.poll.records")
+            .description("Records returned per poll()")
+            .tag("topic", name)
+            .register(meterRegistry))
+            .record(records);
+    }
+
+    public void recordProcessing(String topic, long durationNanos) {
+        processingTimers.computeIfAbsent(topic, name -> Timer.builder("rental.kafka.consumer.processing")
+            .description("Time to process or forward a consumed record")
+            .tag("topic", name)
+            .register(meterRegistry))
+            .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Refresh the lag of the consumer's assigned partitions. Must be called from the consumer's poll thread.
+     */
+    public void refreshLag(Consumer<?, ?> consumer) {
+        Set<TopicPartition> assignment = consumer.assignment();
+        if (assignment.isEmpty()) {
+            return;
+        }
+        try {
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(assignment, END_OFFSETS_TIMEOUT);
+            endOffsets.forEach((partition, endOffset) -> lagOf(partition).set(Math.max(0, endOffset - consumer.position(partition))));
+        } catch (WakeupException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            log.debug("Could not refresh the lag of {}: {}", assignment, e.toString());
+        }
+    }
+
+    /**
+     * Forget the lag of partitions the consumer no longer owns, another instance reports it now.
+     */
+    public void forget(Iterable<TopicPartition> partitions) {
+        partitions.forEach(partition -> {
+            AtomicLong partitionLag = lag.get(partition);
+            if (partitionLag != null) {
+                partitionLag.set(0);
+            }
+        });
+    }
+
+    private AtomicLong lagOf(TopicPartition partition) {
+        return lag.computeIfAbsent(partition, key -> {
+            AtomicLong partitionLag = new AtomicLong();
+            Gauge.builder("rental.kafka.consumer.lag", partitionLag, AtomicLong::get)
+                .description("Records between the consumer's position and the end of the partition")
+                .tags("topic", key.topic(), "partition", String.valueOf(key.partition()))
+                .register(meterRegistry);
+            return partitionLag;
+        });
+    }
+
+    /**
+     * @return the last refreshed lag of every partition of the topic this instance consumes.
+     */
+    public Map<Integer, Long> getLag(String topic) {
+        Map<Integer, Long> topicLag = new TreeMap<>();
+        lag.forEach((partition, partitionLag) -> {
+            if (partition.topic().equals(topic)) {
+                topicLag.put(partition.partition(), partitionLag.get());
+            }
+        });
+        return topicLag;
+    }
+}
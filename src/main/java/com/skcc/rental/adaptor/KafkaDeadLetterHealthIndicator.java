@@ -0,0 +1,31 @@
+package com.skcc.rental.adaptor;
+
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shows on the health endpoint how many consumed records were retried and parked on dead-letter topics since
+ * startup. Parked records need an operator, not a restart, so they do not change the health status.
+ */
+@Component
+public class KafkaDeadLetterHealthIndicator extends AbstractHealthIndicator {
+
+    private final KafkaRecordRecoverer recordRecoverer;
+
+    public KafkaDeadLetterHealthIndicator(KafkaRecordRecoverer recordRecoverer) {
+        super("Kafka dead-letter health check failed");
+        this.recordRecoverer = recordRecoverer;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        builder.up()
+            .withDetail("deadLettered", recordRecoverer.getDeadLettered())
+            .withDetail("retried", recordRecoverer.getRetried());
+        KafkaRecordRecoverer.DeadLetter lastDeadLetter = recordRecoverer.getLastDeadLetter();
+        if (lastDeadLetter != null) {
+            builder.withDetail("lastDeadLetter", lastDeadLetter);
+        }
+    }
+}
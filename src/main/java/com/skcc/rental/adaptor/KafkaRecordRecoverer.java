@@ -0,0 +1,222 @@
+package com.skcc.rental.adaptor;
+
+import com.skcc.rental.config.KafkaProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Forwards consumed records that failed to be processed to the next retry topic, or to the dead-letter topic once
+ * the retries are used up or the record cannot be decoded at all.
+ * <p>
+ * Records are forwarded as consumed, with their key, value and headers, plus headers telling the retry consumer
+ * the attempt, when it is due and where the record came from. Consumers of retry topics process a record once its
+ * {@value #DUE_AT_HEADER} has passed.
+ */
+@Component
+public class KafkaRecordRecoverer {
+
+    public static final String ATTEMPT_HEADER = "retry-attempt";
+
+    public static final String DUE_AT_HEADER = "retry-due-at";
+
+    public static final String ORIGINAL_TOPIC_HEADER = "original-topic";
+
+    public static final String ORIGINAL_PARTITION_HEADER = "original-partition";
+
+    public static final String ORIGINAL_OFFSET_HEADER = "original-offset";
+
+    public static final String EXCEPTION_HEADER = "exception";
+
+    private static final List<String> RECOVERY_HEADERS = Arrays.asList(ATTEMPT_HEADER, DUE_AT_HEADER, ORIGINAL_TOPIC_HEADER,
+        ORIGINAL_PARTITION_HEADER, ORIGINAL_OFFSET_HEADER, EXCEPTION_HEADER);
+
+    private final Logger log = LoggerFactory.getLogger(KafkaRecordRecoverer.class);
+
+    private final KafkaProperties.ConsumerRetry properties;
+
+    private final Producer<String, byte[]> producer;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, AtomicLong> retried = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicLong> deadLettered = new ConcurrentHashMap<>();
+
+    private volatile DeadLetter lastDeadLetter;
+
+    @Autowired
+    public KafkaRecordRecoverer(KafkaProperties kafkaProperties, MeterRegistry meterRegistry) {
+        this(kafkaProperties, createProducer(kafkaProperties), meterRegistry);
+    }
+
+    KafkaRecordRecoverer(KafkaProperties kafkaProperties, Producer<String, byte[]> producer, MeterRegistry meterRegistry) {
+        this.properties = kafkaProperties.getConsumerRetry();
+        this.producer = producer;
+        this.meterRegistry = meterRegistry;
+    }
+
+    private static Producer<String, byte[]> createProducer(KafkaProperties kafkaProperties) {
+        Map<String, Object> props = kafkaProperties.getProducerProps(KafkaProperties.EXACTLY_ONCE);
+        props.put(ProducerConfig.CLIENT_ID_CONFIG, "rental-recoverer");
+        return new KafkaProducer<>(props, new StringSerializer(), new ByteArraySerializer());
+    }
+
+    /**
+     * @return the number of retries the record already had, 0 for records of the original topic.
+     */
+    public int attempt(ConsumerRecord<?, ?> record) {
+        String attempt = header(record.headers(), ATTEMPT_HEADER);
+        return attempt == null ? 0 : Integer.parseInt(attempt);
+    }
+
+    /**
+     * @return the epoch millis from which the record may be processed again, 0 for records of the original topic.
+     */
+    public long dueAt(ConsumerRecord<?, ?> record) {
+        String dueAt = header(record.headers(), DUE_AT_HEADER);
+        return dueAt == null ? 0 : Long.parseLong(dueAt);
+    }
+
+    public String originalTopic(ConsumerRecord<?, ?> record) {
+        String originalTopic = header(record.headers(), ORIGINAL_TOPIC_HEADER);
+        return originalTopic == null ? record.topic() : originalTopic;
+    }
+
+    /**
+     * Forward a record that failed with the given exception and wait until the broker acknowledged it.
+     */
+    public void recover(ConsumerRecord<String, byte[]> record, Exception exception) throws ExecutionException, InterruptedException {
+        String originalTopic = originalTopic(record);
+        int attempt = attempt(record);
+        boolean retryable = properties.isEnabled() && attempt < properties.getBackoffMs().size()
+            && !(exception instanceof SerializationException);
+
+        Headers headers = new RecordHeaders();
+        for (Header header : record.headers()) {
+            if (!RECOVERY_HEADERS.contains(header.key())) {
+                headers.add(header);
+            }
+        }
+        addHeader(headers, ORIGINAL_TOPIC_HEADER, originalTopic);
+        addHeader(headers, ORIGINAL_PARTITION_HEADER, header(record.headers(), ORIGINAL_PARTITION_HEADER, String.valueOf(record.partition())));
+        addHeader(headers, ORIGINAL_OFFSET_HEADER, header(record.headers(), ORIGINAL_OFFSET_HEADER, String.valueOf(record.offset())));
+        addHeader(headers, EXCEPTION_HEADER, exception.getClass().getName() + ": " + exception.getMessage());
+
+        String destination;
+        if (retryable) {
+            destination = properties.retryTopic(originalTopic, attempt);
+            addHeader(headers, ATTEMPT_HEADER, String.valueOf(attempt + 1));
+            addHeader(headers, DUE_AT_HEADER, String.valueOf(System.currentTimeMillis() + properties.getBackoffMs().get(attempt)));
+        } else {
+            destination = properties.deadLetterTopic(originalTopic);
+            addHeader(headers, ATTEMPT_HEADER, String.valueOf(attempt));
+        }
+        producer.send(new ProducerRecord<>(destination, null, record.key(), record.value(), headers)).get();
+
+        if (retryable) {
+            log.warn("Record {}-{}@{} failed ({}), retry {} on {}", record.topic(), record.partition(), record.offset(),
+                exception.toString(), attempt + 1, destination);
+            count(retried, "retry", destination, originalTopic);
+        } else {
+            log.error("Record {}-{}@{} failed after {} retries, parked on {}", record.topic(), record.partition(), record.offset(),
+                attempt, destination, exception);
+            count(deadLettered, "dead-letter", destination, originalTopic);
+            lastDeadLetter = new DeadLetter(destination, Instant.now(), exception.toString());
+        }
+    }
+
+    private void count(Map<String, AtomicLong> counts, String type, String destination, String originalTopic) {
+        counts.computeIfAbsent(destination, topic -> {
+            AtomicLong count = new AtomicLong();
+            FunctionCounter.builder("rental.kafka.consumer.recovered", count, AtomicLong::get)
+                .description("Consumed records forwarded to a retry or dead-letter topic")
+                .tags("topic", originalTopic, "destination", destination, "type", type)
+                .register(meterRegistry);
+            return count;
+        }).incrementAndGet();
+    }
+
+    /**
+     * @return records forwarded to each retry topic since startup.
+     */
+    public Map<String, Long> getRetried() {
+        return snapshot(retried);
+    }
+
+    /**
+     * @return records parked on each dead-letter topic since startup.
+     */
+    public Map<String, Long> getDeadLettered() {
+        return snapshot(deadLettered);
+    }
+
+    public DeadLetter getLastDeadLetter() {
+        return lastDeadLetter;
+    }
+
+    private static Map<String, Long> snapshot(Map<String, AtomicLong> counts) {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counts.forEach((topic, count) -> snapshot.put(topic, count.get()));
+        return snapshot;
+    }
+
+    private static void addHeader(Headers headers, String key, String value) {
+        headers.add(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String header(Headers headers, String key) {
+        Header header = headers.lastHeader(key);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    private static String header(Headers headers, String key, String defaultValue) {
+        String value = header(headers, key);
+        return value == null ? defaultValue : value;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        producer.close();
+    }
+
+    public static class DeadLetter {
+
+        public final String topic;
+
+        public final Instant timestamp;
+
+        public final String exception;
+
+        DeadLetter(String topic, Instant timestamp, String exception) {
+            this.topic = topic;
+            this.timestamp = timestamp;
+            this.exception = exception;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.skcc.rental.adaptor;
+
+import com.skcc.rental.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sums the points saved for a user's rentals and publishes them as one {@code SavePointsEvent} per user, instead
+ * of one event per rental.
+ * <p>
+ * Pending points are published every window, for a single user once enough of the user's rentals were summed, and
+ * for everybody once too many users are pending. Points whose publishing fails are added back and retried with the
+ * next window. On shutdown the remaining points are published and acknowledged before the Kafka producer closes,
+ * retried for up to {@code shutdownTimeoutMs}; only the points still unacknowledged then are logged as lost.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.points.coalescing", name = "enabled", havingValue = "true")
+public class PointAccrualCoalescer {
+
+    private static final long SHUTDOWN_RETRY_BACKOFF_MS = 500;
+
+    private final Logger log = LoggerFactory.getLogger(PointAccrualCoalescer.class);
+
+    private final RentalKafkaProducer rentalKafkaProducer;
+
+    private final ApplicationProperties.Points.Coalescing properties;
+
+    private final Map<Long, PendingPoints> pending = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService publisher;
+
+    private final Counter accrued;
+
+    private final Counter published;
+
+    public PointAccrualCoalescer(RentalKafkaProducer rentalKafkaProducer, ApplicationProperties applicationProperties,
+                                 MeterRegistry meterRegistry) {
+        this.rentalKafkaProducer = rentalKafkaProducer;
+        this.properties = applicationProperties.getPoints().getCoalescing();
+        this.accrued = Counter.builder("rental.points.accruals")
+            .description("Point accruals of rentals handed to the coalescer")
+            .register(meterRegistry);
+        this.published = Counter.builder("rental.points.events")
+            .description("SavePointsEvents published with the summed points of a user")
+            .register(meterRegistry);
+        Gauge.builder("rental.points.pending.users", pending, Map::size)
+            .description("Users with points not yet published")
+            .register(meterRegistry);
+        this.publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rental-point-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher.scheduleWithFixedDelay(this::publishAll, properties.getWindowMs(), properties.getWindowMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add points to the user's pending sum.
+     */
+    public void accrue(Long userId, int points) {
+        PendingPoints sum = pending.compute(userId, (id, current) -> current == null ? new PendingPoints(points) : current.add(points));
+        accrued.increment();
+        try {
+            if (sum.deltas >= properties.getMaxDeltasPerUser()) {
+                publisher.execute(() -> publish(userId));
+            } else if (pending.size() >= properties.getMaxPendingUsers()) {
+                publisher.execute(this::publishAll);
+            }
+        } catch (RejectedExecutionException e) {
+            // 종료 중에는 shutdown()에서 한꺼번에 발행
+            log.debug("Points of user {} left for the shutdown flush", userId);
+        }
+    }
+
+    private void publish(Long userId) {
+        PendingPoints sum = pending.remove(userId);
+        if (sum != null) {
+            publish(Collections.singletonMap(userId, sum));
+        }
+    }
+
+    /**
+     * Publish the pending points of every user and wait for the acknowledgements.
+     */
+    public void publishAll() {
+        Map<Long, PendingPoints> sums = new HashMap<>();
+        for (Long userId : new ArrayList<>(pending.keySet())) {
+            PendingPoints sum = pending.remove(userId);
+            if (sum != null) {
+                sums.put(userId, sum);
+            }
+        }
+        if (!sums.isEmpty()) {
+            publish(sums);
+        }
+    }
+
+    private void publish(Map<Long, PendingPoints> sums) {
+        Map<Long, Integer> points = new HashMap<>();
+        sums.forEach((userId, sum) -> points.put(userId, sum.points));
+        try {
+            rentalKafkaProducer.savePoints(points);
+            published.increment(points.size());
+        } catch (ExecutionException | RuntimeException e) {
+            log.warn("Could not publish the points of {} users, retrying with the next window", points.size(), e);
+            // 실패한 포인트는 다시 합산해 다음 window에 발행
+            sums.forEach((userId, sum) -> pending.merge(userId, sum, PendingPoints::merge));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sums.forEach((userId, sum) -> pending.merge(userId, sum, PendingPoints::merge));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        publisher.shutdown();
+        try {
+            publisher.awaitTermination(properties.getWindowMs() + 10000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getShutdownTimeoutMs());
+        publishAll();
+        // 실패한 포인트는 제한 시간까지 다시 발행한다
+        while (!pending.isEmpty() && System.nanoTime() < deadline && !Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(Math.min(SHUTDOWN_RETRY_BACKOFF_MS, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()) + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            publishAll();
+        }
+        List<String> lost = new ArrayList<>();
+        pending.forEach((userId, sum) -> lost.add(userId + "=" + sum.points));
+        if (!lost.isEmpty()) {
+            log.error("Points not published on shutdown (userId=points): {}", lost);
+        }
+    }
+
+    private static final class PendingPoints {
+
+        private final int points;
+
+        private final int deltas;
+
+        PendingPoints(int points) {
+            this(points, 1);
+        }
+
+        private PendingPoints(int points, int deltas) {
+            this.points = points;
+            this.deltas = deltas;
+        }
+
+        PendingPoints add(int points) {
+            return new PendingPoints(this.points + points, deltas + 1);
+        }
+
+        PendingPoints merge(PendingPoints other) {
+            return new PendingPoints(points + other.points, deltas + other.deltas);
+        }
+    }
+}
@@ -1,24 +1,42 @@
 package com.skcc.rental.adaptor;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skcc.rental.adaptor.codec.EventCodecs;
+import com.skcc.rental.adaptor.codec.EventDeserializer;
 import com.skcc.rental.config.KafkaProperties;
 import com.skcc.rental.domain.CreateRentalEvent;
 import com.skcc.rental.domain.Rental;
 import com.skcc.rental.repository.RentalRepository;
+import com.skcc.rental.repository.shard.ShardMap;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 @Service
 public class RentalKafkaConsumer {
@@ -28,67 +46,232 @@ public class RentalKafkaConsumer {
 
     public static final String TOPIC ="topic_rental";
 
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    private static final long RECOVER_BACKOFF_MS = 5000;
+
     private final KafkaProperties kafkaProperties;
 
-    private KafkaConsumer<String, String> kafkaConsumer;
+    private final EventDeserializer<CreateRentalEvent> eventDeserializer;
+
+    private final KafkaRecordRecoverer recordRecoverer;
+
+    private final KafkaConsumerMonitor consumerMonitor;
+
+    private final DatabaseBackpressure databaseBackpressure;
+
+    private KafkaConsumer<String, byte[]> kafkaConsumer;
+
+    // retry topic마다 하나씩, backoff가 지난 레코드만 다시 처리
+    private final List<KafkaConsumer<String, byte[]>> retryConsumers = new ArrayList<>();
 
     private RentalRepository rentalRepository;
 
+    private ShardMap shardMap;
+
     private ExecutorService executorService = Executors.newCachedThreadPool();
 
 
-    public RentalKafkaConsumer(KafkaProperties kafkaProperties, RentalRepository rentalRepository) {
+    public RentalKafkaConsumer(KafkaProperties kafkaProperties, RentalRepository rentalRepository, EventCodecs eventCodecs,
+                               KafkaRecordRecoverer recordRecoverer, KafkaConsumerMonitor consumerMonitor,
+                               DatabaseBackpressure databaseBackpressure) {
         this.kafkaProperties = kafkaProperties;
+        this.eventDeserializer = eventCodecs.deserializer(CreateRentalEvent.class);
         this.rentalRepository = rentalRepository;
+        this.recordRecoverer = recordRecoverer;
+        this.consumerMonitor = consumerMonitor;
+        this.databaseBackpressure = databaseBackpressure;
     }
 
 
+    /**
+     * Set when {@code application.sharding.enabled} is true: rentals are created on the shard of their user.
+     */
+    @Autowired(required = false)
+    public void setShardMap(ShardMap shardMap) {
+        this.shardMap = shardMap;
+    }
+
     @PostConstruct
     public void start(){
         log.info("Kafka consumer starting ...");
-        this.kafkaConsumer = new KafkaConsumer<>(kafkaProperties.getConsumerProps());
+        // values are decoded per record, so a malformed event fails only its own record
+        this.kafkaConsumer = new KafkaConsumer<>(kafkaProperties.getConsumerProps(), new StringDeserializer(),
+            new ByteArrayDeserializer());
         Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
-        kafkaConsumer.subscribe(Collections.singleton(TOPIC));
-        log.info("Kafka consumer started");
+        executorService.execute(() -> consume(kafkaConsumer, TOPIC));
 
-        executorService.execute(()-> {
-                try {
+        KafkaProperties.ConsumerRetry retry = kafkaProperties.getConsumerRetry();
+        if (retry.isEnabled()) {
+            for (int tier = 0; tier < retry.getBackoffMs().size(); tier++) {
+                Map<String, Object> props = kafkaProperties.getConsumerProps();
+                String retryTopic = retry.retryTopic(TOPIC, tier);
+                String groupSuffix = retry.getRetryTopicSuffix() + tier;
+                props.computeIfPresent(ConsumerConfig.GROUP_ID_CONFIG, (key, groupId) -> groupId + groupSuffix);
+                KafkaConsumer<String, byte[]> retryConsumer = new KafkaConsumer<>(props, new StringDeserializer(), new ByteArrayDeserializer());
+                retryConsumers.add(retryConsumer);
+                executorService.execute(() -> consume(retryConsumer, retryTopic));
+            }
+        }
+        log.info("Kafka consumer started");
+    }
 
-                    while (!closed.get()){
-                        ConsumerRecords<String, String> records = kafkaConsumer.poll(Duration.ofSeconds(3));
-                        for(ConsumerRecord<String, String> record: records){
-                            log.info("Consumed message in {} : {}", TOPIC, record.value());
-                            ObjectMapper objectMapper = new ObjectMapper();
-                            CreateRentalEvent createRentalEvent= objectMapper.readValue(record.value(), CreateRentalEvent.class);
-                            Rental rental = Rental.createRental(createRentalEvent.getUserId());
-                            rentalRepository.save(rental);
+    void consume(Consumer<String, byte[]> consumer, String topic) {
+        // backoff이 끝나지 않은 레코드의 partition은 due 시각까지 pause
+        Map<TopicPartition, Long> pausedUntil = new HashMap<>();
+        consumer.subscribe(Collections.singleton(topic), new ConsumerRebalanceListener() {
+            @Override
+            public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                consumerMonitor.forget(partitions);
+                partitions.forEach(pausedUntil::remove);
+            }
 
+            @Override
+            public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            }
+        });
+        boolean backpressured = false;
+        long lagRefreshedAt = 0;
+        try {
+            while (!closed.get()) {
+                // DB connection pool이 포화되면 모든 partition을 pause
+                if (databaseBackpressure.isSaturated()) {
+                    consumer.pause(consumer.assignment());
+                    backpressured = true;
+                } else {
+                    if (backpressured) {
+                        Set<TopicPartition> resumed = new HashSet<>(consumer.assignment());
+                        resumed.removeAll(pausedUntil.keySet());
+                        consumer.resume(resumed);
+                        backpressured = false;
+                    }
+                    resumeDuePartitions(consumer, pausedUntil);
+                }
+                long pollStart = System.nanoTime();
+                ConsumerRecords<String, byte[]> records = consumer.poll(POLL_TIMEOUT);
+                consumerMonitor.recordPoll(topic, System.nanoTime() - pollStart, records.count());
+                for (TopicPartition partition : records.partitions()) {
+                    for (ConsumerRecord<String, byte[]> record : records.records(partition)) {
+                        long dueAt;
+                        try {
+                            dueAt = recordRecoverer.dueAt(record);
+                        } catch (RuntimeException e) {
+                            // 잘못된 retry 헤더는 처리 실패와 같이 다음 retry 또는 dead-letter topic으로 보낸다
+                            if (!recover(record, e)) {
+                                pause(consumer, pausedUntil, partition, record.offset(), System.currentTimeMillis() + RECOVER_BACKOFF_MS);
+                                break;
+                            }
+                            continue;
+                        }
+                        if (dueAt > System.currentTimeMillis()) {
+                            pause(consumer, pausedUntil, partition, record.offset(), dueAt);
+                            break;
+                        }
+                        long processingStart = System.nanoTime();
+                        boolean processed = process(record);
+                        consumerMonitor.recordProcessing(topic, System.nanoTime() - processingStart);
+                        if (!processed) {
+                            // could not forward the record either, read it again after the first backoff
+                            pause(consumer, pausedUntil, partition, record.offset(), System.currentTimeMillis() + RECOVER_BACKOFF_MS);
+                            break;
                         }
-
                     }
-                    kafkaConsumer.commitSync();
+                }
+                if (System.currentTimeMillis() - lagRefreshedAt >= kafkaProperties.getConsumerLag().getRefreshMs()) {
+                    consumerMonitor.refreshLag(consumer);
+                    lagRefreshedAt = System.currentTimeMillis();
+                }
+            }
+            consumer.commitSync();
 
-                }catch (WakeupException e){
-                    if(!closed.get()){
-                        throw e;
-                    }
+        }catch (WakeupException e){
+            if(!closed.get()){
+                throw e;
+            }
 
-                }catch (Exception e){
-                    log.error(e.getMessage(), e);
-                }finally {
-                    log.info("kafka consumer close");
-                    kafkaConsumer.close();
-                }
+        }catch (Exception e){
+            log.error(e.getMessage(), e);
+        }finally {
+            log.info("kafka consumer close");
+            consumer.close();
+        }
+    }
 
+    /**
+     * @return false if the record neither succeeded nor could be forwarded to a retry or dead-letter topic.
+     */
+    boolean process(ConsumerRecord<String, byte[]> record) {
+        try {
+            CreateRentalEvent event = eventDeserializer.deserialize(record.topic(), record.headers(), record.value());
+            if (shardMap != null) {
+                shardMap.callOnUser(event.getUserId(), () -> {
+                    createRental(event);
+                    return null;
+                });
+            } else {
+                createRental(event);
             }
+            return true;
+        } catch (Exception e) {
+            return recover(record, e);
+        }
+    }
 
+    /**
+     * Forward a failed record to its retry or dead-letter topic. Sending may also fail synchronously, e.g. when the
+     * topic's metadata is not available within {@code max.block.ms}; the record is then read again after a backoff
+     * instead of stopping the consumer.
+     *
+     * @return false if the record could not be forwarded.
+     */
+    private boolean recover(ConsumerRecord<String, byte[]> record, Exception exception) {
+        try {
+            recordRecoverer.recover(record, exception);
+            return true;
+        } catch (ExecutionException e) {
+            log.error("Could not forward failed record {}-{}@{}", record.topic(), record.partition(), record.offset(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Could not forward failed record {}-{}@{}", record.topic(), record.partition(), record.offset(), e);
+        }
+        return false;
+    }
+
+    private void createRental(CreateRentalEvent createRentalEvent) {
+        log.info("Consumed message in {} : userId {}", TOPIC, createRentalEvent.getUserId());
+        // redelivered events must not create a second rental for the same natural id
+        if (rentalRepository.findByUserId(createRentalEvent.getUserId()).isPresent()) {
+            log.debug("Rental of user {} already exists", createRentalEvent.getUserId());
+            return;
+        }
+        Rental rental = Rental.createRental(createRentalEvent.getUserId());
+        rentalRepository.save(rental);
+    }
 
+    private static void pause(Consumer<String, byte[]> consumer, Map<TopicPartition, Long> pausedUntil,
+                              TopicPartition partition, long offset, long until) {
+        consumer.seek(partition, offset);
+        consumer.pause(Collections.singleton(partition));
+        pausedUntil.put(partition, until);
+    }
 
-        );
+    private static void resumeDuePartitions(Consumer<String, byte[]> consumer, Map<TopicPartition, Long> pausedUntil) {
+        long now = System.currentTimeMillis();
+        List<TopicPartition> due = pausedUntil.entrySet().stream()
+            .filter(entry -> entry.getValue() <= now)
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+        if (!due.isEmpty()) {
+            due.forEach(pausedUntil::remove);
+            // partitions revoked in the meantime are no longer paused
+            due.retainAll(consumer.assignment());
+            consumer.resume(due);
+        }
     }
 
 
-    public KafkaConsumer<String, String> getKafkaConsumer() {
+    public KafkaConsumer<String, byte[]> getKafkaConsumer() {
         return kafkaConsumer;
     }
 
@@ -96,5 +279,6 @@ public class RentalKafkaConsumer {
         log.info("Shutdown Kafka consumer");
         closed.set(true);
         kafkaConsumer.wakeup();
+        retryConsumers.forEach(KafkaConsumer::wakeup);
     }
 }
@@ -1,17 +1,28 @@
 package com.skcc.rental.adaptor;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skcc.rental.adaptor.codec.EventCodecs;
 import com.skcc.rental.config.KafkaProperties;
+import com.skcc.rental.config.metrics.KafkaProducerMetrics;
 import com.skcc.rental.domain.BookCatalogEvent;
+import com.skcc.rental.domain.DueReminderEvent;
 import com.skcc.rental.domain.SavePointsEvent;
 import com.skcc.rental.domain.UpdateBookEvent;
 import com.skcc.rental.web.rest.RentalKafkaResource;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.NewTopic;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.errors.TopicExistsException;
 import org.apache.kafka.common.internals.Topic;
 import org.apache.kafka.common.record.Record;
+import org.apache.kafka.common.serialization.StringSerializer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -20,8 +31,15 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.awt.print.Book;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 @Service
 public class RentalKafkaProducer {
@@ -31,48 +49,162 @@ public class RentalKafkaProducer {
     private static final String TOPIC_BOOK = "topic_book";
     private static final String TOPIC_CATALOG = "topic_catalog";
     private static final String TOPIC_POINT = "topic_point";
+    private static final String TOPIC_DUE_REMINDER = "topic_due_reminder";
 
     private final KafkaProperties kafkaProperties;
 
+    private final EventCodecs eventCodecs;
+
+    private final MeterRegistry meterRegistry;
+
     private final static Logger logger = LoggerFactory.getLogger(RentalKafkaProducer.class);
-    private KafkaProducer<String, String> producer;
-    private final ObjectMapper objectMapper = new ObjectMapper();
 
+    // 프로파일별 producer, topic마다 kafka.topic-producer-profiles에 지정한 프로파일 사용
+    private final Map<String, KafkaProducer<String, Object>> producers = new ConcurrentHashMap<>();
 
-    public RentalKafkaProducer(KafkaProperties kafkaProperties) {
+    // kafka.transactions.enabled 일 때 한 작업의 이벤트를 하나의 transaction으로 발행
+    private TransactionalEventPublisher transactionalPublisher;
+
+    public RentalKafkaProducer(KafkaProperties kafkaProperties, EventCodecs eventCodecs, MeterRegistry meterRegistry) {
         this.kafkaProperties = kafkaProperties;
+        this.eventCodecs = eventCodecs;
+        this.meterRegistry = meterRegistry;
     }
 
     @PostConstruct
     public void initialize(){
         log.info("Kafka producer initializing...");
-        this.producer = new KafkaProducer<>(kafkaProperties.getProducerProps());
-        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+        for (String topic : Arrays.asList(TOPIC_BOOK, TOPIC_CATALOG, TOPIC_POINT, TOPIC_DUE_REMINDER, kafkaProperties.getBookStatus().getName())) {
+            producerFor(topic);
+        }
+        if (kafkaProperties.getTransactions().isEnabled()) {
+            transactionalPublisher = new TransactionalEventPublisher(kafkaProperties.getTransactions(),
+                this::createTransactionalProducer, meterRegistry);
+        }
+        KafkaProperties.CompactedTopic bookStatus = kafkaProperties.getBookStatus();
+        if (bookStatus.isEnabled() && bookStatus.isCreate()) {
+            createCompactedTopic(bookStatus);
+        }
         log.info("Kafka producer initialized");
     }
 
+    private KafkaProducer<String, Object> producerFor(String topic) {
+        return producers.computeIfAbsent(kafkaProperties.producerProfileFor(topic), this::createProducer);
+    }
+
+    private KafkaProducer<String, Object> createProducer(String profileName) {
+        log.info("Creating Kafka producer with profile {}", profileName);
+        // key.serializer / value.serializer of kafka.producer are not used, events are encoded in kafka.event-format
+        KafkaProducer<String, Object> producer = new KafkaProducer<>(kafkaProperties.getProducerProps(profileName),
+            new StringSerializer(), eventCodecs.serializer(kafkaProperties.getEventFormat()));
+        new KafkaProducerMetrics(producer, Tags.of("profile", profileName)).bindTo(meterRegistry);
+        return producer;
+    }
+
+    private KafkaProducer<String, Object> createTransactionalProducer(String transactionalId) {
+        log.info("Creating transactional Kafka producer {}", transactionalId);
+        Map<String, Object> props = kafkaProperties.getProducerProps(KafkaProperties.EXACTLY_ONCE);
+        props.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG, transactionalId);
+        props.put(ProducerConfig.CLIENT_ID_CONFIG, transactionalId);
+        KafkaProducer<String, Object> producer = new KafkaProducer<>(props,
+            new StringSerializer(), eventCodecs.serializer(kafkaProperties.getEventFormat()));
+        new KafkaProducerMetrics(producer, Tags.of("profile", "transactional")).bindTo(meterRegistry);
+        return producer;
+    }
+
+    private Future<RecordMetadata> send(String topic, String key, Object event) {
+        return send(new ProducerRecord<>(topic, key, event));
+    }
+
+    private Future<RecordMetadata> send(ProducerRecord<String, Object> record) {
+        return producerFor(record.topic()).send(record, (metadata, exception) -> {
+            if (exception != null) {
+                log.error("Could not publish {} to {}", record.value().getClass().getSimpleName(), record.topic(), exception);
+            }
+        });
+    }
+
+    /**
+     * @return the result of the send, or {@code null} when the topic's producer profile does not wait for it.
+     */
+    private PublishResult await(String topic, Future<RecordMetadata> sent) throws ExecutionException, InterruptedException {
+        if (!kafkaProperties.getProducerProfile(kafkaProperties.producerProfileFor(topic)).isAwait()) {
+            return null;
+        }
+        RecordMetadata metadata = sent.get();
+        return new PublishResult(metadata.topic(), metadata.partition(), metadata.offset(), Instant.ofEpochMilli(metadata.timestamp()));
+    }
+
+    private void createCompactedTopic(KafkaProperties.CompactedTopic compactedTopic) {
+        Map<String, String> configs = new HashMap<>(compactedTopic.getConfigs());
+        configs.put(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_COMPACT);
+        NewTopic newTopic = new NewTopic(compactedTopic.getName(), compactedTopic.getPartitions(), compactedTopic.getReplicationFactor())
+            .configs(configs);
+        Map<String, Object> adminProps = Collections.singletonMap(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG,
+            kafkaProperties.getProducerProps().get(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG));
+        try (AdminClient adminClient = AdminClient.create(adminProps)) {
+            adminClient.createTopics(Collections.singleton(newTopic)).all().get();
+            log.info("Created compacted topic {}", compactedTopic.getName());
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof TopicExistsException)) {
+                log.warn("Could not create compacted topic {}: {}", compactedTopic.getName(), e.getCause().getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * @return a builder collecting the events of one rental operation, published together by {@link RentalEvents#publish()}.
+     */
+    public RentalEvents events() {
+        return new RentalEvents();
+    }
 
     /******
      * kafka 메세지 수신 후, 결과 메세지 받도록 변경
      *
      * *******/
 
-    //책 상태 업데이트
+    //책 상태 업데이트 - bookId를 key로 보내 같은 책의 이벤트 순서 보장
     public PublishResult updateBookStatus(Long bookId, String bookStatus) throws ExecutionException, InterruptedException, JsonProcessingException{
 
         UpdateBookEvent updateBookEvent = new UpdateBookEvent(bookId, bookStatus);
-        String message = objectMapper.writeValueAsString(updateBookEvent);
-        RecordMetadata metadata = producer.send(new ProducerRecord<>(TOPIC_BOOK, message)).get();
-        return new PublishResult(metadata.topic(), metadata.partition(), metadata.offset(), Instant.ofEpochMilli(metadata.timestamp()));
+        KafkaProperties.CompactedTopic bookStatusTopic = kafkaProperties.getBookStatus();
+        Future<RecordMetadata> latestStatus = null;
+        if (bookStatusTopic.isEnabled()) {
+            // 책별 최신 상태만 남는 compacted topic
+            latestStatus = send(bookStatusTopic.getName(), bookId.toString(), updateBookEvent);
+        }
+        PublishResult result = await(TOPIC_BOOK, send(TOPIC_BOOK, bookId.toString(), updateBookEvent));
+        if (latestStatus != null) {
+            await(bookStatusTopic.getName(), latestStatus);
+        }
+        return result;
 
     }
 
     // 권당 포인트 적립
     public PublishResult savePoints(Long userId, int points) throws ExecutionException, InterruptedException, JsonProcessingException{
         SavePointsEvent savePointsEvent = new SavePointsEvent(userId, points);
-        String message = objectMapper.writeValueAsString(savePointsEvent);
-        RecordMetadata metadata = producer.send(new ProducerRecord<>(TOPIC_POINT, message)).get();
-        return new PublishResult(metadata.topic(), metadata.partition(), metadata.offset(), Instant.ofEpochMilli(metadata.timestamp()));
+        return await(TOPIC_POINT, send(TOPIC_POINT, userId.toString(), savePointsEvent));
+    }
+
+    // 사용자별로 합산한 포인트 적립
+    public void savePoints(Map<Long, Integer> pointsByUser) throws ExecutionException, InterruptedException {
+        RentalEvents events = events();
+        pointsByUser.forEach(events::savePoints);
+        events.publish();
+    }
+
+    // 반납 예정 알림 - 사용자별 알림을 topic의 producer 프로파일로 한꺼번에 보내고, 모든 전송이 확인된 뒤 반환
+    public void remindDue(List<DueReminderEvent> reminders) throws ExecutionException, InterruptedException {
+        List<Future<RecordMetadata>> sent = new ArrayList<>();
+        reminders.forEach(reminder -> sent.add(send(TOPIC_DUE_REMINDER, reminder.getUserId().toString(), reminder)));
+        for (Future<RecordMetadata> future : sent) {
+            future.get();
+        }
     }
 
     //대여, 반납  시 book catalog의 책 상태 업데이트
@@ -80,15 +212,64 @@ public class RentalKafkaProducer {
         BookCatalogEvent bookCatalogEvent = new BookCatalogEvent();
         bookCatalogEvent.setBookId(bookId);
         bookCatalogEvent.setEventType(eventType);
-        String message = objectMapper.writeValueAsString(bookCatalogEvent);
-        RecordMetadata metadata = producer.send(new ProducerRecord<>(TOPIC_CATALOG, message)).get();
-        return new PublishResult(metadata.topic(), metadata.partition(), metadata.offset(), Instant.ofEpochMilli(metadata.timestamp()));
+        return await(TOPIC_CATALOG, send(TOPIC_CATALOG, bookId.toString(), bookCatalogEvent));
     }
 
     @PreDestroy
     public void shutdown(){
         log.info("Shutdown Kafka producer");
-        producer.close();
+        if (transactionalPublisher != null) {
+            transactionalPublisher.close();
+        }
+        producers.values().forEach(KafkaProducer::close);
+    }
+
+    /**
+     * Events of one rental operation. With {@code kafka.transactions.enabled} they are committed in one Kafka
+     * transaction, so consumers with {@code isolation.level=read_committed} never see part of an operation;
+     * otherwise each event is sent with its topic's producer profile.
+     */
+    public class RentalEvents {
+
+        private final List<ProducerRecord<String, Object>> records = new ArrayList<>();
+
+        private RentalEvents() {
+        }
+
+        public RentalEvents updateBookStatus(Long bookId, String bookStatus) {
+            UpdateBookEvent updateBookEvent = new UpdateBookEvent(bookId, bookStatus);
+            records.add(new ProducerRecord<>(TOPIC_BOOK, bookId.toString(), updateBookEvent));
+            KafkaProperties.CompactedTopic bookStatusTopic = kafkaProperties.getBookStatus();
+            if (bookStatusTopic.isEnabled()) {
+                records.add(new ProducerRecord<>(bookStatusTopic.getName(), bookId.toString(), updateBookEvent));
+            }
+            return this;
+        }
+
+        public RentalEvents updateBookCatalogStatus(Long bookId, String eventType) {
+            BookCatalogEvent bookCatalogEvent = new BookCatalogEvent();
+            bookCatalogEvent.setBookId(bookId);
+            bookCatalogEvent.setEventType(eventType);
+            records.add(new ProducerRecord<>(TOPIC_CATALOG, bookId.toString(), bookCatalogEvent));
+            return this;
+        }
+
+        public RentalEvents savePoints(Long userId, int points) {
+            records.add(new ProducerRecord<>(TOPIC_POINT, userId.toString(), new SavePointsEvent(userId, points)));
+            return this;
+        }
+
+        public void publish() throws ExecutionException, InterruptedException {
+            if (transactionalPublisher != null) {
+                transactionalPublisher.publish(records);
+                return;
+            }
+            List<Future<RecordMetadata>> sent = new ArrayList<>();
+            records.forEach(record -> sent.add(send(record)));
+            for (int i = 0; i < records.size(); i++) {
+                await(records.get(i).topic(), sent.get(i));
+            }
+        }
     }
 
 
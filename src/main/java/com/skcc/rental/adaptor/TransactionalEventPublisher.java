@@ -0,0 +1,271 @@
+package com.skcc.rental.adaptor;
+
+import com.skcc.rental.config.KafkaProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.AuthorizationException;
+import org.apache.kafka.common.errors.OutOfOrderSequenceException;
+import org.apache.kafka.common.errors.ProducerFencedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Publishes the events of a rental operation in one Kafka transaction, so consumers reading committed records see
+ * all events of the operation or none.
+ * <p>
+ * Each operation either borrows a transactional producer from a pool and commits its own transaction, or, with
+ * batching, is handed to a single sender thread that commits the events of many queued operations per transaction.
+ * A producer fenced by a newer instance with the same transactional id is replaced.
+ * <p>
+ * A queued operation is always completed: committed or aborted by the sender, rejected when the publisher closes or
+ * the sender stops, and failed by its caller after the commit timeout otherwise.
+ */
+public class TransactionalEventPublisher {
+
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(10);
+
+    private final Logger log = LoggerFactory.getLogger(TransactionalEventPublisher.class);
+
+    private final KafkaProperties.Transactions properties;
+
+    private final Function<String, Producer<String, Object>> producerFactory;
+
+    private final BlockingQueue<TransactionalProducer> pool;
+
+    private final BlockingQueue<PendingOperation> pending = new LinkedBlockingQueue<>();
+
+    /**
+     * Guards {@code running} against the enqueueing of operations, so none is queued after the sender drained the queue.
+     */
+    private final Object lifecycle = new Object();
+
+    private final Timer transactionTimer;
+
+    private final DistributionSummary operationsPerTransaction;
+
+    private volatile boolean running = true;
+
+    private Thread sender;
+
+    /**
+     * @param producerFactory creates a producer with the given transactional id.
+     */
+    public TransactionalEventPublisher(KafkaProperties.Transactions properties, Function<String, Producer<String, Object>> producerFactory,
+                                       MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.producerFactory = producerFactory;
+        int producers = properties.isBatching() ? 1 : properties.getProducers();
+        this.pool = new ArrayBlockingQueue<>(producers);
+        for (int i = 0; i < producers; i++) {
+            pool.add(new TransactionalProducer(properties.getTransactionalIdPrefix() + i));
+        }
+        String mode = properties.isBatching() ? "batched" : "per-operation";
+        this.transactionTimer = Timer.builder("rental.kafka.transaction")
+            .description("Time to publish and commit a Kafka transaction of rental events")
+            .tag("mode", mode)
+            .register(meterRegistry);
+        this.operationsPerTransaction = DistributionSummary.builder("rental.kafka.transaction.operations")
+            .description("Rental operations committed per Kafka transaction")
+            .tag("mode", mode)
+            .register(meterRegistry);
+        if (properties.isBatching()) {
+            sender = new Thread(this::sendBatches, "rental-kafka-transactions");
+            sender.setDaemon(true);
+            sender.start();
+        }
+    }
+
+    /**
+     * Publish the events of one operation atomically and wait for the commit.
+     *
+     * @throws ExecutionException if the transaction was aborted, or not committed within the commit timeout.
+     * @throws IllegalStateException if the publisher is closed.
+     */
+    public void publish(List<ProducerRecord<String, Object>> records) throws ExecutionException, InterruptedException {
+        if (records.isEmpty()) {
+            return;
+        }
+        if (properties.isBatching()) {
+            PendingOperation operation = new PendingOperation(records);
+            synchronized (lifecycle) {
+                if (!running) {
+                    throw closed();
+                }
+                pending.add(operation);
+            }
+            try {
+                operation.committed.get(properties.getCommitTimeoutMs(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // dequeue it if the sender has not taken it yet, otherwise it may still be committed
+                pending.remove(operation);
+                throw new ExecutionException("Transaction not committed within " + properties.getCommitTimeoutMs() + " ms", e);
+            }
+            return;
+        }
+        TransactionalProducer producer = pool.take();
+        try {
+            producer.commit(records, 1);
+        } catch (KafkaException e) {
+            throw new ExecutionException(e);
+        } finally {
+            pool.add(producer);
+        }
+    }
+
+    private void sendBatches() {
+        TransactionalProducer producer = pool.poll();
+        try {
+            sendBatches(producer);
+        } finally {
+            rejectPending();
+            producer.close();
+        }
+    }
+
+    private void sendBatches(TransactionalProducer producer) {
+        List<PendingOperation> batch = new ArrayList<>();
+        while (running || !pending.isEmpty()) {
+            try {
+                PendingOperation first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getLingerMs());
+                while (batch.size() < properties.getMaxOperationsPerTransaction()) {
+                    PendingOperation next = pending.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                List<ProducerRecord<String, Object>> records = new ArrayList<>();
+                batch.forEach(operation -> records.addAll(operation.records));
+                try {
+                    producer.commit(records, batch.size());
+                    batch.forEach(operation -> operation.committed.complete(null));
+                } catch (KafkaException e) {
+                    batch.forEach(operation -> operation.committed.completeExceptionally(e));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (RuntimeException e) {
+                log.error("Unexpected error while publishing rental events", e);
+                batch.forEach(operation -> operation.committed.completeExceptionally(e));
+            } finally {
+                // an Error leaving the loop must not leave the operations of the batch waiting
+                batch.forEach(operation -> operation.committed.completeExceptionally(closed()));
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Stop accepting operations and fail those still queued.
+     */
+    private void rejectPending() {
+        List<PendingOperation> rejected = new ArrayList<>();
+        synchronized (lifecycle) {
+            running = false;
+            pending.drainTo(rejected);
+        }
+        rejected.forEach(operation -> operation.committed.completeExceptionally(closed()));
+    }
+
+    private static IllegalStateException closed() {
+        return new IllegalStateException("Transactional publisher is closed");
+    }
+
+    /**
+     * Commit the queued operations and close the producers.
+     */
+    public void close() {
+        synchronized (lifecycle) {
+            running = false;
+        }
+        if (sender != null) {
+            try {
+                sender.join(CLOSE_TIMEOUT.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // a sender still busy after the timeout leaves no operation waiting
+            rejectPending();
+        } else {
+            pool.forEach(TransactionalProducer::close);
+        }
+    }
+
+    private static class PendingOperation {
+
+        private final List<ProducerRecord<String, Object>> records;
+
+        private final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+        PendingOperation(List<ProducerRecord<String, Object>> records) {
+            this.records = records;
+        }
+    }
+
+    /**
+     * A producer with a fixed transactional id, created and initialized on first use so that startup does not
+     * wait for the brokers.
+     */
+    private class TransactionalProducer {
+
+        private final String transactionalId;
+
+        private Producer<String, Object> producer;
+
+        TransactionalProducer(String transactionalId) {
+            this.transactionalId = transactionalId;
+        }
+
+        void commit(List<ProducerRecord<String, Object>> records, int operations) {
+            if (producer == null) {
+                producer = producerFactory.apply(transactionalId);
+                producer.initTransactions();
+            }
+            long start = System.nanoTime();
+            try {
+                producer.beginTransaction();
+                records.forEach(producer::send);
+                producer.commitTransaction();
+            } catch (ProducerFencedException | OutOfOrderSequenceException | AuthorizationException e) {
+                // the producer cannot be used any more, the next operation starts a new one
+                log.error("Kafka producer {} failed, recreating it", transactionalId, e);
+                close();
+                throw e;
+            } catch (KafkaException e) {
+                producer.abortTransaction();
+                throw e;
+            }
+            transactionTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            operationsPerTransaction.record(operations);
+        }
+
+        void close() {
+            if (producer != null) {
+                producer.close(CLOSE_TIMEOUT);
+                producer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.skcc.rental.adaptor.codec;
+
+/**
+ * Encodes Kafka event payloads in one {@link EventFormat}.
+ */
+public interface EventCodec {
+
+    /**
+     * Record header with the {@link EventFormat#contentType()} of the payload.
+     */
+    String CONTENT_TYPE_HEADER = "content-type";
+
+    /**
+     * Record header with the schema version of the event. Fields may be added within a version;
+     * removing or changing a field requires a new version, which consumers must learn before producers send it.
+     */
+    String VERSION_HEADER = "event-version";
+
+    int CURRENT_VERSION = 1;
+
+    String contentType();
+
+    byte[] encode(Object event);
+
+    <T> T decode(byte[] data, Class<T> type);
+}
@@ -0,0 +1,40 @@
+package com.skcc.rental.adaptor.codec;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * One {@link EventCodec} per {@link EventFormat}, built from the application's Jackson configuration and shared by
+ * all Kafka producers and consumers of the service.
+ */
+@Component
+public class EventCodecs {
+
+    private final Map<EventFormat, EventCodec> codecs;
+
+    public EventCodecs(ObjectProvider<Jackson2ObjectMapperBuilder> objectMapperBuilder) {
+        Map<EventFormat, EventCodec> codecs = new EnumMap<>(EventFormat.class);
+        for (EventFormat format : EventFormat.values()) {
+            // the builder is a prototype bean, each format changes its own
+            codecs.put(format, format.newCodec(objectMapperBuilder.getObject()));
+        }
+        this.codecs = Collections.unmodifiableMap(codecs);
+    }
+
+    public EventCodec codec(EventFormat format) {
+        return codecs.get(format);
+    }
+
+    public EventSerializer serializer(EventFormat format) {
+        return new EventSerializer(codec(format));
+    }
+
+    public <T> EventDeserializer<T> deserializer(Class<T> type) {
+        return new EventDeserializer<>(type, codecs);
+    }
+}
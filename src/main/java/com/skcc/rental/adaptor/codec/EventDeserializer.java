@@ -0,0 +1,71 @@
+package com.skcc.rental.adaptor.codec;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Kafka deserializer decoding events in whichever {@link EventFormat} their content type header announces, so
+ * producers can switch format while consumers keep running. Records without header are read as JSON.
+ */
+public class EventDeserializer<T> implements Deserializer<T> {
+
+    private final Logger log = LoggerFactory.getLogger(EventDeserializer.class);
+
+    private final Class<T> type;
+
+    private final Map<EventFormat, EventCodec> codecs;
+
+    /**
+     * @param type the type of the events.
+     * @param codecs a codec for every format, see {@link EventCodecs#deserializer(Class)}.
+     */
+    public EventDeserializer(Class<T> type, Map<EventFormat, EventCodec> codecs) {
+        this.type = type;
+        this.codecs = codecs;
+    }
+
+    public EventDeserializer(Class<T> type) {
+        this.type = type;
+        this.codecs = new EnumMap<>(EventFormat.class);
+        for (EventFormat format : EventFormat.values()) {
+            codecs.put(format, format.newCodec());
+        }
+    }
+
+    @Override
+    public T deserialize(String topic, byte[] data) {
+        return data == null ? null : codecs.get(EventFormat.JSON).decode(data, type);
+    }
+
+    @Override
+    public T deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        EventFormat format;
+        try {
+            format = EventFormat.forContentType(headerValue(headers, EventCodec.CONTENT_TYPE_HEADER));
+        } catch (IllegalArgumentException e) {
+            throw new SerializationException(e.getMessage(), e);
+        }
+        String version = headerValue(headers, EventCodec.VERSION_HEADER);
+        if (version != null && Integer.parseInt(version) > EventCodec.CURRENT_VERSION) {
+            log.warn("{} on {} has schema version {}, this consumer knows version {}", type.getSimpleName(), topic,
+                version, EventCodec.CURRENT_VERSION);
+        }
+        return codecs.get(format).decode(data, type);
+    }
+
+    private static String headerValue(Headers headers, String key) {
+        Header header = headers.lastHeader(key);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
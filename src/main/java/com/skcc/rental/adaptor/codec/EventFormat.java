@@ -0,0 +1,91 @@
+package com.skcc.rental.adaptor.codec;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileParser;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Wire formats of Kafka events, announced to consumers by the {@link EventCodec#CONTENT_TYPE_HEADER} header.
+ */
+public enum EventFormat {
+
+    /**
+     * Plain JSON, readable by every consumer including those using a {@code StringDeserializer}.
+     */
+    JSON("application/json") {
+        @Override
+        public EventCodec newCodec(Jackson2ObjectMapperBuilder builder) {
+            return new JacksonEventCodec(configure(builder.build()), contentType());
+        }
+    },
+
+    /**
+     * Binary JSON (Smile): same data model as JSON with binary numbers and no quoting, cheaper to decode.
+     * Only enable once every consumer of the topic decodes with {@link EventDeserializer}.
+     */
+    SMILE("application/x-jackson-smile") {
+        @Override
+        public EventCodec newCodec(Jackson2ObjectMapperBuilder builder) {
+            // the content type header already identifies the format, the 4 byte Smile signature is left out
+            SmileFactory smileFactory = new SmileFactory()
+                .disable(SmileGenerator.Feature.WRITE_HEADER)
+                .disable(SmileParser.Feature.REQUIRE_HEADER);
+            return new JacksonEventCodec(configure(builder.factory(smileFactory).build()), contentType());
+        }
+    };
+
+    private final String contentType;
+
+    EventFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    /**
+     * @param builder the builder of the application's object mapper, so events get the same modules (Afterburner,
+     *                Java time); it is changed by this method and must not be reused.
+     * @return a new codec of this format.
+     */
+    public abstract EventCodec newCodec(Jackson2ObjectMapperBuilder builder);
+
+    /**
+     * @return a new codec of this format, with Jackson's well-known modules only.
+     */
+    public EventCodec newCodec() {
+        return newCodec(Jackson2ObjectMapperBuilder.json());
+    }
+
+    /**
+     * @param contentType the content type header of a record, {@code null} for records of producers that did not set it.
+     * @return the format of the record; records without content type are JSON.
+     * @throws IllegalArgumentException if the content type is unknown.
+     */
+    public static EventFormat forContentType(String contentType) {
+        if (contentType == null) {
+            return JSON;
+        }
+        for (EventFormat format : values()) {
+            if (format.contentType.equals(contentType)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown event content type " + contentType);
+    }
+
+    /**
+     * Null fields are left out, most {@code BookCatalogEvent} fields are null, and unknown fields are ignored,
+     * so producers can add fields before consumers know them.
+     */
+    static ObjectMapper configure(ObjectMapper objectMapper) {
+        return objectMapper
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+}
@@ -0,0 +1,36 @@
+package com.skcc.rental.adaptor.codec;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Kafka serializer writing events with an {@link EventCodec} and tagging each record with its content type and
+ * schema version.
+ */
+public class EventSerializer implements Serializer<Object> {
+
+    private static final byte[] VERSION = Integer.toString(EventCodec.CURRENT_VERSION).getBytes(StandardCharsets.UTF_8);
+
+    private final EventCodec codec;
+
+    private final byte[] contentType;
+
+    public EventSerializer(EventCodec codec) {
+        this.codec = codec;
+        this.contentType = codec.contentType().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        return data == null ? null : codec.encode(data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        headers.add(EventCodec.CONTENT_TYPE_HEADER, contentType);
+        headers.add(EventCodec.VERSION_HEADER, VERSION);
+        return serialize(topic, data);
+    }
+}
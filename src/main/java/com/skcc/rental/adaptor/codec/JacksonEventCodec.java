@@ -0,0 +1,66 @@
+package com.skcc.rental.adaptor.codec;
+
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link EventCodec} backed by a Jackson {@link ObjectMapper} of the format's data format.
+ * <p>
+ * Readers and writers are created once per event type, so serializer lookup and configuration are not repeated per
+ * record, and every thread encodes into its own reusable buffer instead of allocating a new one per record.
+ */
+public class JacksonEventCodec implements EventCodec {
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private final ObjectMapper objectMapper;
+
+    private final String contentType;
+
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<ByteArrayBuilder> buffers = ThreadLocal.withInitial(() -> new ByteArrayBuilder(INITIAL_BUFFER_SIZE));
+
+    public JacksonEventCodec(ObjectMapper objectMapper, String contentType) {
+        this.objectMapper = objectMapper;
+        this.contentType = contentType;
+    }
+
+    @Override
+    public String contentType() {
+        return contentType;
+    }
+
+    @Override
+    public byte[] encode(Object event) {
+        ObjectWriter writer = writers.computeIfAbsent(event.getClass(), objectMapper::writerFor);
+        ByteArrayBuilder buffer = buffers.get();
+        try {
+            writer.writeValue(buffer, event);
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new SerializationException("Cannot encode " + event.getClass().getSimpleName() + " as " + contentType, e);
+        } finally {
+            buffer.reset();
+        }
+    }
+
+    @Override
+    public <T> T decode(byte[] data, Class<T> type) {
+        ObjectReader reader = readers.computeIfAbsent(type, objectMapper::readerFor);
+        try {
+            return reader.readValue(data);
+        } catch (IOException e) {
+            throw new SerializationException("Cannot decode " + type.getSimpleName() + " from " + contentType, e);
+        }
+    }
+}
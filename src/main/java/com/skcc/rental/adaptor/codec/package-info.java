@@ -0,0 +1,4 @@
+/**
+ * Encoding of the events exchanged over Kafka.
+ */
+package com.skcc.rental.adaptor.codec;
@@ -1,7 +1,14 @@
 package com.skcc.rental.config;
 
+import com.hazelcast.config.EvictionPolicy;
+import com.hazelcast.config.InMemoryFormat;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Properties specific to Rental.
  * <p>
@@ -10,4 +17,1061 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  */
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
+
+    private final HibernateStatistics hibernateStatistics = new HibernateStatistics();
+
+    private final Cache cache = new Cache();
+
+    private final RentalGrid rentalGrid = new RentalGrid();
+
+    private final UserLock userLock = new UserLock();
+
+    private final Idempotency idempotency = new Idempotency();
+
+    private final Points points = new Points();
+
+    private final Sse sse = new Sse();
+
+    private final ReadReplicas readReplicas = new ReadReplicas();
+
+    private final Sharding sharding = new Sharding();
+
+    private final RentalView rentalView = new RentalView();
+
+    private final RentalLedger rentalLedger = new RentalLedger();
+
+    private final LateFeeAccrual lateFeeAccrual = new LateFeeAccrual();
+
+    private final DueReminder dueReminder = new DueReminder();
+
+    public HibernateStatistics getHibernateStatistics() {
+        return hibernateStatistics;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public RentalGrid getRentalGrid() {
+        return rentalGrid;
+    }
+
+    public UserLock getUserLock() {
+        return userLock;
+    }
+
+    public Idempotency getIdempotency() {
+        return idempotency;
+    }
+
+    public Points getPoints() {
+        return points;
+    }
+
+    public Sse getSse() {
+        return sse;
+    }
+
+    public ReadReplicas getReadReplicas() {
+        return readReplicas;
+    }
+
+    public Sharding getSharding() {
+        return sharding;
+    }
+
+    public RentalView getRentalView() {
+        return rentalView;
+    }
+
+    public RentalLedger getRentalLedger() {
+        return rentalLedger;
+    }
+
+    public LateFeeAccrual getLateFeeAccrual() {
+        return lateFeeAccrual;
+    }
+
+    public DueReminder getDueReminder() {
+        return dueReminder;
+    }
+
+    public static class HibernateStatistics {
+
+        /**
+         * Queries slower than this are logged to {@code org.hibernate.SQL_SLOW} and listed as slow by the
+         * {@code hibernatestats} endpoint. 0 disables the slow-query log.
+         */
+        private long slowQueryThresholdMs = 200;
+
+        /**
+         * Upper bound of distinct queries Hibernate keeps statistics for, so memory stays bounded.
+         */
+        private int queryMaxSize = 500;
+
+        /**
+         * Number of queries returned by the {@code hibernatestats} endpoint, ordered by total execution time.
+         */
+        private int topQueries = 20;
+
+        public long getSlowQueryThresholdMs() {
+            return slowQueryThresholdMs;
+        }
+
+        public void setSlowQueryThresholdMs(long slowQueryThresholdMs) {
+            this.slowQueryThresholdMs = slowQueryThresholdMs;
+        }
+
+        public int getQueryMaxSize() {
+            return queryMaxSize;
+        }
+
+        public void setQueryMaxSize(int queryMaxSize) {
+            this.queryMaxSize = queryMaxSize;
+        }
+
+        public int getTopQueries() {
+            return topQueries;
+        }
+
+        public void setTopQueries(int topQueries) {
+            this.topQueries = topQueries;
+        }
+    }
+
+    public static class Cache {
+
+        /**
+         * Second-level cache regions, keyed by entity or collection role relative to the
+         * {@code com.skcc.rental.domain} package, e.g. {@code Rental} or {@code Rental.rentedItems}.
+         * Regions not listed here use the domain-wide JHipster TTL.
+         */
+        private Map<String, Region> regions = new LinkedHashMap<>();
+
+        public Map<String, Region> getRegions() {
+            return regions;
+        }
+
+        public void setRegions(Map<String, Region> regions) {
+            this.regions = regions;
+        }
+
+        public static class Region {
+
+            private int timeToLiveSeconds = 3600;
+
+            /**
+             * Maximum entries per member, 0 means unbounded.
+             */
+            private int maxSize = 0;
+
+            private EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+
+            private int backupCount = 1;
+
+            private final NearCache nearCache = new NearCache();
+
+            public int getTimeToLiveSeconds() {
+                return timeToLiveSeconds;
+            }
+
+            public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+                this.timeToLiveSeconds = timeToLiveSeconds;
+            }
+
+            public int getMaxSize() {
+                return maxSize;
+            }
+
+            public void setMaxSize(int maxSize) {
+                this.maxSize = maxSize;
+            }
+
+            public EvictionPolicy getEvictionPolicy() {
+                return evictionPolicy;
+            }
+
+            public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+                this.evictionPolicy = evictionPolicy;
+            }
+
+            public int getBackupCount() {
+                return backupCount;
+            }
+
+            public void setBackupCount(int backupCount) {
+                this.backupCount = backupCount;
+            }
+
+            public NearCache getNearCache() {
+                return nearCache;
+            }
+        }
+
+        public static class NearCache {
+
+            private boolean enabled = false;
+
+            private int timeToLiveSeconds = 60;
+
+            private int maxIdleSeconds = 0;
+
+            private int maxSize = 10000;
+
+            private EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+
+            /**
+             * Invalidate near-cached entries when the region entry changes on any member.
+             */
+            private boolean invalidateOnChange = true;
+
+            private InMemoryFormat inMemoryFormat = InMemoryFormat.BINARY;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public int getTimeToLiveSeconds() {
+                return timeToLiveSeconds;
+            }
+
+            public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+                this.timeToLiveSeconds = timeToLiveSeconds;
+            }
+
+            public int getMaxIdleSeconds() {
+                return maxIdleSeconds;
+            }
+
+            public void setMaxIdleSeconds(int maxIdleSeconds) {
+                this.maxIdleSeconds = maxIdleSeconds;
+            }
+
+            public int getMaxSize() {
+                return maxSize;
+            }
+
+            public void setMaxSize(int maxSize) {
+                this.maxSize = maxSize;
+            }
+
+            public EvictionPolicy getEvictionPolicy() {
+                return evictionPolicy;
+            }
+
+            public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+                this.evictionPolicy = evictionPolicy;
+            }
+
+            public boolean isInvalidateOnChange() {
+                return invalidateOnChange;
+            }
+
+            public void setInvalidateOnChange(boolean invalidateOnChange) {
+                this.invalidateOnChange = invalidateOnChange;
+            }
+
+            public InMemoryFormat getInMemoryFormat() {
+                return inMemoryFormat;
+            }
+
+            public void setInMemoryFormat(InMemoryFormat inMemoryFormat) {
+                this.inMemoryFormat = inMemoryFormat;
+            }
+        }
+    }
+
+    public static class RentalGrid {
+
+        /**
+         * Keep the hot Rental aggregates in a partitioned Hazelcast map keyed by userId, mutate them with
+         * entry processors and persist them to the database asynchronously.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Delay before a changed aggregate is written to the database. Changes to the same user within the
+         * delay are coalesced into one write.
+         */
+        private int writeDelaySeconds = 5;
+
+        /**
+         * Maximum number of aggregates written to the database in one transaction.
+         */
+        private int writeBatchSize = 100;
+
+        private int backupCount = 1;
+
+        /**
+         * Aggregates not accessed for this long are evicted from the map and reloaded on demand.
+         */
+        private int maxIdleSeconds = 3600;
+
+        /**
+         * Returned items loaded into the map, older history stays in the database only.
+         */
+        private int returnedHistoryDays = 30;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getWriteDelaySeconds() {
+            return writeDelaySeconds;
+        }
+
+        public void setWriteDelaySeconds(int writeDelaySeconds) {
+            this.writeDelaySeconds = writeDelaySeconds;
+        }
+
+        public int getWriteBatchSize() {
+            return writeBatchSize;
+        }
+
+        public void setWriteBatchSize(int writeBatchSize) {
+            this.writeBatchSize = writeBatchSize;
+        }
+
+        public int getBackupCount() {
+            return backupCount;
+        }
+
+        public void setBackupCount(int backupCount) {
+            this.backupCount = backupCount;
+        }
+
+        public int getMaxIdleSeconds() {
+            return maxIdleSeconds;
+        }
+
+        public void setMaxIdleSeconds(int maxIdleSeconds) {
+            this.maxIdleSeconds = maxIdleSeconds;
+        }
+
+        public int getReturnedHistoryDays() {
+            return returnedHistoryDays;
+        }
+
+        public void setReturnedHistoryDays(int returnedHistoryDays) {
+            this.returnedHistoryDays = returnedHistoryDays;
+        }
+    }
+
+    public static class UserLock {
+
+        /**
+         * Serialize the rental operations of a user across all instances.
+         */
+        private boolean enabled = true;
+
+        /**
+         * How long a request waits for the lock before failing with 409 Conflict.
+         */
+        private long waitTimeoutMs = 5000;
+
+        /**
+         * The lock is released after this time even if its holder never unlocks it, e.g. because the
+         * instance died. Must be longer than the slowest rental transaction.
+         */
+        private long leaseTimeMs = 30000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getWaitTimeoutMs() {
+            return waitTimeoutMs;
+        }
+
+        public void setWaitTimeoutMs(long waitTimeoutMs) {
+            this.waitTimeoutMs = waitTimeoutMs;
+        }
+
+        public long getLeaseTimeMs() {
+            return leaseTimeMs;
+        }
+
+        public void setLeaseTimeMs(long leaseTimeMs) {
+            this.leaseTimeMs = leaseTimeMs;
+        }
+    }
+
+    public static class Idempotency {
+
+        /**
+         * Honour the {@code Idempotency-Key} header on the rent and return endpoints.
+         */
+        private boolean enabled = true;
+
+        /**
+         * How long a completed response is replayed to requests with the same key.
+         */
+        private int ttlSeconds = 3600;
+
+        /**
+         * How long a duplicate waits for the request in progress before failing with 409 Conflict.
+         */
+        private long waitTimeoutMs = 10000;
+
+        /**
+         * Requests in progress for longer than this no longer block their duplicates.
+         */
+        private long leaseTimeMs = 60000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getTtlSeconds() {
+            return ttlSeconds;
+        }
+
+        public void setTtlSeconds(int ttlSeconds) {
+            this.ttlSeconds = ttlSeconds;
+        }
+
+        public long getWaitTimeoutMs() {
+            return waitTimeoutMs;
+        }
+
+        public void setWaitTimeoutMs(long waitTimeoutMs) {
+            this.waitTimeoutMs = waitTimeoutMs;
+        }
+
+        public long getLeaseTimeMs() {
+            return leaseTimeMs;
+        }
+
+        public void setLeaseTimeMs(long leaseTimeMs) {
+            this.leaseTimeMs = leaseTimeMs;
+        }
+    }
+
+    public static class Points {
+
+        /**
+         * Points saved per rented book.
+         */
+        private int perBook = 30;
+
+        private final Coalescing coalescing = new Coalescing();
+
+        public int getPerBook() {
+            return perBook;
+        }
+
+        public void setPerBook(int perBook) {
+            this.perBook = perBook;
+        }
+
+        public Coalescing getCoalescing() {
+            return coalescing;
+        }
+
+        public static class Coalescing {
+
+            /**
+             * Sum the points of a user's rentals and publish one {@code SavePointsEvent} per user and window
+             * instead of one per rental.
+             */
+            private boolean enabled = false;
+
+            /**
+             * Interval at which summed points are published.
+             */
+            private long windowMs = 1000;
+
+            /**
+             * A user's points are published before the window ends once this many rentals were summed.
+             */
+            private int maxDeltasPerUser = 100;
+
+            /**
+             * All summed points are published before the window ends once this many users are pending.
+             */
+            private int maxPendingUsers = 10000;
+
+            /**
+             * On shutdown the pending points are published again until acknowledged or this long has passed, then
+             * the points still pending are logged as lost.
+             */
+            private long shutdownTimeoutMs = 10000;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public long getWindowMs() {
+                return windowMs;
+            }
+
+            public void setWindowMs(long windowMs) {
+                this.windowMs = windowMs;
+            }
+
+            public int getMaxDeltasPerUser() {
+                return maxDeltasPerUser;
+            }
+
+            public void setMaxDeltasPerUser(int maxDeltasPerUser) {
+                this.maxDeltasPerUser = maxDeltasPerUser;
+            }
+
+            public int getMaxPendingUsers() {
+                return maxPendingUsers;
+            }
+
+            public void setMaxPendingUsers(int maxPendingUsers) {
+                this.maxPendingUsers = maxPendingUsers;
+            }
+
+            public long getShutdownTimeoutMs() {
+                return shutdownTimeoutMs;
+            }
+
+            public void setShutdownTimeoutMs(long shutdownTimeoutMs) {
+                this.shutdownTimeoutMs = shutdownTimeoutMs;
+            }
+        }
+    }
+
+    public static class Sse {
+
+        /**
+         * Records buffered per SSE client. A client whose buffer is full is slow.
+         */
+        private int bufferSize = 256;
+
+        /**
+         * What happens to a slow client: {@code DISCONNECT} completes its stream, {@code DROP_OLDEST} discards the
+         * oldest buffered record so the client only sees a sample while it is behind.
+         */
+        private SlowSubscriberPolicy slowSubscriberPolicy = SlowSubscriberPolicy.DISCONNECT;
+
+        /**
+         * Threads writing buffered records to the clients' streams.
+         */
+        private int senderThreads = 4;
+
+        /**
+         * Interval of the keep-alive comment that also detects clients that went away silently.
+         */
+        private int heartbeatSeconds = 5;
+
+        /**
+         * A client whose stream takes longer than this to accept one write is stalled: it is disconnected and its
+         * sender thread is replaced until the write returns, so stalled clients never hold up the others.
+         */
+        private long sendTimeoutMs = 2000;
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public void setBufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+        }
+
+        public SlowSubscriberPolicy getSlowSubscriberPolicy() {
+            return slowSubscriberPolicy;
+        }
+
+        public void setSlowSubscriberPolicy(SlowSubscriberPolicy slowSubscriberPolicy) {
+            this.slowSubscriberPolicy = slowSubscriberPolicy;
+        }
+
+        public int getSenderThreads() {
+            return senderThreads;
+        }
+
+        public void setSenderThreads(int senderThreads) {
+            this.senderThreads = senderThreads;
+        }
+
+        public int getHeartbeatSeconds() {
+            return heartbeatSeconds;
+        }
+
+        public void setHeartbeatSeconds(int heartbeatSeconds) {
+            this.heartbeatSeconds = heartbeatSeconds;
+        }
+
+        public long getSendTimeoutMs() {
+            return sendTimeoutMs;
+        }
+
+        public void setSendTimeoutMs(long sendTimeoutMs) {
+            this.sendTimeoutMs = sendTimeoutMs;
+        }
+
+        public enum SlowSubscriberPolicy {
+            DISCONNECT, DROP_OLDEST
+        }
+    }
+
+    public static class ReadReplicas {
+
+        /**
+         * Route read-only transactions to the replicas. The pools of the replicas copy the settings of
+         * {@code spring.datasource.hikari}.
+         */
+        private boolean enabled = false;
+
+        private List<Replica> replicas = new ArrayList<>();
+
+        /**
+         * After a caller committed a write, its read-only transactions stay on the primary for this long so it
+         * reads its own writes.
+         */
+        private long stickinessMs = 2000;
+
+        /**
+         * Replicas further behind than this, or whose lag is unknown, are skipped until they caught up.
+         */
+        private long maxLagMs = 5000;
+
+        /**
+         * Interval of the lag check of the replicas.
+         */
+        private long lagCheckIntervalMs = 5000;
+
+        /**
+         * Query run on a replica to read its lag in seconds from the column {@code lagColumn} of the first row.
+         */
+        private String lagQuery = "SHOW SLAVE STATUS";
+
+        private String lagColumn = "Seconds_Behind_Master";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<Replica> getReplicas() {
+            return replicas;
+        }
+
+        public void setReplicas(List<Replica> replicas) {
+            this.replicas = replicas;
+        }
+
+        public long getStickinessMs() {
+            return stickinessMs;
+        }
+
+        public void setStickinessMs(long stickinessMs) {
+            this.stickinessMs = stickinessMs;
+        }
+
+        public long getMaxLagMs() {
+            return maxLagMs;
+        }
+
+        public void setMaxLagMs(long maxLagMs) {
+            this.maxLagMs = maxLagMs;
+        }
+
+        public long getLagCheckIntervalMs() {
+            return lagCheckIntervalMs;
+        }
+
+        public void setLagCheckIntervalMs(long lagCheckIntervalMs) {
+            this.lagCheckIntervalMs = lagCheckIntervalMs;
+        }
+
+        public String getLagQuery() {
+            return lagQuery;
+        }
+
+        public void setLagQuery(String lagQuery) {
+            this.lagQuery = lagQuery;
+        }
+
+        public String getLagColumn() {
+            return lagColumn;
+        }
+
+        public void setLagColumn(String lagColumn) {
+            this.lagColumn = lagColumn;
+        }
+
+        public static class Replica {
+
+            /**
+             * Name of the replica's pool, used as the {@code pool} tag of its metrics.
+             */
+            private String name;
+
+            private String url;
+
+            /**
+             * Defaults to {@code spring.datasource.username}.
+             */
+            private String username;
+
+            /**
+             * Defaults to {@code spring.datasource.password}.
+             */
+            private String password;
+
+            /**
+             * Defaults to the maximum pool size of the primary.
+             */
+            private Integer maximumPoolSize;
+
+            public String getName() {
+                return name;
+            }
+
+            public void setName(String name) {
+                this.name = name;
+            }
+
+            public String getUrl() {
+                return url;
+            }
+
+            public void setUrl(String url) {
+                this.url = url;
+            }
+
+            public String getUsername() {
+                return username;
+            }
+
+            public void setUsername(String username) {
+                this.username = username;
+            }
+
+            public String getPassword() {
+                return password;
+            }
+
+            public void setPassword(String password) {
+                this.password = password;
+            }
+
+            public Integer getMaximumPoolSize() {
+                return maximumPoolSize;
+            }
+
+            public void setMaximumPoolSize(Integer maximumPoolSize) {
+                this.maximumPoolSize = maximumPoolSize;
+            }
+        }
+    }
+
+    public static class Sharding {
+
+        /**
+         * Spread the rentals and their items over several databases by userId. Shard 0 is {@code spring.datasource},
+         * the other shards are listed in {@code shards} and their pools copy the settings of
+         * {@code spring.datasource.hikari}. The number of shards must not change once data was written.
+         */
+        private boolean enabled = false;
+
+        private List<Shard> shards = new ArrayList<>();
+
+        /**
+         * Make each shard generate ids {@code shard + 1} modulo the number of shards (MariaDB's
+         * {@code auto_increment_offset}), so ids are unique across shards and an entity's id tells its shard.
+         */
+        private boolean interleaveIds = true;
+
+        /**
+         * Threads querying the shards in parallel for the admin lists.
+         */
+        private int scatterGatherThreads = 4;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<Shard> getShards() {
+            return shards;
+        }
+
+        public void setShards(List<Shard> shards) {
+            this.shards = shards;
+        }
+
+        public boolean isInterleaveIds() {
+            return interleaveIds;
+        }
+
+        public void setInterleaveIds(boolean interleaveIds) {
+            this.interleaveIds = interleaveIds;
+        }
+
+        public int getScatterGatherThreads() {
+            return scatterGatherThreads;
+        }
+
+        public void setScatterGatherThreads(int scatterGatherThreads) {
+            this.scatterGatherThreads = scatterGatherThreads;
+        }
+
+        public static class Shard {
+
+            private String url;
+
+            /**
+             * Defaults to {@code spring.datasource.username}.
+             */
+            private String username;
+
+            /**
+             * Defaults to {@code spring.datasource.password}.
+             */
+            private String password;
+
+            public String getUrl() {
+                return url;
+            }
+
+            public void setUrl(String url) {
+                this.url = url;
+            }
+
+            public String getUsername() {
+                return username;
+            }
+
+            public void setUsername(String username) {
+                this.username = username;
+            }
+
+            public String getPassword() {
+                return password;
+            }
+
+            public void setPassword(String password) {
+                this.password = password;
+            }
+        }
+    }
+
+    public static class RentalView {
+
+        /**
+         * Serve the rental reads from the {@code rental_view} table, refreshed after each domain operation. When
+         * false the reads are projected from the rental and its items on every request.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Threads refreshing the views; the refreshes of a user always run on the same thread, in order.
+         */
+        private int refreshThreads = 2;
+
+        /**
+         * The most recently returned items kept in a view, older ones are only in {@code returned_item}.
+         */
+        private int maxReturnedItems = 100;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getRefreshThreads() {
+            return refreshThreads;
+        }
+
+        public void setRefreshThreads(int refreshThreads) {
+            this.refreshThreads = refreshThreads;
+        }
+
+        public int getMaxReturnedItems() {
+            return maxReturnedItems;
+        }
+
+        public void setMaxReturnedItems(int maxReturnedItems) {
+            this.maxReturnedItems = maxReturnedItems;
+        }
+    }
+
+    public static class RentalLedger {
+
+        /**
+         * Record the rental operations as events appended to {@code rental_event} instead of updating the rental and
+         * item tables; a rental is rebuilt from its latest snapshot and the events after it.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Events between two snapshots of a rental, the most events replayed to rebuild it.
+         */
+        private int snapshotEvery = 50;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getSnapshotEvery() {
+            return snapshotEvery;
+        }
+
+        public void setSnapshotEvery(int snapshotEvery) {
+            this.snapshotEvery = snapshotEvery;
+        }
+    }
+
+    public static class LateFeeAccrual {
+
+        /**
+         * Charge every overdue item a late fee for each day after its due date, in a scheduled run over
+         * {@code overdue_item}.
+         */
+        private boolean enabled = false;
+
+        /**
+         * When the daily run starts, a Spring cron expression.
+         */
+        private String cron = "0 30 0 * * *";
+
+        /**
+         * Late fee per overdue item and day.
+         */
+        private int feePerDay = 10;
+
+        /**
+         * Overdue items charged per transaction.
+         */
+        private int batchSize = 5000;
+
+        /**
+         * Most days charged by one run when earlier runs were missed, the oldest first.
+         */
+        private int catchUpDays = 7;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getCron() {
+            return cron;
+        }
+
+        public void setCron(String cron) {
+            this.cron = cron;
+        }
+
+        public int getFeePerDay() {
+            return feePerDay;
+        }
+
+        public void setFeePerDay(int feePerDay) {
+            this.feePerDay = feePerDay;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public int getCatchUpDays() {
+            return catchUpDays;
+        }
+
+        public void setCatchUpDays(int catchUpDays) {
+            this.catchUpDays = catchUpDays;
+        }
+    }
+
+    public static class DueReminder {
+
+        /**
+         * Publish one reminder per user with the rented books due soon, in a nightly run over {@code rented_item}.
+         */
+        private boolean enabled = false;
+
+        /**
+         * When the nightly run starts, a Spring cron expression.
+         */
+        private String cron = "0 0 1 * * *";
+
+        /**
+         * Books due from the day of the run up to this many days later are reminded.
+         */
+        private int daysAhead = 2;
+
+        /**
+         * Rented items read per page of the cursor, and at most the reminders published together.
+         */
+        private int pageSize = 10000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getCron() {
+            return cron;
+        }
+
+        public void setCron(String cron) {
+            this.cron = cron;
+        }
+
+        public int getDaysAhead() {
+            return daysAhead;
+        }
+
+        public void setDaysAhead(int daysAhead) {
+            this.daysAhead = daysAhead;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public void setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+        }
+    }
 }
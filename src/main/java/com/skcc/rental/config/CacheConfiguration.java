@@ -1,14 +1,19 @@
 package com.skcc.rental.config;
 
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.repository.grid.RentalGrid;
+import com.skcc.rental.repository.grid.RentalMapStore;
 import io.github.jhipster.config.JHipsterConstants;
 import io.github.jhipster.config.JHipsterProperties;
 
 import com.hazelcast.config.*;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.MapStoreFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.web.ServerProperties;
 
@@ -22,6 +27,8 @@ import org.springframework.core.env.Environment;
 import org.springframework.core.env.Profiles;
 
 import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Configuration
 @EnableCaching
@@ -35,12 +42,19 @@ public class CacheConfiguration {
 
     private final DiscoveryClient discoveryClient;
 
+    private final ApplicationProperties applicationProperties;
+
+    private final ObjectProvider<RentalMapStore> rentalMapStore;
+
     private Registration registration;
 
-    public CacheConfiguration(Environment env, ServerProperties serverProperties, DiscoveryClient discoveryClient) {
+    public CacheConfiguration(Environment env, ServerProperties serverProperties, DiscoveryClient discoveryClient,
+                              ApplicationProperties applicationProperties, ObjectProvider<RentalMapStore> rentalMapStore) {
         this.env = env;
         this.serverProperties = serverProperties;
         this.discoveryClient = discoveryClient;
+        this.applicationProperties = applicationProperties;
+        this.rentalMapStore = rentalMapStore;
     }
 
     @Autowired(required = false)
@@ -106,6 +120,15 @@ public class CacheConfiguration {
         // Full reference is available at: https://docs.hazelcast.org/docs/management-center/3.9/manual/html/Deploying_and_Starting.html
         config.setManagementCenterConfig(initializeDefaultManagementCenterConfig(jHipsterProperties));
         config.getMapConfigs().put("com.skcc.rental.domain.*", initializeDomainMapConfig(jHipsterProperties));
+        regionMapConfigs(applicationProperties.getCache()).forEach((regionName, mapConfig) -> {
+            log.debug("Configuring Hazelcast second-level cache region {}", regionName);
+            config.getMapConfigs().put(regionName, mapConfig);
+        });
+        if (applicationProperties.getRentalGrid().isEnabled()) {
+            config.getMapConfigs().put(RentalGrid.MAP_NAME, initializeRentalGridMapConfig(applicationProperties.getRentalGrid()));
+            // let the Spring context stop Hazelcast, after RentalGrid has flushed its write-behind queue
+            config.setProperty("hazelcast.shutdownhook.enabled", "false");
+        }
         return Hazelcast.newHazelcastInstance(config);
     }
 
@@ -153,4 +176,64 @@ public class CacheConfiguration {
         return mapConfig;
     }
 
+    /**
+     * The maps of the second-level cache regions of {@code application.cache.regions}, by region name. They take
+     * precedence over the {@code com.skcc.rental.domain.*} map configuration, which Hazelcast only matches for
+     * names without a map configuration of their own.
+     */
+    static Map<String, MapConfig> regionMapConfigs(ApplicationProperties.Cache cache) {
+        Map<String, MapConfig> mapConfigs = new LinkedHashMap<>();
+        cache.getRegions().forEach((region, regionProperties) -> {
+            String regionName = "com.skcc.rental.domain." + region;
+            mapConfigs.put(regionName, initializeRegionMapConfig(regionName, regionProperties));
+        });
+        return mapConfigs;
+    }
+
+    private static MapConfig initializeRegionMapConfig(String regionName, ApplicationProperties.Cache.Region region) {
+        MapConfig mapConfig = new MapConfig(regionName);
+        mapConfig.setTimeToLiveSeconds(region.getTimeToLiveSeconds());
+        mapConfig.setBackupCount(region.getBackupCount());
+        mapConfig.setEvictionPolicy(region.getEvictionPolicy());
+        mapConfig.setMaxSizeConfig(new MaxSizeConfig(region.getMaxSize(), MaxSizeConfig.MaxSizePolicy.PER_NODE));
+
+        /*
+        A near cache keeps local copies of the region entries on this member,
+        so repeated L2 hits no longer cost a network hop to the partition owner. Entries are
+        invalidated when they change anywhere in the cluster and expire after their own TTL.
+        */
+        ApplicationProperties.Cache.NearCache nearCache = region.getNearCache();
+        if (nearCache.isEnabled()) {
+            NearCacheConfig nearCacheConfig = new NearCacheConfig(regionName);
+            nearCacheConfig.setTimeToLiveSeconds(nearCache.getTimeToLiveSeconds());
+            nearCacheConfig.setMaxIdleSeconds(nearCache.getMaxIdleSeconds());
+            nearCacheConfig.setInvalidateOnChange(nearCache.isInvalidateOnChange());
+            nearCacheConfig.setInMemoryFormat(nearCache.getInMemoryFormat());
+            nearCacheConfig.setCacheLocalEntries(true);
+            nearCacheConfig.setEvictionConfig(new EvictionConfig(nearCache.getMaxSize(),
+                EvictionConfig.MaxSizePolicy.ENTRY_COUNT, nearCache.getEvictionPolicy()));
+            mapConfig.setNearCacheConfig(nearCacheConfig);
+        }
+        return mapConfig;
+    }
+
+    private MapConfig initializeRentalGridMapConfig(ApplicationProperties.RentalGrid rentalGrid) {
+        MapConfig mapConfig = new MapConfig(RentalGrid.MAP_NAME);
+        // entry processors work on the stored object directly instead of deserializing it on every mutation
+        mapConfig.setInMemoryFormat(InMemoryFormat.OBJECT);
+        mapConfig.setBackupCount(rentalGrid.getBackupCount());
+        mapConfig.setMaxIdleSeconds(rentalGrid.getMaxIdleSeconds());
+
+        MapStoreConfig mapStoreConfig = new MapStoreConfig();
+        mapStoreConfig.setEnabled(true);
+        mapStoreConfig.setInitialLoadMode(MapStoreConfig.InitialLoadMode.LAZY);
+        mapStoreConfig.setWriteDelaySeconds(rentalGrid.getWriteDelaySeconds());
+        mapStoreConfig.setWriteBatchSize(rentalGrid.getWriteBatchSize());
+        mapStoreConfig.setWriteCoalescing(true);
+        // the map store writes through JPA repositories, which are created after the Hazelcast instance,
+        // so it is only looked up when the map is first used
+        mapStoreConfig.setFactoryImplementation((MapStoreFactory<Long, Rental>) (mapName, properties) -> rentalMapStore.getObject());
+        mapConfig.setMapStoreConfig(mapStoreConfig);
+        return mapConfig;
+    }
 }
@@ -1,21 +1,64 @@
 package com.skcc.rental.config;
 
+import com.skcc.rental.adaptor.codec.EventFormat;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 @Configuration
 @ConfigurationProperties(prefix = "kafka")
 public class KafkaProperties {
 
+    public static final String LOW_LATENCY = "low-latency";
+
+    public static final String HIGH_THROUGHPUT = "high-throughput";
+
+    public static final String EXACTLY_ONCE = "exactly-once";
+
     private String bootStrapServers = "localhost:9092";
 
     private Map<String, String> consumer = new HashMap<>();
 
     private Map<String, String> producer = new HashMap<>();
 
+    /**
+     * Encoding of the events produced by this service. Consumers read every format.
+     */
+    private EventFormat eventFormat = EventFormat.JSON;
+
+    /**
+     * Producer profile of topics not listed in {@link #topicProducerProfiles}.
+     */
+    private String defaultProducerProfile = LOW_LATENCY;
+
+    /**
+     * Named sets of producer properties applied on top of {@link #producer}.
+     */
+    private Map<String, ProducerProfile> producerProfiles = defaultProducerProfiles();
+
+    /**
+     * Producer profile per topic.
+     */
+    private Map<String, String> topicProducerProfiles = new HashMap<>();
+
+    private final CompactedTopic bookStatus = new CompactedTopic("topic_book_status");
+
+    private final Transactions transactions = new Transactions();
+
+    private final ConsumerRetry consumerRetry = new ConsumerRetry();
+
+    private final ConsumerLag consumerLag = new ConsumerLag();
+
+    private final ConsumerBackpressure consumerBackpressure = new ConsumerBackpressure();
+
+    private final BatchPublish batchPublish = new BatchPublish();
+
     public String getBootStrapServers() {
         return bootStrapServers;
     }
@@ -44,7 +87,491 @@ public class KafkaProperties {
         return properties;
     }
 
+    /**
+     * @param profileName the name of a producer profile.
+     * @return the producer properties with the profile applied.
+     * @throws IllegalArgumentException if the profile does not exist.
+     */
+    public Map<String, Object> getProducerProps(String profileName) {
+        ProducerProfile profile = getProducerProfile(profileName);
+        Map<String, Object> properties = getProducerProps();
+        properties.putAll(profile.getProperties());
+        properties.putIfAbsent("client.id", "rental-" + profileName);
+        return properties;
+    }
+
+    public ProducerProfile getProducerProfile(String profileName) {
+        ProducerProfile profile = producerProfiles.get(profileName);
+        if (profile == null) {
+            throw new IllegalArgumentException("Unknown Kafka producer profile " + profileName);
+        }
+        return profile;
+    }
+
+    public String producerProfileFor(String topic) {
+        return topicProducerProfiles.getOrDefault(topic, defaultProducerProfile);
+    }
+
+    public String getDefaultProducerProfile() {
+        return defaultProducerProfile;
+    }
+
+    public void setDefaultProducerProfile(String defaultProducerProfile) {
+        this.defaultProducerProfile = defaultProducerProfile;
+    }
+
+    public Map<String, ProducerProfile> getProducerProfiles() {
+        return producerProfiles;
+    }
+
+    public void setProducerProfiles(Map<String, ProducerProfile> producerProfiles) {
+        this.producerProfiles = producerProfiles;
+    }
+
+    public Map<String, String> getTopicProducerProfiles() {
+        return topicProducerProfiles;
+    }
+
+    public void setTopicProducerProfiles(Map<String, String> topicProducerProfiles) {
+        this.topicProducerProfiles = topicProducerProfiles;
+    }
+
+    private static Map<String, ProducerProfile> defaultProducerProfiles() {
+        Map<String, ProducerProfile> profiles = new HashMap<>();
+        ProducerProfile lowLatency = new ProducerProfile();
+        lowLatency.getProperties().put("linger.ms", "0");
+        lowLatency.getProperties().put("compression.type", "none");
+        lowLatency.getProperties().put("acks", "1");
+        profiles.put(LOW_LATENCY, lowLatency);
+
+        ProducerProfile highThroughput = new ProducerProfile();
+        highThroughput.setAwait(false);
+        highThroughput.getProperties().put("linger.ms", "20");
+        highThroughput.getProperties().put("batch.size", "131072");
+        highThroughput.getProperties().put("compression.type", "lz4");
+        highThroughput.getProperties().put("acks", "1");
+        profiles.put(HIGH_THROUGHPUT, highThroughput);
+
+        ProducerProfile exactlyOnce = new ProducerProfile();
+        exactlyOnce.getProperties().put("enable.idempotence", "true");
+        exactlyOnce.getProperties().put("acks", "all");
+        exactlyOnce.getProperties().put("max.in.flight.requests.per.connection", "5");
+        exactlyOnce.getProperties().put("linger.ms", "5");
+        exactlyOnce.getProperties().put("compression.type", "lz4");
+        profiles.put(EXACTLY_ONCE, exactlyOnce);
+        return profiles;
+    }
+
     public void setProducer(Map<String, String> producer) {
         this.producer = producer;
     }
+
+    public EventFormat getEventFormat() {
+        return eventFormat;
+    }
+
+    public void setEventFormat(EventFormat eventFormat) {
+        this.eventFormat = eventFormat;
+    }
+
+    public CompactedTopic getBookStatus() {
+        return bookStatus;
+    }
+
+    public Transactions getTransactions() {
+        return transactions;
+    }
+
+    public ConsumerRetry getConsumerRetry() {
+        return consumerRetry;
+    }
+
+    public ConsumerLag getConsumerLag() {
+        return consumerLag;
+    }
+
+    public ConsumerBackpressure getConsumerBackpressure() {
+        return consumerBackpressure;
+    }
+
+    public BatchPublish getBatchPublish() {
+        return batchPublish;
+    }
+
+    /**
+     * Batches published through {@code /api/rental-kafka/publish/{topic}/batch}.
+     */
+    public static class BatchPublish {
+
+        /**
+         * Producer profile of the batch producer.
+         */
+        private String producerProfile = HIGH_THROUGHPUT;
+
+        /**
+         * Bytes of keys and messages sent but not yet acknowledged, per request. Reading the request body stops
+         * while the limit is reached.
+         */
+        private int maxInFlightBytes = 8 * 1024 * 1024;
+
+        /**
+         * How long a request waits for in-flight memory or for the last acknowledgements.
+         */
+        private long timeoutMs = 60000;
+
+        public String getProducerProfile() {
+            return producerProfile;
+        }
+
+        public void setProducerProfile(String producerProfile) {
+            this.producerProfile = producerProfile;
+        }
+
+        public int getMaxInFlightBytes() {
+            return maxInFlightBytes;
+        }
+
+        public void setMaxInFlightBytes(int maxInFlightBytes) {
+            this.maxInFlightBytes = maxInFlightBytes;
+        }
+
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        public void setTimeoutMs(long timeoutMs) {
+            this.timeoutMs = timeoutMs;
+        }
+    }
+
+    public static class ConsumerLag {
+
+        /**
+         * Interval at which the consumers fetch the end offsets of their partitions to compute the lag.
+         */
+        private long refreshMs = 5000;
+
+        /**
+         * Total lag of {@code topic_rental} above which the instance reports itself out of service for readiness.
+         */
+        private long readinessThreshold = 10000;
+
+        public long getRefreshMs() {
+            return refreshMs;
+        }
+
+        public void setRefreshMs(long refreshMs) {
+            this.refreshMs = refreshMs;
+        }
+
+        public long getReadinessThreshold() {
+            return readinessThreshold;
+        }
+
+        public void setReadinessThreshold(long readinessThreshold) {
+            this.readinessThreshold = readinessThreshold;
+        }
+    }
+
+    /**
+     * Pausing the consumers while the database connection pool is saturated, so they do not add load to it.
+     */
+    public static class ConsumerBackpressure {
+
+        private boolean enabled = true;
+
+        /**
+         * Share of the pool's maximum size in use from which the consumers pause. Threads waiting for a
+         * connection also pause them.
+         */
+        private double pauseUsage = 0.9;
+
+        /**
+         * Share of the pool's maximum size in use below which paused consumers resume.
+         */
+        private double resumeUsage = 0.5;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getPauseUsage() {
+            return pauseUsage;
+        }
+
+        public void setPauseUsage(double pauseUsage) {
+            this.pauseUsage = pauseUsage;
+        }
+
+        public double getResumeUsage() {
+            return resumeUsage;
+        }
+
+        public void setResumeUsage(double resumeUsage) {
+            this.resumeUsage = resumeUsage;
+        }
+    }
+
+    /**
+     * Records that fail to be processed are forwarded to retry topics, one per backoff, and after the last retry
+     * to a dead-letter topic, so the consumer keeps processing the records behind them.
+     */
+    public static class ConsumerRetry {
+
+        private boolean enabled = true;
+
+        /**
+         * Delay before each retry. Retry topic {@code i} is named {@code <topic><retry-topic-suffix><i>}.
+         */
+        private List<Long> backoffMs = new ArrayList<>(Arrays.asList(1000L, 10000L, 60000L));
+
+        private String retryTopicSuffix = "-retry-";
+
+        private String deadLetterTopicSuffix = "-dlt";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<Long> getBackoffMs() {
+            return backoffMs;
+        }
+
+        public void setBackoffMs(List<Long> backoffMs) {
+            this.backoffMs = backoffMs;
+        }
+
+        public String getRetryTopicSuffix() {
+            return retryTopicSuffix;
+        }
+
+        public void setRetryTopicSuffix(String retryTopicSuffix) {
+            this.retryTopicSuffix = retryTopicSuffix;
+        }
+
+        public String getDeadLetterTopicSuffix() {
+            return deadLetterTopicSuffix;
+        }
+
+        public void setDeadLetterTopicSuffix(String deadLetterTopicSuffix) {
+            this.deadLetterTopicSuffix = deadLetterTopicSuffix;
+        }
+
+        public String retryTopic(String topic, int tier) {
+            return topic + retryTopicSuffix + tier;
+        }
+
+        public String deadLetterTopic(String topic) {
+            return topic + deadLetterTopicSuffix;
+        }
+    }
+
+    /**
+     * Publishing the events of one rental operation in one Kafka transaction. Transactional producers use the
+     * {@value #EXACTLY_ONCE} profile.
+     */
+    public static class Transactions {
+
+        private boolean enabled = false;
+
+        /**
+         * Prefix of the producers' {@code transactional.id}, followed by the producer index. Must be unique per
+         * instance, otherwise the instances fence each other's producers; when it is also stable across restarts, a
+         * restarted instance fences its previous producers. Unique per run by default.
+         */
+        private String transactionalIdPrefix = "rental-tx-" + UUID.randomUUID() + "-";
+
+        /**
+         * Transactional producers used concurrently when not batching.
+         */
+        private int producers = 4;
+
+        /**
+         * Commit the events of many operations per transaction from a single producer.
+         */
+        private boolean batching = false;
+
+        private int maxOperationsPerTransaction = 100;
+
+        /**
+         * Time to wait for more operations before committing a batch.
+         */
+        private long lingerMs = 10;
+
+        /**
+         * Time a batched operation waits for its transaction to commit before failing.
+         */
+        private long commitTimeoutMs = 30000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getTransactionalIdPrefix() {
+            return transactionalIdPrefix;
+        }
+
+        public void setTransactionalIdPrefix(String transactionalIdPrefix) {
+            this.transactionalIdPrefix = transactionalIdPrefix;
+        }
+
+        public int getProducers() {
+            return producers;
+        }
+
+        public void setProducers(int producers) {
+            this.producers = producers;
+        }
+
+        public boolean isBatching() {
+            return batching;
+        }
+
+        public void setBatching(boolean batching) {
+            this.batching = batching;
+        }
+
+        public int getMaxOperationsPerTransaction() {
+            return maxOperationsPerTransaction;
+        }
+
+        public void setMaxOperationsPerTransaction(int maxOperationsPerTransaction) {
+            this.maxOperationsPerTransaction = maxOperationsPerTransaction;
+        }
+
+        public long getLingerMs() {
+            return lingerMs;
+        }
+
+        public void setLingerMs(long lingerMs) {
+            this.lingerMs = lingerMs;
+        }
+
+        public long getCommitTimeoutMs() {
+            return commitTimeoutMs;
+        }
+
+        public void setCommitTimeoutMs(long commitTimeoutMs) {
+            this.commitTimeoutMs = commitTimeoutMs;
+        }
+    }
+
+    /**
+     * Topic keeping only the latest record per key, for consumers that bootstrap their state from it.
+     */
+    public static class CompactedTopic {
+
+        private boolean enabled = false;
+
+        private String name;
+
+        /**
+         * Create the topic with {@code cleanup.policy=compact} on startup when it does not exist.
+         */
+        private boolean create = true;
+
+        private int partitions = 3;
+
+        private short replicationFactor = 1;
+
+        /**
+         * Additional topic configs used when creating the topic, e.g. {@code min.compaction.lag.ms}.
+         */
+        private Map<String, String> configs = new HashMap<>();
+
+        public CompactedTopic(String name) {
+            this.name = name;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public boolean isCreate() {
+            return create;
+        }
+
+        public void setCreate(boolean create) {
+            this.create = create;
+        }
+
+        public int getPartitions() {
+            return partitions;
+        }
+
+        public void setPartitions(int partitions) {
+            this.partitions = partitions;
+        }
+
+        public short getReplicationFactor() {
+            return replicationFactor;
+        }
+
+        public void setReplicationFactor(short replicationFactor) {
+            this.replicationFactor = replicationFactor;
+        }
+
+        public Map<String, String> getConfigs() {
+            return configs;
+        }
+
+        public void setConfigs(Map<String, String> configs) {
+            this.configs = configs;
+        }
+    }
+
+    /**
+     * Producer properties that only make sense together, e.g. batching with linger and compression, or
+     * idempotence with {@code acks=all}.
+     */
+    public static class ProducerProfile {
+
+        /**
+         * Wait for the broker acknowledgement of every record before returning to the caller. Without waiting,
+         * records are batched with other callers' records and failures are only logged.
+         */
+        private boolean await = true;
+
+        private Map<String, String> properties = new HashMap<>();
+
+        public boolean isAwait() {
+            return await;
+        }
+
+        public void setAwait(boolean await) {
+            this.await = await;
+        }
+
+        public Map<String, String> getProperties() {
+            return properties;
+        }
+
+        public void setProperties(Map<String, String> properties) {
+            this.properties = properties;
+        }
+    }
 }
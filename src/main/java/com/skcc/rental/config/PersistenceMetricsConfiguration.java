@@ -0,0 +1,49 @@
+package com.skcc.rental.config;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.skcc.rental.config.metrics.HibernateStatisticsEndpoint;
+import com.skcc.rental.config.metrics.SecondLevelCacheMetrics;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Hibernate statistics, slow-query log and second-level cache metrics.
+ * <p>
+ * Hikari pool metrics (active, idle, pending, acquire time) are bound by Spring Boot's
+ * {@code DataSourcePoolMetricsAutoConfiguration}.
+ */
+@Configuration
+public class PersistenceMetricsConfiguration {
+
+    private final ApplicationProperties applicationProperties;
+
+    public PersistenceMetricsConfiguration(ApplicationProperties applicationProperties) {
+        this.applicationProperties = applicationProperties;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateStatisticsCustomizer() {
+        ApplicationProperties.HibernateStatistics properties = applicationProperties.getHibernateStatistics();
+        return hibernateProperties -> {
+            hibernateProperties.put(AvailableSettings.QUERY_STATISTICS_MAX_SIZE, properties.getQueryMaxSize());
+            if (properties.getSlowQueryThresholdMs() > 0) {
+                hibernateProperties.put(AvailableSettings.LOG_SLOW_QUERY, properties.getSlowQueryThresholdMs());
+            }
+        };
+    }
+
+    @Bean
+    public HibernateStatisticsEndpoint hibernateStatisticsEndpoint(EntityManagerFactory entityManagerFactory) {
+        return new HibernateStatisticsEndpoint(entityManagerFactory, applicationProperties);
+    }
+
+    @Bean
+    public SecondLevelCacheMetrics secondLevelCacheMetrics(EntityManagerFactory entityManagerFactory, HazelcastInstance hazelcastInstance) {
+        return new SecondLevelCacheMetrics(entityManagerFactory.unwrap(SessionFactory.class), hazelcastInstance);
+    }
+}
@@ -0,0 +1,69 @@
+package com.skcc.rental.config;
+
+import com.skcc.rental.security.SecurityUtils;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only transactions on the read replicas.
+ * <p>
+ * Replaces Spring Boot's data source by a {@link ReadReplicaRoutingDataSource} over the primary pool, configured as
+ * usual by {@code spring.datasource}, and one pool per replica. The replica pools publish the same
+ * {@code hikaricp.*} metrics as the primary, tagged with the replica's name, bound by
+ * {@link ReadReplicaRoutingDataSource#bindTo}.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "application.read-replicas", name = "enabled", havingValue = "true")
+public class ReadReplicaConfiguration {
+
+    @Bean
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReadReplicaRoutingDataSource readReplicaRoutingDataSource(HikariDataSource primaryDataSource, DataSourceProperties dataSourceProperties,
+                                                                     ApplicationProperties applicationProperties) {
+        ApplicationProperties.ReadReplicas properties = applicationProperties.getReadReplicas();
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        properties.getReplicas().forEach(replica -> {
+            HikariConfig config = new HikariConfig();
+            primaryDataSource.copyStateTo(config);
+            config.setPoolName(replica.getName());
+            config.setJdbcUrl(replica.getUrl());
+            config.setUsername(replica.getUsername() != null ? replica.getUsername() : dataSourceProperties.determineUsername());
+            config.setPassword(replica.getPassword() != null ? replica.getPassword() : dataSourceProperties.determinePassword());
+            if (replica.getMaximumPoolSize() != null) {
+                config.setMaximumPoolSize(replica.getMaximumPoolSize());
+            }
+            config.setReadOnly(true);
+            // started by the first lag check, an unreachable replica is skipped instead of failing the startup
+            HikariDataSource pool = new HikariDataSource();
+            config.copyStateTo(pool);
+            replicas.put(replica.getName(), pool);
+        });
+        return new ReadReplicaRoutingDataSource(primaryDataSource, replicas, properties,
+            () -> SecurityUtils.getCurrentUserLogin().orElse(""));
+    }
+
+    /**
+     * The connection is only fetched on the first statement, once the transaction's read-only flag is known.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadReplicaRoutingDataSource readReplicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(readReplicaRoutingDataSource);
+    }
+}
@@ -0,0 +1,236 @@
+package com.skcc.rental.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends the connections of read-only transactions to the replicas, round-robin, and everything else to the primary.
+ * <p>
+ * The transaction's read-only flag is only known once the transaction began, so this data source must be used
+ * through a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} that fetches the connection on
+ * the first statement.
+ * <p>
+ * A caller whose write transaction committed less than the stickiness window ago reads from the primary, so it sees
+ * its own writes. The lag of the replicas is checked periodically; replicas too far behind, or whose lag could not be
+ * read, are skipped, and without any replica left reads fall back to the primary.
+ * <p>
+ * Binds its meters, and the pool metrics of Hikari replicas, once the meter registry is ready, as the registry itself
+ * depends on the data source through the Hibernate metrics.
+ */
+public class ReadReplicaRoutingDataSource extends AbstractRoutingDataSource implements MeterBinder, AutoCloseable {
+
+    public static final String PRIMARY = "primary";
+
+    private final Logger log = LoggerFactory.getLogger(ReadReplicaRoutingDataSource.class);
+
+    private final ApplicationProperties.ReadReplicas properties;
+
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private final Supplier<String> callerKey;
+
+    private volatile MeterRegistry meterRegistry;
+
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> routed = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    private ScheduledExecutorService lagChecker;
+
+    /**
+     * @param replicas  the replica pools by name, the name is the {@code pool} tag of their metrics.
+     * @param callerKey identifies the caller whose writes must be visible to its reads, e.g. the current login.
+     */
+    public ReadReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, ApplicationProperties.ReadReplicas properties,
+                                        Supplier<String> callerKey) {
+        this.properties = properties;
+        this.callerKey = callerKey;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        replicas.forEach((name, dataSource) -> {
+            targets.put(name, dataSource);
+            this.replicas.add(new Replica(name, dataSource));
+        });
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        replicas.forEach(replica -> {
+            Gauge.builder("rental.datasource.replica.lag", replica, r -> r.lagSeconds)
+                .description("Replication lag of the replica in seconds, NaN if unknown")
+                .tag("pool", replica.name)
+                .register(registry);
+            Gauge.builder("rental.datasource.replica.available", replica, r -> r.available ? 1 : 0)
+                .description("1 while read-only transactions are routed to the replica")
+                .tag("pool", replica.name)
+                .register(registry);
+            if (replica.dataSource instanceof HikariDataSource) {
+                HikariDataSource pool = (HikariDataSource) replica.dataSource;
+                if (pool.getMetricRegistry() == null && pool.getMetricsTrackerFactory() == null) {
+                    pool.setMetricRegistry(registry);
+                }
+            }
+        });
+        this.meterRegistry = registry;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        if (!replicas.isEmpty()) {
+            lagChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "rental-replica-lag-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            lagChecker.scheduleWithFixedDelay(this::checkLag, 0, properties.getLagCheckIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stop the lag checks and close the replica pools.
+     */
+    @Override
+    public void close() {
+        if (lagChecker != null) {
+            lagChecker.shutdownNow();
+        }
+        replicas.forEach(replica -> {
+            if (replica.dataSource instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) replica.dataSource).close();
+                } catch (Exception e) {
+                    log.warn("Could not close replica {}: {}", replica.name, e.getMessage());
+                }
+            }
+        });
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            rememberWriteOnCommit();
+            return route(PRIMARY, "read-write");
+        }
+        Long lastWrite = lastWrites.get(callerKey.get());
+        if (lastWrite != null && System.currentTimeMillis() - lastWrite < properties.getStickinessMs()) {
+            return route(PRIMARY, "sticky");
+        }
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(Math.floorMod(nextReplica.getAndIncrement(), replicas.size()));
+            if (replica.available) {
+                return route(replica.name, "read-only");
+            }
+        }
+        return route(PRIMARY, "replica-unavailable");
+    }
+
+    private void rememberWriteOnCommit() {
+        if (properties.getStickinessMs() <= 0 || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        String caller = callerKey.get();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                lastWrites.put(caller, System.currentTimeMillis());
+            }
+        });
+    }
+
+    private String route(String pool, String reason) {
+        MeterRegistry registry = meterRegistry;
+        if (registry != null) {
+            routed.computeIfAbsent(pool + '/' + reason, key -> Counter.builder("rental.datasource.routed")
+                .description("Connections handed out per pool and routing reason")
+                .tags("pool", pool, "reason", reason)
+                .register(registry))
+                .increment();
+        }
+        return pool;
+    }
+
+    /**
+     * Read the lag of every replica and forget writes older than the stickiness window. Synchronized so that a
+     * check reading an older lag never overwrites the availability set by a later one.
+     */
+    synchronized void checkLag() {
+        long now = System.currentTimeMillis();
+        lastWrites.values().removeIf(lastWrite -> now - lastWrite >= properties.getStickinessMs());
+        replicas.forEach(replica -> {
+            Long lag = readLag(replica);
+            boolean available = lag != null && lag * 1000 <= properties.getMaxLagMs();
+            replica.lagSeconds = lag == null ? Double.NaN : lag;
+            if (available != replica.available) {
+                if (available) {
+                    log.info("Routing read-only transactions to replica {}, {} s behind", replica.name, lag);
+                } else {
+                    log.warn("Not routing read-only transactions to replica {}, lag {} s exceeds {} ms",
+                        replica.name, lag == null ? "unknown" : lag, properties.getMaxLagMs());
+                }
+                replica.available = available;
+            }
+        });
+    }
+
+    private Long readLag(Replica replica) {
+        try (Connection connection = replica.dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(properties.getLagQuery())) {
+            if (!resultSet.next()) {
+                // not replicating
+                return null;
+            }
+            long lag = resultSet.getLong(properties.getLagColumn());
+            return resultSet.wasNull() ? null : lag;
+        } catch (SQLException e) {
+            log.debug("Could not read the lag of replica {}: {}", replica.name, e.getMessage());
+            return null;
+        }
+    }
+
+    private static class Replica {
+
+        private final String name;
+
+        private final DataSource dataSource;
+
+        private volatile boolean available;
+
+        private volatile double lagSeconds = Double.NaN;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.skcc.rental.config;
+
+import com.skcc.rental.repository.shard.ShardRoutingDataSource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import liquibase.integration.spring.SpringLiquibase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rentals sharded by userId, see {@link com.skcc.rental.repository.shard}.
+ * <p>
+ * Replaces Spring Boot's data source by a {@link ShardRoutingDataSource} over {@code spring.datasource}, shard 0,
+ * and one pool per additional shard. The Liquibase changelog runs on shard 0 as usual and on the other shards when
+ * their pools are created.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "application.sharding", name = "enabled", havingValue = "true")
+public class ShardingConfiguration {
+
+    private final Logger log = LoggerFactory.getLogger(ShardingConfiguration.class);
+
+    private final ApplicationProperties.Sharding properties;
+
+    public ShardingConfiguration(ApplicationProperties applicationProperties) {
+        this.properties = applicationProperties.getSharding();
+    }
+
+    /**
+     * Configured by {@code spring.datasource.hikari} like Spring Boot's data source.
+     */
+    @Bean
+    public HikariDataSource shard0DataSource(DataSourceProperties dataSourceProperties, Environment environment) {
+        HikariDataSource dataSource = dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+        dataSource.setConnectionInitSql(connectionInitSql(0));
+        return dataSource;
+    }
+
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(HikariDataSource shard0DataSource, DataSourceProperties dataSourceProperties,
+                                                         LiquibaseProperties liquibaseProperties, ResourceLoader resourceLoader) throws Exception {
+        List<HikariDataSource> shards = new ArrayList<>();
+        shards.add(shard0DataSource);
+        for (ApplicationProperties.Sharding.Shard shard : properties.getShards()) {
+            int number = shards.size();
+            HikariConfig config = new HikariConfig();
+            shard0DataSource.copyStateTo(config);
+            config.setPoolName(shard0DataSource.getPoolName() + "-shard-" + number);
+            config.setJdbcUrl(shard.getUrl());
+            config.setUsername(shard.getUsername() != null ? shard.getUsername() : dataSourceProperties.determineUsername());
+            config.setPassword(shard.getPassword() != null ? shard.getPassword() : dataSourceProperties.determinePassword());
+            config.setConnectionInitSql(connectionInitSql(number));
+            HikariDataSource dataSource = new HikariDataSource(config);
+            migrate(dataSource, liquibaseProperties, resourceLoader);
+            shards.add(dataSource);
+        }
+        log.info("Sharding rentals over {} databases", shards.size());
+        return new ShardRoutingDataSource(shards);
+    }
+
+    /**
+     * The shard is known once the method with the {@link com.skcc.rental.repository.shard.ShardKey} runs its first
+     * statement, not when its transaction begins.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    private String connectionInitSql(int shard) {
+        if (!properties.isInterleaveIds()) {
+            return null;
+        }
+        return "SET SESSION auto_increment_increment = " + (1 + properties.getShards().size()) + ", auto_increment_offset = " + (shard + 1);
+    }
+
+    private static void migrate(DataSource dataSource, LiquibaseProperties liquibaseProperties, ResourceLoader resourceLoader) throws Exception {
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(dataSource);
+        liquibase.setResourceLoader(resourceLoader);
+        liquibase.setChangeLog("classpath:config/liquibase/master.xml");
+        liquibase.setContexts(liquibaseProperties.getContexts());
+        liquibase.setDatabaseChangeLogLockTable(liquibaseProperties.getDatabaseChangeLogLockTable());
+        liquibase.setDatabaseChangeLogTable(liquibaseProperties.getDatabaseChangeLogTable());
+        liquibase.setChangeLogParameters(liquibaseProperties.getParameters());
+        liquibase.setShouldRun(liquibaseProperties.isEnabled());
+        liquibase.afterPropertiesSet();
+    }
+}
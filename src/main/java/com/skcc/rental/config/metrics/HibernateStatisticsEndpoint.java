@@ -0,0 +1,152 @@
+package com.skcc.rental.config.metrics;
+
+import com.skcc.rental.config.ApplicationProperties;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.EntityStatistics;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Exposes Hibernate statistics per second-level cache region, per entity and per query.
+ * <p>
+ * Queries are reported for the {@code topQueries} most expensive ones only, and Hibernate itself keeps
+ * statistics for at most {@code queryMaxSize} distinct queries, so the response size stays bounded.
+ */
+@Endpoint(id = "hibernatestats")
+public class HibernateStatisticsEndpoint {
+
+    private final Statistics statistics;
+
+    private final ApplicationProperties.HibernateStatistics properties;
+
+    public HibernateStatisticsEndpoint(EntityManagerFactory entityManagerFactory, ApplicationProperties applicationProperties) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        this.properties = applicationProperties.getHibernateStatistics();
+    }
+
+    @ReadOperation
+    public Map<String, Object> statistics() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", statistics.isStatisticsEnabled());
+        result.put("summary", summary());
+        result.put("regions", regions());
+        result.put("entities", entities());
+        result.put("queries", queries());
+        result.put("slowQueries", slowQueries());
+        return result;
+    }
+
+    @DeleteOperation
+    public void clear() {
+        statistics.clear();
+    }
+
+    private Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("sessionsOpened", statistics.getSessionOpenCount());
+        summary.put("transactions", statistics.getTransactionCount());
+        summary.put("preparedStatements", statistics.getPrepareStatementCount());
+        summary.put("entityLoads", statistics.getEntityLoadCount());
+        summary.put("entityFetches", statistics.getEntityFetchCount());
+        summary.put("collectionLoads", statistics.getCollectionLoadCount());
+        summary.put("collectionFetches", statistics.getCollectionFetchCount());
+        summary.put("queryExecutions", statistics.getQueryExecutionCount());
+        summary.put("queryExecutionMaxTimeMs", statistics.getQueryExecutionMaxTime());
+        summary.put("queryExecutionMaxTimeQuery", statistics.getQueryExecutionMaxTimeQueryString());
+        summary.put("secondLevelCacheHits", statistics.getSecondLevelCacheHitCount());
+        summary.put("secondLevelCacheMisses", statistics.getSecondLevelCacheMissCount());
+        summary.put("secondLevelCachePuts", statistics.getSecondLevelCachePutCount());
+        summary.put("secondLevelCacheHitRatio", ratio(statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount()));
+        summary.put("naturalIdQueryExecutions", statistics.getNaturalIdQueryExecutionCount());
+        summary.put("naturalIdCacheHits", statistics.getNaturalIdCacheHitCount());
+        summary.put("naturalIdCacheMisses", statistics.getNaturalIdCacheMissCount());
+        summary.put("naturalIdCachePuts", statistics.getNaturalIdCachePutCount());
+        return summary;
+    }
+
+    private Map<String, Object> regions() {
+        Map<String, Object> regions = new LinkedHashMap<>();
+        Arrays.stream(statistics.getSecondLevelCacheRegionNames()).sorted().forEach(regionName -> {
+            CacheRegionStatistics region = statistics.getDomainDataRegionStatistics(regionName);
+            if (region == null) {
+                return;
+            }
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("hits", region.getHitCount());
+            values.put("misses", region.getMissCount());
+            values.put("puts", region.getPutCount());
+            values.put("hitRatio", ratio(region.getHitCount(), region.getMissCount()));
+            values.put("elementsInMemory", region.getElementCountInMemory());
+            regions.put(regionName, values);
+        });
+        return regions;
+    }
+
+    private Map<String, Object> entities() {
+        Map<String, Object> entities = new LinkedHashMap<>();
+        Arrays.stream(statistics.getEntityNames()).sorted().forEach(entityName -> {
+            EntityStatistics entity = statistics.getEntityStatistics(entityName);
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("loads", entity.getLoadCount());
+            values.put("fetches", entity.getFetchCount());
+            values.put("inserts", entity.getInsertCount());
+            values.put("updates", entity.getUpdateCount());
+            values.put("deletes", entity.getDeleteCount());
+            values.put("optimisticFailures", entity.getOptimisticFailureCount());
+            entities.put(entityName, values);
+        });
+        return entities;
+    }
+
+    private List<Map<String, Object>> queries() {
+        return Arrays.stream(statistics.getQueries())
+            .map(query -> queryValues(query, statistics.getQueryStatistics(query)))
+            .sorted(Comparator.comparingLong((Map<String, Object> values) -> (Long) values.get("totalTimeMs")).reversed())
+            .limit(properties.getTopQueries())
+            .collect(Collectors.toList());
+    }
+
+    private List<Map<String, Object>> slowQueries() {
+        long threshold = properties.getSlowQueryThresholdMs();
+        if (threshold <= 0) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(statistics.getQueries())
+            .map(query -> queryValues(query, statistics.getQueryStatistics(query)))
+            .filter(values -> (Long) values.get("maxTimeMs") >= threshold)
+            .sorted(Comparator.comparingLong((Map<String, Object> values) -> (Long) values.get("maxTimeMs")).reversed())
+            .limit(properties.getTopQueries())
+            .collect(Collectors.toList());
+    }
+
+    private Map<String, Object> queryValues(String query, QueryStatistics queryStatistics) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("query", query);
+        values.put("executions", queryStatistics.getExecutionCount());
+        values.put("rows", queryStatistics.getExecutionRowCount());
+        values.put("averageTimeMs", queryStatistics.getExecutionAvgTime());
+        values.put("maxTimeMs", queryStatistics.getExecutionMaxTime());
+        values.put("totalTimeMs", queryStatistics.getExecutionTotalTime());
+        values.put("cacheHits", queryStatistics.getCacheHitCount());
+        values.put("cacheMisses", queryStatistics.getCacheMissCount());
+        return values;
+    }
+
+    private static double ratio(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0d : (double) hits / total;
+    }
+}
@@ -0,0 +1,72 @@
+package com.skcc.rental.config.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Binds the client-level metrics a Kafka producer keeps itself (record-send-rate, batch-size-avg,
+ * request-latency-avg, record-error-rate, compression-rate-avg, ...) as {@code kafka.producer.*} meters.
+ * <p>
+ * Cumulative {@code *-total} metrics become counters, all others gauges. Micrometer only ships a Kafka client
+ * binder from 1.4 on.
+ */
+public class KafkaProducerMetrics implements MeterBinder {
+
+    private static final String METRIC_GROUP = "producer-metrics";
+
+    private static final String TOTAL_SUFFIX = "-total";
+
+    private final Producer<?, ?> producer;
+
+    private final Tags tags;
+
+    public KafkaProducerMetrics(Producer<?, ?> producer, Iterable<Tag> tags) {
+        this.producer = producer;
+        this.tags = Tags.of(tags);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Map.Entry<MetricName, ? extends Metric> entry : producer.metrics().entrySet()) {
+            MetricName metricName = entry.getKey();
+            Metric metric = entry.getValue();
+            if (!METRIC_GROUP.equals(metricName.group()) || !(metric.metricValue() instanceof Number)) {
+                continue;
+            }
+            Tags meterTags = tags.and(metricName.tags().entrySet().stream()
+                .map(tag -> Tag.of(tag.getKey(), tag.getValue()))
+                .collect(Collectors.toList()));
+            String name = metricName.name();
+            if (name.endsWith(TOTAL_SUFFIX)) {
+                FunctionCounter.builder(meterName(name), metric, KafkaProducerMetrics::value)
+                    .description(metricName.description())
+                    .tags(meterTags)
+                    .register(registry);
+            } else {
+                Gauge.builder(meterName(name), metric, KafkaProducerMetrics::value)
+                    .description(metricName.description())
+                    .tags(meterTags)
+                    .register(registry);
+            }
+        }
+    }
+
+    private static String meterName(String kafkaName) {
+        return "kafka.producer." + kafkaName.replace('-', '.');
+    }
+
+    private static double value(Metric metric) {
+        Object value = metric.metricValue();
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+}
@@ -0,0 +1,106 @@
+package com.skcc.rental.config.metrics;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.monitor.NearCacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.HazelcastCacheMetrics;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.stat.EntityStatistics;
+import org.hibernate.stat.Statistics;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Binds the Hazelcast map behind every Hibernate second-level cache and natural-id cache region, and per-entity
+ * load and write counts.
+ * <p>
+ * Region-level hit/miss/put ratios computed by Hibernate itself are bound by Spring Boot's {@code HibernateMetrics};
+ * this binder adds the Hazelcast side (entries, owned and backup memory, get/put latency) of each region map,
+ * and the near-cache hits and misses of regions configured with a near cache.
+ */
+public class SecondLevelCacheMetrics implements MeterBinder {
+
+    private final SessionFactory sessionFactory;
+
+    private final HazelcastInstance hazelcastInstance;
+
+    public SecondLevelCacheMetrics(SessionFactory sessionFactory, HazelcastInstance hazelcastInstance) {
+        this.sessionFactory = sessionFactory;
+        this.hazelcastInstance = hazelcastInstance;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Statistics statistics = sessionFactory.getStatistics();
+        if (sessionFactory.getSessionFactoryOptions().isSecondLevelCacheEnabled()) {
+            Set<String> regionNames = new TreeSet<>(Arrays.asList(statistics.getSecondLevelCacheRegionNames()));
+            sessionFactory.unwrap(SessionFactoryImplementor.class).getMetamodel().entityPersisters().values().stream()
+                .filter(EntityPersister::hasNaturalIdCache)
+                .forEach(persister -> regionNames.add(persister.getNaturalIdCacheAccessStrategy().getRegion().getName()));
+            for (String regionName : regionNames) {
+                IMap<Object, Object> map = hazelcastInstance.getMap(regionName);
+                // same tag keys as Spring's cache metrics, which Prometheus requires for meters sharing a name
+                Tags tags = Tags.of("cacheManager", "hibernate", "name", regionName);
+                HazelcastCacheMetrics.monitor(registry, map, tags);
+                if (hazelcastInstance.getConfig().findMapConfig(regionName).getNearCacheConfig() != null) {
+                    bindNearCache(registry, map, tags);
+                }
+            }
+        }
+        for (String entityName : statistics.getEntityNames()) {
+            Tags tags = Tags.of("entity", entityName);
+            entityCounter(registry, statistics, entityName, "hibernate.entity.loads", "Entities loaded from the database", tags, EntityStatistics::getLoadCount);
+            entityCounter(registry, statistics, entityName, "hibernate.entity.fetches", "Entities fetched lazily", tags, EntityStatistics::getFetchCount);
+            entityCounter(registry, statistics, entityName, "hibernate.entity.inserts", "Entities inserted", tags, EntityStatistics::getInsertCount);
+            entityCounter(registry, statistics, entityName, "hibernate.entity.updates", "Entities updated", tags, EntityStatistics::getUpdateCount);
+            entityCounter(registry, statistics, entityName, "hibernate.entity.deletes", "Entities deleted", tags, EntityStatistics::getDeleteCount);
+        }
+    }
+
+    private void bindNearCache(MeterRegistry registry, IMap<Object, Object> map, Tags tags) {
+        nearCacheCounter(registry, map, "cache.near.hits", "Near-cache hits", tags, NearCacheStats::getHits);
+        nearCacheCounter(registry, map, "cache.near.misses", "Near-cache misses", tags, NearCacheStats::getMisses);
+        nearCacheCounter(registry, map, "cache.near.evictions", "Near-cache evictions", tags, NearCacheStats::getEvictions);
+        nearCacheCounter(registry, map, "cache.near.expirations", "Near-cache expirations", tags, NearCacheStats::getExpirations);
+        Gauge.builder("cache.near.entries", map, m -> nearCacheValue(m, NearCacheStats::getOwnedEntryCount))
+            .description("Entries held in the near cache")
+            .tags(tags)
+            .register(registry);
+        Gauge.builder("cache.near.memory", map, m -> nearCacheValue(m, NearCacheStats::getOwnedEntryMemoryCost))
+            .description("Memory cost of the near-cache entries")
+            .tags(tags)
+            .baseUnit("bytes")
+            .register(registry);
+    }
+
+    private void nearCacheCounter(MeterRegistry registry, IMap<Object, Object> map, String name, String description,
+                                  Tags tags, ToDoubleFunction<NearCacheStats> function) {
+        FunctionCounter.builder(name, map, m -> nearCacheValue(m, function))
+            .description(description)
+            .tags(tags)
+            .register(registry);
+    }
+
+    private static double nearCacheValue(IMap<Object, Object> map, ToDoubleFunction<NearCacheStats> function) {
+        NearCacheStats nearCacheStats = map.getLocalMapStats().getNearCacheStats();
+        return nearCacheStats == null ? 0 : function.applyAsDouble(nearCacheStats);
+    }
+
+    private void entityCounter(MeterRegistry registry, Statistics statistics, String entityName, String name, String description,
+                               Tags tags, ToDoubleFunction<EntityStatistics> function) {
+        FunctionCounter.builder(name, statistics, s -> function.applyAsDouble(s.getEntityStatistics(entityName)))
+            .description(description)
+            .tags(tags)
+            .register(registry);
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Metrics binders and management endpoints.
+ */
+package com.skcc.rental.config.metrics;
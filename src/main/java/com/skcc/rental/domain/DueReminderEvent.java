@@ -0,0 +1,37 @@
+package com.skcc.rental.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The rented books of a user that are due soon, published once per user and reminder date; consumers drop
+ * repeated reminders of the same date.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class DueReminderEvent {
+
+    private Long userId;
+    private LocalDate reminderDate;
+    private List<DueBook> books = new ArrayList<>();
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class DueBook {
+
+        private Long bookId;
+        private String bookTitle;
+        private LocalDate dueDate;
+
+    }
+}
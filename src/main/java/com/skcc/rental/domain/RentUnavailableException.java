@@ -0,0 +1,14 @@
+package com.skcc.rental.domain;
+
+/**
+ * Thrown when a {@link Rental} cannot take the requested books: the user is overdue, owes a late fee or would hold
+ * more books than allowed.
+ */
+public class RentUnavailableException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public RentUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -5,6 +5,8 @@ import lombok.EqualsAndHashCode;
 import lombok.ToString;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import javax.persistence.*;
 
@@ -14,6 +16,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import com.skcc.rental.domain.enumeration.RentalStatus;
 
@@ -23,6 +26,7 @@ import com.skcc.rental.domain.enumeration.RentalStatus;
 @Entity
 @Table(name = "rental")
 @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+@NaturalIdCache
 @Data
 public class Rental implements Serializable {
 
@@ -32,6 +36,7 @@ public class Rental implements Serializable {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    @NaturalId
     @Column(name = "user_id")
     private Long userId;
 
@@ -39,9 +44,26 @@ public class Rental implements Serializable {
     @Column(name = "rental_status")
     private RentalStatus rentalStatus;
 
-    @Column(name = "late_fee")
+    /*
+     * Written on insert only. LateFeeAccrualService charges the rentals with relative updates outside of any entity,
+     * so changes go through the relative updates of RentalRepositoryCustom instead of writing back a fee read earlier.
+     */
+    @Column(name = "late_fee", columnDefinition = "bigint", updatable = false)
     private int lateFee;
 
+    /*
+     * Item counters, maintained by the add and remove methods below and in the database by relative updates of
+     * RentalRepositoryCustom in the transaction of the item change, never by writing the entity.
+     */
+    @Column(name = "rented_count", updatable = false)
+    private int rentedCount;
+
+    @Column(name = "overdue_count", updatable = false)
+    private int overdueCount;
+
+    @Column(name = "returned_count", updatable = false)
+    private int returnedCount;
+
     @OneToMany(mappedBy = "rental", cascade = CascadeType.ALL)
     @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
     private Set<RentedItem> rentedItems = new HashSet<>();
@@ -79,26 +101,34 @@ public class Rental implements Serializable {
 
 
     public Rental addRentedItem(RentedItem rentedItem) {
-        this.rentedItems.add(rentedItem);
+        if (this.rentedItems.add(rentedItem)) {
+            this.rentedCount++;
+        }
         rentedItem.setRental(this);
         return this;
     }
 
     public Rental removeRentedItem(RentedItem rentedItem) {
-        this.rentedItems.remove(rentedItem);
+        if (this.rentedItems.remove(rentedItem)) {
+            this.rentedCount--;
+        }
         rentedItem.setRental(null);
         return this;
     }
 
     public Rental addOverdueItem(OverdueItem overdueItem) {
-        this.overdueItems.add(overdueItem);
+        if (this.overdueItems.add(overdueItem)) {
+            this.overdueCount++;
+        }
         overdueItem.setRental(this);
         return this;
     }
 
 
     public Rental removeOverdueItem(OverdueItem overdueItem) {
-        this.overdueItems.remove(overdueItem);
+        if (this.overdueItems.remove(overdueItem)) {
+            this.overdueCount--;
+        }
         overdueItem.setRental(null);
         return this;
     }
@@ -106,7 +136,9 @@ public class Rental implements Serializable {
 
 
     public Rental addReturnedItem(ReturnedItem returnedItem) {
-        this.returnedItems.add(returnedItem);
+        if (this.returnedItems.add(returnedItem)) {
+            this.returnedCount++;
+        }
         returnedItem.setRental(this);
         return this;
     }
@@ -141,6 +173,9 @@ public class Rental implements Serializable {
             ", userId=" + getUserId() +
             ", rentalStatus='" + getRentalStatus() + "'" +
             ", lateFee=" + getLateFee() +
+            ", rentedCount=" + getRentedCount() +
+            ", overdueCount=" + getOverdueCount() +
+            ", returnedCount=" + getReturnedCount() +
             "}";
     }
     //최초 대여 시//
@@ -169,9 +204,13 @@ public class Rental implements Serializable {
 
     //반납 하기//
     public Rental returnbook(RentedItem rentedItem) {
+        return returnbook(rentedItem, LocalDate.now());
+    }
+
+    public Rental returnbook(RentedItem rentedItem, LocalDate returnedDate) {
 
         this.removeRentedItem(rentedItem);
-        this.addReturnedItem(ReturnedItem.createReturnedItem(rentedItem.getBookId(), rentedItem.getBookTitle(), LocalDate.now()));
+        this.addReturnedItem(ReturnedItem.createReturnedItem(rentedItem.getBookId(), rentedItem.getBookTitle(), returnedDate));
         return this;
 
     }
@@ -186,9 +225,14 @@ public class Rental implements Serializable {
 
     //연체된 책 반납  //
     public Rental returnOverdueBook(OverdueItem overdueItem)
+    {
+        return returnOverdueBook(overdueItem, LocalDate.now());
+    }
+
+    public Rental returnOverdueBook(OverdueItem overdueItem, LocalDate returnedDate)
     {
         this.removeOverdueItem(overdueItem);
-        this.addReturnedItem(ReturnedItem.createReturnedItem(overdueItem.getBookId(),overdueItem.getBookTitle(),LocalDate.now()));
+        this.addReturnedItem(ReturnedItem.createReturnedItem(overdueItem.getBookId(),overdueItem.getBookTitle(),returnedDate));
         return this;
     }
 
@@ -199,16 +243,76 @@ public class Rental implements Serializable {
         return this;
     }
 
+    //여러 권 대여하기 - 대여 가능 여부 확인 후 대여//
+    public Rental rentBooks(List<RentedItem> rentedItems) throws RentUnavailableException {
+        this.checkRentalAvailable(rentedItems.size());
+        rentedItems.forEach(this::rentBook);
+        return this;
+    }
+
+    //여러 권 반납하기 - 대여목록에 있는 도서만 반납, 반납한 권수 반환//
+    public int returnBooks(List<Long> bookIds) {
+        return returnBooks(bookIds, LocalDate.now());
+    }
+
+    public int returnBooks(List<Long> bookIds, LocalDate returnedDate) {
+        List<RentedItem> returned = this.rentedItems.stream()
+            .filter(rentedItem -> bookIds.contains(rentedItem.getBookId()))
+            .collect(Collectors.toList());
+        returned.forEach(rentedItem -> returnbook(rentedItem, returnedDate));
+        return returned.size();
+    }
+
+    //여러 권 연체 처리 - 연체된 도서가 있으면 대여 불가 상태로 변경하고 연체료 누적, 연체 처리한 권수 반환//
+    public int overdueBooks(List<Long> bookIds, int lateFee) {
+        List<RentedItem> overdue = this.rentedItems.stream()
+            .filter(rentedItem -> bookIds.contains(rentedItem.getBookId()))
+            .collect(Collectors.toList());
+        overdue.forEach(this::overdueBook);
+        if (!overdue.isEmpty()) {
+            chargeOverdue(lateFee);
+        }
+        return overdue.size();
+    }
+
+    //연체 처리 - 대여 불가 상태로 변경하고 연체료 누적//
+    public Rental chargeOverdue(int lateFee) {
+        this.setRentalStatus(RentalStatus.RENT_UNAVAILABLE);
+        this.setLateFee(this.lateFee + lateFee);
+        return this;
+    }
+
+    //연체된 책 여러 권 반납, 반납한 권수 반환//
+    public int returnOverdueBooks(List<Long> bookIds) {
+        return returnOverdueBooks(bookIds, LocalDate.now());
+    }
+
+    public int returnOverdueBooks(List<Long> bookIds, LocalDate returnedDate) {
+        List<OverdueItem> returned = this.overdueItems.stream()
+            .filter(overdueItem -> bookIds.contains(overdueItem.getBookId()))
+            .collect(Collectors.toList());
+        returned.forEach(overdueItem -> returnOverdueBook(overdueItem, returnedDate));
+        return returned.size();
+    }
+
     //대여 가능 여부 체크 //
-    public boolean checkRentalAvailable(Integer newBookListCnt) throws Exception{
-        if(this.rentalStatus.equals(RentalStatus.RENT_UNAVAILABLE )) throw new Exception("연체 상태입니다.");
-        if(this.getLateFee()!=0) throw new Exception("연체료를 정산 후, 도서를 대여하실 수 있습니다.");
-        if(newBookListCnt+this.getRentedItems().size()>5) throw new Exception("대출 가능한 도서의 수는 "+( 5- this.getRentedItems().size())+"권 입니다.");
+    public boolean checkRentalAvailable(Integer newBookListCnt) throws RentUnavailableException{
+        if(this.rentalStatus.equals(RentalStatus.RENT_UNAVAILABLE )) throw new RentUnavailableException("연체 상태입니다.");
+        if(this.getLateFee()!=0) throw new RentUnavailableException("연체료를 정산 후, 도서를 대여하실 수 있습니다.");
+        if(newBookListCnt+this.getRentedCount()>5) throw new RentUnavailableException("대출 가능한 도서의 수는 "+( 5- this.getRentedCount())+"권 입니다.");
 
         return true;
     }
 
 
+    //항목 변경을 카운터에 반영 - 항목 컬렉션을 거치지 않고 옮긴 경우//
+    public Rental countItems(int rented, int overdue, int returned) {
+        this.rentedCount += rented;
+        this.overdueCount += overdue;
+        this.returnedCount += returned;
+        return this;
+    }
+
     public Rental lateFee(int lateFee) {
         this.lateFee = lateFee;
         return this;
@@ -0,0 +1,57 @@
+package com.skcc.rental.domain;
+
+import com.skcc.rental.domain.enumeration.RentalStatus;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * The read model of a user's rental: the rental and its items denormalized into one row, written only by
+ * {@link com.skcc.rental.service.RentalViewService}.
+ */
+@Entity
+@Table(name = "rental_view")
+@Getter
+@Setter
+@ToString(exclude = "document")
+public class RentalView implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "rental_id", nullable = false, unique = true)
+    private Long rentalId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "rental_status")
+    private RentalStatus rentalStatus;
+
+    @Column(name = "late_fee", columnDefinition = "bigint")
+    private int lateFee;
+
+    @Column(name = "rented_count", nullable = false)
+    private int rentedCount;
+
+    @Column(name = "overdue_count", nullable = false)
+    private int overdueCount;
+
+    @Column(name = "returned_count", nullable = false)
+    private int returnedCount;
+
+    /**
+     * The {@link com.skcc.rental.web.rest.dto.RentalViewDTO} as JSON.
+     */
+    @Lob
+    @Column(name = "document", nullable = false)
+    private String document;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
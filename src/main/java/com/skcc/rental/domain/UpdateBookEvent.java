@@ -2,11 +2,13 @@ package com.skcc.rental.domain;
 
 import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 @Getter
 @Setter
 @AllArgsConstructor
+@NoArgsConstructor
 public class UpdateBookEvent {
 
     private Long bookId;
@@ -0,0 +1,105 @@
+package com.skcc.rental.repository;
+
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.domain.RentedItem;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Lookups and bulk changes of the {@link Rental} entity that are not derived queries.
+ */
+public interface RentalRepositoryCustom {
+
+    /**
+     * Resolve the rental of a user through its natural id, so the lookup is served from the
+     * natural-id and entity second-level cache regions instead of a query.
+     *
+     * @param userId the id of the user.
+     * @return the rental of the user, if any.
+     */
+    Optional<Rental> findByUserId(Long userId);
+
+    /*
+     * The changes below insert and move items with set-based statements, instead of a delete and an insert per book
+     * through the persistence context, and apply the matching deltas to the rental's item counters in the same
+     * transaction. They bypass the rental's item collections, so these must not have been loaded in the
+     * transaction; the counters of the given rental are updated in memory and the affected second-level cache
+     * entries are evicted.
+     */
+
+    /**
+     * Add rented books to a rental.
+     *
+     * @param rental      the managed rental.
+     * @param rentedItems the new items.
+     */
+    void addRentedItems(Rental rental, List<RentedItem> rentedItems);
+
+    /**
+     * Move rented books of a rental to its returned items.
+     *
+     * @param rental       the managed rental.
+     * @param bookIds      the books to return, books not rented are ignored.
+     * @param returnedDate the date of return.
+     * @return the number of books moved.
+     */
+    int moveRentedToReturned(Rental rental, Collection<Long> bookIds, LocalDate returnedDate);
+
+    /**
+     * Move rented books of a rental to its overdue items, keeping their due date.
+     *
+     * @param rental  the managed rental.
+     * @param bookIds the overdue books, books not rented are ignored.
+     * @return the number of books moved.
+     */
+    int moveRentedToOverdue(Rental rental, Collection<Long> bookIds);
+
+    /**
+     * Move overdue books of a rental to its returned items.
+     *
+     * @param rental       the managed rental.
+     * @param bookIds      the books to return, books not overdue are ignored.
+     * @param returnedDate the date of return.
+     * @return the number of books moved.
+     */
+    int moveOverdueToReturned(Rental rental, Collection<Long> bookIds, LocalDate returnedDate);
+
+    /**
+     * Add deltas to the item counters of a rental in a single relative update, for item changes made through the
+     * persistence context. A rental already loaded keeps its counters in memory.
+     *
+     * @param rentalId the id of the rental.
+     * @param rented   the change of the rented items.
+     * @param overdue  the change of the overdue items.
+     * @param returned the books returned.
+     */
+    void countItems(Long rentalId, int rented, int overdue, int returned);
+
+    /**
+     * Recount the rented and overdue items of a rental from the item tables, after items were edited directly.
+     *
+     * @param rentalId the id of the rental.
+     */
+    void recountItems(Long rentalId);
+
+    /**
+     * Add to the late fee of a rental in a single relative update, so the fees charged meanwhile by the late fee
+     * accrual are kept. The rental gets the resulting fee.
+     *
+     * @param rental the managed rental.
+     * @param amount the fee to charge, negative for a payment.
+     */
+    void chargeLateFee(Rental rental, int amount);
+
+    /**
+     * Set the late fee of a rental, for callers owning the whole state of the rental: the admin update and the
+     * write-behind of the rental grid.
+     *
+     * @param rental  the managed rental.
+     * @param lateFee the new late fee.
+     */
+    void replaceLateFee(Rental rental, int lateFee);
+}
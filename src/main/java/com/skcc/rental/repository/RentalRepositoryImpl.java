@@ -0,0 +1,224 @@
+package com.skcc.rental.repository;
+
+import com.skcc.rental.domain.OverdueItem;
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.domain.RentedItem;
+import org.hibernate.Cache;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.NativeQuery;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Implementation of {@link RentalRepositoryCustom} on top of Hibernate's natural-id API and native bulk statements.
+ */
+@Transactional(readOnly = true)
+public class RentalRepositoryImpl implements RentalRepositoryCustom {
+
+    /**
+     * Query space of the bulk statements. Without an explicit space Hibernate would clear every second-level cache
+     * region after a native statement; the statements evict exactly the entries they made stale instead.
+     */
+    private static final String BULK_SPACE = "rental_bulk";
+
+    /**
+     * The items of a rental holding the given books, in the item table of the first format argument.
+     */
+    static final String ITEM_IDS = "SELECT id FROM %s WHERE rental_id = :rentalId AND book_id IN (:bookIds)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Optional<Rental> findByUserId(Long userId) {
+        if (userId == null) {
+            return Optional.empty();
+        }
+        return entityManager.unwrap(Session.class)
+            .bySimpleNaturalId(Rental.class)
+            .loadOptional(userId);
+    }
+
+    @Override
+    @Transactional
+    public void addRentedItems(Rental rental, List<RentedItem> rentedItems) {
+        if (rentedItems.isEmpty()) {
+            return;
+        }
+        rentedItems.forEach(rentedItem -> {
+            rentedItem.setRental(rental);
+            entityManager.persist(rentedItem);
+        });
+        updateCounters(rental, rentedItems.size(), 0, 0);
+        evict(RentedItem.class, Collections.emptyList(), rental.getId(), "rentedItems");
+    }
+
+    @Override
+    @Transactional
+    public int moveRentedToReturned(Rental rental, Collection<Long> bookIds, LocalDate returnedDate) {
+        Long rentalId = rental.getId();
+        List<Long> ids = itemIds("rented_item", rentalId, bookIds);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        nativeQuery("INSERT INTO returned_item (book_id, book_title, returned_date, rental_id) " +
+            "SELECT book_id, book_title, :returnedDate, rental_id FROM rented_item WHERE id IN (:ids)")
+            .setParameter("returnedDate", returnedDate)
+            .setParameter("ids", ids)
+            .executeUpdate();
+        nativeQuery("DELETE FROM rented_item WHERE id IN (:ids)").setParameter("ids", ids).executeUpdate();
+        updateCounters(rental, -ids.size(), 0, ids.size());
+        evict(RentedItem.class, ids, rentalId, "rentedItems", "returnedItems");
+        return ids.size();
+    }
+
+    @Override
+    @Transactional
+    public int moveRentedToOverdue(Rental rental, Collection<Long> bookIds) {
+        Long rentalId = rental.getId();
+        List<Long> ids = itemIds("rented_item", rentalId, bookIds);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        nativeQuery("INSERT INTO overdue_item (book_id, book_title, due_date, rental_id) " +
+            "SELECT book_id, book_title, due_date, rental_id FROM rented_item WHERE id IN (:ids)")
+            .setParameter("ids", ids)
+            .executeUpdate();
+        nativeQuery("DELETE FROM rented_item WHERE id IN (:ids)").setParameter("ids", ids).executeUpdate();
+        updateCounters(rental, -ids.size(), ids.size(), 0);
+        evict(RentedItem.class, ids, rentalId, "rentedItems", "overdueItems");
+        return ids.size();
+    }
+
+    @Override
+    @Transactional
+    public int moveOverdueToReturned(Rental rental, Collection<Long> bookIds, LocalDate returnedDate) {
+        Long rentalId = rental.getId();
+        List<Long> ids = itemIds("overdue_item", rentalId, bookIds);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        nativeQuery("INSERT INTO returned_item (book_id, book_title, returned_date, rental_id) " +
+            "SELECT book_id, book_title, :returnedDate, rental_id FROM overdue_item WHERE id IN (:ids)")
+            .setParameter("returnedDate", returnedDate)
+            .setParameter("ids", ids)
+            .executeUpdate();
+        nativeQuery("DELETE FROM overdue_item WHERE id IN (:ids)").setParameter("ids", ids).executeUpdate();
+        updateCounters(rental, 0, -ids.size(), ids.size());
+        evict(OverdueItem.class, ids, rentalId, "overdueItems", "returnedItems");
+        return ids.size();
+    }
+
+    @Override
+    @Transactional
+    public void countItems(Long rentalId, int rented, int overdue, int returned) {
+        nativeQuery("UPDATE rental SET rented_count = rented_count + :rented, overdue_count = overdue_count + :overdue, " +
+            "returned_count = returned_count + :returned WHERE id = :rentalId")
+            .setParameter("rented", rented)
+            .setParameter("overdue", overdue)
+            .setParameter("returned", returned)
+            .setParameter("rentalId", rentalId)
+            .executeUpdate();
+        evict(Rental.class, Collections.singletonList(rentalId), rentalId);
+    }
+
+    @Override
+    @Transactional
+    public void recountItems(Long rentalId) {
+        entityManager.flush();
+        nativeQuery("UPDATE rental SET rented_count = (SELECT COUNT(*) FROM rented_item WHERE rental_id = :rentalId), " +
+            "overdue_count = (SELECT COUNT(*) FROM overdue_item WHERE rental_id = :rentalId) WHERE id = :rentalId")
+            .setParameter("rentalId", rentalId)
+            .executeUpdate();
+        evict(Rental.class, Collections.singletonList(rentalId), rentalId, "rentedItems", "overdueItems");
+    }
+
+    @Override
+    @Transactional
+    public void chargeLateFee(Rental rental, int amount) {
+        nativeQuery("UPDATE rental SET late_fee = late_fee + :amount WHERE id = :rentalId")
+            .setParameter("amount", amount)
+            .setParameter("rentalId", rental.getId())
+            .executeUpdate();
+        Number lateFee = (Number) nativeQuery("SELECT late_fee FROM rental WHERE id = :rentalId")
+            .setParameter("rentalId", rental.getId())
+            .getSingleResult();
+        rental.setLateFee(lateFee.intValue());
+        evict(Rental.class, Collections.singletonList(rental.getId()), rental.getId());
+    }
+
+    @Override
+    @Transactional
+    public void replaceLateFee(Rental rental, int lateFee) {
+        nativeQuery("UPDATE rental SET late_fee = :lateFee WHERE id = :rentalId")
+            .setParameter("lateFee", lateFee)
+            .setParameter("rentalId", rental.getId())
+            .executeUpdate();
+        rental.setLateFee(lateFee);
+        evict(Rental.class, Collections.singletonList(rental.getId()), rental.getId());
+    }
+
+    /**
+     * Apply the deltas in the database and to the rental in memory, whose counter columns Hibernate never writes.
+     */
+    private void updateCounters(Rental rental, int rented, int overdue, int returned) {
+        countItems(rental.getId(), rented, overdue, returned);
+        rental.countItems(rented, overdue, returned);
+    }
+
+    /**
+     * The ids of the items to move, so the statements and the evictions cover the same rows.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Long> itemIds(String table, Long rentalId, Collection<Long> bookIds) {
+        if (bookIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 영속성 컨텍스트에 쌓인 변경을 먼저 반영한다
+        entityManager.flush();
+        List<Number> ids = nativeQuery(String.format(ITEM_IDS, table))
+            .setParameter("rentalId", rentalId)
+            .setParameter("bookIds", bookIds)
+            .getResultList();
+        return ids.stream().map(Number::longValue).collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("rawtypes")
+    private NativeQuery nativeQuery(String sql) {
+        return entityManager.unwrap(Session.class).createNativeQuery(sql).addSynchronizedQuerySpace(BULK_SPACE);
+    }
+
+    /**
+     * Evict the changed entities and the rental's affected collections now, and again after the transaction, so a
+     * concurrent reader cannot put back what it read before the commit.
+     */
+    private void evict(Class<?> changedEntity, List<Long> ids, Long rentalId, String... collections) {
+        Cache cache = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getCache();
+        Runnable eviction = () -> {
+            ids.forEach(id -> cache.evictEntityData(changedEntity, id));
+            for (String collection : collections) {
+                cache.evictCollectionData(Rental.class.getName() + "." + collection, rentalId);
+            }
+        };
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    eviction.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.skcc.rental.repository;
+
+import com.skcc.rental.domain.RentalView;
+
+import org.springframework.data.jpa.repository.*;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.Optional;
+
+/**
+ * Spring Data  repository for the RentalView entity.
+ */
+@Repository
+public interface RentalViewRepository extends JpaRepository<RentalView, Long> {
+
+    Optional<RentalView> findOneByRentalId(Long rentalId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select rentalView from RentalView rentalView where rentalView.userId = :userId")
+    Optional<RentalView> findOneForUpdate(@Param("userId") Long userId);
+}
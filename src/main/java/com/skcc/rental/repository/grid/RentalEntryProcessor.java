@@ -0,0 +1,123 @@
+package com.skcc.rental.repository.grid;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.domain.RentUnavailableException;
+import com.skcc.rental.domain.RentedItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mutation of a {@link Rental} aggregate, executed on the member owning the user's partition.
+ * <p>
+ * The processor is applied to the primary and to the backup entries. It returns the updated aggregate,
+ * or {@code null} when the aggregate does not exist or the operation did not change it.
+ */
+public abstract class RentalEntryProcessor extends AbstractEntryProcessor<Long, Rental> {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Object process(Map.Entry<Long, Rental> entry) {
+        Rental rental = entry.getValue();
+        if (rental == null) {
+            return null;
+        }
+        Rental result = apply(rental);
+        if (result != null) {
+            entry.setValue(result);
+        }
+        return result;
+    }
+
+    protected abstract Rental apply(Rental rental);
+
+    public static class RentBooks extends RentalEntryProcessor {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final Logger log = LoggerFactory.getLogger(RentBooks.class);
+
+        private final List<RentedItem> rentedItems;
+
+        public RentBooks(List<RentedItem> rentedItems) {
+            this.rentedItems = new ArrayList<>(rentedItems);
+        }
+
+        @Override
+        protected Rental apply(Rental rental) {
+            try {
+                return rental.rentBooks(rentedItems);
+            } catch (RentUnavailableException e) {
+                log.debug("User {} cannot rent books: {}", rental.getUserId(), e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    public static class ReturnBooks extends RentalEntryProcessor {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Long> bookIds;
+
+        public ReturnBooks(List<Long> bookIds) {
+            this.bookIds = new ArrayList<>(bookIds);
+        }
+
+        @Override
+        protected Rental apply(Rental rental) {
+            return rental.returnBooks(bookIds) > 0 ? rental : null;
+        }
+    }
+
+    public static class OverdueBooks extends RentalEntryProcessor {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Long> bookIds;
+
+        private final int lateFee;
+
+        public OverdueBooks(List<Long> bookIds, int lateFee) {
+            this.bookIds = new ArrayList<>(bookIds);
+            this.lateFee = lateFee;
+        }
+
+        @Override
+        protected Rental apply(Rental rental) {
+            return rental.overdueBooks(bookIds, lateFee) > 0 ? rental : null;
+        }
+    }
+
+    public static class ReturnOverdueBooks extends RentalEntryProcessor {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Long> bookIds;
+
+        public ReturnOverdueBooks(List<Long> bookIds) {
+            this.bookIds = new ArrayList<>(bookIds);
+        }
+
+        @Override
+        protected Rental apply(Rental rental) {
+            rental.returnOverdueBooks(bookIds);
+            return rental;
+        }
+    }
+
+    public static class ReleaseOverdue extends RentalEntryProcessor {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected Rental apply(Rental rental) {
+            return rental.releaseOverdue(rental.getLateFee());
+        }
+    }
+}
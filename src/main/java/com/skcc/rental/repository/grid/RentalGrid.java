@@ -0,0 +1,83 @@
+package com.skcc.rental.repository.grid;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.skcc.rental.domain.Rental;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Optional;
+
+/**
+ * Partitioned map of the {@link Rental} aggregates, keyed by userId.
+ * <p>
+ * Aggregates are loaded from the database on first access and mutated with {@link RentalEntryProcessor}s on
+ * the member owning the user's partition, so a mutation needs neither a lock nor a database read. Changes are
+ * written back by {@link RentalMapStore} after the configured write delay.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.rental-grid", name = "enabled", havingValue = "true")
+public class RentalGrid implements MeterBinder {
+
+    public static final String MAP_NAME = "rental-aggregate";
+
+    private final Logger log = LoggerFactory.getLogger(RentalGrid.class);
+
+    private final IMap<Long, Rental> rentals;
+
+    /**
+     * The map store is injected so that it, and the repositories it writes with, are destroyed after the
+     * write-behind queue has been flushed.
+     */
+    public RentalGrid(HazelcastInstance hazelcastInstance, RentalMapStore rentalMapStore) {
+        this.rentals = hazelcastInstance.getMap(MAP_NAME);
+    }
+
+    public Optional<Rental> get(Long userId) {
+        return Optional.ofNullable(rentals.get(userId));
+    }
+
+    /**
+     * Run a mutation on the aggregate of a user.
+     *
+     * @param userId the id of the user.
+     * @param processor the mutation.
+     * @return the updated aggregate, or {@code null} if the user has no rental or the mutation was rejected.
+     */
+    public Rental execute(Long userId, RentalEntryProcessor processor) {
+        return (Rental) rentals.executeOnKey(userId, processor);
+    }
+
+    /**
+     * Write all pending changes to the database, on all members.
+     */
+    public void flush() {
+        rentals.flush();
+    }
+
+    public void evict(Long userId) {
+        rentals.evict(userId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        log.info("Flushing rental write-behind queue");
+        rentals.flush();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("rental.grid.entries", rentals, map -> map.getLocalMapStats().getOwnedEntryCount())
+            .description("Rental aggregates owned by this member")
+            .register(registry);
+        Gauge.builder("rental.grid.write.behind.queue", rentals, map -> map.getLocalMapStats().getDirtyEntryCount())
+            .description("Rental aggregates changed on this member and not yet written to the database")
+            .register(registry);
+    }
+}
@@ -0,0 +1,217 @@
+package com.skcc.rental.repository.grid;
+
+import com.hazelcast.core.MapStore;
+import com.skcc.rental.config.ApplicationProperties;
+import com.skcc.rental.domain.OverdueItem;
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.domain.RentedItem;
+import com.skcc.rental.domain.ReturnedItem;
+import com.skcc.rental.repository.OverdueItemRepository;
+import com.skcc.rental.repository.RentalRepository;
+import com.skcc.rental.repository.RentedItemRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Loads {@link Rental} aggregates into the {@link RentalGrid} map and writes them back to the database.
+ * <p>
+ * Hazelcast calls {@link #storeAll(Map)} from its write-behind queue with up to {@code writeBatchSize}
+ * aggregates, which are merged into the database in a single transaction.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.rental-grid", name = "enabled", havingValue = "true")
+public class RentalMapStore implements MapStore<Long, Rental> {
+
+    private final Logger log = LoggerFactory.getLogger(RentalMapStore.class);
+
+    private final RentalRepository rentalRepository;
+
+    private final RentedItemRepository rentedItemRepository;
+
+    private final OverdueItemRepository overdueItemRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    private final int returnedHistoryDays;
+
+    private final Timer storeTimer;
+
+    private final DistributionSummary storeBatchSize;
+
+    public RentalMapStore(RentalRepository rentalRepository, RentedItemRepository rentedItemRepository,
+                          OverdueItemRepository overdueItemRepository, PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry, ApplicationProperties applicationProperties) {
+        this.rentalRepository = rentalRepository;
+        this.rentedItemRepository = rentedItemRepository;
+        this.overdueItemRepository = overdueItemRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.returnedHistoryDays = applicationProperties.getRentalGrid().getReturnedHistoryDays();
+        this.storeTimer = Timer.builder("rental.grid.store")
+            .description("Time to write a write-behind batch of rentals to the database")
+            .register(meterRegistry);
+        this.storeBatchSize = DistributionSummary.builder("rental.grid.store.batch")
+            .description("Rentals written per write-behind batch")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public Rental load(Long userId) {
+        return readOnlyTransactionTemplate.execute(status -> rentalRepository.findByUserId(userId).map(this::detach).orElse(null));
+    }
+
+    @Override
+    public Map<Long, Rental> loadAll(Collection<Long> userIds) {
+        return readOnlyTransactionTemplate.execute(status -> {
+            Map<Long, Rental> rentals = new HashMap<>();
+            for (Long userId : userIds) {
+                rentalRepository.findByUserId(userId).ifPresent(rental -> rentals.put(userId, detach(rental)));
+            }
+            return rentals;
+        });
+    }
+
+    /**
+     * Aggregates are loaded on demand only.
+     */
+    @Override
+    public Iterable<Long> loadAllKeys() {
+        return null;
+    }
+
+    @Override
+    public void store(Long userId, Rental rental) {
+        storeAll(Collections.singletonMap(userId, rental));
+    }
+
+    @Override
+    public void storeAll(Map<Long, Rental> rentals) {
+        log.debug("Writing {} rentals to the database", rentals.size());
+        storeTimer.record(() -> transactionTemplate.execute(status -> {
+            rentals.forEach(this::merge);
+            return null;
+        }));
+        storeBatchSize.record(rentals.size());
+    }
+
+    @Override
+    public void delete(Long userId) {
+        deleteAll(Collections.singleton(userId));
+    }
+
+    @Override
+    public void deleteAll(Collection<Long> userIds) {
+        transactionTemplate.execute(status -> {
+            userIds.forEach(userId -> rentalRepository.findByUserId(userId).ifPresent(rentalRepository::delete));
+            return null;
+        });
+    }
+
+    /**
+     * Copy a managed rental into plain objects, so no Hibernate collection or proxy ends up in the map.
+     */
+    private Rental detach(Rental persistent) {
+        Rental rental = Rental.createRental(persistent.getUserId());
+        rental.setId(persistent.getId());
+        rental.setRentalStatus(persistent.getRentalStatus());
+        rental.setLateFee(persistent.getLateFee());
+        persistent.getRentedItems().forEach(item -> {
+            RentedItem copy = RentedItem.createRentedItem(item.getBookId(), item.getBookTitle(), item.getRentedDate()).dueDate(item.getDueDate());
+            copy.setId(item.getId());
+            rental.addRentedItem(copy);
+        });
+        persistent.getOverdueItems().forEach(item -> {
+            OverdueItem copy = OverdueItem.createOverdueItem(item.getBookId(), item.getBookTitle(), item.getDueDate());
+            copy.setId(item.getId());
+            rental.addOverdueItem(copy);
+        });
+        LocalDate historyStart = LocalDate.now().minusDays(returnedHistoryDays);
+        persistent.getReturnedItems().stream()
+            .filter(item -> item.getReturnedDate() == null || !item.getReturnedDate().isBefore(historyStart))
+            .forEach(item -> {
+                ReturnedItem copy = ReturnedItem.createReturnedItem(item.getBookId(), item.getBookTitle(), item.getReturnedDate());
+                copy.setId(item.getId());
+                rental.addReturnedItem(copy);
+            });
+        // 반납 이력은 최근 것만 담으므로 누적 반납 권수는 카운터에서 가져온다
+        rental.setReturnedCount(persistent.getReturnedCount());
+        return rental;
+    }
+
+    /**
+     * Make the database match the aggregate held in the map. Rented and overdue items are matched by book,
+     * returned items are history and are only ever added. The item counters of an existing rental receive the
+     * changes the merge made, a new rental is inserted with them.
+     */
+    private void merge(Long userId, Rental rental) {
+        Rental persistent = rentalRepository.findByUserId(userId).orElseGet(() -> Rental.createRental(userId));
+        int rentedCount = persistent.getRentedCount();
+        int overdueCount = persistent.getOverdueCount();
+        int returnedCount = persistent.getReturnedCount();
+        persistent.setRentalStatus(rental.getRentalStatus());
+        persistent.setLateFee(rental.getLateFee());
+
+        Map<Long, RentedItem> rentedItems = rental.getRentedItems().stream()
+            .collect(Collectors.toMap(RentedItem::getBookId, Function.identity(), (first, second) -> first));
+        for (RentedItem item : new ArrayList<>(persistent.getRentedItems())) {
+            if (rentedItems.remove(item.getBookId()) == null) {
+                persistent.removeRentedItem(item);
+                rentedItemRepository.delete(item);
+            }
+        }
+        rentedItems.values().forEach(item -> persistent.addRentedItem(
+            RentedItem.createRentedItem(item.getBookId(), item.getBookTitle(), item.getRentedDate()).dueDate(item.getDueDate())));
+
+        Map<Long, OverdueItem> overdueItems = rental.getOverdueItems().stream()
+            .collect(Collectors.toMap(OverdueItem::getBookId, Function.identity(), (first, second) -> first));
+        for (OverdueItem item : new ArrayList<>(persistent.getOverdueItems())) {
+            if (overdueItems.remove(item.getBookId()) == null) {
+                persistent.removeOverdueItem(item);
+                overdueItemRepository.delete(item);
+            }
+        }
+        overdueItems.values().forEach(item -> persistent.addOverdueItem(
+            OverdueItem.createOverdueItem(item.getBookId(), item.getBookTitle(), item.getDueDate())));
+
+        Map<String, Long> persistedReturns = persistent.getReturnedItems().stream()
+            .collect(Collectors.groupingBy(RentalMapStore::returnKey, Collectors.counting()));
+        for (ReturnedItem item : rental.getReturnedItems()) {
+            String key = returnKey(item);
+            if (persistedReturns.getOrDefault(key, 0L) > 0) {
+                persistedReturns.merge(key, -1L, Long::sum);
+            } else {
+                persistent.addReturnedItem(ReturnedItem.createReturnedItem(item.getBookId(), item.getBookTitle(), item.getReturnedDate()));
+            }
+        }
+        boolean inserted = persistent.getId() == null;
+        rentalRepository.save(persistent);
+        if (!inserted) {
+            rentalRepository.countItems(persistent.getId(), persistent.getRentedCount() - rentedCount,
+                persistent.getOverdueCount() - overdueCount, persistent.getReturnedCount() - returnedCount);
+            rentalRepository.replaceLateFee(persistent, rental.getLateFee());
+        }
+    }
+
+    private static String returnKey(ReturnedItem item) {
+        return item.getBookId() + "@" + item.getReturnedDate();
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Hazelcast map of the hot Rental aggregates, persisted to the database with write-behind.
+ */
+package com.skcc.rental.repository.grid;
@@ -0,0 +1,15 @@
+package com.skcc.rental.repository.ledger;
+
+/**
+ * Thrown by the operations that would read or write the rental and item tables directly while the
+ * {@link RentalLedger} is enabled: the tables only hold the state a rental had when its ledger started, and the
+ * ledger never sees changes made to them afterwards.
+ */
+public class LedgerModeException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public LedgerModeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,202 @@
+package com.skcc.rental.repository.ledger;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skcc.rental.config.ApplicationProperties;
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.repository.RentalRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Event-sourced persistence of the {@link Rental} aggregates.
+ * <p>
+ * Every accepted {@link RentalLedgerEvent} is inserted into {@code rental_event} with the next sequence number of its
+ * user; rows are never updated. Every {@code snapshotEvery} events the resulting state is inserted into
+ * {@code rental_snapshot}, so rebuilding a rental reads its latest snapshot and replays at most that many events.
+ * A user's ledger starts from the rental and item tables, whose state becomes the snapshot at sequence 0.
+ * <p>
+ * Concurrent appends for the same user, which the user lock normally prevents, fail on the unique sequence with an
+ * {@link OptimisticLockingFailureException}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.rental-ledger", name = "enabled", havingValue = "true")
+public class RentalLedger {
+
+    /**
+     * The latest snapshot of a user's rental.
+     */
+    public static final String LATEST_SNAPSHOT = "SELECT sequence, state FROM rental_snapshot WHERE user_id = ? ORDER BY sequence DESC LIMIT 1";
+
+    /**
+     * The events of a user's rental after a sequence, in order.
+     */
+    public static final String EVENTS_AFTER = "SELECT sequence, payload FROM rental_event WHERE user_id = ? AND sequence > ? ORDER BY sequence";
+
+    private final Logger log = LoggerFactory.getLogger(RentalLedger.class);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final RentalRepository rentalRepository;
+
+    private final ObjectMapper objectMapper;
+
+    private final int snapshotEvery;
+
+    private final Timer rebuildTimer;
+
+    private final DistributionSummary replayedEvents;
+
+    private final Counter appendedEvents;
+
+    private final Counter snapshots;
+
+    public RentalLedger(JdbcTemplate jdbcTemplate, RentalRepository rentalRepository, ObjectMapper objectMapper,
+                        ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.rentalRepository = rentalRepository;
+        this.objectMapper = objectMapper;
+        this.snapshotEvery = Math.max(1, applicationProperties.getRentalLedger().getSnapshotEvery());
+        this.rebuildTimer = Timer.builder("rental.ledger.rebuild")
+            .description("Time to rebuild a rental from its latest snapshot and the events after it")
+            .register(meterRegistry);
+        this.replayedEvents = DistributionSummary.builder("rental.ledger.replayed.events")
+            .description("Events replayed to rebuild a rental")
+            .register(meterRegistry);
+        this.appendedEvents = Counter.builder("rental.ledger.events")
+            .description("Events appended to the rental ledger")
+            .register(meterRegistry);
+        this.snapshots = Counter.builder("rental.ledger.snapshots")
+            .description("Snapshots written to the rental ledger")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Rebuild the rental of a user.
+     *
+     * @param userId the id of the user.
+     * @return the rental, or empty if the user has none.
+     */
+    public Optional<Rental> load(Long userId) {
+        return rebuild(userId).map(state -> state.rental);
+    }
+
+    /**
+     * Apply an event to the rental of a user and append it to the ledger.
+     *
+     * @param userId the id of the user.
+     * @param event  the state change.
+     * @return the updated rental, or {@code null} when the user has no rental or the event did not apply.
+     */
+    public Rental append(Long userId, RentalLedgerEvent event) {
+        Optional<State> rebuilt = rebuild(userId);
+        if (!rebuilt.isPresent()) {
+            return null;
+        }
+        State state = rebuilt.get();
+        if (!event.applyTo(state.rental)) {
+            return null;
+        }
+        long sequence = state.sequence + 1;
+        try {
+            if (state.snapshotSequence < 0) {
+                // 원장의 시작: 테이블의 상태를 0번 스냅샷으로 남긴다
+                insertSnapshot(userId, 0, state.origin);
+                state.snapshotSequence = 0;
+            }
+            jdbcTemplate.update("INSERT INTO rental_event (user_id, sequence, event_type, payload, created_at) VALUES (?, ?, ?, ?, ?)",
+                userId, sequence, event.type(), write(event), Timestamp.from(Instant.now()));
+        } catch (DuplicateKeyException e) {
+            throw new OptimisticLockingFailureException("Concurrent change of the rental of user " + userId, e);
+        }
+        appendedEvents.increment();
+        if (sequence - state.snapshotSequence >= snapshotEvery) {
+            insertSnapshot(userId, sequence, state.rental);
+        }
+        return state.rental;
+    }
+
+    private Optional<State> rebuild(Long userId) {
+        return rebuildTimer.record(() -> {
+            List<State> latest = jdbcTemplate.query(LATEST_SNAPSHOT,
+                (resultSet, rowNum) -> new State(read(resultSet.getString("state"), RentalSnapshot.class).toRental(), resultSet.getLong("sequence"), null),
+                userId);
+            if (latest.isEmpty()) {
+                // 아직 원장이 없는 사용자
+                return rentalRepository.findByUserId(userId).map(rental -> new State(RentalSnapshot.of(rental).toRental(), -1, rental));
+            }
+            State state = latest.get(0);
+            long[] replayed = {0};
+            jdbcTemplate.query(EVENTS_AFTER,
+                resultSet -> {
+                    read(resultSet.getString("payload"), RentalLedgerEvent.class).applyTo(state.rental);
+                    state.sequence = resultSet.getLong("sequence");
+                    replayed[0]++;
+                },
+                userId, state.snapshotSequence);
+            replayedEvents.record(replayed[0]);
+            return Optional.of(state);
+        });
+    }
+
+    private void insertSnapshot(Long userId, long sequence, Rental rental) {
+        jdbcTemplate.update("INSERT INTO rental_snapshot (user_id, sequence, state, created_at) VALUES (?, ?, ?, ?)",
+            userId, sequence, write(RentalSnapshot.of(rental)), Timestamp.from(Instant.now()));
+        snapshots.increment();
+        log.trace("Snapshot of the rental of user {} at event {}", userId, sequence);
+    }
+
+    private String write(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> T read(String json, Class<T> type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A rebuilt rental, the sequence of the last event applied to it and of the snapshot it started from, -1 when
+     * the user has no ledger yet and the rental was read from the tables.
+     */
+    private static class State {
+
+        private final Rental rental;
+
+        private final Rental origin;
+
+        private long sequence;
+
+        private long snapshotSequence;
+
+        State(Rental rental, long snapshotSequence, Rental origin) {
+            this.rental = rental;
+            this.origin = origin;
+            this.sequence = Math.max(0, snapshotSequence);
+            this.snapshotSequence = snapshotSequence;
+        }
+    }
+}
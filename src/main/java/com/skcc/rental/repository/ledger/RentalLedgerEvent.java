@@ -0,0 +1,164 @@
+package com.skcc.rental.repository.ledger;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.domain.RentUnavailableException;
+import com.skcc.rental.domain.RentedItem;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A state change of a {@link Rental}, stored as JSON in {@code rental_event}.
+ * <p>
+ * Events carry everything their outcome depends on, e.g. the return date, so replaying them rebuilds the same
+ * state on any later day.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+    @JsonSubTypes.Type(RentalLedgerEvent.BooksRented.class),
+    @JsonSubTypes.Type(RentalLedgerEvent.BooksReturned.class),
+    @JsonSubTypes.Type(RentalLedgerEvent.BooksOverdue.class),
+    @JsonSubTypes.Type(RentalLedgerEvent.OverdueBooksReturned.class),
+    @JsonSubTypes.Type(RentalLedgerEvent.OverdueReleased.class)
+})
+public abstract class RentalLedgerEvent {
+
+    /**
+     * @return whether the rental changed; events that change nothing are not recorded.
+     */
+    public abstract boolean applyTo(Rental rental);
+
+    /**
+     * The {@code event_type} of the event.
+     */
+    public String type() {
+        return getClass().getAnnotation(JsonTypeName.class).value();
+    }
+
+    @JsonTypeName("BOOKS_RENTED")
+    @Getter
+    @NoArgsConstructor
+    public static class BooksRented extends RentalLedgerEvent {
+
+        private static final Logger log = LoggerFactory.getLogger(BooksRented.class);
+
+        private List<Book> books = new ArrayList<>();
+
+        public BooksRented(List<RentedItem> rentedItems) {
+            this.books = rentedItems.stream().map(Book::of).collect(Collectors.toList());
+        }
+
+        @Override
+        public boolean applyTo(Rental rental) {
+            try {
+                rental.rentBooks(books.stream().map(Book::toRentedItem).collect(Collectors.toList()));
+                return true;
+            } catch (RentUnavailableException e) {
+                log.debug("User {} cannot rent books: {}", rental.getUserId(), e.getMessage());
+                return false;
+            }
+        }
+    }
+
+    @JsonTypeName("BOOKS_RETURNED")
+    @Getter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BooksReturned extends RentalLedgerEvent {
+
+        private List<Long> bookIds;
+
+        private LocalDate returnedDate;
+
+        @Override
+        public boolean applyTo(Rental rental) {
+            return rental.returnBooks(bookIds, returnedDate) > 0;
+        }
+    }
+
+    @JsonTypeName("BOOKS_OVERDUE")
+    @Getter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BooksOverdue extends RentalLedgerEvent {
+
+        private List<Long> bookIds;
+
+        private int lateFee;
+
+        @Override
+        public boolean applyTo(Rental rental) {
+            return rental.overdueBooks(bookIds, lateFee) > 0;
+        }
+    }
+
+    @JsonTypeName("OVERDUE_BOOKS_RETURNED")
+    @Getter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class OverdueBooksReturned extends RentalLedgerEvent {
+
+        private List<Long> bookIds;
+
+        private LocalDate returnedDate;
+
+        @Override
+        public boolean applyTo(Rental rental) {
+            return rental.returnOverdueBooks(bookIds, returnedDate) > 0;
+        }
+    }
+
+    /**
+     * The late fee was paid and the rental is available again. Created without a fee, the event releases the
+     * rental's whole late fee and records it when first applied.
+     */
+    @JsonTypeName("OVERDUE_RELEASED")
+    @Getter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class OverdueReleased extends RentalLedgerEvent {
+
+        private Integer lateFee;
+
+        @Override
+        public boolean applyTo(Rental rental) {
+            if (lateFee == null) {
+                lateFee = rental.getLateFee();
+            }
+            rental.releaseOverdue(lateFee);
+            return true;
+        }
+    }
+
+    @Getter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Book {
+
+        private Long bookId;
+
+        private String bookTitle;
+
+        private LocalDate rentedDate;
+
+        private LocalDate dueDate;
+
+        static Book of(RentedItem rentedItem) {
+            return new Book(rentedItem.getBookId(), rentedItem.getBookTitle(), rentedItem.getRentedDate(), rentedItem.getDueDate());
+        }
+
+        RentedItem toRentedItem() {
+            return RentedItem.createRentedItem(bookId, bookTitle, rentedDate).dueDate(dueDate);
+        }
+    }
+}
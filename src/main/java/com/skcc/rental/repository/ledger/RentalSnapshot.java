@@ -0,0 +1,88 @@
+package com.skcc.rental.repository.ledger;
+
+import com.skcc.rental.domain.OverdueItem;
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.domain.RentedItem;
+import com.skcc.rental.domain.ReturnedItem;
+import com.skcc.rental.domain.enumeration.RentalStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The state of a {@link Rental} after an event of its ledger, stored as JSON in {@code rental_snapshot}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class RentalSnapshot {
+
+    private Long rentalId;
+
+    private Long userId;
+
+    private RentalStatus rentalStatus;
+
+    private int lateFee;
+
+    private List<Item> rentedItems = new ArrayList<>();
+
+    private List<Item> overdueItems = new ArrayList<>();
+
+    private List<Item> returnedItems = new ArrayList<>();
+
+    public static RentalSnapshot of(Rental rental) {
+        RentalSnapshot snapshot = new RentalSnapshot();
+        snapshot.rentalId = rental.getId();
+        snapshot.userId = rental.getUserId();
+        snapshot.rentalStatus = rental.getRentalStatus();
+        snapshot.lateFee = rental.getLateFee();
+        snapshot.rentedItems = rental.getRentedItems().stream()
+            .map(item -> new Item(item.getBookId(), item.getBookTitle(), item.getRentedDate(), item.getDueDate(), null))
+            .collect(Collectors.toList());
+        snapshot.overdueItems = rental.getOverdueItems().stream()
+            .map(item -> new Item(item.getBookId(), item.getBookTitle(), null, item.getDueDate(), null))
+            .collect(Collectors.toList());
+        snapshot.returnedItems = rental.getReturnedItems().stream()
+            .map(item -> new Item(item.getBookId(), item.getBookTitle(), null, null, item.getReturnedDate()))
+            .collect(Collectors.toList());
+        return snapshot;
+    }
+
+    /**
+     * @return a detached rental, its items have no ids.
+     */
+    public Rental toRental() {
+        Rental rental = new Rental();
+        rental.setId(rentalId);
+        rental.setUserId(userId);
+        rental.setRentalStatus(rentalStatus);
+        rental.setLateFee(lateFee);
+        rentedItems.forEach(item -> rental.addRentedItem(RentedItem.createRentedItem(item.bookId, item.bookTitle, item.rentedDate).dueDate(item.dueDate)));
+        overdueItems.forEach(item -> rental.addOverdueItem(OverdueItem.createOverdueItem(item.bookId, item.bookTitle, item.dueDate)));
+        returnedItems.forEach(item -> rental.addReturnedItem(ReturnedItem.createReturnedItem(item.bookId, item.bookTitle, item.returnedDate)));
+        return rental;
+    }
+
+    @Getter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+
+        private Long bookId;
+
+        private String bookTitle;
+
+        private LocalDate rentedDate;
+
+        private LocalDate dueDate;
+
+        private LocalDate returnedDate;
+    }
+}
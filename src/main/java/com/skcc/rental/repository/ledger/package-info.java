@@ -0,0 +1,4 @@
+/**
+ * Append-only ledger of the Rental state changes, rebuilt from periodic snapshots.
+ */
+package com.skcc.rental.repository.ledger;
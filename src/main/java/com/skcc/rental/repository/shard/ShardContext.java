@@ -0,0 +1,64 @@
+package com.skcc.rental.repository.shard;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+/**
+ * Holds the shard the current thread works on, read by {@link ShardRoutingDataSource} when a transaction fetches its
+ * connection.
+ * <p>
+ * A transaction stays on the shard of its first statement, so the shard must not change while a transaction is
+ * active; {@link #callOn} refuses to, as the work would silently run on the wrong database.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    /**
+     * @return the shard of the current thread, or {@code null} for the default shard.
+     */
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Run work on a shard.
+     *
+     * @throws IllegalStateException if a transaction on another shard is active.
+     */
+    public static <T> T callOn(int shard, Supplier<T> work) {
+        Integer previous = enter(shard);
+        try {
+            return work.get();
+        } finally {
+            exit(previous);
+        }
+    }
+
+    /**
+     * Switch the current thread to a shard.
+     *
+     * @return the previous shard, to be passed to {@link #exit}.
+     * @throws IllegalStateException if a transaction on another shard is active.
+     */
+    static Integer enter(int shard) {
+        Integer previous = CURRENT.get();
+        if (previous != null && previous != shard && TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Cannot switch from shard " + previous + " to shard " + shard + " within a transaction");
+        }
+        CURRENT.set(shard);
+        return previous;
+    }
+
+    static void exit(Integer previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
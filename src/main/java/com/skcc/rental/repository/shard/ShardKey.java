@@ -0,0 +1,32 @@
+package com.skcc.rental.repository.shard;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the parameter of a Spring bean method that tells the shard the method works on, see {@link ShardKeyAspect}.
+ * The method, and the transaction it starts, then run on that shard. A {@code null} key leaves the shard unchanged.
+ */
+@Documented
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ShardKey {
+
+    /**
+     * What the key is.
+     */
+    Type value() default Type.USER_ID;
+
+    /**
+     * Property of the parameter holding the key, when the parameter is not the key itself, e.g. {@code userId}
+     * of a rental.
+     */
+    String property() default "";
+
+    enum Type {
+        USER_ID, ENTITY_ID
+    }
+}
@@ -0,0 +1,74 @@
+package com.skcc.rental.repository.shard;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+/**
+ * Runs methods with a {@link ShardKey} parameter on the shard of the key.
+ * <p>
+ * Ordered before the transaction interceptor, so the transaction the method starts is on the shard.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(prefix = "application.sharding", name = "enabled", havingValue = "true")
+public class ShardKeyAspect {
+
+    private final ShardMap shardMap;
+
+    public ShardKeyAspect(ShardMap shardMap) {
+        this.shardMap = shardMap;
+    }
+
+    @Around("within(com.skcc.rental..*) && execution(* *(.., @com.skcc.rental.repository.shard.ShardKey (*), ..))")
+    public Object onShard(ProceedingJoinPoint joinPoint) throws Throwable {
+        Integer shard = shardOf(joinPoint);
+        if (shard == null) {
+            return joinPoint.proceed();
+        }
+        Integer previous = ShardContext.enter(shard);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            ShardContext.exit(previous);
+        }
+    }
+
+    private Integer shardOf(ProceedingJoinPoint joinPoint) {
+        // the annotations are on the implementation, the signature may be of the interface
+        Method method = AopUtils.getMostSpecificMethod(((MethodSignature) joinPoint.getSignature()).getMethod(), joinPoint.getTarget().getClass());
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        Object[] args = joinPoint.getArgs();
+        for (int i = 0; i < parameterAnnotations.length; i++) {
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if (annotation instanceof ShardKey) {
+                    return shardOf((ShardKey) annotation, args[i]);
+                }
+            }
+        }
+        return null;
+    }
+
+    private Integer shardOf(ShardKey shardKey, Object arg) {
+        Object key = arg;
+        if (arg != null && !shardKey.property().isEmpty()) {
+            key = new BeanWrapperImpl(arg).getPropertyValue(shardKey.property());
+        }
+        if (key == null) {
+            return null;
+        }
+        long id = ((Number) key).longValue();
+        return shardKey.value() == ShardKey.Type.USER_ID ? shardMap.shardOfUser(id) : shardMap.shardOfEntity(id);
+    }
+}
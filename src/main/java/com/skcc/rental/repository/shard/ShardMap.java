@@ -0,0 +1,65 @@
+package com.skcc.rental.repository.shard;
+
+import com.skcc.rental.config.ApplicationProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Maps users and entities to shards.
+ * <p>
+ * A user lives on the shard of the hash of its userId, together with its rental and rental items. Entity ids are
+ * interleaved across the shards (see {@code application.sharding.interleave-ids}), so the shard of an entity
+ * follows from its id without a lookup.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.sharding", name = "enabled", havingValue = "true")
+public class ShardMap {
+
+    private final int shardCount;
+
+    @Autowired
+    public ShardMap(ApplicationProperties applicationProperties) {
+        this(1 + applicationProperties.getSharding().getShards().size());
+    }
+
+    ShardMap(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shardCount = shardCount;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public int shardOfUser(long userId) {
+        return Math.floorMod(Long.hashCode(mix(userId)), shardCount);
+    }
+
+    /**
+     * @param id the id of a rental, rented, returned or overdue item.
+     */
+    public int shardOfEntity(long id) {
+        return (int) Math.floorMod(id - 1, (long) shardCount);
+    }
+
+    public <T> T callOnUser(long userId, Supplier<T> work) {
+        return ShardContext.callOn(shardOfUser(userId), work);
+    }
+
+    /**
+     * MurmurHash3's finalizer, so consecutive userIds spread evenly.
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb93fe53a1ec5L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
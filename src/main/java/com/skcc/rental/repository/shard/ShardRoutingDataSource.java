@@ -0,0 +1,52 @@
+package com.skcc.rental.repository.shard;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out connections of the shard in {@link ShardContext}, or of shard 0 when none is set.
+ * <p>
+ * Spring's transaction managers fetch the connection when the transaction begins, so this data source must be used
+ * through a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} for the shard to be chosen by
+ * the first statement.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private final List<? extends DataSource> shards;
+
+    /**
+     * @param shards the data source of every shard, by shard number.
+     */
+    public ShardRoutingDataSource(List<? extends DataSource> shards) {
+        this.shards = shards;
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer shard = ShardContext.current();
+        return shard != null ? shard : 0;
+    }
+
+    /**
+     * Close the pools of the shards.
+     */
+    @Override
+    public void close() throws Exception {
+        for (DataSource shard : shards) {
+            if (shard instanceof AutoCloseable) {
+                ((AutoCloseable) shard).close();
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.skcc.rental.repository.shard;
+
+import com.skcc.rental.config.ApplicationProperties;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Scatter-gather of queries that are not keyed by a user, like the admin lists: the query runs on every shard in
+ * parallel, each in its own read-only transaction, and the results are merged.
+ */
+@Component
+@ConditionalOnProperty(prefix = "application.sharding", name = "enabled", havingValue = "true")
+public class ShardedQueries {
+
+    private static final Sort DEFAULT_SORT = Sort.by("id");
+
+    private final ShardMap shardMap;
+
+    private final TransactionTemplate readOnly;
+
+    private final ExecutorService executor;
+
+    public ShardedQueries(ShardMap shardMap, PlatformTransactionManager transactionManager, ApplicationProperties applicationProperties) {
+        this.shardMap = shardMap;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(applicationProperties.getSharding().getScatterGatherThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "rental-shard-query-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get a page of the entities of all shards.
+     * <p>
+     * Every shard returns its first {@code offset + size} entities in the page's order, by id if the page is
+     * unsorted, so deep pages cost more than on a single database.
+     *
+     * @param pageable the pagination information.
+     * @param query    the query of one shard.
+     * @return the page.
+     */
+    public <T> Page<T> findAll(Pageable pageable, Function<Pageable, Page<T>> query) {
+        Sort sort = pageable.getSort().isSorted() ? pageable.getSort() : DEFAULT_SORT;
+        Pageable shardPageable = pageable.isPaged()
+            ? PageRequest.of(0, (int) Math.min(Integer.MAX_VALUE, pageable.getOffset() + pageable.getPageSize()), sort)
+            : PageRequest.of(0, Integer.MAX_VALUE, sort);
+
+        List<CompletableFuture<Page<T>>> pages = new ArrayList<>();
+        for (int shard = 0; shard < shardMap.getShardCount(); shard++) {
+            int target = shard;
+            pages.add(CompletableFuture.supplyAsync(() -> ShardContext.callOn(target, () -> readOnly.execute(status -> query.apply(shardPageable))), executor));
+        }
+        List<T> merged = new ArrayList<>();
+        long total = 0;
+        for (CompletableFuture<Page<T>> page : pages) {
+            Page<T> shardPage = join(page);
+            merged.addAll(shardPage.getContent());
+            total += shardPage.getTotalElements();
+        }
+        merged.sort(comparator(sort));
+        if (pageable.isUnpaged()) {
+            return new PageImpl<>(merged, pageable, total);
+        }
+        int from = (int) Math.min(pageable.getOffset(), merged.size());
+        int to = Math.min(from + pageable.getPageSize(), merged.size());
+        return new PageImpl<>(new ArrayList<>(merged.subList(from, to)), pageable, total);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The order the database applied on each shard, nulls first as in MariaDB.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Comparator<T> comparator(Sort sort) {
+        Comparator<T> comparator = (left, right) -> 0;
+        for (Sort.Order order : sort) {
+            Comparator<T> byProperty = Comparator.comparing(
+                item -> (Comparable) new BeanWrapperImpl(item).getPropertyValue(order.getProperty()),
+                Comparator.nullsFirst(Comparator.naturalOrder()));
+            comparator = comparator.thenComparing(order.isDescending() ? byProperty.reversed() : byProperty);
+        }
+        return comparator;
+    }
+}
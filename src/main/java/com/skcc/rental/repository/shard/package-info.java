@@ -0,0 +1,4 @@
+/**
+ * Sharding of the rentals and their items over several databases by userId.
+ */
+package com.skcc.rental.repository.shard;
@@ -0,0 +1,264 @@
+package com.skcc.rental.service;
+
+import com.skcc.rental.adaptor.RentalKafkaProducer;
+import com.skcc.rental.config.ApplicationProperties;
+import com.skcc.rental.domain.DueReminderEvent;
+import com.skcc.rental.repository.shard.ShardContext;
+import com.skcc.rental.repository.shard.ShardMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Nightly reminders of the rented books due soon: one {@link DueReminderEvent} per user with the user's books due
+ * within {@code daysAhead} days.
+ * <p>
+ * The run reads {@code rented_item} through a keyset cursor ordered by rental, so the items of a user are adjacent,
+ * one page of {@code pageSize} items at a time. A page ends before the rental it would cut, which the next page
+ * starts with; memory is bounded by the page. Each page is one transaction that locks the run's row in
+ * {@code due_reminder_run}, publishes the page's reminders through {@link RentalKafkaProducer}, waits for their
+ * acknowledgements and moves the checkpoint past the page's last rental. A failed run resumes from its checkpoint,
+ * so the users of the failed page may be reminded twice; a completed day is skipped.
+ * <p>
+ * The rental ledger does not update {@code rented_item}, so the service refuses to start when it is enabled.
+ */
+@Service
+@ConditionalOnProperty(prefix = "application.due-reminder", name = "enabled", havingValue = "true")
+public class DueReminderService {
+
+    /**
+     * A rental holds at most 5 rented books, so a page of at least this many items always ends after a rental.
+     */
+    private static final int MIN_PAGE_SIZE = 10;
+
+    /**
+     * A page of the rented items due between {@code :day} and {@code :until}, of the rentals after {@code :after}.
+     */
+    public static final String DUE_ITEMS_PAGE = "SELECT ri.rental_id, r.user_id, ri.book_id, ri.book_title, ri.due_date " +
+        "FROM rented_item ri JOIN rental r ON r.id = ri.rental_id " +
+        // 체크포인트 조건을 rental 쪽에도 두어 어느 테이블부터 읽든 인덱스 범위로 시작한다
+        "WHERE r.id > :after AND ri.rental_id > :after AND ri.due_date >= :day AND ri.due_date <= :until " +
+        "ORDER BY ri.rental_id, ri.id LIMIT :pageSize";
+
+    private final Logger log = LoggerFactory.getLogger(DueReminderService.class);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transaction;
+
+    private final RentalKafkaProducer rentalKafkaProducer;
+
+    private final ApplicationProperties.DueReminder properties;
+
+    private final Timer pageTimer;
+
+    private final Counter readItems;
+
+    private final Counter remindedUsers;
+
+    private final AtomicLong checkpoint = new AtomicLong();
+
+    private final AtomicLong itemsPerSecond = new AtomicLong();
+
+    private ShardMap shardMap;
+
+    public DueReminderService(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                              RentalKafkaProducer rentalKafkaProducer, ApplicationProperties applicationProperties,
+                              MeterRegistry meterRegistry) {
+        if (applicationProperties.getRentalLedger().isEnabled()) {
+            // 원장으로 대여한 도서는 rented_item 에 없어 알림에서 빠진다
+            throw new IllegalStateException("The due reminder reads the rented_item table, which the rental ledger does not update");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.rentalKafkaProducer = rentalKafkaProducer;
+        this.properties = applicationProperties.getDueReminder();
+        this.pageTimer = Timer.builder("rental.due-reminder.page")
+            .description("Time to read one page of rented items and publish its reminders")
+            .register(meterRegistry);
+        this.readItems = Counter.builder("rental.due-reminder.items")
+            .description("Rented items due soon read by the reminder runs")
+            .register(meterRegistry);
+        this.remindedUsers = Counter.builder("rental.due-reminder.users")
+            .description("Due reminders published, one per user")
+            .register(meterRegistry);
+        Gauge.builder("rental.due-reminder.checkpoint", checkpoint, AtomicLong::get)
+            .description("Id of the last rental reminded by the current or last run")
+            .register(meterRegistry);
+        Gauge.builder("rental.due-reminder.throughput", itemsPerSecond, AtomicLong::get)
+            .description("Rented items per second of the current or last run")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Set when {@code application.sharding.enabled} is true: the users of every shard are reminded.
+     */
+    @Autowired(required = false)
+    public void setShardMap(ShardMap shardMap) {
+        this.shardMap = shardMap;
+    }
+
+    @Scheduled(cron = "${application.due-reminder.cron:0 0 1 * * *}")
+    public void remindDueBooks() {
+        try {
+            remind(LocalDate.now());
+        } catch (RuntimeException e) {
+            // 다음 실행이 체크포인트부터 이어서 처리한다
+            log.error("Due reminders failed after rental {}, resuming with the next run", checkpoint.get(), e);
+        }
+    }
+
+    /**
+     * Remind the users of the books due from a day on, resuming the day's run if it was interrupted.
+     *
+     * @param day the day of the run.
+     * @return the number of users reminded by this call.
+     */
+    public long remind(LocalDate day) {
+        int shards = shardMap != null ? shardMap.getShardCount() : 1;
+        long reminded = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            reminded += ShardContext.callOn(shard, () -> remindOnShard(day));
+        }
+        return reminded;
+    }
+
+    private long remindOnShard(LocalDate day) {
+        MapSqlParameterSource run = new MapSqlParameterSource("day", Date.valueOf(day))
+            .addValue("now", Timestamp.from(Instant.now()));
+        try {
+            transaction.execute(status -> jdbcTemplate.update("INSERT INTO due_reminder_run " +
+                "(reminder_date, last_rental_id, reminded_users, started_at) VALUES (:day, 0, 0, :now)", run));
+        } catch (DuplicateKeyException e) {
+            // 중단된 실행이거나 다른 인스턴스가 시작한 실행
+            log.debug("Resuming the due reminders of {}", day);
+        }
+
+        long started = System.nanoTime();
+        long items = 0;
+        long users = 0;
+        Page page;
+        while ((page = pageTimer.record(() -> transaction.execute(status -> nextPage(day)))) != null) {
+            items += page.items;
+            users += page.users;
+            itemsPerSecond.set(items * 1_000_000_000L / Math.max(1, System.nanoTime() - started));
+        }
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        log.info("Due reminders of {}: {} items of {} users in {} ms, {} items/s", day, items, users, elapsedMs, itemsPerSecond.get());
+        return users;
+    }
+
+    /**
+     * Publish the reminders of the next page of the day's run.
+     *
+     * @return the page read, or {@code null} once the run is completed.
+     */
+    private Page nextPage(LocalDate day) {
+        MapSqlParameterSource params = new MapSqlParameterSource("day", Date.valueOf(day))
+            .addValue("now", Timestamp.from(Instant.now()));
+        List<Long> runs = jdbcTemplate.query(
+            "SELECT last_rental_id, completed_at FROM due_reminder_run WHERE reminder_date = :day FOR UPDATE", params,
+            (resultSet, rowNum) -> resultSet.getTimestamp("completed_at") != null ? null : resultSet.getLong("last_rental_id"));
+        if (runs.isEmpty() || runs.get(0) == null) {
+            return null;
+        }
+        int pageSize = Math.max(MIN_PAGE_SIZE, properties.getPageSize());
+        params.addValue("after", runs.get(0))
+            .addValue("until", Date.valueOf(day.plusDays(properties.getDaysAhead())))
+            .addValue("pageSize", pageSize);
+        List<Item> items = jdbcTemplate.query(DUE_ITEMS_PAGE, params,
+            (resultSet, rowNum) -> new Item(resultSet.getLong("rental_id"), resultSet.getLong("user_id"),
+                new DueReminderEvent.DueBook(resultSet.getLong("book_id"), resultSet.getString("book_title"),
+                    resultSet.getDate("due_date").toLocalDate())));
+        boolean lastPage = items.size() < pageSize;
+        if (!lastPage) {
+            // 페이지 끝에서 잘린 대여는 다음 페이지에서 처음부터 읽는다
+            long cut = items.get(items.size() - 1).rentalId;
+            List<Item> complete = new ArrayList<>();
+            items.stream().filter(item -> item.rentalId != cut).forEach(complete::add);
+            if (!complete.isEmpty()) {
+                items = complete;
+            }
+        }
+
+        Map<Long, DueReminderEvent> reminders = new LinkedHashMap<>();
+        for (Item item : items) {
+            reminders.computeIfAbsent(item.rentalId, rentalId -> new DueReminderEvent(item.userId, day, new ArrayList<>()))
+                .getBooks().add(item.book);
+        }
+        publish(new ArrayList<>(reminders.values()));
+
+        long lastRentalId = items.isEmpty() ? runs.get(0) : items.get(items.size() - 1).rentalId;
+        params.addValue("lastRentalId", lastRentalId).addValue("users", reminders.size());
+        jdbcTemplate.update("UPDATE due_reminder_run SET last_rental_id = :lastRentalId, reminded_users = reminded_users + :users" +
+            (lastPage ? ", completed_at = :now" : "") + " WHERE reminder_date = :day", params);
+        checkpoint.set(lastRentalId);
+        readItems.increment(items.size());
+        remindedUsers.increment(reminders.size());
+        return new Page(items.size(), reminders.size());
+    }
+
+    private void publish(List<DueReminderEvent> reminders) {
+        if (reminders.isEmpty()) {
+            return;
+        }
+        try {
+            rentalKafkaProducer.remindDue(reminders);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not publish " + reminders.size() + " due reminders", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while publishing due reminders", e);
+        }
+    }
+
+    private static class Item {
+
+        private final long rentalId;
+
+        private final long userId;
+
+        private final DueReminderEvent.DueBook book;
+
+        Item(long rentalId, long userId, DueReminderEvent.DueBook book) {
+            this.rentalId = rentalId;
+            this.userId = userId;
+            this.book = book;
+        }
+    }
+
+    private static class Page {
+
+        private final int items;
+
+        private final int users;
+
+        Page(int items, int users) {
+            this.items = items;
+            this.users = users;
+        }
+    }
+}
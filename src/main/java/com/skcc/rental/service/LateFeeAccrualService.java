@@ -0,0 +1,268 @@
+package com.skcc.rental.service;
+
+import com.skcc.rental.config.ApplicationProperties;
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.repository.shard.ShardContext;
+import com.skcc.rental.repository.shard.ShardMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Daily accrual of late fees: every overdue item is charged {@code feePerDay} for each day after its due date.
+ * <p>
+ * A day's run walks {@code overdue_item} by id in batches of {@code batchSize}. Each batch is one transaction of
+ * set-based statements: the rentals are charged for their items of the batch not yet charged for the day, these
+ * items are marked with the day, the rental views of the batch are dropped to be projected again on read, and the
+ * checkpoint of the run in {@code late_fee_accrual_run} moves past the batch.
+ * <p>
+ * A batch locks the row of its run, so the runs of several instances take turns instead of charging the same items,
+ * and a run that failed resumes from its checkpoint. The marks keep a day's charge idempotent even when a checkpoint
+ * was lost; a completed day is skipped.
+ * <p>
+ * The rental grid and the rental ledger keep late fees outside the {@code rental} table, where the charges would be
+ * overwritten or never seen, so the service refuses to start when either is enabled.
+ */
+@Service
+@ConditionalOnProperty(prefix = "application.late-fee-accrual", name = "enabled", havingValue = "true")
+public class LateFeeAccrualService {
+
+    private static final String CHARGEABLE = "id > :after AND id <= :upTo AND due_date < :day " +
+        "AND (late_fee_accrued_on IS NULL OR late_fee_accrued_on < :day)";
+
+    /**
+     * The last overdue item of the batch after {@code :after}.
+     */
+    public static final String BATCH_END = "SELECT MAX(id) FROM (SELECT id FROM overdue_item WHERE id > :after ORDER BY id LIMIT :batchSize) batch";
+
+    /**
+     * The rentals charged for their items of the batch, whose cached state is evicted once the batch committed.
+     */
+    public static final String CHARGED_RENTALS = "SELECT DISTINCT rental_id FROM overdue_item WHERE " + CHARGEABLE;
+
+    /**
+     * Charge the rentals for their items of the batch not yet charged for the day.
+     */
+    public static final String CHARGE_RENTALS = "UPDATE rental SET late_fee = late_fee + :feePerDay * " +
+        "(SELECT COUNT(*) FROM overdue_item WHERE overdue_item.rental_id = rental.id AND " + CHARGEABLE + ") " +
+        "WHERE id IN (SELECT rental_id FROM overdue_item WHERE " + CHARGEABLE + ")";
+
+    /**
+     * Drop the rental views of the charged rentals.
+     */
+    public static final String DROP_CHARGED_VIEWS = "DELETE FROM rental_view WHERE rental_id IN (SELECT rental_id FROM overdue_item WHERE " + CHARGEABLE + ")";
+
+    /**
+     * Mark the charged items with the day.
+     */
+    public static final String MARK_CHARGED = "UPDATE overdue_item SET late_fee_accrued_on = :day WHERE " + CHARGEABLE;
+
+    private final Logger log = LoggerFactory.getLogger(LateFeeAccrualService.class);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transaction;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    private final ApplicationProperties.LateFeeAccrual properties;
+
+    private final Timer batchTimer;
+
+    private final Counter chargedItems;
+
+    private final Counter completedDays;
+
+    private final AtomicLong checkpoint = new AtomicLong();
+
+    private final AtomicLong lastItemId = new AtomicLong();
+
+    private ShardMap shardMap;
+
+    public LateFeeAccrualService(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                 EntityManagerFactory entityManagerFactory, ApplicationProperties applicationProperties,
+                                 MeterRegistry meterRegistry) {
+        if (applicationProperties.getRentalGrid().isEnabled() || applicationProperties.getRentalLedger().isEnabled()) {
+            // 그리드의 write-behind 는 부과된 연체료를 덮어쓰고, 원장은 rental 테이블의 연체료를 읽지 않는다
+            throw new IllegalStateException("The late fee accrual charges the rental table, which holds no current late fees "
+                + "with the rental-grid or the rental-ledger enabled");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.entityManagerFactory = entityManagerFactory;
+        this.properties = applicationProperties.getLateFeeAccrual();
+        this.batchTimer = Timer.builder("rental.late-fee.accrual.batch")
+            .description("Time to charge one batch of overdue items")
+            .register(meterRegistry);
+        this.chargedItems = Counter.builder("rental.late-fee.accrual.items")
+            .description("Overdue items charged a daily late fee")
+            .register(meterRegistry);
+        this.completedDays = Counter.builder("rental.late-fee.accrual.days")
+            .description("Days whose late fees were completely charged")
+            .register(meterRegistry);
+        Gauge.builder("rental.late-fee.accrual.checkpoint", checkpoint, AtomicLong::get)
+            .description("Id of the last overdue item handled by the current or last run")
+            .register(meterRegistry);
+        Gauge.builder("rental.late-fee.accrual.progress", this, LateFeeAccrualService::progress)
+            .description("Share of the overdue item ids handled by the current or last run")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Set when {@code application.sharding.enabled} is true: the overdue items of every shard are charged.
+     */
+    @Autowired(required = false)
+    public void setShardMap(ShardMap shardMap) {
+        this.shardMap = shardMap;
+    }
+
+    /**
+     * Charge the days since the last completed run, up to today.
+     */
+    @Scheduled(cron = "${application.late-fee-accrual.cron:0 30 0 * * *}")
+    public void accrueDueFees() {
+        try {
+            accrueDueFees(LocalDate.now());
+        } catch (RuntimeException e) {
+            // 다음 실행이 체크포인트부터 이어서 처리한다
+            log.error("Late fee accrual failed at overdue item {}, resuming with the next run", checkpoint.get(), e);
+        }
+    }
+
+    void accrueDueFees(LocalDate today) {
+        int shards = shardMap != null ? shardMap.getShardCount() : 1;
+        for (int shard = 0; shard < shards; shard++) {
+            ShardContext.callOn(shard, () -> catchUp(today));
+        }
+    }
+
+    private long catchUp(LocalDate today) {
+        Date lastCompleted = jdbcTemplate.queryForObject(
+            "SELECT MAX(accrual_date) FROM late_fee_accrual_run WHERE completed_at IS NOT NULL", new MapSqlParameterSource(), Date.class);
+        LocalDate day = today.minusDays(Math.max(1, properties.getCatchUpDays()) - 1L);
+        if (lastCompleted != null && !lastCompleted.toLocalDate().isBefore(day)) {
+            day = lastCompleted.toLocalDate().plusDays(1);
+        }
+        long charged = 0;
+        for (; !day.isAfter(today); day = day.plusDays(1)) {
+            charged += accrue(day);
+        }
+        return charged;
+    }
+
+    /**
+     * Charge the overdue items of a day, resuming the day's run if it was interrupted.
+     *
+     * @param day the day charged, items due before it are overdue.
+     * @return the number of items charged by this call.
+     */
+    public long accrue(LocalDate day) {
+        MapSqlParameterSource run = new MapSqlParameterSource("day", Date.valueOf(day));
+        try {
+            transaction.execute(status -> jdbcTemplate.update("INSERT INTO late_fee_accrual_run " +
+                "(accrual_date, last_item_id, accrued_items, started_at) VALUES (:day, 0, 0, :now)",
+                run.addValue("now", Timestamp.from(Instant.now()))));
+        } catch (DuplicateKeyException e) {
+            // 중단된 실행이거나 다른 인스턴스가 시작한 실행
+            log.debug("Resuming the late fee accrual of {}", day);
+        }
+        Long resumed = jdbcTemplate.queryForObject("SELECT CASE WHEN completed_at IS NULL THEN last_item_id END " +
+            "FROM late_fee_accrual_run WHERE accrual_date = :day", run, Long.class);
+        if (resumed == null) {
+            log.debug("Late fees of {} were already charged", day);
+            return 0;
+        }
+        Long maxItemId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM overdue_item", run, Long.class);
+        lastItemId.set(maxItemId != null ? maxItemId : 0);
+        checkpoint.set(resumed);
+
+        long started = System.nanoTime();
+        long charged = 0;
+        Batch batch;
+        while ((batch = batchTimer.record(() -> transaction.execute(status -> accrueBatch(day)))) != null) {
+            charged += batch.charged;
+            chargedItems.increment(batch.charged);
+            // 일괄 변경된 연체료가 2차 캐시에 남지 않도록 부과된 대여만 비운다
+            Cache cache = entityManagerFactory.getCache();
+            batch.rentalIds.forEach(rentalId -> cache.evict(Rental.class, rentalId));
+            log.debug("Late fees of {} charged up to overdue item {}, {} items so far", day, checkpoint.get(), charged);
+        }
+        log.info("Late fees of {} charged to {} overdue items in {} ms", day, charged, (System.nanoTime() - started) / 1_000_000);
+        return charged;
+    }
+
+    /**
+     * Charge the next batch of the day's run.
+     *
+     * @return the charged items and rentals, or {@code null} once the run is completed.
+     */
+    private Batch accrueBatch(LocalDate day) {
+        MapSqlParameterSource params = new MapSqlParameterSource("day", Date.valueOf(day));
+        List<Long> runs = jdbcTemplate.query(
+            "SELECT last_item_id, completed_at FROM late_fee_accrual_run WHERE accrual_date = :day FOR UPDATE", params,
+            (resultSet, rowNum) -> resultSet.getTimestamp("completed_at") != null ? null : resultSet.getLong("last_item_id"));
+        if (runs.isEmpty() || runs.get(0) == null) {
+            return null;
+        }
+        long after = runs.get(0);
+        params.addValue("after", after).addValue("batchSize", Math.max(1, properties.getBatchSize()));
+        Long upTo = jdbcTemplate.queryForObject(BATCH_END, params, Long.class);
+        if (upTo == null) {
+            jdbcTemplate.update("UPDATE late_fee_accrual_run SET completed_at = :now WHERE accrual_date = :day",
+                params.addValue("now", Timestamp.from(Instant.now())));
+            completedDays.increment();
+            return null;
+        }
+        params.addValue("upTo", upTo).addValue("feePerDay", properties.getFeePerDay());
+
+        List<Long> rentalIds = jdbcTemplate.queryForList(CHARGED_RENTALS, params, Long.class);
+        jdbcTemplate.update(CHARGE_RENTALS, params);
+        jdbcTemplate.update(DROP_CHARGED_VIEWS, params);
+        int charged = jdbcTemplate.update(MARK_CHARGED, params);
+        jdbcTemplate.update("UPDATE late_fee_accrual_run SET last_item_id = :upTo, accrued_items = accrued_items + :charged " +
+            "WHERE accrual_date = :day", params.addValue("charged", charged));
+        checkpoint.set(upTo);
+        return new Batch(charged, rentalIds);
+    }
+
+    private double progress() {
+        long last = lastItemId.get();
+        return last == 0 ? 1 : Math.min(1, (double) checkpoint.get() / last);
+    }
+
+    /**
+     * The items charged by a batch and the rentals they belong to.
+     */
+    private static class Batch {
+
+        private final long charged;
+
+        private final List<Long> rentalIds;
+
+        Batch(long charged, List<Long> rentalIds) {
+            this.charged = charged;
+            this.rentalIds = rentalIds;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.skcc.rental.service;
+
+/**
+ * Published by the rental domain operations; the rental view of the user is refreshed once their transaction
+ * committed, see {@link RentalViewService}.
+ */
+public class RentalChangedEvent {
+
+    private final Long userId;
+
+    public RentalChangedEvent(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    @Override
+    public String toString() {
+        return "RentalChangedEvent{userId=" + userId + "}";
+    }
+}
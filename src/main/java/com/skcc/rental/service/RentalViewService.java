@@ -0,0 +1,361 @@
+package com.skcc.rental.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skcc.rental.config.ApplicationProperties;
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.domain.RentalView;
+import com.skcc.rental.repository.RentalRepository;
+import com.skcc.rental.repository.RentalViewRepository;
+import com.skcc.rental.repository.grid.RentalGrid;
+import com.skcc.rental.repository.ledger.RentalLedger;
+import com.skcc.rental.repository.shard.ShardKey;
+import com.skcc.rental.repository.shard.ShardMap;
+import com.skcc.rental.web.rest.dto.OverdueItemDTO;
+import com.skcc.rental.web.rest.dto.RentalDTO;
+import com.skcc.rental.web.rest.dto.RentalViewDTO;
+import com.skcc.rental.web.rest.dto.RentedItemDTO;
+import com.skcc.rental.web.rest.dto.ReturnedItemDTO;
+import com.skcc.rental.web.rest.mapper.OverdueItemMapper;
+import com.skcc.rental.web.rest.mapper.RentedItemMapper;
+import com.skcc.rental.web.rest.mapper.ReturnedItemMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains the {@code rental_view} read model: one row per user holding the rental and its items as a JSON
+ * document, so the rental reads are a single primary key or unique index lookup that never touches, nor locks, the
+ * rental and item tables.
+ * <p>
+ * The domain operations publish a {@link RentalChangedEvent}; once their transaction committed the user's view is
+ * refreshed on one of a few threads chosen by userId. Changes of a user whose refresh has not started yet are coalesced
+ * into that refresh. A refresh locks the view row before it re-reads the whole aggregate, so the refreshes of a user,
+ * on the read path or on other instances, are serialized and the last one to commit wrote the latest state; a view is
+ * at most one refresh behind. Views that do not exist yet, e.g. of rentals created from Kafka or before the view was
+ * introduced, are projected when first read.
+ */
+@Service
+public class RentalViewService {
+
+    private final Logger log = LoggerFactory.getLogger(RentalViewService.class);
+
+    private final ApplicationProperties.RentalView properties;
+
+    private final RentalRepository rentalRepository;
+
+    private final RentalViewRepository rentalViewRepository;
+
+    private final RentedItemMapper rentedItemMapper;
+
+    private final OverdueItemMapper overdueItemMapper;
+
+    private final ReturnedItemMapper returnedItemMapper;
+
+    private final ObjectMapper objectMapper;
+
+    private final TransactionTemplate readWrite;
+
+    private final TransactionTemplate readOnly;
+
+    private final ExecutorService[] refreshers;
+
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+    private final Timer refreshTimer;
+
+    private final Counter refreshFailures;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private RentalGrid rentalGrid;
+
+    private RentalLedger rentalLedger;
+
+    private ShardMap shardMap;
+
+    public RentalViewService(ApplicationProperties applicationProperties, RentalRepository rentalRepository,
+                             RentalViewRepository rentalViewRepository, RentedItemMapper rentedItemMapper,
+                             OverdueItemMapper overdueItemMapper, ReturnedItemMapper returnedItemMapper, ObjectMapper objectMapper,
+                             PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getRentalView();
+        this.rentalRepository = rentalRepository;
+        this.rentalViewRepository = rentalViewRepository;
+        this.rentedItemMapper = rentedItemMapper;
+        this.overdueItemMapper = overdueItemMapper;
+        this.returnedItemMapper = returnedItemMapper;
+        this.objectMapper = objectMapper;
+        this.readWrite = new TransactionTemplate(transactionManager);
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.refreshers = new ExecutorService[Math.max(1, properties.getRefreshThreads())];
+        for (int i = 0; i < refreshers.length; i++) {
+            String name = "rental-view-refresh-" + (i + 1);
+            refreshers[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.refreshTimer = Timer.builder("rental.view.refresh")
+            .description("Time to project a rental into its view")
+            .register(meterRegistry);
+        this.refreshFailures = Counter.builder("rental.view.refresh.failures")
+            .description("Refreshes of a rental view that failed, the view stays stale until the next change")
+            .register(meterRegistry);
+        Gauge.builder("rental.view.refresh.pending", pending, Set::size)
+            .description("Users whose rental view waits for a refresh")
+            .register(meterRegistry);
+        this.hits = Counter.builder("rental.view.reads").tag("result", "hit")
+            .description("Rental reads served from the view")
+            .register(meterRegistry);
+        this.misses = Counter.builder("rental.view.reads").tag("result", "miss")
+            .description("Rental reads whose view had to be projected first")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Set when {@code application.rental-grid.enabled} is true: views are projected from the Hazelcast-held
+     * aggregate, which is ahead of the database by the write-behind delay.
+     */
+    @Autowired(required = false)
+    public void setRentalGrid(RentalGrid rentalGrid) {
+        this.rentalGrid = rentalGrid;
+    }
+
+    /**
+     * Set when {@code application.rental-ledger.enabled} is true: views are projected from the rebuilt rentals.
+     */
+    @Autowired(required = false)
+    public void setRentalLedger(RentalLedger rentalLedger) {
+        this.rentalLedger = rentalLedger;
+    }
+
+    /**
+     * Set when {@code application.sharding.enabled} is true: a view is kept on the shard of its user.
+     */
+    @Autowired(required = false)
+    public void setShardMap(ShardMap shardMap) {
+        this.shardMap = shardMap;
+    }
+
+    /**
+     * Get the rental of a user with its items.
+     *
+     * @param userId the id of the user.
+     * @return the view, or empty if the user has no rental.
+     */
+    public Optional<RentalViewDTO> findByUserId(@ShardKey Long userId) {
+        if (!properties.isEnabled()) {
+            return readOnly.execute(status -> loadRental(userId).map(this::project));
+        }
+        Optional<RentalView> view = readOnly.execute(status -> rentalViewRepository.findById(userId));
+        if (view.isPresent()) {
+            hits.increment();
+            return Optional.of(read(view.get()));
+        }
+        misses.increment();
+        return refresh(userId).map(this::read);
+    }
+
+    /**
+     * Get one rental by id.
+     *
+     * @param rentalId the id of the rental.
+     * @return the rental, or empty if there is none.
+     */
+    public Optional<RentalDTO> findByRentalId(@ShardKey(ShardKey.Type.ENTITY_ID) Long rentalId) {
+        if (!properties.isEnabled()) {
+            return readOnly.execute(status -> rentalRepository.findById(rentalId).map(RentalViewService::fromRental));
+        }
+        Optional<RentalView> view = readOnly.execute(status -> rentalViewRepository.findOneByRentalId(rentalId));
+        if (view.isPresent()) {
+            hits.increment();
+            return view.map(RentalViewService::fromView);
+        }
+        misses.increment();
+        Optional<Long> userId = readOnly.execute(status -> rentalRepository.findById(rentalId).map(Rental::getUserId));
+        return userId.flatMap(this::refresh).map(RentalViewService::fromView);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRentalChanged(RentalChangedEvent event) {
+        Long userId = event.getUserId();
+        if (!properties.isEnabled() || userId == null || !pending.add(userId)) {
+            return;
+        }
+        try {
+            refreshers[Math.floorMod(userId.hashCode(), refreshers.length)].execute(() -> {
+                // 이후의 변경은 새 갱신을 예약한다
+                pending.remove(userId);
+                try {
+                    onShardOf(userId, () -> refresh(userId));
+                } catch (RuntimeException e) {
+                    refreshFailures.increment();
+                    log.warn("Could not refresh the rental view of user {}: {}", userId, e.getMessage(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down, the view is projected again on its next read
+            pending.remove(userId);
+        }
+    }
+
+    /**
+     * Project the rental of a user into its view, or delete the view if the user has no rental anymore.
+     *
+     * @param userId the id of the user.
+     * @return the view.
+     */
+    Optional<RentalView> refresh(Long userId) {
+        return refreshTimer.record(() -> {
+            Optional<RentalView> view = readWrite.execute(status -> store(userId, status, false));
+            // 잠글 행이 없어 동시에 만든 경우, 먼저 만든 행을 잠그고 다시 투영한다
+            return view != null ? view : readWrite.execute(status -> store(userId, status, true));
+        });
+    }
+
+    /**
+     * Write the projection of the rental of a user into its locked view row.
+     *
+     * @return the view, or {@code null} when another refresh created it concurrently and this one rolled back.
+     */
+    private Optional<RentalView> store(Long userId, TransactionStatus status, boolean retried) {
+        // 뷰 행을 잠근 뒤에 집합체를 읽으므로 나중에 커밋하는 갱신이 더 최신의 상태를 쓴다
+        Optional<RentalView> locked = rentalViewRepository.findOneForUpdate(userId);
+        Optional<RentalViewDTO> projected = loadRental(userId).map(this::project);
+        if (!projected.isPresent()) {
+            locked.ifPresent(rentalViewRepository::delete);
+            return Optional.empty();
+        }
+        RentalViewDTO dto = projected.get();
+        RentalView view = locked.orElseGet(RentalView::new);
+        view.setUserId(userId);
+        view.setRentalId(dto.getRentalId());
+        view.setRentalStatus(dto.getRentalStatus());
+        view.setLateFee(dto.getLateFee());
+        view.setRentedCount(dto.getRentedCount());
+        view.setOverdueCount(dto.getOverdueCount());
+        view.setReturnedCount(dto.getReturnedCount());
+        view.setUpdatedAt(dto.getUpdatedAt());
+        view.setDocument(write(dto));
+        try {
+            return Optional.of(rentalViewRepository.saveAndFlush(view));
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Rental view of user {} created concurrently", userId);
+            status.setRollbackOnly();
+            return retried ? Optional.of(view) : null;
+        }
+    }
+
+    private Optional<Rental> loadRental(Long userId) {
+        if (rentalGrid != null) {
+            return rentalGrid.get(userId);
+        }
+        return rentalLedger != null ? rentalLedger.load(userId) : rentalRepository.findByUserId(userId);
+    }
+
+    RentalViewDTO project(Rental rental) {
+        RentalViewDTO dto = new RentalViewDTO();
+        dto.setUserId(rental.getUserId());
+        dto.setRentalId(rental.getId());
+        dto.setRentalStatus(rental.getRentalStatus());
+        dto.setLateFee(rental.getLateFee());
+        dto.setRentedCount(rental.getRentedCount());
+        dto.setOverdueCount(rental.getOverdueCount());
+        dto.setReturnedCount(rental.getReturnedCount());
+        dto.setRentedItems(rental.getRentedItems().stream()
+            .map(rentedItemMapper::toDto)
+            .sorted(Comparator.comparing(RentedItemDTO::getDueDate, Comparator.nullsLast(Comparator.naturalOrder())))
+            .collect(Collectors.toList()));
+        dto.setOverdueItems(rental.getOverdueItems().stream()
+            .map(overdueItemMapper::toDto)
+            .sorted(Comparator.comparing(OverdueItemDTO::getDueDate, Comparator.nullsLast(Comparator.naturalOrder())))
+            .collect(Collectors.toList()));
+        dto.setReturnedItems(rental.getReturnedItems().stream()
+            .map(returnedItemMapper::toDto)
+            .sorted(Comparator.comparing(ReturnedItemDTO::getReturnedDate, Comparator.nullsLast(Comparator.<LocalDate>reverseOrder())))
+            .limit(properties.getMaxReturnedItems())
+            .collect(Collectors.toList()));
+        dto.setUpdatedAt(Instant.now());
+        return dto;
+    }
+
+    private <T> T onShardOf(Long userId, Supplier<T> task) {
+        return shardMap != null ? shardMap.callOnUser(userId, task) : task.get();
+    }
+
+    private RentalViewDTO read(RentalView view) {
+        try {
+            return objectMapper.readValue(view.getDocument(), RentalViewDTO.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unreadable rental view of user " + view.getUserId(), e);
+        }
+    }
+
+    private String write(RentalViewDTO dto) {
+        try {
+            return objectMapper.writeValueAsString(dto);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static RentalDTO fromView(RentalView view) {
+        RentalDTO dto = new RentalDTO();
+        dto.setId(view.getRentalId());
+        dto.setUserId(view.getUserId());
+        dto.setRentalStatus(view.getRentalStatus());
+        dto.setLateFee(view.getLateFee());
+        dto.setRentedCount(view.getRentedCount());
+        dto.setOverdueCount(view.getOverdueCount());
+        dto.setReturnedCount(view.getReturnedCount());
+        return dto;
+    }
+
+    private static RentalDTO fromRental(Rental rental) {
+        RentalDTO dto = new RentalDTO();
+        dto.setId(rental.getId());
+        dto.setUserId(rental.getUserId());
+        dto.setRentalStatus(rental.getRentalStatus());
+        dto.setLateFee(rental.getLateFee());
+        dto.setRentedCount(rental.getRentedCount());
+        dto.setOverdueCount(rental.getOverdueCount());
+        dto.setReturnedCount(rental.getReturnedCount());
+        return dto;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService refresher : refreshers) {
+            refresher.shutdown();
+        }
+    }
+}
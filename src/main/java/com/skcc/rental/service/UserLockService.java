@@ -0,0 +1,121 @@
+package com.skcc.rental.service;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.Member;
+import com.skcc.rental.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cluster-wide lock per user, held until the surrounding transaction completes.
+ * <p>
+ * Requests for the same user are serialized with a Hazelcast lock keyed by userId, so unrelated users never wait for
+ * each other. The lock is kept by the partition of the user: it is backed up and migrates with the partition, so a
+ * member leaving or the partitions being rebalanced never grant it twice. When the local member owns the partition
+ * the lock is taken without a network round trip. The lease time releases the lock of a member that dies or hangs
+ * while holding it.
+ */
+@Service
+public class UserLockService {
+
+    public static final String MAP_NAME = "rental-user-lock";
+
+    private final Logger log = LoggerFactory.getLogger(UserLockService.class);
+
+    private final HazelcastInstance hazelcastInstance;
+
+    private final IMap<Long, Boolean> locks;
+
+    private final ApplicationProperties.UserLock properties;
+
+    private final Timer localWait;
+
+    private final Timer remoteWait;
+
+    private final Counter timeouts;
+
+    public UserLockService(HazelcastInstance hazelcastInstance, ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this.hazelcastInstance = hazelcastInstance;
+        this.locks = hazelcastInstance.getMap(MAP_NAME);
+        this.properties = applicationProperties.getUserLock();
+        this.localWait = waitTimer(meterRegistry, "local");
+        this.remoteWait = waitTimer(meterRegistry, "remote");
+        this.timeouts = Counter.builder("rental.user.lock.timeouts")
+            .description("User lock requests that gave up after the wait timeout")
+            .register(meterRegistry);
+    }
+
+    private static Timer waitTimer(MeterRegistry meterRegistry, String partition) {
+        return Timer.builder("rental.user.lock.wait")
+            .description("Time spent waiting for a user lock")
+            .tag("partition", partition)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Lock the user until the current transaction commits or rolls back.
+     *
+     * @param userId the id of the user.
+     * @throws CannotAcquireLockException if the lock is not acquired within the wait timeout.
+     * @throws IllegalStateException if no transaction is active.
+     */
+    public void lock(Long userId) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("User lock requires an active transaction");
+        }
+        long start = System.nanoTime();
+        boolean local = isLocallyOwned(userId);
+        boolean acquired;
+        try {
+            acquired = locks.tryLock(userId, properties.getWaitTimeoutMs(), TimeUnit.MILLISECONDS,
+                properties.getLeaseTimeMs(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotAcquireLockException("Interrupted while locking user " + userId, e);
+        }
+        if (!acquired) {
+            throw timeout(userId, start, local);
+        }
+        (local ? localWait : remoteWait).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        // 락은 스레드가 소유하므로 트랜잭션을 연 스레드가 완료 시점에 푼다
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                unlock(userId);
+            }
+        });
+    }
+
+    private void unlock(Long userId) {
+        try {
+            locks.unlock(userId);
+        } catch (IllegalMonitorStateException e) {
+            // the lease expired and another request may already hold the lock
+            log.warn("Lock of user {} was released by its lease before the transaction completed", userId);
+        }
+    }
+
+    private boolean isLocallyOwned(Long userId) {
+        Member owner = hazelcastInstance.getPartitionService().getPartition(userId).getOwner();
+        return owner != null && owner.localMember();
+    }
+
+    private CannotAcquireLockException timeout(Long userId, long start, boolean local) {
+        (local ? localWait : remoteWait).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        timeouts.increment();
+        return new CannotAcquireLockException("Timed out waiting for the lock of user " + userId);
+    }
+}
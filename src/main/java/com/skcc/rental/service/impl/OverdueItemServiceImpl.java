@@ -1,18 +1,27 @@
 package com.skcc.rental.service.impl;
 
 import com.skcc.rental.service.OverdueItemService;
+import com.skcc.rental.domain.Rental;
 import com.skcc.rental.domain.OverdueItem;
+import com.skcc.rental.repository.RentalRepository;
 import com.skcc.rental.repository.OverdueItemRepository;
 import com.skcc.rental.web.rest.dto.OverdueItemDTO;
 import com.skcc.rental.web.rest.mapper.OverdueItemMapper;
+import com.skcc.rental.repository.shard.ShardKey;
+import com.skcc.rental.repository.shard.ShardedQueries;
+import com.skcc.rental.repository.ledger.LedgerModeException;
+import com.skcc.rental.repository.ledger.RentalLedger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Arrays;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -28,9 +37,33 @@ public class OverdueItemServiceImpl implements OverdueItemService {
 
     private final OverdueItemMapper overdueItemMapper;
 
-    public OverdueItemServiceImpl(OverdueItemRepository overdueItemRepository, OverdueItemMapper overdueItemMapper) {
+    private final RentalRepository rentalRepository;
+
+    private ShardedQueries shardedQueries;
+
+    private RentalLedger rentalLedger;
+
+    public OverdueItemServiceImpl(OverdueItemRepository overdueItemRepository, OverdueItemMapper overdueItemMapper, RentalRepository rentalRepository) {
         this.overdueItemRepository = overdueItemRepository;
         this.overdueItemMapper = overdueItemMapper;
+        this.rentalRepository = rentalRepository;
+    }
+
+    /**
+     * Set when {@code application.sharding.enabled} is true: the overdue items of all shards are listed.
+     */
+    @Autowired(required = false)
+    public void setShardedQueries(ShardedQueries shardedQueries) {
+        this.shardedQueries = shardedQueries;
+    }
+
+    /**
+     * Set when {@code application.rental-ledger.enabled} is true: the overdue items are part of the rentals in the ledger,
+     * so their table is neither read nor written.
+     */
+    @Autowired(required = false)
+    public void setRentalLedger(RentalLedger rentalLedger) {
+        this.rentalLedger = rentalLedger;
     }
 
     /**
@@ -40,10 +73,13 @@ public class OverdueItemServiceImpl implements OverdueItemService {
      * @return the persisted entity.
      */
     @Override
-    public OverdueItemDTO save(OverdueItemDTO overdueItemDTO) {
+    public OverdueItemDTO save(@ShardKey(value = ShardKey.Type.ENTITY_ID, property = "rentalId") OverdueItemDTO overdueItemDTO) {
         log.debug("Request to save OverdueItem : {}", overdueItemDTO);
+        checkTable();
+        Long previousRentalId = rentalIdOf(overdueItemDTO.getId());
         OverdueItem overdueItem = overdueItemMapper.toEntity(overdueItemDTO);
         overdueItem = overdueItemRepository.save(overdueItem);
+        recount(previousRentalId, overdueItemDTO.getRentalId());
         return overdueItemMapper.toDto(overdueItem);
     }
 
@@ -57,6 +93,11 @@ public class OverdueItemServiceImpl implements OverdueItemService {
     @Transactional(readOnly = true)
     public Page<OverdueItemDTO> findAll(Pageable pageable) {
         log.debug("Request to get all OverdueItems");
+        checkTable();
+        if (shardedQueries != null) {
+            return shardedQueries.findAll(pageable, overdueItemRepository::findAll)
+                .map(overdueItemMapper::toDto);
+        }
         return overdueItemRepository.findAll(pageable)
             .map(overdueItemMapper::toDto);
     }
@@ -69,8 +110,9 @@ public class OverdueItemServiceImpl implements OverdueItemService {
      */
     @Override
     @Transactional(readOnly = true)
-    public Optional<OverdueItemDTO> findOne(Long id) {
+    public Optional<OverdueItemDTO> findOne(@ShardKey(ShardKey.Type.ENTITY_ID) Long id) {
         log.debug("Request to get OverdueItem : {}", id);
+        checkTable();
         return overdueItemRepository.findById(id)
             .map(overdueItemMapper::toDto);
     }
@@ -81,8 +123,31 @@ public class OverdueItemServiceImpl implements OverdueItemService {
      * @param id the id of the entity.
      */
     @Override
-    public void delete(Long id) {
+    public void delete(@ShardKey(ShardKey.Type.ENTITY_ID) Long id) {
         log.debug("Request to delete OverdueItem : {}", id);
+        checkTable();
+        Long rentalId = rentalIdOf(id);
         overdueItemRepository.deleteById(id);
+        recount(rentalId);
+    }
+
+    private Long rentalIdOf(Long id) {
+        if (id == null) {
+            return null;
+        }
+        return overdueItemRepository.findById(id).map(OverdueItem::getRental).map(Rental::getId).orElse(null);
+    }
+
+    /**
+     * Keep the item counters of the rentals whose items were edited in step with the item table.
+     */
+    private void recount(Long... rentalIds) {
+        Arrays.stream(rentalIds).filter(Objects::nonNull).distinct().forEach(rentalRepository::recountItems);
+    }
+
+    private void checkTable() {
+        if (rentalLedger != null) {
+            throw new LedgerModeException("The overdue items are kept in the rental ledger, read them through /api/rentals/user/{userId}");
+        }
     }
 }
@@ -2,21 +2,35 @@ package com.skcc.rental.service.impl;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.skcc.rental.adaptor.BookClient;
+import com.skcc.rental.adaptor.PointAccrualCoalescer;
 import com.skcc.rental.adaptor.RentalKafkaProducer;
 import com.skcc.rental.adaptor.UserClient;
+import com.skcc.rental.config.ApplicationProperties;
 import com.skcc.rental.domain.OverdueItem;
+import com.skcc.rental.domain.RentUnavailableException;
 import com.skcc.rental.domain.RentedItem;
 import com.skcc.rental.domain.enumeration.RentalStatus;
 import com.skcc.rental.repository.RentedItemRepository;
 import com.skcc.rental.repository.ReturnedItemRepository;
+import com.skcc.rental.service.RentalChangedEvent;
 import com.skcc.rental.service.RentalService;
+import com.skcc.rental.service.UserLockService;
 import com.skcc.rental.domain.Rental;
 import com.skcc.rental.repository.RentalRepository;
+import com.skcc.rental.repository.grid.RentalEntryProcessor;
+import com.skcc.rental.repository.grid.RentalGrid;
+import com.skcc.rental.repository.ledger.LedgerModeException;
+import com.skcc.rental.repository.ledger.RentalLedger;
+import com.skcc.rental.repository.ledger.RentalLedgerEvent;
+import com.skcc.rental.repository.shard.ShardKey;
+import com.skcc.rental.repository.shard.ShardedQueries;
 import com.skcc.rental.web.rest.dto.BookInfo;
 import com.skcc.rental.web.rest.dto.LatefeeDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
@@ -49,16 +63,71 @@ public class RentalServiceImpl implements RentalService {
 
     private final UserClient userClient;
 
-    private int pointPerBooks = 30;
+    private final UserLockService userLockService;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final int pointPerBooks;
+
+    private static final int LATE_FEE_PER_OVERDUE = 30; //연체시 연체비 30포인트 누적
+
+    private RentalGrid rentalGrid;
+
+    private RentalLedger rentalLedger;
+
+    private PointAccrualCoalescer pointAccrualCoalescer;
+
+    private ShardedQueries shardedQueries;
 
     public RentalServiceImpl(RentalRepository rentalRepository, RentedItemRepository rentedItemRepository, ReturnedItemRepository returnedItemRepository,
-                             RentalKafkaProducer rentalKafkaProducer, BookClient bookClient, UserClient userClient) {
+                             RentalKafkaProducer rentalKafkaProducer, BookClient bookClient, UserClient userClient,
+                             UserLockService userLockService, ApplicationEventPublisher eventPublisher,
+                             ApplicationProperties applicationProperties) {
         this.rentalRepository = rentalRepository;
         this.rentedItemRepository = rentedItemRepository;
         this.returnedItemRepository = returnedItemRepository;
         this.rentalKafkaProducer = rentalKafkaProducer;
         this.bookClient = bookClient;
         this.userClient = userClient;
+        this.userLockService = userLockService;
+        this.eventPublisher = eventPublisher;
+        this.pointPerBooks = applicationProperties.getPoints().getPerBook();
+    }
+
+    /**
+     * Set when {@code application.rental-grid.enabled} is true: domain operations then run against the
+     * Hazelcast-held aggregate and reach the database through its write-behind map store.
+     */
+    @Autowired(required = false)
+    public void setRentalGrid(RentalGrid rentalGrid) {
+        this.rentalGrid = rentalGrid;
+    }
+
+    /**
+     * Set when {@code application.rental-ledger.enabled} is true: domain operations append events to the rental
+     * ledger instead of updating the rental and item tables, rentals are read from the ledger and saving or deleting
+     * a rental is refused.
+     */
+    @Autowired(required = false)
+    public void setRentalLedger(RentalLedger rentalLedger) {
+        this.rentalLedger = rentalLedger;
+    }
+
+    /**
+     * Set when {@code application.points.coalescing.enabled} is true: points of rentals are summed per user and
+     * published periodically instead of with each rental.
+     */
+    @Autowired(required = false)
+    public void setPointAccrualCoalescer(PointAccrualCoalescer pointAccrualCoalescer) {
+        this.pointAccrualCoalescer = pointAccrualCoalescer;
+    }
+
+    /**
+     * Set when {@code application.sharding.enabled} is true: the rentals of all shards are listed.
+     */
+    @Autowired(required = false)
+    public void setShardedQueries(ShardedQueries shardedQueries) {
+        this.shardedQueries = shardedQueries;
     }
 
     /**
@@ -68,9 +137,32 @@ public class RentalServiceImpl implements RentalService {
      * @return the persisted entity.
      */
     @Override
-    public Rental save(Rental rental) {
+    public Rental save(@ShardKey(property = "userId") Rental rental) {
         log.debug("Request to save Rental : {}", rental);
-        return rentalRepository.save(rental);
+        if (rentalLedger != null) {
+            // 원장을 쓰는 동안 테이블에 저장한 변경은 재구성에 반영되지 않는다
+            throw new LedgerModeException("Rentals are changed through their operations while the rental ledger is enabled");
+        }
+        if (rentalGrid != null) {
+            // 그리드에 쌓인 변경을 먼저 반영한 뒤 저장하고, 그리드의 사본은 다음 조회 때 다시 읽는다
+            rentalGrid.flush();
+            Rental result = saveWithLateFee(rental);
+            rentalGrid.evict(result.getUserId());
+            return changed(result);
+        }
+        return changed(saveWithLateFee(rental));
+    }
+
+    /**
+     * Save the rental as given, including the late fee that saving does not write for an existing rental.
+     */
+    private Rental saveWithLateFee(Rental rental) {
+        boolean inserted = rental.getId() == null;
+        Rental result = rentalRepository.save(rental);
+        if (!inserted) {
+            rentalRepository.replaceLateFee(result, rental.getLateFee());
+        }
+        return result;
     }
 
     /**
@@ -83,7 +175,9 @@ public class RentalServiceImpl implements RentalService {
     @Transactional(readOnly = true)
     public Page<Rental> findAll(Pageable pageable) {
         log.debug("Request to get all Rentals");
-        return rentalRepository.findAll(pageable);
+        Page<Rental> rentals = shardedQueries != null ? shardedQueries.findAll(pageable, rentalRepository::findAll)
+            : rentalRepository.findAll(pageable);
+        return rentalLedger != null ? rentals.map(this::fromLedger) : rentals;
     }
 
     /**
@@ -94,9 +188,17 @@ public class RentalServiceImpl implements RentalService {
      */
     @Override
     @Transactional(readOnly = true)
-    public Optional<Rental> findOne(Long id) {
+    public Optional<Rental> findOne(@ShardKey(ShardKey.Type.ENTITY_ID) Long id) {
         log.debug("Request to get Rental : {}", id);
-        return rentalRepository.findById(id);
+        Optional<Rental> rental = rentalRepository.findById(id);
+        return rentalLedger != null ? rental.map(this::fromLedger) : rental;
+    }
+
+    /**
+     * The current state of a rental listed from the table, which only holds its state at the start of its ledger.
+     */
+    private Rental fromLedger(Rental rental) {
+        return rentalLedger.load(rental.getUserId()).orElse(rental);
     }
 
     /**
@@ -105,80 +207,84 @@ public class RentalServiceImpl implements RentalService {
      * @param id the id of the entity.
      */
     @Override
-    public void delete(Long id) {
+    public void delete(@ShardKey(ShardKey.Type.ENTITY_ID) Long id) {
         log.debug("Request to delete Rental : {}", id);
+        if (rentalLedger != null) {
+            throw new LedgerModeException("Rentals are not deleted while the rental ledger is enabled");
+        }
+        if (rentalGrid != null) {
+            rentalGrid.flush();
+        }
+        rentalRepository.findById(id).ifPresent(rental -> {
+            if (rentalGrid != null) {
+                rentalGrid.evict(rental.getUserId());
+            }
+            changed(rental);
+        });
         rentalRepository.deleteById(id);
     }
 
     @Transactional
-    public Rental rentBooks(Long userId, List<BookInfo> books) {
+    public Rental rentBooks(@ShardKey Long userId, List<BookInfo> books) {
         log.debug("Rent Books by : ", userId, " Book List : ", books);
-        Rental rental = rentalRepository.findByUserId(userId).get();
-
-
-        try{
-            Boolean checkRentalStatus = rental.checkRentalAvailable(books.size());
-            if(checkRentalStatus){
-                List<RentedItem> rentedItems = books.stream()
-                    .map(bookInfo -> RentedItem.createRentedItem(bookInfo.getId(), bookInfo.getTitle(), LocalDate.now()))
-                    .collect(Collectors.toList());
-
-                for (RentedItem rentedItem : rentedItems) {
-                    rental = rental.rentBook(rentedItem);
-
+        lockUser(userId);
+        List<RentedItem> rentedItems = books.stream()
+            .map(bookInfo -> RentedItem.createRentedItem(bookInfo.getId(), bookInfo.getTitle(), LocalDate.now()))
+            .collect(Collectors.toList());
 
+        Rental rental;
+        if (rentalGrid != null) {
+            rental = rentalGrid.execute(userId, new RentalEntryProcessor.RentBooks(rentedItems));
+        } else if (rentalLedger != null) {
+            rental = rentalLedger.append(userId, new RentalLedgerEvent.BooksRented(rentedItems));
+        } else {
+            rental = rentalRepository.findByUserId(userId).orElse(null);
+            if (rental != null) {
+                try {
+                    // 대여 가능 여부는 카운터로 확인하고, 대여 목록을 읽지 않고 추가한다
+                    rental.checkRentalAvailable(rentedItems.size());
+                } catch (RentUnavailableException e) {
+                    log.debug("User {} cannot rent books: {}", userId, e.getMessage());
+                    return null;
                 }
-                rentalRepository.save(rental);
-
-                books.forEach(b -> {
-                    try {
-                        updateBookStatus(b.getId(), "UNAVAILABLE");
-                        updateBookCatalog(b.getId(), "RENT_BOOK");
-                    } catch (ExecutionException | InterruptedException | JsonProcessingException e) {
-                        e.printStackTrace();
-                    }
-                });
-
-                savePoints(userId,books.size());
-
+                rentalRepository.addRentedItems(rental, rentedItems);
             }
-
-        }catch (Exception e){
-            String errorMessage = e.getMessage();
-            System.out.println(errorMessage);
+        }
+        if (rental == null) {
             return null;
         }
-        return rental;
+
+        // 책 상태, 카탈로그, 포인트 이벤트를 함께 발행하고, 실패하면 트랜잭션을 롤백한다
+        RentalKafkaProducer.RentalEvents events = rentalKafkaProducer.events();
+        books.forEach(b -> events.updateBookStatus(b.getId(), "UNAVAILABLE").updateBookCatalogStatus(b.getId(), "RENT_BOOK"));
+        if (pointAccrualCoalescer != null) {
+            pointAccrualCoalescer.accrue(userId, books.size() * pointPerBooks);
+        } else {
+            events.savePoints(userId, books.size() * pointPerBooks);
+        }
+        publish(events, "rent events of user " + userId);
+        return changed(rental);
 
     }
 
 
     @Transactional
-    public Rental returnBooks(Long userId, List<Long> bookIds) {
+    public Rental returnBooks(@ShardKey Long userId, List<Long> bookIds) {
         log.debug("Return books by ", userId, " Return Book List : ", bookIds);
-        Rental rental = rentalRepository.findByUserId(userId).get();
-
-        List<RentedItem> rentedItems = rental.getRentedItems().stream()
-            .filter(rentedItem -> bookIds.contains(rentedItem.getBookId()))
-            .collect(Collectors.toList());
-        log.debug("bookIds contain :" , rentedItems.size());
-
-        if(rentedItems.size()>0) {
-            for (RentedItem rentedItem : rentedItems) {
-                rental= rental.returnbook(rentedItem);
-            }
-
-            rental = rentalRepository.save(rental);
+        lockUser(userId);
+        Rental rental;
+        if (rentalGrid != null) {
+            rental = rentalGrid.execute(userId, new RentalEntryProcessor.ReturnBooks(bookIds));
+        } else if (rentalLedger != null) {
+            rental = rentalLedger.append(userId, new RentalLedgerEvent.BooksReturned(bookIds, LocalDate.now()));
+        } else {
+            rental = rentalRepository.findByUserId(userId).get();
+            rental = rentalRepository.moveRentedToReturned(rental, bookIds, LocalDate.now()) > 0 ? rental : null;
+        }
 
-            bookIds.forEach(b -> {
-                try {
-                    updateBookStatus(b, "AVAILABLE");
-                    updateBookCatalog(b,"RETURN_BOOK");
-                } catch (ExecutionException | InterruptedException | JsonProcessingException e) {
-                    e.printStackTrace();
-                }
-            });
-            return rental;
+        if(rental != null) {
+            publishReturnEvents(bookIds);
+            return changed(rental);
         }else{
 
             return null;
@@ -193,24 +299,27 @@ public class RentalServiceImpl implements RentalService {
 
     @Override
     public void savePoints(Long userId, int bookCnt) throws ExecutionException, InterruptedException, JsonProcessingException{
+        if (pointAccrualCoalescer != null) {
+            pointAccrualCoalescer.accrue(userId, bookCnt * pointPerBooks);
+            return;
+        }
         rentalKafkaProducer.savePoints(userId, bookCnt*pointPerBooks);
     }
 
     @Override
-    public Rental overdueBooks(Long userId, List<Long> books) {
+    public Rental overdueBooks(@ShardKey Long userId, List<Long> books) {
+        lockUser(userId);
+        if (rentalGrid != null) {
+            return changed(rentalGrid.execute(userId, new RentalEntryProcessor.OverdueBooks(books, LATE_FEE_PER_OVERDUE)));
+        }
+        if (rentalLedger != null) {
+            return changed(rentalLedger.append(userId, new RentalLedgerEvent.BooksOverdue(books, LATE_FEE_PER_OVERDUE)));
+        }
         Rental rental = rentalRepository.findByUserId(userId).get();
-
-        List<RentedItem> rentedItems = rental.getRentedItems().stream()
-            .filter(rentedItem -> books.contains(rentedItem.getBookId()))
-            .collect(Collectors.toList());
-
-        if(rentedItems.size()>0){
-            for(RentedItem rentedItem: rentedItems) {
-                rental = rental.overdueBook(rentedItem);
-            }
-            rental.setRentalStatus(RentalStatus.RENT_UNAVAILABLE);
-            rental.setLateFee(rental.getLateFee()+30); //연체시 연체비 30포인트 누적
-            return rentalRepository.save(rental);
+        if(rentalRepository.moveRentedToOverdue(rental, books) > 0){
+            // 일괄 부과된 연체료를 덮어쓰지 않도록 DB의 연체료에 더한다
+            rentalRepository.chargeLateFee(rental.chargeOverdue(LATE_FEE_PER_OVERDUE), LATE_FEE_PER_OVERDUE);
+            return changed(rentalRepository.save(rental));
         }else{
             return null;
         }
@@ -220,38 +329,88 @@ public class RentalServiceImpl implements RentalService {
     }
 
     @Override
-    public Rental returnOverdueBooks(Long userid, List<Long> books) {
-        Rental rental = rentalRepository.findByUserId(userid).get();
+    public Rental returnOverdueBooks(@ShardKey Long userid, List<Long> books) {
+        lockUser(userid);
+        Rental rental;
+        if (rentalGrid != null) {
+            rental = rentalGrid.execute(userid, new RentalEntryProcessor.ReturnOverdueBooks(books));
+        } else if (rentalLedger != null) {
+            rental = rentalLedger.append(userid, new RentalLedgerEvent.OverdueBooksReturned(books, LocalDate.now()));
+            if (rental == null) {
+                // 반납할 연체 도서가 없으면 기록하지 않는다
+                rental = rentalLedger.load(userid).get();
+            }
+        } else {
+            rental = rentalRepository.findByUserId(userid).get();
+            rentalRepository.moveOverdueToReturned(rental, books, LocalDate.now());
+        }
 
-        List<OverdueItem> overdueItems = rental.getOverdueItems().stream()
-            .filter(overdueItem -> books.contains(overdueItem.getBookId()))
-            .collect(Collectors.toList());
+        publishReturnEvents(books); //책상태 업데이트
+        return changed(rental);
+    }
 
-        for(OverdueItem overdueItem:overdueItems){
-            rental = rental.returnOverdueBook(overdueItem);
-        }
+    private void publishReturnEvents(List<Long> bookIds) {
+        RentalKafkaProducer.RentalEvents events = rentalKafkaProducer.events();
+        bookIds.forEach(b -> events.updateBookStatus(b, "AVAILABLE").updateBookCatalogStatus(b, "RETURN_BOOK"));
+        publish(events, "return events of books " + bookIds);
+    }
 
-        books.forEach(b -> { //책상태 업데이트
-            try {
-                updateBookStatus(b, "AVAILABLE");
-                updateBookCatalog(b,"RETURN_BOOK");
-            } catch (ExecutionException | InterruptedException | JsonProcessingException e) {
-                e.printStackTrace();
-            }
-        });
-        return rentalRepository.save(rental);
+    /**
+     * Publish the events of an operation. A failure is rethrown unchecked, so the operation's database changes roll
+     * back instead of diverging from what the other services were told.
+     */
+    private void publish(RentalKafkaProducer.RentalEvents events, String description) {
+        try {
+            events.publish();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not publish the " + description, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while publishing the " + description, e);
+        }
     }
 
     @Override
-    public Rental releaseOverdue(Long userId) {
+    public Rental releaseOverdue(@ShardKey Long userId) {
+        lockUser(userId);
+        if (rentalGrid != null) {
+            return changed(rentalGrid.execute(userId, new RentalEntryProcessor.ReleaseOverdue()));
+        }
+        if (rentalLedger != null) {
+            return changed(rentalLedger.append(userId, new RentalLedgerEvent.OverdueReleased()));
+        }
         Rental rental = rentalRepository.findByUserId(userId).get();
-        rental=rental.releaseOverdue(rental.getLateFee());
-        return rentalRepository.save(rental);
+        // 조회한 연체료만 정산하고, 그 사이 일괄 부과된 연체료는 남긴다
+        int paid = rental.getLateFee();
+        rentalRepository.chargeLateFee(rental.releaseOverdue(paid), -paid);
+        return changed(rentalRepository.save(rental));
+    }
+
+    /**
+     * Serialize the operation with the other operations of the user. Not needed in grid mode, where the entry
+     * processors of a user already run one at a time on the member owning the user's partition.
+     */
+    private void lockUser(Long userId) {
+        if (rentalGrid == null) {
+            userLockService.lock(userId);
+        }
+    }
+
+    /**
+     * Have the rental view of the user refreshed once the transaction committed.
+     */
+    private Rental changed(Rental rental) {
+        if (rental != null) {
+            eventPublisher.publishEvent(new RentalChangedEvent(rental.getUserId()));
+        }
+        return rental;
     }
 
     @Override
-    public ResponseEntity payLatefee(Long userId) {
-        int latefee = rentalRepository.findByUserId(userId).get().getLateFee();
+    public ResponseEntity payLatefee(@ShardKey Long userId) {
+        Rental rental = rentalGrid != null ? rentalGrid.get(userId).get()
+            : rentalLedger != null ? rentalLedger.load(userId).get() : rentalRepository.findByUserId(userId).get();
+        int latefee = rental.getLateFee();
         LatefeeDTO latefeeDTO = new LatefeeDTO();
         latefeeDTO.setLatefee(latefee);
         latefeeDTO.setUserId(userId);
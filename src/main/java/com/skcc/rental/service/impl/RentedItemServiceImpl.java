@@ -1,18 +1,27 @@
 package com.skcc.rental.service.impl;
 
 import com.skcc.rental.service.RentedItemService;
+import com.skcc.rental.domain.Rental;
 import com.skcc.rental.domain.RentedItem;
+import com.skcc.rental.repository.RentalRepository;
 import com.skcc.rental.repository.RentedItemRepository;
 import com.skcc.rental.web.rest.dto.RentedItemDTO;
 import com.skcc.rental.web.rest.mapper.RentedItemMapper;
+import com.skcc.rental.repository.shard.ShardKey;
+import com.skcc.rental.repository.shard.ShardedQueries;
+import com.skcc.rental.repository.ledger.LedgerModeException;
+import com.skcc.rental.repository.ledger.RentalLedger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Arrays;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -28,9 +37,33 @@ public class RentedItemServiceImpl implements RentedItemService {
 
     private final RentedItemMapper rentedItemMapper;
 
-    public RentedItemServiceImpl(RentedItemRepository rentedItemRepository, RentedItemMapper rentedItemMapper) {
+    private final RentalRepository rentalRepository;
+
+    private ShardedQueries shardedQueries;
+
+    private RentalLedger rentalLedger;
+
+    public RentedItemServiceImpl(RentedItemRepository rentedItemRepository, RentedItemMapper rentedItemMapper, RentalRepository rentalRepository) {
         this.rentedItemRepository = rentedItemRepository;
         this.rentedItemMapper = rentedItemMapper;
+        this.rentalRepository = rentalRepository;
+    }
+
+    /**
+     * Set when {@code application.sharding.enabled} is true: the rented items of all shards are listed.
+     */
+    @Autowired(required = false)
+    public void setShardedQueries(ShardedQueries shardedQueries) {
+        this.shardedQueries = shardedQueries;
+    }
+
+    /**
+     * Set when {@code application.rental-ledger.enabled} is true: the rented items are part of the rentals in the ledger,
+     * so their table is neither read nor written.
+     */
+    @Autowired(required = false)
+    public void setRentalLedger(RentalLedger rentalLedger) {
+        this.rentalLedger = rentalLedger;
     }
 
     /**
@@ -40,10 +73,13 @@ public class RentedItemServiceImpl implements RentedItemService {
      * @return the persisted entity.
      */
     @Override
-    public RentedItemDTO save(RentedItemDTO rentedItemDTO) {
+    public RentedItemDTO save(@ShardKey(value = ShardKey.Type.ENTITY_ID, property = "rentalId") RentedItemDTO rentedItemDTO) {
         log.debug("Request to save RentedItem : {}", rentedItemDTO);
+        checkTable();
+        Long previousRentalId = rentalIdOf(rentedItemDTO.getId());
         RentedItem rentedItem = rentedItemMapper.toEntity(rentedItemDTO);
         rentedItem = rentedItemRepository.save(rentedItem);
+        recount(previousRentalId, rentedItemDTO.getRentalId());
         return rentedItemMapper.toDto(rentedItem);
     }
 
@@ -57,6 +93,11 @@ public class RentedItemServiceImpl implements RentedItemService {
     @Transactional(readOnly = true)
     public Page<RentedItemDTO> findAll(Pageable pageable) {
         log.debug("Request to get all RentedItems");
+        checkTable();
+        if (shardedQueries != null) {
+            return shardedQueries.findAll(pageable, rentedItemRepository::findAll)
+                .map(rentedItemMapper::toDto);
+        }
         return rentedItemRepository.findAll(pageable)
             .map(rentedItemMapper::toDto);
     }
@@ -69,8 +110,9 @@ public class RentedItemServiceImpl implements RentedItemService {
      */
     @Override
     @Transactional(readOnly = true)
-    public Optional<RentedItemDTO> findOne(Long id) {
+    public Optional<RentedItemDTO> findOne(@ShardKey(ShardKey.Type.ENTITY_ID) Long id) {
         log.debug("Request to get RentedItem : {}", id);
+        checkTable();
         return rentedItemRepository.findById(id)
             .map(rentedItemMapper::toDto);
     }
@@ -81,8 +123,31 @@ public class RentedItemServiceImpl implements RentedItemService {
      * @param id the id of the entity.
      */
     @Override
-    public void delete(Long id) {
+    public void delete(@ShardKey(ShardKey.Type.ENTITY_ID) Long id) {
         log.debug("Request to delete RentedItem : {}", id);
+        checkTable();
+        Long rentalId = rentalIdOf(id);
         rentedItemRepository.deleteById(id);
+        recount(rentalId);
+    }
+
+    private Long rentalIdOf(Long id) {
+        if (id == null) {
+            return null;
+        }
+        return rentedItemRepository.findById(id).map(RentedItem::getRental).map(Rental::getId).orElse(null);
+    }
+
+    /**
+     * Keep the item counters of the rentals whose items were edited in step with the item table.
+     */
+    private void recount(Long... rentalIds) {
+        Arrays.stream(rentalIds).filter(Objects::nonNull).distinct().forEach(rentalRepository::recountItems);
+    }
+
+    private void checkTable() {
+        if (rentalLedger != null) {
+            throw new LedgerModeException("The rented items are kept in the rental ledger, read them through /api/rentals/user/{userId}");
+        }
     }
 }
@@ -5,9 +5,14 @@ import com.skcc.rental.domain.ReturnedItem;
 import com.skcc.rental.repository.ReturnedItemRepository;
 import com.skcc.rental.web.rest.dto.ReturnedItemDTO;
 import com.skcc.rental.web.rest.mapper.ReturnedItemMapper;
+import com.skcc.rental.repository.shard.ShardKey;
+import com.skcc.rental.repository.shard.ShardedQueries;
+import com.skcc.rental.repository.ledger.LedgerModeException;
+import com.skcc.rental.repository.ledger.RentalLedger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -28,11 +33,32 @@ public class ReturnedItemServiceImpl implements ReturnedItemService {
 
     private final ReturnedItemMapper returnedItemMapper;
 
+    private ShardedQueries shardedQueries;
+
+    private RentalLedger rentalLedger;
+
     public ReturnedItemServiceImpl(ReturnedItemRepository returnedItemRepository, ReturnedItemMapper returnedItemMapper) {
         this.returnedItemRepository = returnedItemRepository;
         this.returnedItemMapper = returnedItemMapper;
     }
 
+    /**
+     * Set when {@code application.sharding.enabled} is true: the returned items of all shards are listed.
+     */
+    @Autowired(required = false)
+    public void setShardedQueries(ShardedQueries shardedQueries) {
+        this.shardedQueries = shardedQueries;
+    }
+
+    /**
+     * Set when {@code application.rental-ledger.enabled} is true: the returned items are part of the rentals in the ledger,
+     * so their table is neither read nor written.
+     */
+    @Autowired(required = false)
+    public void setRentalLedger(RentalLedger rentalLedger) {
+        this.rentalLedger = rentalLedger;
+    }
+
     /**
      * Save a returnedItem.
      *
@@ -40,8 +66,9 @@ public class ReturnedItemServiceImpl implements ReturnedItemService {
      * @return the persisted entity.
      */
     @Override
-    public ReturnedItemDTO save(ReturnedItemDTO returnedItemDTO) {
+    public ReturnedItemDTO save(@ShardKey(value = ShardKey.Type.ENTITY_ID, property = "rentalId") ReturnedItemDTO returnedItemDTO) {
         log.debug("Request to save ReturnedItem : {}", returnedItemDTO);
+        checkTable();
         ReturnedItem returnedItem = returnedItemMapper.toEntity(returnedItemDTO);
         returnedItem = returnedItemRepository.save(returnedItem);
         return returnedItemMapper.toDto(returnedItem);
@@ -57,6 +84,11 @@ public class ReturnedItemServiceImpl implements ReturnedItemService {
     @Transactional(readOnly = true)
     public Page<ReturnedItemDTO> findAll(Pageable pageable) {
         log.debug("Request to get all ReturnedItems");
+        checkTable();
+        if (shardedQueries != null) {
+            return shardedQueries.findAll(pageable, returnedItemRepository::findAll)
+                .map(returnedItemMapper::toDto);
+        }
         return returnedItemRepository.findAll(pageable)
             .map(returnedItemMapper::toDto);
     }
@@ -69,8 +101,9 @@ public class ReturnedItemServiceImpl implements ReturnedItemService {
      */
     @Override
     @Transactional(readOnly = true)
-    public Optional<ReturnedItemDTO> findOne(Long id) {
+    public Optional<ReturnedItemDTO> findOne(@ShardKey(ShardKey.Type.ENTITY_ID) Long id) {
         log.debug("Request to get ReturnedItem : {}", id);
+        checkTable();
         return returnedItemRepository.findById(id)
             .map(returnedItemMapper::toDto);
     }
@@ -81,8 +114,15 @@ public class ReturnedItemServiceImpl implements ReturnedItemService {
      * @param id the id of the entity.
      */
     @Override
-    public void delete(Long id) {
+    public void delete(@ShardKey(ShardKey.Type.ENTITY_ID) Long id) {
         log.debug("Request to delete ReturnedItem : {}", id);
+        checkTable();
         returnedItemRepository.deleteById(id);
     }
+
+    private void checkTable() {
+        if (rentalLedger != null) {
+            throw new LedgerModeException("The returned items are kept in the rental ledger, read them through /api/rentals/user/{userId}");
+        }
+    }
 }
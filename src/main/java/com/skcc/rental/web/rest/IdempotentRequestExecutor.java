@@ -0,0 +1,160 @@
+package com.skcc.rental.web.rest;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.skcc.rental.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Executes a request at most once per {@code Idempotency-Key}, cluster-wide.
+ * <p>
+ * The first request holding a key runs and its response is stored in a Hazelcast map for
+ * {@code application.idempotency.ttl-seconds}. Duplicates that arrive while it runs wait for it, and
+ * duplicates that arrive later get the stored response replayed with an {@code Idempotent-Replayed} header,
+ * without another transaction or Kafka event. Server errors are not stored, so a retry after one runs again.
+ * <p>
+ * A request outliving {@code application.idempotency.lease-time-ms} loses its lock to the lease, and a duplicate
+ * may then run too; such requests are counted by {@code rental.idempotency.lease.expired}.
+ */
+@Component
+public class IdempotentRequestExecutor {
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    public static final String MAP_NAME = "rental-idempotency";
+
+    private final Logger log = LoggerFactory.getLogger(IdempotentRequestExecutor.class);
+
+    private final IMap<String, StoredResponse> responses;
+
+    private final ApplicationProperties.Idempotency properties;
+
+    private final Counter executed;
+
+    private final Counter replayed;
+
+    private final Counter conflicts;
+
+    private final Counter leaseExpirations;
+
+    public IdempotentRequestExecutor(HazelcastInstance hazelcastInstance, ApplicationProperties applicationProperties,
+                                     MeterRegistry meterRegistry) {
+        this.responses = hazelcastInstance.getMap(MAP_NAME);
+        this.properties = applicationProperties.getIdempotency();
+        this.executed = requestCounter(meterRegistry, "executed");
+        this.replayed = requestCounter(meterRegistry, "replayed");
+        this.conflicts = requestCounter(meterRegistry, "conflict");
+        this.leaseExpirations = Counter.builder("rental.idempotency.lease.expired")
+            .description("Requests that outlived the lease of the lock on their Idempotency-Key")
+            .register(meterRegistry);
+    }
+
+    private static Counter requestCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("rental.idempotency.requests")
+            .description("Requests with an Idempotency-Key, by outcome")
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Run the request, or replay the response of an earlier request with the same key.
+     *
+     * @param operation the operation, keys are only unique per operation.
+     * @param idempotencyKey the {@code Idempotency-Key} header, or {@code null} to always run the request.
+     * @param fingerprint the request parameters; reusing a key with other parameters is rejected with {@code 422}.
+     * @param request the request.
+     * @return the response of the request.
+     */
+    public ResponseEntity<?> execute(String operation, String idempotencyKey, String fingerprint, Supplier<ResponseEntity<?>> request) {
+        if (idempotencyKey == null || !properties.isEnabled()) {
+            return request.get();
+        }
+        String key = operation + ":" + idempotencyKey;
+        StoredResponse stored = responses.get(key);
+        if (stored != null) {
+            return replay(key, stored, fingerprint);
+        }
+        boolean locked;
+        try {
+            locked = responses.tryLock(key, properties.getWaitTimeoutMs(), TimeUnit.MILLISECONDS,
+                properties.getLeaseTimeMs(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            locked = false;
+        }
+        if (!locked) {
+            conflicts.increment();
+            log.debug("Request {} is still in progress", key);
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        try {
+            // a duplicate that waited for the first request finds its response here
+            stored = responses.get(key);
+            if (stored != null) {
+                return replay(key, stored, fingerprint);
+            }
+            ResponseEntity<?> response = request.get();
+            executed.increment();
+            if (!response.getStatusCode().is5xxServerError()) {
+                responses.set(key, new StoredResponse(fingerprint, response.getStatusCodeValue(), response.getBody()),
+                    properties.getTtlSeconds(), TimeUnit.SECONDS);
+            }
+            return response;
+        } finally {
+            unlock(key);
+        }
+    }
+
+    /**
+     * Release the lock of the key, which the lease may already have released: the request itself completed, so
+     * its response is returned anyway.
+     */
+    private void unlock(String key) {
+        try {
+            responses.unlock(key);
+        } catch (IllegalMonitorStateException e) {
+            leaseExpirations.increment();
+            log.warn("Lock of request {} was released by its lease before the request completed", key);
+        }
+    }
+
+    private ResponseEntity<?> replay(String key, StoredResponse stored, String fingerprint) {
+        if (!stored.fingerprint.equals(fingerprint)) {
+            conflicts.increment();
+            log.debug("Idempotency key {} was reused with other parameters", key);
+            return ResponseEntity.unprocessableEntity().build();
+        }
+        replayed.increment();
+        log.debug("Replaying response of request {}", key);
+        return ResponseEntity.status(stored.status).header(REPLAYED_HEADER, "true").body(stored.body);
+    }
+
+    private static class StoredResponse implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String fingerprint;
+
+        private final int status;
+
+        private final Object body;
+
+        StoredResponse(String fingerprint, int status, Object body) {
+            this.fingerprint = fingerprint;
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
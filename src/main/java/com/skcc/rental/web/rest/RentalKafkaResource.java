@@ -1,24 +1,36 @@
 package com.skcc.rental.web.rest;
 
+import com.skcc.rental.config.ApplicationProperties;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.skcc.rental.config.KafkaProperties;
-import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
-import org.apache.kafka.clients.consumer.KafkaConsumer;
+import com.skcc.rental.web.rest.vm.BatchPublishResultVM;
+import com.skcc.rental.web.rest.vm.KafkaMessageVM;
+import io.micrometer.core.instrument.Metrics;
 import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.time.Duration;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/api/rental-kafka")
@@ -27,12 +39,28 @@ public class RentalKafkaResource {
     private final Logger log = LoggerFactory.getLogger(RentalKafkaResource.class);
 
     private final KafkaProperties kafkaProperties;
-    private KafkaProducer<String, String> producer;
-    private ExecutorService sseExecutorService = Executors.newCachedThreadPool();
+    private final Function<Map<String, Object>, Producer<String, String>> producerFactory;
+    private final Producer<String, String> producer;
+    private volatile Producer<String, String> batchProducer;
+    private final SseFanOutHub sseFanOutHub;
+    private final ObjectReader messageReader;
+
+    @Autowired
+    public RentalKafkaResource(KafkaProperties kafkaProperties, SseFanOutHub sseFanOutHub, ObjectMapper objectMapper) {
+        this(kafkaProperties, sseFanOutHub, objectMapper, KafkaProducer::new);
+    }
 
     public RentalKafkaResource(KafkaProperties kafkaProperties) {
+        this(kafkaProperties, new SseFanOutHub(new ApplicationProperties(), Metrics.globalRegistry), new ObjectMapper());
+    }
+
+    RentalKafkaResource(KafkaProperties kafkaProperties, SseFanOutHub sseFanOutHub, ObjectMapper objectMapper,
+                        Function<Map<String, Object>, Producer<String, String>> producerFactory) {
         this.kafkaProperties = kafkaProperties;
-        this.producer = new KafkaProducer<>(kafkaProperties.getProducerProps());
+        this.producerFactory = producerFactory;
+        this.producer = producerFactory.apply(kafkaProperties.getProducerProps());
+        this.sseFanOutHub = sseFanOutHub;
+        this.messageReader = objectMapper.readerFor(KafkaMessageVM.class);
     }
 
     @PostMapping("/publish/{topic}")
@@ -42,6 +70,91 @@ public class RentalKafkaResource {
         return new PublishResult(metadata.topic(), metadata.partition(), metadata.offset(), Instant.ofEpochMilli(metadata.timestamp()));
     }
 
+    /**
+     * Publish the messages of the request body, a JSON array or newline delimited JSON objects with a
+     * {@code key} and a {@code message}, without waiting for each acknowledgement.
+     * <p>
+     * The body is read while earlier messages are still being sent, until the keys and messages in flight reach
+     * {@code kafka.batch-publish.max-in-flight-bytes}; reading resumes as acknowledgements come in. The response is
+     * returned once every message is acknowledged or failed.
+     *
+     * @param summary only return the counts and offset ranges per partition, not the result of every message.
+     */
+    @PostMapping(path = "/publish/{topic}/batch", consumes = {"application/json", "application/x-ndjson"})
+    public BatchPublishResultVM publishBatch(@PathVariable String topic, @RequestParam(defaultValue = "false") boolean summary,
+                                             InputStream body) throws IOException, InterruptedException {
+        log.debug("REST request to send a batch to Kafka topic {}", topic);
+        KafkaProperties.BatchPublish settings = kafkaProperties.getBatchPublish();
+        Producer<String, String> batchProducer = batchProducer();
+        int maxInFlight = settings.getMaxInFlightBytes();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        BatchPublishResultVM result = new BatchPublishResultVM(summary);
+        long start = System.nanoTime();
+        int index = 0;
+        try (MappingIterator<KafkaMessageVM> messages = messageReader.readValues(body)) {
+            while (messages.hasNextValue()) {
+                KafkaMessageVM message = messages.nextValue();
+                int recordIndex = index++;
+                // a message larger than the limit waits for the others and is then sent alone
+                int size = Math.min(sizeOf(message), maxInFlight);
+                if (!inFlight.tryAcquire(size, settings.getTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                    throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Kafka did not acknowledge the batch within " + settings.getTimeoutMs() + " ms, " + recordIndex + " messages sent");
+                }
+                try {
+                    batchProducer.send(new ProducerRecord<>(topic, message.getKey(), message.getMessage()), (metadata, exception) -> {
+                        result.add(recordIndex, metadata, exception);
+                        inFlight.release(size);
+                    });
+                } catch (KafkaException e) {
+                    result.add(recordIndex, null, e);
+                    inFlight.release(size);
+                }
+            }
+        }
+        if (!inFlight.tryAcquire(maxInFlight, settings.getTimeoutMs(), TimeUnit.MILLISECONDS)) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                "Kafka did not acknowledge the batch within " + settings.getTimeoutMs() + " ms, " + index + " messages sent");
+        }
+        result.complete(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.debug("Sent a batch of {} messages to Kafka topic {}, {} failed", result.getCount(), topic, result.getFailed());
+        return result;
+    }
+
+    private static int sizeOf(KafkaMessageVM message) {
+        int size = 2;
+        if (message.getKey() != null) {
+            size += message.getKey().length() * 2;
+        }
+        if (message.getMessage() != null) {
+            size += message.getMessage().length() * 2;
+        }
+        return size;
+    }
+
+    private Producer<String, String> batchProducer() {
+        Producer<String, String> current = batchProducer;
+        if (current == null) {
+            synchronized (this) {
+                current = batchProducer;
+                if (current == null) {
+                    Map<String, Object> props = kafkaProperties.getProducerProps(kafkaProperties.getBatchPublish().getProducerProfile());
+                    props.put("client.id", "rental-batch-publish");
+                    batchProducer = current = producerFactory.apply(props);
+                }
+            }
+        }
+        return current;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        producer.close();
+        if (batchProducer != null) {
+            batchProducer.close();
+        }
+    }
+
     @GetMapping("/consume")
     public SseEmitter consume(@RequestParam("topic") List<String> topics, @RequestParam Map<String, String> consumerParams) {
         log.debug("REST request to consume records from Kafka topics {}", topics);
@@ -49,29 +162,7 @@ public class RentalKafkaResource {
         consumerProps.putAll(consumerParams);
         consumerProps.remove("topic");
 
-        SseEmitter emitter = new SseEmitter(0L);
-        sseExecutorService.execute(() -> {
-            KafkaConsumer<String, String> consumer = new KafkaConsumer<>(consumerProps);
-            emitter.onCompletion(consumer::close);
-            consumer.subscribe(topics);
-            boolean exitLoop = false;
-            while(!exitLoop) {
-                try {
-                    ConsumerRecords<String, String> records = consumer.poll(Duration.ofSeconds(5));
-                    for (ConsumerRecord<String, String> record : records) {
-                        emitter.send(record.value());
-                    }
-                    emitter.send(SseEmitter.event().comment(""));
-                } catch (Exception ex) {
-                    log.trace("Complete with error {}", ex.getMessage(), ex);
-                    emitter.completeWithError(ex);
-                    exitLoop = true;
-                }
-            }
-            consumer.close();
-            emitter.complete();
-        });
-        return emitter;
+        return sseFanOutHub.subscribe(topics, consumerProps);
     }
 
     private static class PublishResult {
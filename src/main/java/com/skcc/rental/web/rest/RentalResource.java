@@ -5,14 +5,17 @@ import com.skcc.rental.adaptor.BookClient;
 import com.skcc.rental.adaptor.UserClient;
 import com.skcc.rental.domain.Rental;
 import com.skcc.rental.service.RentalService;
+import com.skcc.rental.service.RentalViewService;
 import com.skcc.rental.web.rest.dto.BookInfo;
 import com.skcc.rental.web.rest.dto.LatefeeDTO;
 import com.skcc.rental.web.rest.errors.BadRequestAlertException;
 import com.skcc.rental.web.rest.dto.RentalDTO;
+import com.skcc.rental.web.rest.dto.RentalViewDTO;
 
 import com.skcc.rental.web.rest.mapper.RentalMapper;
 import io.github.jhipster.web.util.HeaderUtil;
 import io.github.jhipster.web.util.PaginationUtil;
+import io.github.jhipster.web.util.ResponseUtil;
 import org.apache.logging.log4j.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +32,7 @@ import org.springframework.web.bind.annotation.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -49,12 +53,17 @@ public class RentalResource {
 
     private final RentalService rentalService;
     private final RentalMapper rentalMapper;
+    private final IdempotentRequestExecutor idempotentRequestExecutor;
+    private final RentalViewService rentalViewService;
 
-    public RentalResource(RentalService rentalService, RentalMapper rentalMapper, BookClient bookClient, UserClient userClient) {
+    public RentalResource(RentalService rentalService, RentalMapper rentalMapper, BookClient bookClient, UserClient userClient,
+                          IdempotentRequestExecutor idempotentRequestExecutor, RentalViewService rentalViewService) {
         this.rentalService = rentalService;
         this.rentalMapper = rentalMapper;
         this.bookClient = bookClient;
         this.userClient = userClient;
+        this.idempotentRequestExecutor = idempotentRequestExecutor;
+        this.rentalViewService = rentalViewService;
     }
 
     /**
@@ -81,7 +90,7 @@ public class RentalResource {
      *
      * @param rentalDTO the rentalDTO to update.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated rentalDTO,
-     * or with status {@code 400 (Bad Request)} if the rentalDTO is not valid,
+     * or with status {@code 400 (Bad Request)} if the rentalDTO is not valid or assigns the rental to another user,
      * or with status {@code 500 (Internal Server Error)} if the rentalDTO couldn't be updated.
      * @throws URISyntaxException if the Location URI syntax is incorrect.
      */
@@ -91,6 +100,11 @@ public class RentalResource {
         if (rentalDTO.getId() == null) {
             throw new BadRequestAlertException("Invalid id", ENTITY_NAME, "idnull");
         }
+        rentalService.findOne(rentalDTO.getId())
+            .filter(rental -> !Objects.equals(rental.getUserId(), rentalDTO.getUserId()))
+            .ifPresent(rental -> {
+                throw new BadRequestAlertException("The user of a rental cannot change", ENTITY_NAME, "useridchanged");
+            });
         RentalDTO result = rentalMapper.toDto(rentalService.save(rentalMapper.toEntity(rentalDTO)));
         return ResponseEntity.ok()
             .headers(HeaderUtil.createEntityUpdateAlert(applicationName, true, ENTITY_NAME, rentalDTO.getId().toString()))
@@ -116,7 +130,7 @@ public class RentalResource {
     }
 
     /**
-     * {@code GET  /rentals/:id} : get the "id" rental.
+     * {@code GET  /rentals/:id} : get the "id" rental, read from the rental view.
      *
      * @param id the id of the rentalDTO to retrieve.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the rentalDTO, or with status {@code 404 (Not Found)}.
@@ -124,9 +138,20 @@ public class RentalResource {
     @GetMapping("/rentals/{id}")
     public ResponseEntity<RentalDTO> getRental(@PathVariable Long id) {
         log.debug("REST request to get Rental : {}", id);
+        return ResponseUtil.wrapOrNotFound(rentalViewService.findByRentalId(id));
+    }
 
-        RentalDTO rentalDTO = rentalMapper.toDto(rentalService.findOne(id).get());
-        return ResponseEntity.ok().body(rentalDTO);
+    /**
+     * {@code GET  /rentals/user/:userId} : get the rental of a user with its rented, overdue and recently returned
+     * items, read from the rental view.
+     *
+     * @param userId the id of the user.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the rentalViewDTO, or with status {@code 404 (Not Found)}.
+     */
+    @GetMapping("/rentals/user/{userId}")
+    public ResponseEntity<RentalViewDTO> getRentalOfUser(@PathVariable Long userId) {
+        log.debug("REST request to get the Rental of user : {}", userId);
+        return ResponseUtil.wrapOrNotFound(rentalViewService.findByUserId(userId));
     }
 
     /**
@@ -147,37 +172,43 @@ public class RentalResource {
     *
     * rent books
     *
+    * A retried request with the same {@code Idempotency-Key} gets the response of the first one.
     *
     **/
     @PostMapping("/rental/user/{userid}/books/{books}")
-    public ResponseEntity rentBooks(@PathVariable("userid")Long userid, @PathVariable("books") List<Long> books) throws InterruptedException, ExecutionException, JsonProcessingException {
+    public ResponseEntity rentBooks(@PathVariable("userid")Long userid, @PathVariable("books") List<Long> books,
+                                    @RequestHeader(value = IdempotentRequestExecutor.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) throws InterruptedException, ExecutionException, JsonProcessingException {
         log.debug("rent book request");
 
-        ResponseEntity<List<BookInfo>> bookInfoResult = bookClient.getBookInfo(books, userid); //feign - 책 정보 가져오기
-        List<BookInfo> bookInfoList = bookInfoResult.getBody();
-        log.debug("book info list",bookInfoList.toString());
+        return idempotentRequestExecutor.execute("rent:" + userid, idempotencyKey, books.toString(), () -> {
+            ResponseEntity<List<BookInfo>> bookInfoResult = bookClient.getBookInfo(books, userid); //feign - 책 정보 가져오기
+            List<BookInfo> bookInfoList = bookInfoResult.getBody();
+            log.debug("book info list",bookInfoList.toString());
 
-        Rental rental = rentalService.rentBooks(userid, bookInfoList);
+            Rental rental = rentalService.rentBooks(userid, bookInfoList);
 
-        //추후 Exception처리//
-        if(rental!=null) {
+            //추후 Exception처리//
+            if(rental!=null) {
 
-            RentalDTO result = rentalMapper.toDto(rental);
-            return ResponseEntity.ok().body(result);
-        }else {
+                RentalDTO result = rentalMapper.toDto(rental);
+                return ResponseEntity.ok().body(result);
+            }else {
 
-            log.debug("대여 할 수 없는 상태입니다.");
+                log.debug("대여 할 수 없는 상태입니다.");
 
-            return ResponseEntity.badRequest().build();
+                return ResponseEntity.badRequest().build();
 
-        }
+            }
+        });
 
     }
 
 
     @PutMapping("/return/user/{userid}/books/{books}")
-    public ResponseEntity returnBooks(@PathVariable("userid")Long userid, @PathVariable("books") List<Long> books) {
+    public ResponseEntity returnBooks(@PathVariable("userid")Long userid, @PathVariable("books") List<Long> books,
+                                      @RequestHeader(value = IdempotentRequestExecutor.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
 
+        return idempotentRequestExecutor.execute("return:" + userid, idempotencyKey, books.toString(), () -> {
 
             Rental rental=rentalService.returnBooks(userid,books);
             log.debug("returned books");
@@ -192,6 +223,7 @@ public class RentalResource {
                 log.debug("대여기록에 없는 도서입니다.");
                 return ResponseEntity.badRequest().build();
             }
+        });
 
     }
 
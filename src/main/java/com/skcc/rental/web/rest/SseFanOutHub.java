@@ -0,0 +1,371 @@
+package com.skcc.rental.web.rest;
+
+import com.skcc.rental.config.ApplicationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.errors.WakeupException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Fans the records of Kafka topics out to SSE clients.
+ * <p>
+ * Clients asking for the same topics with the same consumer properties share one consumer, which hands every
+ * record to each client's bounded buffer without waiting for it; a small pool of sender threads writes the
+ * buffers to the streams. A client whose buffer is full is disconnected, or with {@code DROP_OLDEST} loses its
+ * oldest buffered record, so a slow client never holds up the others. A consumer is closed with its last client.
+ * A periodic keep-alive comment detects clients that went away without closing their stream.
+ * <p>
+ * A write to a stalled connection blocks its sender until the container gives up on it. The consumer checks its
+ * clients after every poll: one whose write has been blocked longer than {@code send-timeout-ms} is disconnected and
+ * the pool gets an extra sender until that write returns, so the healthy clients keep their senders.
+ */
+@Component
+public class SseFanOutHub {
+
+    private static final Object HEARTBEAT = new Object();
+
+    private static final long IDLE = Long.MIN_VALUE;
+
+    private static final long STALLED = Long.MAX_VALUE;
+
+    private final Logger log = LoggerFactory.getLogger(SseFanOutHub.class);
+
+    private final ApplicationProperties.Sse properties;
+
+    // guarded by this
+    private final Map<List<Object>, Stream> streams = new HashMap<>();
+
+    private final Function<Map<String, Object>, Consumer<String, String>> consumerFactory;
+
+    // resized under its own lock
+    private final ThreadPoolExecutor senders;
+
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    private final Counter droppedRecords;
+
+    private final Counter droppedSubscribers;
+
+    @Autowired
+    public SseFanOutHub(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
+        this(applicationProperties, KafkaConsumer::new, meterRegistry);
+    }
+
+    SseFanOutHub(ApplicationProperties applicationProperties, Function<Map<String, Object>, Consumer<String, String>> consumerFactory,
+                 MeterRegistry meterRegistry) {
+        this.properties = applicationProperties.getSse();
+        this.consumerFactory = consumerFactory;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(properties.getSenderThreads(), properties.getSenderThreads(),
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "rental-sse-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("rental.sse.subscribers", subscriberCount, AtomicInteger::get)
+            .description("Connected SSE clients")
+            .register(meterRegistry);
+        Gauge.builder("rental.sse.consumers", this, SseFanOutHub::streamCount)
+            .description("Kafka consumers shared by the SSE clients")
+            .register(meterRegistry);
+        this.droppedRecords = Counter.builder("rental.sse.dropped.records")
+            .description("Records discarded from the buffer of a slow SSE client")
+            .register(meterRegistry);
+        this.droppedSubscribers = Counter.builder("rental.sse.dropped.subscribers")
+            .description("SSE clients disconnected because they did not keep up")
+            .register(meterRegistry);
+    }
+
+    /**
+     * @param consumerProps the properties of the consumer, clients with equal topics and properties share it.
+     * @return a stream of the values of the topics' records.
+     */
+    public SseEmitter subscribe(List<String> topics, Map<String, Object> consumerProps) {
+        return subscribe(topics, consumerProps, new SseEmitter(0L));
+    }
+
+    SseEmitter subscribe(List<String> topics, Map<String, Object> consumerProps, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(emitter);
+        List<Object> key = Arrays.asList(new TreeSet<>(topics), new TreeMap<>(consumerProps));
+        Stream stream;
+        synchronized (this) {
+            stream = streams.computeIfAbsent(key, k -> new Stream(k, new ArrayList<>(topics), consumerProps));
+            subscriber.stream = stream;
+            stream.subscribers.add(subscriber);
+        }
+        subscriberCount.incrementAndGet();
+        emitter.onCompletion(subscriber::unsubscribe);
+        emitter.onTimeout(subscriber::unsubscribe);
+        emitter.onError(error -> subscriber.unsubscribe());
+        return emitter;
+    }
+
+    private synchronized int streamCount() {
+        return streams.size();
+    }
+
+    private synchronized void remove(Subscriber subscriber) {
+        Stream stream = subscriber.stream;
+        stream.subscribers.remove(subscriber);
+        if (stream.subscribers.isEmpty()) {
+            discard(stream);
+            stream.close();
+        }
+    }
+
+    /**
+     * New clients get a new consumer instead of joining this one.
+     */
+    private synchronized void discard(Stream stream) {
+        streams.remove(stream.key, stream);
+    }
+
+    /**
+     * Replace the sender blocked by a stalled client.
+     */
+    private void addSender() {
+        synchronized (senders) {
+            senders.setMaximumPoolSize(senders.getMaximumPoolSize() + 1);
+            senders.setCorePoolSize(senders.getCorePoolSize() + 1);
+        }
+    }
+
+    private void removeSender() {
+        synchronized (senders) {
+            senders.setCorePoolSize(senders.getCorePoolSize() - 1);
+            senders.setMaximumPoolSize(senders.getMaximumPoolSize() - 1);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<Stream> open;
+        synchronized (this) {
+            open = new ArrayList<>(streams.values());
+            streams.clear();
+        }
+        open.forEach(stream -> {
+            stream.close();
+            stream.subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        });
+        senders.shutdown();
+    }
+
+    /**
+     * One consumer and the clients it feeds.
+     */
+    private class Stream implements Runnable {
+
+        private final List<Object> key;
+
+        private final List<String> topics;
+
+        private final Consumer<String, String> consumer;
+
+        private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+
+        private volatile boolean closed;
+
+        Stream(List<Object> key, List<String> topics, Map<String, Object> consumerProps) {
+            this.key = key;
+            this.topics = topics;
+            this.consumer = consumerFactory.apply(consumerProps);
+            Thread thread = new Thread(this, "rental-sse-consumer-" + String.join(",", topics));
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                consumer.subscribe(topics);
+                while (!closed) {
+                    ConsumerRecords<String, String> records = consumer.poll(Duration.ofSeconds(properties.getHeartbeatSeconds()));
+                    for (ConsumerRecord<String, String> record : records) {
+                        subscribers.forEach(subscriber -> subscriber.offer(record.value()));
+                    }
+                    subscribers.forEach(Subscriber::heartbeat);
+                    subscribers.forEach(Subscriber::checkSend);
+                }
+            } catch (WakeupException e) {
+                // closed
+            } catch (Exception e) {
+                log.warn("SSE consumer of {} failed: {}", topics, e.getMessage(), e);
+                discard(this);
+                subscribers.forEach(subscriber -> subscriber.emitter.completeWithError(e));
+            } finally {
+                consumer.close();
+            }
+        }
+
+        void close() {
+            closed = true;
+            consumer.wakeup();
+        }
+    }
+
+    /**
+     * A client, its buffer, whether a sender is draining the buffer and since when it is writing to the stream.
+     */
+    private class Subscriber {
+
+        private final SseEmitter emitter;
+
+        private final BlockingQueue<Object> buffer = new ArrayBlockingQueue<>(properties.getBufferSize());
+
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private final AtomicBoolean subscribed = new AtomicBoolean(true);
+
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        // the start of the current write, IDLE between writes or STALLED once the client was dropped for it
+        private final AtomicLong sendingSince = new AtomicLong(IDLE);
+
+        private Stream stream;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void offer(Object message) {
+            if (!buffer.offer(message)) {
+                if (properties.getSlowSubscriberPolicy() == ApplicationProperties.Sse.SlowSubscriberPolicy.DISCONNECT) {
+                    log.debug("Disconnecting slow SSE client of {}", stream.topics);
+                    droppedSubscribers.increment();
+                    unsubscribe();
+                    if (!draining.get()) {
+                        // the emitter is locked by a write in progress, its sender completes it
+                        complete(null);
+                    }
+                    return;
+                }
+                while (!buffer.offer(message)) {
+                    if (buffer.poll() != null) {
+                        droppedRecords.increment();
+                    }
+                }
+            }
+            drain();
+        }
+
+        void heartbeat() {
+            if (buffer.isEmpty()) {
+                offer(HEARTBEAT);
+            }
+        }
+
+        private void drain() {
+            if (subscribed.get() && draining.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::send);
+                } catch (RejectedExecutionException e) {
+                    // shutting down
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void send() {
+            boolean stalled = false;
+            try {
+                Object message;
+                while (!stalled && subscribed.get() && (message = buffer.poll()) != null) {
+                    long start = System.nanoTime();
+                    sendingSince.set(start);
+                    try {
+                        if (message == HEARTBEAT) {
+                            emitter.send(SseEmitter.event().comment(""));
+                        } else {
+                            emitter.send(message);
+                        }
+                    } finally {
+                        stalled = !sendingSince.compareAndSet(start, IDLE);
+                    }
+                }
+                if (!subscribed.get()) {
+                    complete(null);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // client went away
+                log.trace("SSE client of {} gone: {}", stream.topics, e.getMessage());
+                unsubscribe();
+                complete(e);
+            } finally {
+                if (stalled) {
+                    removeSender();
+                }
+                draining.set(false);
+            }
+            if (!buffer.isEmpty()) {
+                drain();
+            }
+        }
+
+        /**
+         * Disconnect the client if its current write has been blocked longer than the send timeout.
+         */
+        void checkSend() {
+            long start = sendingSince.get();
+            if (start != IDLE && start != STALLED
+                && System.nanoTime() - start > TimeUnit.MILLISECONDS.toNanos(properties.getSendTimeoutMs())
+                && sendingSince.compareAndSet(start, STALLED)) {
+                log.debug("Disconnecting stalled SSE client of {}", stream.topics);
+                droppedSubscribers.increment();
+                // the blocked sender completes the client and leaves the pool when its write returns
+                addSender();
+                unsubscribe();
+            }
+        }
+
+        private void complete(Exception error) {
+            if (completed.compareAndSet(false, true)) {
+                if (error == null) {
+                    emitter.complete();
+                } else {
+                    emitter.completeWithError(error);
+                }
+            }
+        }
+
+        void unsubscribe() {
+            if (subscribed.compareAndSet(true, false)) {
+                subscriberCount.decrementAndGet();
+                buffer.clear();
+                remove(this);
+            }
+        }
+    }
+}
@@ -25,6 +25,12 @@ public class RentalDTO implements Serializable {
 
     private int lateFee;
 
+    private int rentedCount;
+
+    private int overdueCount;
+
+    private int returnedCount;
+
 
 
 
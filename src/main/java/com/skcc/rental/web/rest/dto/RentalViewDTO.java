@@ -0,0 +1,50 @@
+package com.skcc.rental.web.rest.dto;
+
+import com.skcc.rental.domain.enumeration.RentalStatus;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A DTO for the {@link com.skcc.rental.domain.RentalView} read model: a user's rental with its items.
+ */
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+public class RentalViewDTO implements Serializable {
+
+    private Long userId;
+
+    private Long rentalId;
+
+    private RentalStatus rentalStatus;
+
+    private int lateFee;
+
+    private int rentedCount;
+
+    private int overdueCount;
+
+    /**
+     * All the returned items, of which {@code returnedItems} holds the most recent.
+     */
+    private int returnedCount;
+
+    private List<RentedItemDTO> rentedItems = new ArrayList<>();
+
+    private List<OverdueItemDTO> overdueItems = new ArrayList<>();
+
+    /**
+     * The most recently returned items, newest first.
+     */
+    private List<ReturnedItemDTO> returnedItems = new ArrayList<>();
+
+    private Instant updatedAt;
+}
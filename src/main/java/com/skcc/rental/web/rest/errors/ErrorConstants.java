@@ -5,6 +5,7 @@ import java.net.URI;
 public final class ErrorConstants {
 
     public static final String ERR_CONCURRENCY_FAILURE = "error.concurrencyFailure";
+    public static final String ERR_LEDGER_MODE = "error.ledgerMode";
     public static final String ERR_VALIDATION = "error.validation";
     public static final String PROBLEM_BASE_URL = "https://www.jhipster.tech/problem";
     public static final URI DEFAULT_TYPE = URI.create(PROBLEM_BASE_URL + "/problem-with-message");
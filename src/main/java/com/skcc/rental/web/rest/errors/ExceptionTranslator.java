@@ -1,5 +1,6 @@
 package com.skcc.rental.web.rest.errors;
 
+import com.skcc.rental.repository.ledger.LedgerModeException;
 import io.github.jhipster.web.util.HeaderUtil;
 
 import org.springframework.beans.factory.annotation.Value;
@@ -104,4 +105,14 @@ public class ExceptionTranslator implements ProblemHandling, SecurityAdviceTrait
             .build();
         return create(ex, problem, request);
     }
+
+    @ExceptionHandler
+    public ResponseEntity<Problem> handleLedgerMode(LedgerModeException ex, NativeWebRequest request) {
+        Problem problem = Problem.builder()
+            .withStatus(Status.CONFLICT)
+            .withDetail(ex.getMessage())
+            .with(MESSAGE_KEY, ErrorConstants.ERR_LEDGER_MODE)
+            .build();
+        return create(ex, problem, request);
+    }
 }
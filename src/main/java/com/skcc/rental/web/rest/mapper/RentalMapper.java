@@ -19,6 +19,9 @@ public interface RentalMapper extends EntityMapper<RentalDTO, Rental> {
     @Mapping(target = "removeOverdueItem", ignore = true)
     @Mapping(target = "returnedItems", ignore = true)
     @Mapping(target = "removeReturnedItem", ignore = true)
+    @Mapping(target = "rentedCount", ignore = true)
+    @Mapping(target = "overdueCount", ignore = true)
+    @Mapping(target = "returnedCount", ignore = true)
     Rental toEntity(RentalDTO rentalDTO);
 
     default Rental fromId(Long id) {
@@ -0,0 +1,92 @@
+package com.skcc.rental.web.rest.vm;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * View Model of the outcome of a batch published to Kafka: counts and offset ranges per partition, and unless only
+ * a summary was asked for, the partition and offset or error of every record in request order.
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchPublishResultVM {
+
+    private int count;
+
+    private int failed;
+
+    private long elapsedMs;
+
+    private final Map<Integer, PartitionSummary> partitions = new TreeMap<>();
+
+    private final List<RecordResult> records;
+
+    public BatchPublishResultVM(boolean summary) {
+        this.records = summary ? null : new ArrayList<>();
+    }
+
+    public synchronized void add(int index, RecordMetadata metadata, Exception exception) {
+        count++;
+        if (exception != null) {
+            failed++;
+            if (records != null) {
+                records.add(new RecordResult(index, null, null, exception.getMessage()));
+            }
+            return;
+        }
+        partitions.computeIfAbsent(metadata.partition(), partition -> new PartitionSummary()).add(metadata.offset());
+        if (records != null) {
+            records.add(new RecordResult(index, metadata.partition(), metadata.offset(), null));
+        }
+    }
+
+    public synchronized void complete(long elapsedMs) {
+        this.elapsedMs = elapsedMs;
+        if (records != null) {
+            records.sort(Comparator.comparingInt(RecordResult::getIndex));
+        }
+    }
+
+    @Getter
+    public static class PartitionSummary {
+
+        private int count;
+
+        private long firstOffset = Long.MAX_VALUE;
+
+        private long lastOffset = -1;
+
+        void add(long offset) {
+            count++;
+            firstOffset = Math.min(firstOffset, offset);
+            lastOffset = Math.max(lastOffset, offset);
+        }
+    }
+
+    @Getter
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class RecordResult {
+
+        private final int index;
+
+        private final Integer partition;
+
+        private final Long offset;
+
+        private final String error;
+
+        RecordResult(int index, Integer partition, Long offset, String error) {
+            this.index = index;
+            this.partition = partition;
+            this.offset = offset;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.skcc.rental.web.rest.vm;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * View Model of one keyed message of a batch published to Kafka.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class KafkaMessageVM {
+
+    private String key;
+
+    private String message;
+}
@@ -0,0 +1,57 @@
+package com.skcc.rental.adaptor;
+
+import com.skcc.rental.config.KafkaProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link DatabaseBackpressure}.
+ */
+public class DatabaseBackpressureTest {
+
+    private final HikariDataSource dataSource = mock(HikariDataSource.class);
+
+    private final HikariPoolMXBean pool = mock(HikariPoolMXBean.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private DatabaseBackpressure backpressure;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        when(dataSource.isWrapperFor(HikariDataSource.class)).thenReturn(true);
+        when(dataSource.unwrap(HikariDataSource.class)).thenReturn(dataSource);
+        when(dataSource.getHikariPoolMXBean()).thenReturn(pool);
+        when(dataSource.getMaximumPoolSize()).thenReturn(10);
+        backpressure = new DatabaseBackpressure(dataSource, new KafkaProperties(), meterRegistry);
+    }
+
+    @Test
+    public void pausesAtPauseUsageAndResumesBelowResumeUsage() {
+        assertThat(saturated(8, 0)).isFalse();
+        assertThat(saturated(9, 0)).isTrue();
+        assertThat(saturated(6, 0)).isTrue();
+        assertThat(saturated(4, 0)).isFalse();
+        assertThat(meterRegistry.get("rental.kafka.consumer.backpressure.pauses").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void threadsWaitingForAConnectionPause() {
+        assertThat(saturated(3, 2)).isTrue();
+        assertThat(meterRegistry.get("rental.kafka.consumer.backpressure.paused").gauge().value()).isEqualTo(1);
+        assertThat(saturated(3, 0)).isFalse();
+    }
+
+    private boolean saturated(int active, int waiting) {
+        when(pool.getActiveConnections()).thenReturn(active);
+        when(pool.getThreadsAwaitingConnection()).thenReturn(waiting);
+        return backpressure.isSaturated();
+    }
+}
@@ -0,0 +1,57 @@
+package com.skcc.rental.adaptor;
+
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link EntityIdPartitioner}.
+ */
+public class EntityIdPartitionerTest {
+
+    private static final String TOPIC = "topic_book";
+
+    private final EntityIdPartitioner partitioner = new EntityIdPartitioner();
+
+    private final Cluster cluster = cluster(TOPIC, 3);
+
+    @Test
+    public void numericKeysArePartitionedById() {
+        assertThat(partition("0")).isEqualTo(0);
+        assertThat(partition("4")).isEqualTo(1);
+        assertThat(partition("5")).isEqualTo(2);
+        assertThat(partition("-1")).isEqualTo(2);
+    }
+
+    @Test
+    public void sameKeyAlwaysGoesToSamePartition() {
+        assertThat(partition("isbn-1234")).isEqualTo(partition("isbn-1234"));
+        assertThat(partition("isbn-1234")).isBetween(0, 2);
+    }
+
+    @Test
+    public void recordsWithoutKeyGoToAnyPartition() {
+        assertThat(partitioner.partition(TOPIC, null, null, "value", null, cluster)).isBetween(0, 2);
+    }
+
+    private int partition(String key) {
+        return partitioner.partition(TOPIC, key, key.getBytes(StandardCharsets.UTF_8), "value", null, cluster);
+    }
+
+    private static Cluster cluster(String topic, int partitions) {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitionInfos = new ArrayList<>();
+        for (int i = 0; i < partitions; i++) {
+            partitionInfos.add(new PartitionInfo(topic, i, node, new Node[] {node}, new Node[] {node}));
+        }
+        return new Cluster("cluster", Collections.singletonList(node), partitionInfos, Collections.emptySet(), Collections.emptySet());
+    }
+}
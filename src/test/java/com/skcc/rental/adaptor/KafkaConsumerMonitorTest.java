@@ -0,0 +1,97 @@
+package com.skcc.rental.adaptor;
+
+import com.skcc.rental.config.KafkaProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link KafkaConsumerMonitor} and {@link KafkaConsumerLagHealthIndicator}.
+ */
+public class KafkaConsumerMonitorTest {
+
+    private static final TopicPartition PARTITION_0 = new TopicPartition(RentalKafkaConsumer.TOPIC, 0);
+
+    private static final TopicPartition PARTITION_1 = new TopicPartition(RentalKafkaConsumer.TOPIC, 1);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final KafkaConsumerMonitor monitor = new KafkaConsumerMonitor(meterRegistry);
+
+    private final KafkaProperties kafkaProperties = new KafkaProperties();
+
+    private final MockConsumer<String, byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+
+    @Test
+    public void lagIsEndOffsetMinusPosition() {
+        assign(40L, 100L, 5L, 5L);
+
+        monitor.refreshLag(consumer);
+
+        assertThat(monitor.getLag(RentalKafkaConsumer.TOPIC)).containsEntry(0, 60L).containsEntry(1, 0L);
+        assertThat(meterRegistry.get("rental.kafka.consumer.lag").tag("partition", "0").gauge().value()).isEqualTo(60);
+    }
+
+    @Test
+    public void revokedPartitionsNoLongerLag() {
+        assign(0L, 100L, 0L, 100L);
+        monitor.refreshLag(consumer);
+
+        monitor.forget(Collections.singleton(PARTITION_0));
+
+        assertThat(monitor.getLag(RentalKafkaConsumer.TOPIC)).containsEntry(0, 0L).containsEntry(1, 100L);
+    }
+
+    @Test
+    public void readinessIsOutOfServiceAboveThreshold() {
+        kafkaProperties.getConsumerLag().setReadinessThreshold(100);
+        KafkaConsumerLagHealthIndicator healthIndicator = new KafkaConsumerLagHealthIndicator(monitor, kafkaProperties);
+        assign(0L, 60L, 0L, 60L);
+        monitor.refreshLag(consumer);
+
+        Health health = healthIndicator.health();
+
+        assertThat(health.getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+        assertThat(health.getDetails()).containsEntry("lag", 120L);
+
+        consumer.seek(PARTITION_0, 60L);
+        monitor.refreshLag(consumer);
+        assertThat(healthIndicator.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    public void pollAndProcessingAreTimed() {
+        monitor.recordPoll(RentalKafkaConsumer.TOPIC, 2000000, 3);
+        monitor.recordPoll(RentalKafkaConsumer.TOPIC, 1000000, 0);
+        monitor.recordProcessing(RentalKafkaConsumer.TOPIC, 500000);
+
+        assertThat(meterRegistry.get("rental.kafka.consumer.poll").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("rental.kafka.consumer.poll.records").summary().totalAmount()).isEqualTo(3);
+        assertThat(meterRegistry.get("rental.kafka.consumer.processing").timer().count()).isEqualTo(1);
+    }
+
+    private void assign(long position0, long end0, long position1, long end1) {
+        consumer.assign(Arrays.asList(PARTITION_0, PARTITION_1));
+        Map<TopicPartition, Long> beginningOffsets = new HashMap<>();
+        beginningOffsets.put(PARTITION_0, 0L);
+        beginningOffsets.put(PARTITION_1, 0L);
+        consumer.updateBeginningOffsets(beginningOffsets);
+        Map<TopicPartition, Long> endOffsets = new HashMap<>();
+        endOffsets.put(PARTITION_0, end0);
+        endOffsets.put(PARTITION_1, end1);
+        consumer.updateEndOffsets(endOffsets);
+        consumer.seek(PARTITION_0, position0);
+        consumer.seek(PARTITION_1, position1);
+    }
+}
@@ -0,0 +1,99 @@
+package com.skcc.rental.adaptor;
+
+import com.skcc.rental.config.KafkaProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link KafkaRecordRecoverer}.
+ */
+public class KafkaRecordRecovererTest {
+
+    private static final String TOPIC = "topic_rental";
+
+    private final KafkaProperties kafkaProperties = new KafkaProperties();
+
+    private final MockProducer<String, byte[]> producer = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final KafkaRecordRecoverer recoverer;
+
+    public KafkaRecordRecovererTest() {
+        kafkaProperties.getConsumerRetry().setBackoffMs(Arrays.asList(1000L, 60000L));
+        recoverer = new KafkaRecordRecoverer(kafkaProperties, producer, meterRegistry);
+    }
+
+    @Test
+    public void failedRecordGoesToFirstRetryTopic() throws Exception {
+        long before = System.currentTimeMillis();
+
+        recoverer.recover(new ConsumerRecord<>(TOPIC, 2, 42L, "7", value()), new DataAccessResourceFailureException("db down"));
+
+        ProducerRecord<String, byte[]> forwarded = producer.history().get(0);
+        assertThat(forwarded.topic()).isEqualTo("topic_rental-retry-0");
+        assertThat(forwarded.key()).isEqualTo("7");
+        assertThat(forwarded.value()).isEqualTo(value());
+        assertThat(header(forwarded, KafkaRecordRecoverer.ATTEMPT_HEADER)).isEqualTo("1");
+        assertThat(header(forwarded, KafkaRecordRecoverer.ORIGINAL_TOPIC_HEADER)).isEqualTo(TOPIC);
+        assertThat(header(forwarded, KafkaRecordRecoverer.ORIGINAL_OFFSET_HEADER)).isEqualTo("42");
+        assertThat(Long.parseLong(header(forwarded, KafkaRecordRecoverer.DUE_AT_HEADER))).isGreaterThanOrEqualTo(before + 1000);
+        assertThat(recoverer.getRetried()).containsEntry("topic_rental-retry-0", 1L);
+    }
+
+    @Test
+    public void retriedRecordGoesToNextTierThenDeadLetterTopic() throws Exception {
+        recoverer.recover(new ConsumerRecord<>(TOPIC, 0, 1L, "7", value()), new IllegalStateException());
+        ConsumerRecord<String, byte[]> firstRetry = consumed(producer.history().get(0), 5L);
+        recoverer.recover(firstRetry, new IllegalStateException());
+        ConsumerRecord<String, byte[]> secondRetry = consumed(producer.history().get(1), 9L);
+        recoverer.recover(secondRetry, new IllegalStateException("still failing"));
+
+        assertThat(producer.history()).extracting(ProducerRecord::topic)
+            .containsExactly("topic_rental-retry-0", "topic_rental-retry-1", "topic_rental-dlt");
+        ProducerRecord<String, byte[]> parked = producer.history().get(2);
+        assertThat(header(parked, KafkaRecordRecoverer.ATTEMPT_HEADER)).isEqualTo("2");
+        assertThat(header(parked, KafkaRecordRecoverer.ORIGINAL_OFFSET_HEADER)).isEqualTo("1");
+        assertThat(parked.headers().headers(KafkaRecordRecoverer.ATTEMPT_HEADER)).hasSize(1);
+        assertThat(recoverer.getDeadLettered()).containsEntry("topic_rental-dlt", 1L);
+        assertThat(recoverer.getLastDeadLetter().exception).contains("still failing");
+        assertThat(meterRegistry.get("rental.kafka.consumer.recovered").tag("type", "dead-letter").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void malformedRecordIsNotRetried() throws Exception {
+        recoverer.recover(new ConsumerRecord<>(TOPIC, 0, 1L, "7", "{".getBytes(StandardCharsets.UTF_8)),
+            new SerializationException("Cannot decode CreateRentalEvent"));
+
+        assertThat(producer.history()).extracting(ProducerRecord::topic).containsExactly("topic_rental-dlt");
+        assertThat(recoverer.getRetried()).isEmpty();
+    }
+
+    private static ConsumerRecord<String, byte[]> consumed(ProducerRecord<String, byte[]> forwarded, long offset) {
+        ConsumerRecord<String, byte[]> record = new ConsumerRecord<>(forwarded.topic(), 0, offset, forwarded.key(), forwarded.value());
+        forwarded.headers().forEach(header -> record.headers().add(header));
+        return record;
+    }
+
+    private static String header(ProducerRecord<String, byte[]> record, String key) {
+        Header header = record.headers().lastHeader(key);
+        return new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] value() {
+        return "{\"userId\":7}".getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,135 @@
+package com.skcc.rental.adaptor;
+
+import com.skcc.rental.config.ApplicationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.KafkaException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test class for {@link PointAccrualCoalescer}.
+ */
+public class PointAccrualCoalescerTest {
+
+    private final ApplicationProperties applicationProperties = new ApplicationProperties();
+
+    private final RentalKafkaProducer rentalKafkaProducer = mock(RentalKafkaProducer.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private PointAccrualCoalescer coalescer;
+
+    @BeforeEach
+    public void setUp() {
+        // windows only end when the tests publish
+        applicationProperties.getPoints().getCoalescing().setWindowMs(3600000);
+        applicationProperties.getPoints().getCoalescing().setMaxDeltasPerUser(3);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (coalescer != null) {
+            coalescer.shutdown();
+        }
+    }
+
+    @Test
+    public void pointsAreSummedPerUser() throws Exception {
+        coalescer = new PointAccrualCoalescer(rentalKafkaProducer, applicationProperties, meterRegistry);
+
+        coalescer.accrue(1L, 30);
+        coalescer.accrue(2L, 60);
+        coalescer.accrue(1L, 30);
+        coalescer.publishAll();
+
+        verify(rentalKafkaProducer).savePoints(points(1L, 60, 2L, 60));
+        assertThat(meterRegistry.get("rental.points.accruals").counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("rental.points.events").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void userIsPublishedEarlyAfterMaxDeltas() throws Exception {
+        coalescer = new PointAccrualCoalescer(rentalKafkaProducer, applicationProperties, meterRegistry);
+
+        coalescer.accrue(1L, 30);
+        coalescer.accrue(2L, 30);
+        coalescer.accrue(1L, 30);
+        coalescer.accrue(1L, 30);
+
+        verify(rentalKafkaProducer, timeout(5000)).savePoints(points(1L, 90));
+        verify(rentalKafkaProducer, never()).savePoints(points(2L, 30));
+    }
+
+    @Test
+    public void failedPointsAreRetriedWithTheNextWindow() throws Exception {
+        coalescer = new PointAccrualCoalescer(rentalKafkaProducer, applicationProperties, meterRegistry);
+        doThrow(new KafkaException("broker unavailable")).when(rentalKafkaProducer).savePoints(points(1L, 30));
+
+        coalescer.accrue(1L, 30);
+        coalescer.publishAll();
+        coalescer.accrue(1L, 60);
+        coalescer.publishAll();
+
+        verify(rentalKafkaProducer).savePoints(points(1L, 90));
+    }
+
+    @Test
+    public void pendingPointsArePublishedOnShutdown() throws Exception {
+        coalescer = new PointAccrualCoalescer(rentalKafkaProducer, applicationProperties, meterRegistry);
+        coalescer.accrue(1L, 30);
+        verify(rentalKafkaProducer, never()).savePoints(anyMap());
+
+        coalescer.shutdown();
+
+        verify(rentalKafkaProducer).savePoints(points(1L, 30));
+        assertThat(meterRegistry.get("rental.points.pending.users").gauge().value()).isZero();
+    }
+
+    @Test
+    public void failedShutdownFlushIsRetried() throws Exception {
+        coalescer = new PointAccrualCoalescer(rentalKafkaProducer, applicationProperties, meterRegistry);
+        doThrow(new KafkaException("broker unavailable")).doNothing().when(rentalKafkaProducer).savePoints(points(1L, 30));
+        coalescer.accrue(1L, 30);
+
+        coalescer.shutdown();
+
+        verify(rentalKafkaProducer, times(2)).savePoints(points(1L, 30));
+        assertThat(meterRegistry.get("rental.points.pending.users").gauge().value()).isZero();
+    }
+
+    @Test
+    public void accrualDuringShutdownIsLeftForTheFlush() throws Exception {
+        coalescer = new PointAccrualCoalescer(rentalKafkaProducer, applicationProperties, meterRegistry);
+        coalescer.shutdown();
+
+        // the early publish of the third rental is rejected by the stopped publisher
+        coalescer.accrue(1L, 30);
+        coalescer.accrue(1L, 30);
+        coalescer.accrue(1L, 30);
+
+        assertThat(meterRegistry.get("rental.points.pending.users").gauge().value()).isEqualTo(1);
+        coalescer.publishAll();
+        verify(rentalKafkaProducer).savePoints(points(1L, 90));
+    }
+
+    private static Map<Long, Integer> points(Object... userIdAndPoints) {
+        Map<Long, Integer> points = new HashMap<>();
+        for (int i = 0; i < userIdAndPoints.length; i += 2) {
+            points.put((Long) userIdAndPoints[i], (Integer) userIdAndPoints[i + 1]);
+        }
+        return points;
+    }
+}
@@ -0,0 +1,117 @@
+package com.skcc.rental.adaptor;
+
+import com.skcc.rental.RentalApp;
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.repository.RentalRepository;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the rentals {@link RentalKafkaConsumer} creates, resolved by user through the natural-id
+ * cache, with the second-level cache enabled as in production.
+ */
+@SpringBootTest(classes = RentalApp.class, properties = {
+    "spring.jpa.properties.hibernate.cache.use_second_level_cache=true",
+    "spring.jpa.properties.hibernate.cache.region.factory_class=com.hazelcast.hibernate.HazelcastCacheRegionFactory",
+    "spring.jpa.properties.hibernate.cache.hazelcast.instance_name=rental",
+    "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+public class RentalKafkaConsumerIT {
+
+    private static final Long USER_ID = 2800L;
+
+    @Autowired
+    private RentalKafkaConsumer rentalKafkaConsumer;
+
+    @Autowired
+    private RentalRepository rentalRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private TransactionTemplate transaction;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    public void setUp() {
+        transaction = new TransactionTemplate(transactionManager);
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @AfterEach
+    public void deleteRental() {
+        transaction.execute(status -> {
+            rentalRepository.findByUserId(USER_ID).ifPresent(rentalRepository::delete);
+            return null;
+        });
+    }
+
+    @Test
+    public void rentalIsResolvedFromTheNaturalIdCache() {
+        assertThat(rentalKafkaConsumer.process(createRentalEvent(USER_ID))).isTrue();
+        Long rentalId = findByUserId(USER_ID).get().getId();
+
+        long queries = statistics.getNaturalIdQueryExecutionCount();
+        long hits = statistics.getNaturalIdCacheHitCount();
+        assertThat(findByUserId(USER_ID).get().getId()).isEqualTo(rentalId);
+
+        assertThat(statistics.getNaturalIdQueryExecutionCount()).isEqualTo(queries);
+        assertThat(statistics.getNaturalIdCacheHitCount()).isEqualTo(hits + 1);
+    }
+
+    @Test
+    public void redeliveredEventDoesNotCreateASecondRental() {
+        assertThat(rentalKafkaConsumer.process(createRentalEvent(USER_ID))).isTrue();
+        Long rentalId = findByUserId(USER_ID).get().getId();
+
+        assertThat(rentalKafkaConsumer.process(createRentalEvent(USER_ID))).isTrue();
+
+        assertThat(findByUserId(USER_ID).get().getId()).isEqualTo(rentalId);
+        assertThat(rentalRepository.findAll()).filteredOn(rental -> USER_ID.equals(rental.getUserId())).hasSize(1);
+    }
+
+    @Test
+    public void deletedRentalIsEvictedFromTheNaturalIdCache() {
+        assertThat(rentalKafkaConsumer.process(createRentalEvent(USER_ID))).isTrue();
+        Long deletedId = findByUserId(USER_ID).get().getId();
+        transaction.execute(status -> {
+            rentalRepository.deleteById(deletedId);
+            return null;
+        });
+
+        assertThat(findByUserId(USER_ID)).isEmpty();
+        assertThat(rentalKafkaConsumer.process(createRentalEvent(USER_ID))).isTrue();
+
+        Optional<Rental> recreated = findByUserId(USER_ID);
+        assertThat(recreated).isPresent();
+        assertThat(recreated.get().getId()).isNotEqualTo(deletedId);
+    }
+
+    private Optional<Rental> findByUserId(Long userId) {
+        return transaction.execute(status -> rentalRepository.findByUserId(userId));
+    }
+
+    private static ConsumerRecord<String, byte[]> createRentalEvent(Long userId) {
+        // records without content type header are read as JSON
+        byte[] value = ("{\"userId\":" + userId + "}").getBytes(StandardCharsets.UTF_8);
+        return new ConsumerRecord<>(RentalKafkaConsumer.TOPIC, 0, 0L, userId.toString(), value);
+    }
+}
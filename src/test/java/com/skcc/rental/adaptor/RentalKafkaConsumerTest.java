@@ -0,0 +1,89 @@
+package com.skcc.rental.adaptor;
+
+import com.skcc.rental.adaptor.codec.EventCodecs;
+import com.skcc.rental.adaptor.codec.EventDeserializer;
+import com.skcc.rental.config.KafkaProperties;
+import com.skcc.rental.domain.CreateRentalEvent;
+import com.skcc.rental.repository.RentalRepository;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.header.internals.RecordHeader;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the failure handling of {@link RentalKafkaConsumer}, on a {@link MockConsumer}.
+ */
+public class RentalKafkaConsumerTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition(RentalKafkaConsumer.TOPIC, 0);
+
+    private final KafkaRecordRecoverer recordRecoverer = mock(KafkaRecordRecoverer.class);
+
+    private final EventDeserializer<CreateRentalEvent> eventDeserializer = mock(EventDeserializer.class);
+
+    private RentalKafkaConsumer rentalKafkaConsumer;
+
+    @BeforeEach
+    public void setUp() {
+        EventCodecs eventCodecs = mock(EventCodecs.class);
+        when(eventCodecs.deserializer(CreateRentalEvent.class)).thenReturn(eventDeserializer);
+        rentalKafkaConsumer = new RentalKafkaConsumer(new KafkaProperties(), mock(RentalRepository.class), eventCodecs,
+            recordRecoverer, mock(KafkaConsumerMonitor.class), mock(DatabaseBackpressure.class));
+    }
+
+    @Test
+    public void recordIsKeptWhenForwardingFailsSynchronously() throws Exception {
+        when(eventDeserializer.deserialize(any(), any(), any())).thenThrow(new IllegalStateException("db down"));
+        // the producer's metadata wait (max.block.ms) fails before anything is sent
+        doThrow(new TimeoutException("Topic topic_rental-retry-0 not present in metadata")).when(recordRecoverer).recover(any(), any());
+
+        assertThat(rentalKafkaConsumer.process(record())).isFalse();
+    }
+
+    @Test
+    public void malformedRetryHeaderPausesThePartitionInsteadOfStoppingTheConsumer() throws Exception {
+        ConsumerRecord<String, byte[]> record = record();
+        record.headers().add(new RecordHeader(KafkaRecordRecoverer.DUE_AT_HEADER, "soon".getBytes(StandardCharsets.UTF_8)));
+        when(recordRecoverer.dueAt(any())).thenThrow(new NumberFormatException("For input string: \"soon\""));
+        doThrow(new KafkaException("Producer closed")).when(recordRecoverer).recover(any(), any());
+        MockConsumer<String, byte[]> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.schedulePollTask(() -> {
+            consumer.rebalance(Collections.singletonList(PARTITION));
+            consumer.updateBeginningOffsets(Collections.singletonMap(PARTITION, 0L));
+            consumer.addRecord(record);
+        });
+        AtomicBoolean polledAgain = new AtomicBoolean();
+        consumer.schedulePollTask(() -> {
+            polledAgain.set(true);
+            assertThat(consumer.paused()).containsExactly(PARTITION);
+            assertThat(consumer.position(PARTITION)).isZero();
+            consumer.wakeup();
+        });
+
+        // the wakeup of an open consumer is rethrown, which ends the test's loop after the second poll
+        assertThatThrownBy(() -> rentalKafkaConsumer.consume(consumer, RentalKafkaConsumer.TOPIC)).isInstanceOf(WakeupException.class);
+
+        assertThat(polledAgain).isTrue();
+    }
+
+    private static ConsumerRecord<String, byte[]> record() {
+        return new ConsumerRecord<>(RentalKafkaConsumer.TOPIC, 0, 0L, "7", "{\"userId\":7}".getBytes(StandardCharsets.UTF_8));
+    }
+}
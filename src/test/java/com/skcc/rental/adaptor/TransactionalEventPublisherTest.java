@@ -0,0 +1,198 @@
+package com.skcc.rental.adaptor;
+
+import com.skcc.rental.config.KafkaProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.errors.ProducerFencedException;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for {@link TransactionalEventPublisher}.
+ */
+public class TransactionalEventPublisherTest {
+
+    private static final String UNSERIALIZABLE = "unserializable";
+
+    private final KafkaProperties.Transactions properties = new KafkaProperties.Transactions();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final List<MockProducer<String, Object>> producers = new ArrayList<>();
+
+    private final CountDownLatch commitsReleased = new CountDownLatch(1);
+
+    private TransactionalEventPublisher publisher;
+
+    @AfterEach
+    public void close() {
+        commitsReleased.countDown();
+        if (publisher != null) {
+            publisher.close();
+        }
+    }
+
+    @Test
+    public void operationIsCommittedInOneTransaction() throws Exception {
+        publisher = publisher(1);
+
+        publisher.publish(operation("1"));
+
+        MockProducer<String, Object> producer = producers.get(0);
+        assertThat(producer.transactionCommitted()).isTrue();
+        assertThat(producer.history()).extracting(ProducerRecord::topic).containsExactly("topic_book", "topic_catalog", "topic_point");
+        assertThat(meterRegistry.get("rental.kafka.transaction").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void failedOperationIsAborted() throws Exception {
+        publisher = publisher(1);
+        publisher.publish(operation("1"));
+        List<ProducerRecord<String, Object>> failing = new ArrayList<>(operation("2"));
+        failing.add(new ProducerRecord<>("topic_point", "2", UNSERIALIZABLE));
+
+        assertThatThrownBy(() -> publisher.publish(failing)).isInstanceOf(ExecutionException.class);
+
+        MockProducer<String, Object> producer = producers.get(0);
+        assertThat(producer.transactionAborted()).isTrue();
+        assertThat(producer.history()).hasSize(3);
+    }
+
+    @Test
+    public void fencedProducerIsReplaced() throws Exception {
+        publisher = publisher(1);
+        publisher.publish(operation("1"));
+        producers.get(0).fenceProducer();
+
+        assertThatThrownBy(() -> publisher.publish(operation("2"))).hasCauseInstanceOf(ProducerFencedException.class);
+        publisher.publish(operation("3"));
+
+        assertThat(producers).hasSize(2);
+        assertThat(producers.get(1).history()).hasSize(3);
+    }
+
+    @Test
+    public void batchingCommitsManyOperationsPerTransaction() throws Exception {
+        properties.setBatching(true);
+        properties.setLingerMs(200);
+        properties.setMaxOperationsPerTransaction(4);
+        publisher = publisher(4);
+
+        List<CompletableFuture<Void>> published = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String key = String.valueOf(i);
+            published.add(CompletableFuture.runAsync(() -> {
+                try {
+                    publisher.publish(operation(key));
+                } catch (ExecutionException | InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        CompletableFuture.allOf(published.toArray(new CompletableFuture[0])).get();
+
+        assertThat(producers).hasSize(1);
+        assertThat(producers.get(0).history()).hasSize(24);
+        assertThat(meterRegistry.get("rental.kafka.transaction.operations").summary().max()).isGreaterThan(1);
+        assertThat(meterRegistry.get("rental.kafka.transaction").timer().count()).isLessThan(8);
+    }
+
+    @Test
+    public void batchedOperationIsRejectedAfterClose() {
+        properties.setBatching(true);
+        publisher = publisher(1);
+
+        publisher.close();
+
+        assertThatThrownBy(() -> publisher.publish(operation("1"))).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void batchedOperationWaitsForTheCommitTimeoutAtMost() {
+        properties.setBatching(true);
+        properties.setCommitTimeoutMs(200);
+        publisher = publisher(1, transactionalId -> new MockProducer<String, Object>(true, new StringSerializer(), new StringObjectSerializer()) {
+            @Override
+            public void commitTransaction() {
+                try {
+                    commitsReleased.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.commitTransaction();
+            }
+        });
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> publisher.publish(operation("1"))).hasCauseInstanceOf(TimeoutException.class);
+        assertThat(System.nanoTime() - start).isLessThan(5_000_000_000L);
+    }
+
+    @Test
+    public void queuedOperationsAreRejectedWhenTheSenderStops() {
+        properties.setBatching(true);
+        publisher = publisher(1, transactionalId -> {
+            throw new NoClassDefFoundError("org/apache/kafka/clients/producer/KafkaProducer");
+        });
+
+        assertThatThrownBy(() -> publisher.publish(operation("1"))).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> publisher.publish(operation("2")))
+            .satisfies(e -> assertThat(e instanceof IllegalStateException || e.getCause() instanceof IllegalStateException).isTrue());
+    }
+
+    private TransactionalEventPublisher publisher(int poolSize) {
+        return publisher(poolSize, transactionalId -> {
+            // KafkaProducer serializes in send() and throws there, MockProducer only on partitioning
+            MockProducer<String, Object> producer = new MockProducer<String, Object>(true, new StringSerializer(), new StringObjectSerializer()) {
+                @Override
+                public synchronized Future<RecordMetadata> send(ProducerRecord<String, Object> record) {
+                    if (UNSERIALIZABLE.equals(record.value())) {
+                        throw new SerializationException("Cannot serialize " + record.value());
+                    }
+                    return super.send(record);
+                }
+            };
+            producers.add(producer);
+            return producer;
+        });
+    }
+
+    private TransactionalEventPublisher publisher(int poolSize, Function<String, MockProducer<String, Object>> producerFactory) {
+        properties.setProducers(poolSize);
+        return new TransactionalEventPublisher(properties, producerFactory::apply, meterRegistry);
+    }
+
+    private static class StringObjectSerializer implements Serializer<Object> {
+
+        @Override
+        public byte[] serialize(String topic, Object data) {
+            return data.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static List<ProducerRecord<String, Object>> operation(String key) {
+        return Arrays.asList(
+            new ProducerRecord<>("topic_book", key, "UNAVAILABLE"),
+            new ProducerRecord<>("topic_catalog", key, "RENT_BOOK"),
+            new ProducerRecord<>("topic_point", key, "30"));
+    }
+}
@@ -0,0 +1,125 @@
+package com.skcc.rental.adaptor.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.skcc.rental.domain.BookCatalogEvent;
+import com.skcc.rental.domain.SavePointsEvent;
+import com.skcc.rental.domain.UpdateBookEvent;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares encoded size and encode/decode time of the events in every {@link EventFormat}, and in the JSON the
+ * producer sent before event formats existed (a default {@link ObjectMapper}, null fields included).
+ */
+public class EventCodecBenchmarkIT {
+
+    private static final Logger log = LoggerFactory.getLogger(EventCodecBenchmarkIT.class);
+
+    private static final int WARMUP = 50_000;
+
+    private static final int ITERATIONS = 200_000;
+
+    @Test
+    public void eventFormatsAreSmallerThanLegacyJson() {
+        for (Object event : events()) {
+            int legacySize = measure("legacy JSON", new JacksonEventCodec(new ObjectMapper(), "application/json"), event);
+            int jsonSize = measure(EventFormat.JSON.name(), EventFormat.JSON.newCodec(), event);
+            int smileSize = measure(EventFormat.SMILE.name(), EventFormat.SMILE.newCodec(), event);
+            assertThat(jsonSize).isLessThanOrEqualTo(legacySize);
+            assertThat(smileSize).isLessThan(jsonSize);
+        }
+    }
+
+    /**
+     * Bytes allocated to send and receive one event: the old String round trip with a new {@link ObjectMapper} per
+     * consumed record, one shared mapper writing and reading {@code byte[]}, and the codec with cached readers,
+     * writers and buffers.
+     */
+    @Test
+    public void codecAllocatesLessPerEventThanStringRoundTrip() throws Exception {
+        BookCatalogEvent event = (BookCatalogEvent) events().get(2);
+        ObjectMapper producerMapper = new ObjectMapper();
+        ObjectMapper sharedMapper = EventFormat.configure(new ObjectMapper());
+        EventCodec codec = EventFormat.JSON.newCodec(Jackson2ObjectMapperBuilder.json().modulesToInstall(new AfterburnerModule()));
+
+        long legacy = allocatedPerEvent(() -> {
+            String message = producerMapper.writeValueAsString(event);
+            String received = new String(message.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+            return new ObjectMapper().readValue(received, BookCatalogEvent.class);
+        });
+        long shared = allocatedPerEvent(() -> sharedMapper.readValue(sharedMapper.writeValueAsBytes(event), BookCatalogEvent.class));
+        long cached = allocatedPerEvent(() -> codec.decode(codec.encode(event), BookCatalogEvent.class));
+        log.info("Allocated per event: String round trip {} bytes, shared mapper {} bytes, event codec {} bytes", legacy, shared, cached);
+
+        assertThat(cached).isLessThan(shared);
+        assertThat(shared).isLessThan(legacy);
+    }
+
+    private static long allocatedPerEvent(Callable<Object> roundTrip) throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int iterations = 20_000;
+        for (int i = 0; i < iterations; i++) {
+            roundTrip.call();
+        }
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            roundTrip.call();
+        }
+        return (threadMXBean.getThreadAllocatedBytes(threadId) - before) / iterations;
+    }
+
+    private static int measure(String name, EventCodec codec, Object event) {
+        byte[] data = codec.encode(event);
+        encode(codec, event, WARMUP);
+        decode(codec, data, event.getClass(), WARMUP);
+        long encodeNanos = encode(codec, event, ITERATIONS);
+        long decodeNanos = decode(codec, data, event.getClass(), ITERATIONS);
+        log.info("{} as {}: {} bytes, encode {} ns/op, decode {} ns/op", event.getClass().getSimpleName(), name,
+            data.length, encodeNanos / ITERATIONS, decodeNanos / ITERATIONS);
+        return data.length;
+    }
+
+    private static List<Object> events() {
+        BookCatalogEvent bookCatalogEvent = new BookCatalogEvent();
+        bookCatalogEvent.setBookId(1234L);
+        bookCatalogEvent.setEventType("RENT_BOOK");
+        return Arrays.asList(new UpdateBookEvent(1234L, "UNAVAILABLE"), new SavePointsEvent(5678L, 90), bookCatalogEvent);
+    }
+
+    private static long encode(EventCodec codec, Object event, int iterations) {
+        long start = System.nanoTime();
+        long bytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            bytes += codec.encode(event).length;
+        }
+        long elapsed = System.nanoTime() - start;
+        assertThat(bytes).isPositive();
+        return elapsed;
+    }
+
+    private static long decode(EventCodec codec, byte[] data, Class<?> type, int iterations) {
+        long start = System.nanoTime();
+        int decoded = 0;
+        for (int i = 0; i < iterations; i++) {
+            if (codec.decode(data, type) != null) {
+                decoded++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        assertThat(decoded).isEqualTo(iterations);
+        return elapsed;
+    }
+}
@@ -0,0 +1,64 @@
+package com.skcc.rental.adaptor.codec;
+
+import com.skcc.rental.domain.BookCatalogEvent;
+import com.skcc.rental.domain.SavePointsEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for {@link EventSerializer} and {@link EventDeserializer}.
+ */
+public class EventCodecTest {
+
+    private final EventDeserializer<SavePointsEvent> deserializer = new EventDeserializer<>(SavePointsEvent.class);
+
+    @Test
+    public void eventsRoundTripInEveryFormat() {
+        for (EventFormat format : EventFormat.values()) {
+            RecordHeaders headers = new RecordHeaders();
+            byte[] data = new EventSerializer(format.newCodec()).serialize("topic_point", headers, new SavePointsEvent(7L, 90));
+
+            assertThat(new String(headers.lastHeader(EventCodec.CONTENT_TYPE_HEADER).value(), StandardCharsets.UTF_8)).isEqualTo(format.contentType());
+            assertThat(new String(headers.lastHeader(EventCodec.VERSION_HEADER).value(), StandardCharsets.UTF_8)).isEqualTo("1");
+            SavePointsEvent event = deserializer.deserialize("topic_point", headers, data);
+            assertThat(event.getUserId()).isEqualTo(7L);
+            assertThat(event.getPoints()).isEqualTo(90);
+        }
+    }
+
+    @Test
+    public void recordsWithoutHeadersAreReadAsJson() {
+        byte[] data = "{\"userId\":7,\"points\":90,\"addedLater\":true}".getBytes(StandardCharsets.UTF_8);
+
+        SavePointsEvent event = deserializer.deserialize("topic_point", new RecordHeaders(), data);
+
+        assertThat(event.getUserId()).isEqualTo(7L);
+        assertThat(event.getPoints()).isEqualTo(90);
+    }
+
+    @Test
+    public void nullFieldsAreNotWritten() {
+        BookCatalogEvent bookCatalogEvent = new BookCatalogEvent();
+        bookCatalogEvent.setBookId(3L);
+        bookCatalogEvent.setEventType("RENT_BOOK");
+
+        String json = new String(EventFormat.JSON.newCodec().encode(bookCatalogEvent), StandardCharsets.UTF_8);
+
+        assertThat(json).isEqualTo("{\"eventType\":\"RENT_BOOK\",\"bookId\":3}");
+    }
+
+    @Test
+    public void unknownContentTypeIsRejected() {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(EventCodec.CONTENT_TYPE_HEADER, "application/avro".getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> deserializer.deserialize("topic_point", headers, new byte[] {1}))
+            .isInstanceOf(SerializationException.class);
+    }
+}
@@ -0,0 +1,74 @@
+package com.skcc.rental.config;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MaxSizeConfig;
+import com.hazelcast.config.NearCacheConfig;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.io.FileSystemResource;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the second-level cache region maps of {@link CacheConfiguration}, with the regions of the
+ * application's {@code application.yml}.
+ */
+public class CacheConfigurationTest {
+
+    private static final String DOMAIN = "com.skcc.rental.domain.";
+
+    private static Map<String, MapConfig> regionMapConfigs;
+
+    @BeforeAll
+    public static void bindRegions() throws Exception {
+        // the test resources shadow the application's configuration on the classpath
+        Binder binder = new Binder(ConfigurationPropertySources.from(new YamlPropertySourceLoader()
+            .load("application", new FileSystemResource("src/main/resources/config/application.yml"))));
+        ApplicationProperties applicationProperties = binder.bind("application", Bindable.ofInstance(new ApplicationProperties())).get();
+        regionMapConfigs = CacheConfiguration.regionMapConfigs(applicationProperties.getCache());
+    }
+
+    @Test
+    public void regionKeysKeepTheirCaseAndSeparators() {
+        assertThat(regionMapConfigs).containsKeys(DOMAIN + "Rental", DOMAIN + "Rental##NaturalId", DOMAIN + "Rental.rentedItems",
+            DOMAIN + "Rental.returnedItems", DOMAIN + "RentedItem");
+        regionMapConfigs.forEach((regionName, mapConfig) -> assertThat(mapConfig.getName()).isEqualTo(regionName));
+    }
+
+    @Test
+    public void regionSettingsAreApplied() {
+        MapConfig rental = regionMapConfigs.get(DOMAIN + "Rental");
+        assertThat(rental.getTimeToLiveSeconds()).isEqualTo(3600);
+        assertThat(rental.getBackupCount()).isEqualTo(1);
+        assertThat(rental.getMaxSizeConfig().getSize()).isEqualTo(100000);
+        assertThat(rental.getMaxSizeConfig().getMaxSizePolicy()).isEqualTo(MaxSizeConfig.MaxSizePolicy.PER_NODE);
+        NearCacheConfig nearCache = rental.getNearCacheConfig();
+        assertThat(nearCache).isNotNull();
+        assertThat(nearCache.getTimeToLiveSeconds()).isEqualTo(60);
+        assertThat(nearCache.getEvictionConfig().getSize()).isEqualTo(10000);
+        assertThat(nearCache.isInvalidateOnChange()).isTrue();
+
+        MapConfig returnedItems = regionMapConfigs.get(DOMAIN + "Rental.returnedItems");
+        assertThat(returnedItems.getTimeToLiveSeconds()).isEqualTo(600);
+        assertThat(returnedItems.getBackupCount()).isZero();
+        assertThat(returnedItems.getNearCacheConfig()).as("no near cache unless enabled").isNull();
+    }
+
+    @Test
+    public void regionMapsTakePrecedenceOverTheDomainWildcard() {
+        Config config = new Config();
+        config.getMapConfigs().put(DOMAIN + "*", new MapConfig().setTimeToLiveSeconds(5));
+        config.getMapConfigs().putAll(regionMapConfigs);
+
+        assertThat(config.findMapConfig(DOMAIN + "Rental##NaturalId").getTimeToLiveSeconds()).isEqualTo(3600);
+        assertThat(config.findMapConfig(DOMAIN + "Rental##NaturalId").getNearCacheConfig()).isNotNull();
+        assertThat(config.findMapConfig(DOMAIN + "Unconfigured").getTimeToLiveSeconds()).isEqualTo(5);
+    }
+}
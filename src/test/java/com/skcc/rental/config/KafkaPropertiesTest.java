@@ -0,0 +1,51 @@
+package com.skcc.rental.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for the producer profiles of {@link KafkaProperties}.
+ */
+public class KafkaPropertiesTest {
+
+    private final KafkaProperties kafkaProperties = new KafkaProperties();
+
+    @Test
+    public void profileIsAppliedOnTopOfProducerProperties() {
+        kafkaProperties.getProducerProfiles().get(KafkaProperties.EXACTLY_ONCE).getProperties().put("retries", "10");
+
+        Map<String, Object> props = kafkaProperties.getProducerProps(KafkaProperties.EXACTLY_ONCE);
+
+        assertThat(props).containsEntry("bootstrap.servers", "localhost:9092")
+            .containsEntry("enable.idempotence", "true")
+            .containsEntry("acks", "all")
+            .containsEntry("retries", "10")
+            .containsEntry("client.id", "rental-exactly-once");
+    }
+
+    @Test
+    public void topicsUseTheirProfileOrTheDefault() {
+        kafkaProperties.getTopicProducerProfiles().put("topic_point", KafkaProperties.HIGH_THROUGHPUT);
+
+        assertThat(kafkaProperties.producerProfileFor("topic_point")).isEqualTo(KafkaProperties.HIGH_THROUGHPUT);
+        assertThat(kafkaProperties.producerProfileFor("topic_book")).isEqualTo(KafkaProperties.LOW_LATENCY);
+        assertThat(kafkaProperties.getProducerProfile(KafkaProperties.HIGH_THROUGHPUT).isAwait()).isFalse();
+    }
+
+    @Test
+    public void transactionalIdsDifferPerInstance() {
+        String prefix = kafkaProperties.getTransactions().getTransactionalIdPrefix();
+
+        assertThat(prefix).startsWith("rental-tx-").endsWith("-");
+        assertThat(new KafkaProperties().getTransactions().getTransactionalIdPrefix()).isNotEqualTo(prefix);
+    }
+
+    @Test
+    public void unknownProfileIsRejected() {
+        assertThatThrownBy(() -> kafkaProperties.getProducerProps("fastest")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,98 @@
+package com.skcc.rental.config;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.EvictionConfig;
+import com.hazelcast.config.EvictionPolicy;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.NearCacheConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares second-level cache reads from a lite member with and without a near cache,
+ * the way {@link CacheConfiguration} configures the {@code Rental} regions.
+ */
+public class NearCacheBenchmarkIT {
+
+    private static final Logger log = LoggerFactory.getLogger(NearCacheBenchmarkIT.class);
+
+    private static final int ENTRIES = 1000;
+
+    private static final int ROUNDS = 20;
+
+    private static HazelcastInstance dataMember;
+
+    private static HazelcastInstance liteMember;
+
+    @BeforeAll
+    public static void startCluster() {
+        dataMember = Hazelcast.newHazelcastInstance(memberConfig("near-cache-benchmark-data", false));
+        liteMember = Hazelcast.newHazelcastInstance(memberConfig("near-cache-benchmark-lite", true));
+    }
+
+    @AfterAll
+    public static void stopCluster() {
+        liteMember.shutdown();
+        dataMember.shutdown();
+    }
+
+    @Test
+    public void nearCacheReadsAreFasterThanRemoteReads() {
+        IMap<Long, String> remoteSource = dataMember.getMap("remote");
+        IMap<Long, String> nearSource = dataMember.getMap("near");
+        for (long i = 0; i < ENTRIES; i++) {
+            remoteSource.set(i, "rental-" + i);
+            nearSource.set(i, "rental-" + i);
+        }
+
+        IMap<Long, String> remote = liteMember.getMap("remote");
+        IMap<Long, String> near = liteMember.getMap("near");
+        // warm up both paths so the near cache is populated and the JIT has settled
+        read(remote);
+        read(near);
+
+        long remoteNanos = read(remote);
+        long nearNanos = read(near);
+        log.info("Remote-only reads: {} ns/op, near-cache reads: {} ns/op, near-cache hits: {}",
+            remoteNanos / (ENTRIES * ROUNDS), nearNanos / (ENTRIES * ROUNDS),
+            near.getLocalMapStats().getNearCacheStats().getHits());
+
+        assertThat(near.getLocalMapStats().getNearCacheStats().getHits()).isGreaterThanOrEqualTo((long) ENTRIES * ROUNDS);
+        assertThat(nearNanos).isLessThan(remoteNanos);
+    }
+
+    private static long read(IMap<Long, String> map) {
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (long i = 0; i < ENTRIES; i++) {
+                assertThat(map.get(i)).isNotNull();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static Config memberConfig(String instanceName, boolean liteMember) {
+        Config config = new Config();
+        config.setInstanceName(instanceName);
+        config.setLiteMember(liteMember);
+        config.getNetworkConfig().setPort(5901);
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.getNetworkConfig().getJoin().getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+        config.getNetworkConfig().getInterfaces().setEnabled(true).addInterface("127.0.0.1");
+
+        config.addMapConfig(new MapConfig("remote"));
+        NearCacheConfig nearCacheConfig = new NearCacheConfig("near")
+            .setInvalidateOnChange(true)
+            .setEvictionConfig(new EvictionConfig(ENTRIES * 2, EvictionConfig.MaxSizePolicy.ENTRY_COUNT, EvictionPolicy.LRU));
+        config.addMapConfig(new MapConfig("near").setNearCacheConfig(nearCacheConfig));
+        return config;
+    }
+}
@@ -0,0 +1,128 @@
+package com.skcc.rental.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link ReadReplicaRoutingDataSource}, with one H2 database per pool.
+ */
+public class ReadReplicaRoutingDataSourceTest {
+
+    private final ApplicationProperties.ReadReplicas properties = new ApplicationProperties.ReadReplicas();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final DataSource replica = database("replica");
+
+    private String caller = "user";
+
+    private ReadReplicaRoutingDataSource routingDataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate readWrite;
+
+    private TransactionTemplate readOnly;
+
+    @BeforeEach
+    public void setUp() {
+        properties.setLagQuery("SELECT seconds FROM replica_lag");
+        properties.setLagColumn("seconds");
+        properties.setLagCheckIntervalMs(3600000);
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica", replica);
+        routingDataSource = new ReadReplicaRoutingDataSource(database("primary"), replicas, properties, () -> caller);
+        routingDataSource.bindTo(meterRegistry);
+        routingDataSource.afterPropertiesSet();
+        routingDataSource.checkLag();
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        routingDataSource.close();
+    }
+
+    @Test
+    public void readOnlyTransactionsGoToTheReplica() {
+        assertThat(readOnly.<String>execute(status -> whoami())).isEqualTo("replica");
+        assertThat(readWrite.<String>execute(status -> whoami())).isEqualTo("primary");
+        assertThat(meterRegistry.get("rental.datasource.routed").tags("pool", "replica", "reason", "read-only").counter().count())
+            .isEqualTo(1);
+    }
+
+    @Test
+    public void callerReadsFromThePrimaryAfterItsWrite() {
+        readWrite.execute(status -> jdbcTemplate.update("UPDATE whoami SET name = name"));
+
+        assertThat(readOnly.<String>execute(status -> whoami())).isEqualTo("primary");
+        caller = "other";
+        assertThat(readOnly.<String>execute(status -> whoami())).isEqualTo("replica");
+    }
+
+    @Test
+    public void noStickinessWhenDisabled() {
+        properties.setStickinessMs(0);
+
+        readWrite.execute(status -> jdbcTemplate.update("UPDATE whoami SET name = name"));
+
+        assertThat(readOnly.<String>execute(status -> whoami())).isEqualTo("replica");
+    }
+
+    @Test
+    public void laggingReplicaIsSkipped() {
+        new JdbcTemplate(replica).update("UPDATE replica_lag SET seconds = 60");
+        routingDataSource.checkLag();
+
+        assertThat(readOnly.<String>execute(status -> whoami())).isEqualTo("primary");
+        assertThat(meterRegistry.get("rental.datasource.replica.available").tag("pool", "replica").gauge().value()).isEqualTo(0);
+        assertThat(meterRegistry.get("rental.datasource.replica.lag").tag("pool", "replica").gauge().value()).isEqualTo(60);
+
+        new JdbcTemplate(replica).update("UPDATE replica_lag SET seconds = 1");
+        routingDataSource.checkLag();
+
+        assertThat(readOnly.<String>execute(status -> whoami())).isEqualTo("replica");
+    }
+
+    @Test
+    public void replicaWithUnknownLagIsSkipped() {
+        new JdbcTemplate(replica).update("UPDATE replica_lag SET seconds = NULL");
+        routingDataSource.checkLag();
+
+        assertThat(readOnly.<String>execute(status -> whoami())).isEqualTo("primary");
+    }
+
+    private String whoami() {
+        return jdbcTemplate.queryForObject("SELECT name FROM whoami", String.class);
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + "-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE whoami (name VARCHAR(20))");
+        jdbcTemplate.update("INSERT INTO whoami VALUES (?)", name);
+        jdbcTemplate.execute("CREATE TABLE replica_lag (seconds BIGINT)");
+        jdbcTemplate.update("INSERT INTO replica_lag VALUES (0)");
+        return dataSource;
+    }
+}
@@ -0,0 +1,101 @@
+package com.skcc.rental.config.metrics;
+
+import com.skcc.rental.config.ApplicationProperties;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link HibernateStatisticsEndpoint}, on mocked Hibernate statistics.
+ */
+public class HibernateStatisticsEndpointTest {
+
+    private final Statistics statistics = mock(Statistics.class);
+
+    private final ApplicationProperties applicationProperties = new ApplicationProperties();
+
+    private HibernateStatisticsEndpoint endpoint;
+
+    @BeforeEach
+    public void setUp() {
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        SessionFactory sessionFactory = mock(SessionFactory.class);
+        when(entityManagerFactory.unwrap(SessionFactory.class)).thenReturn(sessionFactory);
+        when(sessionFactory.getStatistics()).thenReturn(statistics);
+        when(statistics.getSecondLevelCacheRegionNames()).thenReturn(new String[0]);
+        when(statistics.getEntityNames()).thenReturn(new String[0]);
+        when(statistics.getQueries()).thenReturn(new String[0]);
+        endpoint = new HibernateStatisticsEndpoint(entityManagerFactory, applicationProperties);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void queriesAreTheMostExpensiveFirstAndBounded() {
+        applicationProperties.getHibernateStatistics().setTopQueries(2);
+        applicationProperties.getHibernateStatistics().setSlowQueryThresholdMs(100);
+        when(statistics.getQueries()).thenReturn(new String[]{"cheap", "frequent", "slow"});
+        query("cheap", 10, 5, 1);
+        query("frequent", 1000, 900, 30);
+        query("slow", 2, 400, 250);
+
+        Map<String, Object> result = endpoint.statistics();
+
+        List<Map<String, Object>> queries = (List<Map<String, Object>>) result.get("queries");
+        assertThat(queries).extracting(values -> values.get("query")).containsExactly("frequent", "slow");
+        List<Map<String, Object>> slowQueries = (List<Map<String, Object>>) result.get("slowQueries");
+        assertThat(slowQueries).extracting(values -> values.get("query")).containsExactly("slow");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void slowQueriesAreNotListedWhenTheLogIsDisabled() {
+        applicationProperties.getHibernateStatistics().setSlowQueryThresholdMs(0);
+        when(statistics.getQueries()).thenReturn(new String[]{"slow"});
+        query("slow", 2, 400, 250);
+
+        assertThat((List<Map<String, Object>>) endpoint.statistics().get("slowQueries")).isEmpty();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void regionsReportTheirHitRatio() {
+        when(statistics.getSecondLevelCacheRegionNames()).thenReturn(new String[]{"com.skcc.rental.domain.Rental", "unused"});
+        CacheRegionStatistics region = mock(CacheRegionStatistics.class);
+        when(region.getHitCount()).thenReturn(3L);
+        when(region.getMissCount()).thenReturn(1L);
+        when(statistics.getDomainDataRegionStatistics("com.skcc.rental.domain.Rental")).thenReturn(region);
+        when(statistics.getDomainDataRegionStatistics("unused")).thenReturn(null);
+
+        Map<String, Object> regions = (Map<String, Object>) endpoint.statistics().get("regions");
+
+        assertThat(regions).containsOnlyKeys("com.skcc.rental.domain.Rental");
+        assertThat((Map<String, Object>) regions.get("com.skcc.rental.domain.Rental")).containsEntry("hitRatio", 0.75);
+    }
+
+    @Test
+    public void clearResetsTheStatistics() {
+        endpoint.clear();
+
+        verify(statistics).clear();
+    }
+
+    private void query(String query, long executions, long totalTimeMs, long maxTimeMs) {
+        QueryStatistics queryStatistics = mock(QueryStatistics.class);
+        when(queryStatistics.getExecutionCount()).thenReturn(executions);
+        when(queryStatistics.getExecutionTotalTime()).thenReturn(totalTimeMs);
+        when(queryStatistics.getExecutionMaxTime()).thenReturn(maxTimeMs);
+        when(statistics.getQueryStatistics(query)).thenReturn(queryStatistics);
+    }
+}
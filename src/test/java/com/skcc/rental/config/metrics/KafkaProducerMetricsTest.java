@@ -0,0 +1,38 @@
+package com.skcc.rental.config.metrics;
+
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link KafkaProducerMetrics}.
+ */
+public class KafkaProducerMetricsTest {
+
+    @Test
+    public void producerMetricsAreBound() {
+        Map<String, Object> props = new HashMap<>();
+        props.put("bootstrap.servers", "localhost:9092");
+        props.put("client.id", "metrics-test");
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        KafkaProducer<String, String> producer = new KafkaProducer<>(props, new StringSerializer(), new StringSerializer());
+        try {
+            new KafkaProducerMetrics(producer, Tags.of("profile", "low-latency")).bindTo(registry);
+
+            assertThat(registry.get("kafka.producer.record.send.rate").tag("profile", "low-latency").tag("client-id", "metrics-test").gauge()).isNotNull();
+            assertThat(registry.get("kafka.producer.batch.size.avg").gauge()).isNotNull();
+            assertThat(registry.get("kafka.producer.request.latency.avg").gauge()).isNotNull();
+            assertThat(registry.get("kafka.producer.record.send.total").functionCounter().count()).isZero();
+        } finally {
+            producer.close(Duration.ZERO);
+        }
+    }
+}
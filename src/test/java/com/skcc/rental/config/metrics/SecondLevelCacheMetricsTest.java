@@ -0,0 +1,47 @@
+package com.skcc.rental.config.metrics;
+
+import com.hazelcast.core.HazelcastInstance;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.stat.EntityStatistics;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link SecondLevelCacheMetrics}, on mocked Hibernate statistics.
+ */
+public class SecondLevelCacheMetricsTest {
+
+    private static final String RENTAL = "com.skcc.rental.domain.Rental";
+
+    @Test
+    public void entityCountersFollowTheStatistics() {
+        SessionFactory sessionFactory = mock(SessionFactory.class);
+        SessionFactoryOptions options = mock(SessionFactoryOptions.class);
+        Statistics statistics = mock(Statistics.class);
+        EntityStatistics rental = mock(EntityStatistics.class);
+        when(sessionFactory.getSessionFactoryOptions()).thenReturn(options);
+        when(sessionFactory.getStatistics()).thenReturn(statistics);
+        when(statistics.getEntityNames()).thenReturn(new String[]{RENTAL});
+        when(statistics.getEntityStatistics(RENTAL)).thenReturn(rental);
+        when(rental.getLoadCount()).thenReturn(7L);
+        when(rental.getUpdateCount()).thenReturn(2L);
+        HazelcastInstance hazelcastInstance = mock(HazelcastInstance.class);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        new SecondLevelCacheMetrics(sessionFactory, hazelcastInstance).bindTo(registry);
+
+        assertThat(registry.get("hibernate.entity.loads").tag("entity", RENTAL).functionCounter().count()).isEqualTo(7);
+        assertThat(registry.get("hibernate.entity.updates").tag("entity", RENTAL).functionCounter().count()).isEqualTo(2);
+        when(rental.getLoadCount()).thenReturn(9L);
+        assertThat(registry.get("hibernate.entity.loads").tag("entity", RENTAL).functionCounter().count()).isEqualTo(9);
+        // without a second-level cache there are no region maps to bind
+        verifyNoInteractions(hazelcastInstance);
+    }
+}
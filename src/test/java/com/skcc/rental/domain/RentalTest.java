@@ -2,8 +2,13 @@ package com.skcc.rental.domain;
 
 import org.junit.jupiter.api.Test;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import com.skcc.rental.web.rest.TestUtil;
 
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
 public class RentalTest {
 
     @Test
@@ -19,4 +24,29 @@ public class RentalTest {
         rental1.setId(null);
         assertThat(rental1).isNotEqualTo(rental2);
     }
+
+    @Test
+    public void itemCountersFollowTheItems() throws Exception {
+        Rental rental = Rental.createRental(1L);
+        rental.rentBooks(Arrays.asList(
+            RentedItem.createRentedItem(1L, "title-1", LocalDate.now()),
+            RentedItem.createRentedItem(2L, "title-2", LocalDate.now()),
+            RentedItem.createRentedItem(3L, "title-3", LocalDate.now())));
+        rental.returnBooks(Collections.singletonList(1L));
+        rental.overdueBooks(Collections.singletonList(2L), 30);
+        rental.returnOverdueBooks(Collections.singletonList(2L));
+
+        assertThat(rental.getRentedCount()).isEqualTo(1);
+        assertThat(rental.getOverdueCount()).isZero();
+        assertThat(rental.getReturnedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void availabilityIsCheckedOnTheCounter() throws Exception {
+        Rental rental = Rental.createRental(1L).countItems(4, 0, 0);
+
+        assertThat(rental.getRentedItems()).isEmpty();
+        assertThat(rental.checkRentalAvailable(1)).isTrue();
+        assertThatThrownBy(() -> rental.checkRentalAvailable(2)).isInstanceOf(RentUnavailableException.class).hasMessageContaining("1권");
+    }
 }
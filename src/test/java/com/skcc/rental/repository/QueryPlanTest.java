@@ -0,0 +1,146 @@
+package com.skcc.rental.repository;
+
+import com.skcc.rental.repository.ledger.RentalLedger;
+import com.skcc.rental.service.DueReminderService;
+import com.skcc.rental.service.LateFeeAccrualService;
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Plans of the hot queries on the schema of the Liquibase changelog, on an in-memory H2 database: every table of a
+ * query must be read through an index condition, never scanned. The native statements are the ones the services and
+ * repositories run, with their parameters bound as literals; the statements Hibernate generates are written out.
+ * <p>
+ * H2 writes the access of each table of a plan as a comment, {@code /* PUBLIC.T.tableScan *}{@code /} for a full
+ * scan, {@code /* PUBLIC.INDEX_NAME: CONDITION *}{@code /} for an index lookup and the index name alone for a full
+ * scan of an index.
+ */
+public class QueryPlanTest {
+
+    private static final Pattern PARAMETER = Pattern.compile(":(\\w+)");
+
+    private static final Pattern TABLE_ACCESS = Pattern.compile("/(\\*|\\+\\+) (PUBLIC\\.[^*+]*?) (\\*|\\+\\+)/");
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 1, 1);
+
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    public static void migrate() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:plans;DB_CLOSE_DELAY=-1");
+        Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(dataSource.getConnection()));
+        new Liquibase("config/liquibase/master.xml", new ClassLoaderResourceAccessor(), database).update(new Contexts("test"));
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        // 빈 테이블에서는 H2가 비용을 구분하지 못하므로 통계를 만들 만큼 채운다
+        for (long rental = 1; rental <= 1000; rental++) {
+            jdbcTemplate.update("INSERT INTO rental (id, user_id, rental_status, late_fee) VALUES (?, ?, 'RENT_AVAILABLE', 0)", rental, rental * 10);
+            for (long book = 1; book <= 3; book++) {
+                LocalDate day = FIRST_DAY.plusDays((rental * 3 + book) % 365);
+                for (String table : new String[]{"rented_item", "overdue_item"}) {
+                    jdbcTemplate.update("INSERT INTO " + table + " (book_id, book_title, due_date, rental_id) VALUES (?, 'title', ?, ?)",
+                        rental * 10 + book, Date.valueOf(day), rental);
+                }
+                jdbcTemplate.update("INSERT INTO returned_item (book_id, book_title, returned_date, rental_id) VALUES (?, 'title', ?, ?)",
+                    rental * 10 + book, Date.valueOf(day), rental);
+            }
+        }
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @Test
+    public void rentalOfAUser() {
+        // Hibernate의 natural id 조회와 파생 쿼리가 만드는 SQL
+        assertIndexed("SELECT id FROM rental WHERE user_id = 1");
+        assertIndexed("SELECT * FROM rental_view WHERE user_id = 1");
+        assertIndexed("SELECT * FROM rental_view WHERE rental_id = 1");
+    }
+
+    @Test
+    public void itemsOfARental() {
+        // 컬렉션 로딩과 재집계가 만드는 SQL
+        for (String table : new String[]{"rented_item", "overdue_item", "returned_item"}) {
+            assertIndexed("SELECT * FROM " + table + " WHERE rental_id = 1");
+            assertIndexed("SELECT COUNT(*) FROM " + table + " WHERE rental_id = 1");
+        }
+        assertIndexed("SELECT * FROM returned_item WHERE rental_id = 1 AND returned_date >= DATE '2020-01-01' ORDER BY returned_date");
+    }
+
+    @Test
+    public void itemsMovedByBook() {
+        for (String table : new String[]{"rented_item", "overdue_item"}) {
+            assertIndexed(bind(String.format(RentalRepositoryImpl.ITEM_IDS, table), "rentalId", "1", "bookIds", "1, 2"));
+        }
+    }
+
+    @Test
+    public void itemsDueSoon() {
+        assertIndexed(bind(DueReminderService.DUE_ITEMS_PAGE, "after", "0", "day", "DATE '2020-06-01'",
+            "until", "DATE '2020-06-03'", "pageSize", "10000"));
+        assertIndexed("SELECT * FROM rented_item WHERE due_date < DATE '2020-06-01'");
+    }
+
+    @Test
+    public void lateFeeBatch() {
+        assertIndexed(bind(LateFeeAccrualService.BATCH_END, "after", "0", "batchSize", "5000"));
+        for (String statement : new String[]{LateFeeAccrualService.CHARGED_RENTALS, LateFeeAccrualService.CHARGE_RENTALS,
+            LateFeeAccrualService.DROP_CHARGED_VIEWS, LateFeeAccrualService.MARK_CHARGED}) {
+            assertIndexed(bind(statement, "after", "0", "upTo", "5000", "day", "DATE '2020-06-01'", "feePerDay", "10"));
+        }
+    }
+
+    @Test
+    public void ledgerOfAUser() {
+        assertIndexed(RentalLedger.LATEST_SNAPSHOT.replace("?", "1"));
+        assertIndexed(RentalLedger.EVENTS_AFTER.replaceFirst("\\?", "1").replaceFirst("\\?", "0"));
+    }
+
+    /**
+     * Substitute the named parameters of a statement with SQL literals, given as name and literal pairs.
+     */
+    private static String bind(String sql, String... parameters) {
+        Map<String, String> literals = new HashMap<>();
+        for (int i = 0; i < parameters.length; i += 2) {
+            literals.put(parameters[i], parameters[i + 1]);
+        }
+        Matcher matcher = PARAMETER.matcher(sql);
+        StringBuffer bound = new StringBuffer();
+        while (matcher.find()) {
+            String literal = literals.get(matcher.group(1));
+            assertThat(literal).as("parameter %s of %s", matcher.group(1), sql).isNotNull();
+            matcher.appendReplacement(bound, Matcher.quoteReplacement(literal));
+        }
+        return matcher.appendTail(bound).toString();
+    }
+
+    private static void assertIndexed(String sql) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class);
+        List<String> accesses = new ArrayList<>();
+        Matcher matcher = TABLE_ACCESS.matcher(plan);
+        while (matcher.find()) {
+            accesses.add(matcher.group(2));
+        }
+        assertThat(accesses).as(plan).isNotEmpty()
+            .allSatisfy(access -> assertThat(access).as(plan).doesNotContain("tableScan").contains(":"));
+    }
+}
@@ -0,0 +1,208 @@
+package com.skcc.rental.repository;
+
+import com.skcc.rental.RentalApp;
+import com.skcc.rental.domain.OverdueItem;
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.domain.RentedItem;
+import com.skcc.rental.domain.ReturnedItem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Integration tests for the bulk changes of {@link RentalRepositoryCustom}, in committed transactions so the
+ * collections are reloaded after each move.
+ */
+@SpringBootTest(classes = RentalApp.class)
+public class RentalRepositoryIT {
+
+    private static final Long USER_ID = 4600L;
+
+    private static final LocalDate RENTED = LocalDate.of(2020, 5, 1);
+
+    private static final LocalDate RETURNED = LocalDate.of(2020, 5, 10);
+
+    @Autowired
+    private RentalRepository rentalRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transaction;
+
+    private Long rentalId;
+
+    @BeforeEach
+    public void createRental() {
+        transaction = new TransactionTemplate(transactionManager);
+        rentalId = transaction.execute(status -> {
+            Rental rental = Rental.createRental(USER_ID);
+            for (long bookId = 1; bookId <= 3; bookId++) {
+                rental.addRentedItem(RentedItem.createRentedItem(bookId, "title-" + bookId, RENTED));
+            }
+            return rentalRepository.saveAndFlush(rental).getId();
+        });
+    }
+
+    @AfterEach
+    public void deleteRental() {
+        transaction.execute(status -> {
+            rentalRepository.findById(rentalId).ifPresent(rentalRepository::delete);
+            return null;
+        });
+    }
+
+    @Test
+    public void rentedBooksAreMovedToReturned() {
+        loadItems(rental -> rental.getRentedItems().size());
+
+        Integer moved = transaction.execute(status -> rentalRepository.moveRentedToReturned(rental(), Arrays.asList(1L, 2L, 9L), RETURNED));
+
+        assertThat(moved).isEqualTo(2);
+        List<Long> rentedBooks = loadItems(rental -> rental.getRentedItems().stream().map(RentedItem::getBookId).collect(Collectors.toList()));
+        assertThat(rentedBooks).containsExactly(3L);
+        List<ReturnedItem> returnedItems = loadItems(rental -> new ArrayList<>(rental.getReturnedItems()));
+        assertThat(returnedItems)
+            .extracting(ReturnedItem::getBookId, ReturnedItem::getReturnedDate, ReturnedItem::getBookTitle)
+            .containsExactlyInAnyOrder(tuple(1L, RETURNED, "title-1"), tuple(2L, RETURNED, "title-2"));
+        assertThat(counters()).containsExactly(1, 0, 2);
+    }
+
+    @Test
+    public void rentedBooksAreAddedAndCounted() {
+        assertThat(counters()).containsExactly(3, 0, 0);
+
+        int[] inMemory = transaction.execute(status -> {
+            Rental rental = rental();
+            rentalRepository.addRentedItems(rental, Arrays.asList(
+                RentedItem.createRentedItem(4L, "title-4", RENTED), RentedItem.createRentedItem(5L, "title-5", RENTED)));
+            return new int[]{rental.getRentedCount(), rental.getOverdueCount(), rental.getReturnedCount()};
+        });
+
+        assertThat(inMemory).containsExactly(5, 0, 0);
+        assertThat(counters()).containsExactly(5, 0, 0);
+        List<Long> rentedBooks = loadItems(rental -> rental.getRentedItems().stream().map(RentedItem::getBookId).collect(Collectors.toList()));
+        assertThat(rentedBooks).containsExactlyInAnyOrder(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    public void countersSurviveSavingTheRental() {
+        transaction.execute(status -> rentalRepository.moveRentedToOverdue(rental(), Collections.singletonList(1L)));
+
+        transaction.execute(status -> {
+            Rental stale = rental();
+            stale.setRentedCount(0);
+            stale.setOverdueCount(0);
+            return rentalRepository.saveAndFlush(stale.chargeOverdue(30));
+        });
+
+        assertThat(counters()).containsExactly(2, 1, 0);
+    }
+
+    @Test
+    public void lateFeeChargedMeanwhileIsKept() {
+        TransactionTemplate accrual = new TransactionTemplate(transactionManager);
+        accrual.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        Integer charged = transaction.execute(status -> {
+            Rental rental = rental();
+            // LateFeeAccrualService의 일괄 부과가 조회와 저장 사이에 커밋된다
+            accrual.execute(accrualStatus -> jdbcTemplate.update("UPDATE rental SET late_fee = late_fee + 100 WHERE id = ?", rentalId));
+            rentalRepository.chargeLateFee(rental.chargeOverdue(30), 30);
+            rentalRepository.saveAndFlush(rental);
+            return rental.getLateFee();
+        });
+
+        assertThat(charged).isEqualTo(130);
+        assertThat(loadItems(Rental::getLateFee)).isEqualTo(130);
+
+        Integer owed = transaction.execute(status -> {
+            Rental rental = rental();
+            accrual.execute(accrualStatus -> jdbcTemplate.update("UPDATE rental SET late_fee = late_fee + 100 WHERE id = ?", rentalId));
+            rentalRepository.chargeLateFee(rental.releaseOverdue(rental.getLateFee()), -130);
+            rentalRepository.saveAndFlush(rental);
+            return rental.getLateFee();
+        });
+
+        assertThat(owed).as("only the fee read is paid").isEqualTo(100);
+        assertThat(loadItems(Rental::getLateFee)).isEqualTo(100);
+    }
+
+    @Test
+    public void overdueBooksAreMovedAndReturned() {
+        loadItems(rental -> rental.getOverdueItems().size());
+
+        Integer overdue = transaction.execute(status -> rentalRepository.moveRentedToOverdue(rental(), Collections.singletonList(3L)));
+
+        assertThat(overdue).isEqualTo(1);
+        List<OverdueItem> overdueItems = loadItems(rental -> new ArrayList<>(rental.getOverdueItems()));
+        assertThat(overdueItems)
+            .extracting(OverdueItem::getBookId, OverdueItem::getDueDate)
+            .containsExactly(tuple(3L, RENTED.plusWeeks(2)));
+
+        Integer returned = transaction.execute(status -> rentalRepository.moveOverdueToReturned(rental(), Collections.singletonList(3L), RETURNED));
+
+        assertThat(returned).isEqualTo(1);
+        int[] sizes = loadItems(rental -> new int[]{rental.getRentedItems().size(), rental.getOverdueItems().size(), rental.getReturnedItems().size()});
+        assertThat(sizes).containsExactly(2, 0, 1);
+        assertThat(counters()).containsExactly(2, 0, 1);
+    }
+
+    @Test
+    public void nothingToMove() {
+        Integer notOverdue = transaction.execute(status -> rentalRepository.moveOverdueToReturned(rental(), Collections.singletonList(1L), RETURNED));
+        Integer noBooks = transaction.execute(status -> rentalRepository.moveRentedToReturned(rental(), Collections.emptyList(), RETURNED));
+
+        assertThat(notOverdue).isZero();
+        assertThat(noBooks).isZero();
+        assertThat(counters()).containsExactly(3, 0, 0);
+    }
+
+    @Test
+    public void itemsAreRecounted() {
+        transaction.execute(status -> {
+            rentalRepository.countItems(rentalId, 4, 2, 0);
+            return null;
+        });
+        assertThat(counters()).containsExactly(7, 2, 0);
+
+        transaction.execute(status -> {
+            rentalRepository.recountItems(rentalId);
+            return null;
+        });
+
+        assertThat(counters()).containsExactly(3, 0, 0);
+    }
+
+    private Rental rental() {
+        return rentalRepository.findById(rentalId).get();
+    }
+
+    private int[] counters() {
+        return loadItems(rental -> new int[]{rental.getRentedCount(), rental.getOverdueCount(), rental.getReturnedCount()});
+    }
+
+    private <T> T loadItems(Function<Rental, T> items) {
+        return transaction.execute(status -> items.apply(rentalRepository.findById(rentalId).get()));
+    }
+}
@@ -0,0 +1,116 @@
+package com.skcc.rental.repository.grid;
+
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.domain.RentedItem;
+import com.skcc.rental.domain.enumeration.RentalStatus;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for the {@link RentalEntryProcessor} operations, applied to a map entry as on the partition owner.
+ */
+public class RentalEntryProcessorTest {
+
+    private static final Long USER_ID = 7L;
+
+    @Test
+    public void missingAggregateIsNotCreated() {
+        Map.Entry<Long, Rental> entry = new AbstractMap.SimpleEntry<>(USER_ID, null);
+
+        assertThat(new RentalEntryProcessor.ReleaseOverdue().process(entry)).isNull();
+        assertThat(entry.getValue()).isNull();
+    }
+
+    @Test
+    public void rentBooksUpdatesTheEntry() {
+        Map.Entry<Long, Rental> entry = entry(Rental.createRental(USER_ID));
+
+        Object result = new RentalEntryProcessor.RentBooks(Arrays.asList(rentedItem(1L), rentedItem(2L))).process(entry);
+
+        assertThat(result).isSameAs(entry.getValue());
+        assertThat(entry.getValue().getRentedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void refusedRentalLeavesTheEntryUnchanged() {
+        Rental rental = Rental.createRental(USER_ID).lateFee(30);
+        TrackingEntry entry = new TrackingEntry(rental);
+
+        assertThat(new RentalEntryProcessor.RentBooks(Collections.singletonList(rentedItem(1L))).process(entry)).isNull();
+
+        assertThat(entry.updated).isFalse();
+        assertThat(rental.getRentedCount()).isZero();
+    }
+
+    @Test
+    public void overdueBooksChargeTheLateFeeOnce() {
+        Rental rental = Rental.createRental(USER_ID);
+        rental.addRentedItem(rentedItem(1L));
+        rental.addRentedItem(rentedItem(2L));
+        Map.Entry<Long, Rental> entry = entry(rental);
+
+        new RentalEntryProcessor.OverdueBooks(Arrays.asList(1L, 2L), 30).process(entry);
+
+        assertThat(entry.getValue().getOverdueCount()).isEqualTo(2);
+        assertThat(entry.getValue().getLateFee()).isEqualTo(30);
+        assertThat(entry.getValue().getRentalStatus()).isEqualTo(RentalStatus.RENT_UNAVAILABLE);
+    }
+
+    @Test
+    public void returningUnrentedBooksLeavesTheEntryUnchanged() {
+        Rental rental = Rental.createRental(USER_ID);
+        rental.addRentedItem(rentedItem(1L));
+        TrackingEntry entry = new TrackingEntry(rental);
+
+        assertThat(new RentalEntryProcessor.ReturnBooks(Collections.singletonList(2L)).process(entry)).isNull();
+
+        assertThat(entry.updated).isFalse();
+        assertThat(rental.getRentedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void releaseOverduePaysTheLateFee() {
+        Map.Entry<Long, Rental> entry = entry(Rental.createRental(USER_ID).rentalStatus(RentalStatus.RENT_UNAVAILABLE).lateFee(60));
+
+        new RentalEntryProcessor.ReleaseOverdue().process(entry);
+
+        assertThat(entry.getValue().getLateFee()).isZero();
+        assertThat(entry.getValue().getRentalStatus()).isEqualTo(RentalStatus.RENT_AVAILABLE);
+    }
+
+    private static Map.Entry<Long, Rental> entry(Rental rental) {
+        return new AbstractMap.SimpleEntry<>(USER_ID, rental);
+    }
+
+    private static RentedItem rentedItem(Long bookId) {
+        LocalDate today = LocalDate.now();
+        return RentedItem.createRentedItem(bookId, "book-" + bookId, today).dueDate(today.plusDays(14));
+    }
+
+    /**
+     * An entry that records whether the processor wrote it back, which would replicate it to the backups.
+     */
+    private static class TrackingEntry extends AbstractMap.SimpleEntry<Long, Rental> {
+
+        private static final long serialVersionUID = 1L;
+
+        private boolean updated;
+
+        TrackingEntry(Rental rental) {
+            super(USER_ID, rental);
+        }
+
+        @Override
+        public Rental setValue(Rental value) {
+            updated = true;
+            return super.setValue(value);
+        }
+    }
+}
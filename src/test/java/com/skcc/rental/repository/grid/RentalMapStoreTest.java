@@ -0,0 +1,137 @@
+package com.skcc.rental.repository.grid;
+
+import com.skcc.rental.config.ApplicationProperties;
+import com.skcc.rental.domain.OverdueItem;
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.domain.RentedItem;
+import com.skcc.rental.domain.ReturnedItem;
+import com.skcc.rental.domain.enumeration.RentalStatus;
+import com.skcc.rental.repository.OverdueItemRepository;
+import com.skcc.rental.repository.RentalRepository;
+import com.skcc.rental.repository.RentedItemRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the write-behind merge of {@link RentalMapStore}, with mocked repositories.
+ */
+public class RentalMapStoreTest {
+
+    private static final Long USER_ID = 7L;
+
+    private static final LocalDate RENTED_DATE = LocalDate.of(2020, 3, 2);
+
+    private static final LocalDate RETURNED_DATE = LocalDate.of(2020, 3, 9);
+
+    private final RentalRepository rentalRepository = mock(RentalRepository.class);
+
+    private final RentedItemRepository rentedItemRepository = mock(RentedItemRepository.class);
+
+    private final OverdueItemRepository overdueItemRepository = mock(OverdueItemRepository.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private RentalMapStore rentalMapStore;
+
+    @BeforeEach
+    public void setUp() {
+        rentalMapStore = new RentalMapStore(rentalRepository, rentedItemRepository, overdueItemRepository,
+            mock(PlatformTransactionManager.class), meterRegistry, new ApplicationProperties());
+        when(rentalRepository.save(any())).then(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    public void storeMergesTheAggregateAndCountsTheChanges() {
+        Rental persistent = Rental.createRental(USER_ID);
+        persistent.setId(1L);
+        RentedItem overdue = rentedItem(10L, 1L);
+        persistent.addRentedItem(overdue);
+        persistent.addRentedItem(rentedItem(11L, 2L));
+        persistent.addReturnedItem(returnedItem(12L, 9L));
+        when(rentalRepository.findByUserId(USER_ID)).thenReturn(Optional.of(persistent));
+
+        // the grid aggregate: book 1 went overdue, book 3 was rented and book 4 returned the same day
+        Rental rental = Rental.createRental(USER_ID).rentalStatus(RentalStatus.RENT_UNAVAILABLE).lateFee(30);
+        rental.addRentedItem(rentedItem(11L, 2L));
+        rental.addRentedItem(rentedItem(null, 3L));
+        rental.addOverdueItem(OverdueItem.createOverdueItem(1L, "book-1", RENTED_DATE.plusDays(14)));
+        rental.addReturnedItem(returnedItem(12L, 9L));
+        rental.addReturnedItem(returnedItem(null, 4L));
+
+        rentalMapStore.store(USER_ID, rental);
+
+        verify(rentedItemRepository).delete(overdue);
+        assertThat(persistent.getRentedItems()).extracting(RentedItem::getBookId).containsExactlyInAnyOrder(2L, 3L);
+        assertThat(persistent.getOverdueItems()).extracting(OverdueItem::getBookId).containsExactly(1L);
+        assertThat(persistent.getReturnedItems()).extracting(ReturnedItem::getBookId).containsExactlyInAnyOrder(9L, 4L);
+        assertThat(persistent.getRentalStatus()).isEqualTo(RentalStatus.RENT_UNAVAILABLE);
+        // counters and the late fee of an existing rental are written as relative updates
+        verify(rentalRepository).countItems(1L, 0, 1, 1);
+        verify(rentalRepository).replaceLateFee(persistent, 30);
+        assertThat(meterRegistry.get("rental.grid.store.batch").summary().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void returnedHistoryIsOnlyAdded() {
+        Rental persistent = Rental.createRental(USER_ID);
+        persistent.setId(1L);
+        persistent.addReturnedItem(returnedItem(12L, 9L));
+        persistent.addReturnedItem(returnedItem(13L, 8L));
+        when(rentalRepository.findByUserId(USER_ID)).thenReturn(Optional.of(persistent));
+
+        // older returns are not loaded into the grid and must not be removed
+        Rental rental = Rental.createRental(USER_ID);
+        rental.addReturnedItem(returnedItem(12L, 9L));
+
+        rentalMapStore.store(USER_ID, rental);
+
+        assertThat(persistent.getReturnedItems()).extracting(ReturnedItem::getBookId).containsExactlyInAnyOrder(9L, 8L);
+        verify(rentalRepository).countItems(1L, 0, 0, 0);
+    }
+
+    @Test
+    public void newRentalIsInsertedWithItsCounters() {
+        when(rentalRepository.findByUserId(USER_ID)).thenReturn(Optional.empty());
+        Rental rental = Rental.createRental(USER_ID).lateFee(60);
+        rental.addRentedItem(rentedItem(null, 1L));
+        rental.addOverdueItem(OverdueItem.createOverdueItem(2L, "book-2", RENTED_DATE.plusDays(14)));
+
+        rentalMapStore.store(USER_ID, rental);
+
+        ArgumentCaptor<Rental> inserted = ArgumentCaptor.forClass(Rental.class);
+        verify(rentalRepository).save(inserted.capture());
+        assertThat(inserted.getValue().getUserId()).isEqualTo(USER_ID);
+        assertThat(inserted.getValue().getLateFee()).isEqualTo(60);
+        assertThat(inserted.getValue().getRentedCount()).isEqualTo(1);
+        assertThat(inserted.getValue().getOverdueCount()).isEqualTo(1);
+        verify(rentalRepository, never()).countItems(anyLong(), anyInt(), anyInt(), anyInt());
+        verify(rentalRepository, never()).replaceLateFee(any(), anyInt());
+    }
+
+    private static RentedItem rentedItem(Long id, Long bookId) {
+        RentedItem item = RentedItem.createRentedItem(bookId, "book-" + bookId, RENTED_DATE).dueDate(RENTED_DATE.plusDays(14));
+        item.setId(id);
+        return item;
+    }
+
+    private static ReturnedItem returnedItem(Long id, Long bookId) {
+        ReturnedItem item = ReturnedItem.createReturnedItem(bookId, "book-" + bookId, RETURNED_DATE);
+        item.setId(id);
+        return item;
+    }
+}
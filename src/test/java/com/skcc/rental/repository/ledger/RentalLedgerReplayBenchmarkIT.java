@@ -0,0 +1,97 @@
+package com.skcc.rental.repository.ledger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skcc.rental.config.ApplicationProperties;
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.domain.RentedItem;
+import com.skcc.rental.repository.RentalRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Rebuild speed of a rental from its ledger for several snapshot frequencies.
+ * <p>
+ * Small by default so it runs with the unit tests; for meaningful numbers run it alone with e.g.
+ * {@code -Dledger.benchmark.events=100000 -Dledger.benchmark.rebuilds=200}.
+ */
+public class RentalLedgerReplayBenchmarkIT {
+
+    private static final Long USER_ID = 1L;
+
+    private static final int EVENTS = Integer.getInteger("ledger.benchmark.events", 2000);
+
+    private static final int REBUILDS = Integer.getInteger("ledger.benchmark.rebuilds", 20);
+
+    private final Logger log = LoggerFactory.getLogger(RentalLedgerReplayBenchmarkIT.class);
+
+    private final ObjectMapper objectMapper = RentalLedgerTest.objectMapper();
+
+    @Test
+    public void replayBenchmark() throws Exception {
+        for (int snapshotEvery : new int[]{EVENTS + 1, 1000, 100, 10}) {
+            JdbcTemplate jdbcTemplate = RentalLedgerTest.database("benchmark");
+            Rental expected = fill(jdbcTemplate, snapshotEvery);
+            ApplicationProperties applicationProperties = new ApplicationProperties();
+            applicationProperties.getRentalLedger().setSnapshotEvery(snapshotEvery);
+            SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+            RentalLedger ledger = new RentalLedger(jdbcTemplate, mock(RentalRepository.class), objectMapper, applicationProperties, meterRegistry);
+
+            Rental rebuilt = null;
+            long start = System.nanoTime();
+            for (int i = 0; i < REBUILDS; i++) {
+                rebuilt = ledger.load(USER_ID).get();
+            }
+            double millisPerRebuild = (System.nanoTime() - start) / 1e6 / REBUILDS;
+
+            double replayed = meterRegistry.get("rental.ledger.replayed.events").summary().mean();
+            log.info("{} events, snapshot every {}: {} ms per rebuild, {} events replayed",
+                EVENTS, snapshotEvery > EVENTS ? "never" : snapshotEvery, String.format("%.2f", millisPerRebuild), (long) replayed);
+            assertThat(replayed).isLessThan(snapshotEvery);
+            assertThat(meterRegistry.get("rental.ledger.rebuild").timer().totalTime(TimeUnit.NANOSECONDS)).isPositive();
+            assertThat(rebuilt.getRentedItems()).hasSameSizeAs(expected.getRentedItems());
+            assertThat(rebuilt.getReturnedItems()).hasSameSizeAs(expected.getReturnedItems());
+        }
+    }
+
+    /**
+     * Insert a ledger of alternating rentals and returns of one book, with its snapshots, in batches.
+     */
+    private Rental fill(JdbcTemplate jdbcTemplate, int snapshotEvery) throws Exception {
+        Rental rental = Rental.createRental(USER_ID);
+        rental.setId(10L);
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object[]> events = new ArrayList<>();
+        List<Object[]> snapshots = new ArrayList<>();
+        snapshots.add(new Object[]{USER_ID, 0L, objectMapper.writeValueAsString(RentalSnapshot.of(rental)), now});
+        LocalDate day = LocalDate.of(2020, 1, 1);
+        for (long sequence = 1; sequence <= EVENTS; sequence++) {
+            long bookId = (sequence + 1) / 2;
+            RentalLedgerEvent event = sequence % 2 == 1
+                ? new RentalLedgerEvent.BooksRented(Collections.singletonList(RentedItem.createRentedItem(bookId, "title-" + bookId, day)))
+                : new RentalLedgerEvent.BooksReturned(Collections.singletonList(bookId), day.plusDays(1));
+            assertThat(event.applyTo(rental)).isTrue();
+            events.add(new Object[]{USER_ID, sequence, event.type(), objectMapper.writeValueAsString(event), now});
+            // the latest snapshot lags by half the frequency, the average tail
+            if (snapshotEvery <= EVENTS && sequence <= EVENTS - snapshotEvery / 2 && (EVENTS - snapshotEvery / 2 - sequence) % snapshotEvery == 0) {
+                snapshots.add(new Object[]{USER_ID, sequence, objectMapper.writeValueAsString(RentalSnapshot.of(rental)), now});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO rental_event (user_id, sequence, event_type, payload, created_at) VALUES (?, ?, ?, ?, ?)", events);
+        jdbcTemplate.batchUpdate("INSERT INTO rental_snapshot (user_id, sequence, state, created_at) VALUES (?, ?, ?, ?)", snapshots);
+        return rental;
+    }
+}
@@ -0,0 +1,126 @@
+package com.skcc.rental.repository.ledger;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.skcc.rental.config.ApplicationProperties;
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.domain.RentedItem;
+import com.skcc.rental.domain.ReturnedItem;
+import com.skcc.rental.domain.enumeration.RentalStatus;
+import com.skcc.rental.repository.RentalRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link RentalLedger}, on an in-memory H2 database.
+ */
+public class RentalLedgerTest {
+
+    private static final Long USER_ID = 5L;
+
+    private static final LocalDate RENTED = LocalDate.of(2020, 5, 1);
+
+    private final RentalRepository rentalRepository = mock(RentalRepository.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private JdbcTemplate jdbcTemplate;
+
+    private RentalLedger ledger;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate = database("ledger");
+        Rental rental = Rental.createRental(USER_ID);
+        rental.setId(50L);
+        when(rentalRepository.findByUserId(USER_ID)).thenReturn(Optional.of(rental));
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getRentalLedger().setSnapshotEvery(3);
+        ledger = new RentalLedger(jdbcTemplate, rentalRepository, objectMapper(), applicationProperties, meterRegistry);
+    }
+
+    @Test
+    public void rentalIsRebuiltFromSnapshotAndTail() {
+        ledger.append(USER_ID, new RentalLedgerEvent.BooksRented(Arrays.asList(book(1L), book(2L), book(3L))));
+        ledger.append(USER_ID, new RentalLedgerEvent.BooksReturned(Collections.singletonList(1L), LocalDate.of(2020, 5, 3)));
+        ledger.append(USER_ID, new RentalLedgerEvent.BooksOverdue(Collections.singletonList(2L), 30));
+        Rental appended = ledger.append(USER_ID, new RentalLedgerEvent.OverdueBooksReturned(Collections.singletonList(2L), LocalDate.of(2020, 5, 20)));
+
+        Rental rebuilt = ledger.load(USER_ID).get();
+
+        assertThat(rebuilt.getId()).isEqualTo(50L);
+        assertThat(rebuilt.getRentalStatus()).isEqualTo(RentalStatus.RENT_UNAVAILABLE).isEqualTo(appended.getRentalStatus());
+        assertThat(rebuilt.getLateFee()).isEqualTo(30);
+        assertThat(rebuilt.getRentedItems()).extracting(RentedItem::getBookId).containsExactly(3L);
+        assertThat(rebuilt.getOverdueItems()).isEmpty();
+        assertThat(rebuilt.getReturnedItems().stream().collect(Collectors.toMap(ReturnedItem::getBookId, ReturnedItem::getReturnedDate)))
+            .containsEntry(1L, LocalDate.of(2020, 5, 3))
+            .containsEntry(2L, LocalDate.of(2020, 5, 20));
+        assertThat(jdbcTemplate.queryForList("SELECT sequence FROM rental_event ORDER BY sequence", Long.class)).containsExactly(1L, 2L, 3L, 4L);
+        assertThat(jdbcTemplate.queryForList("SELECT sequence FROM rental_snapshot ORDER BY sequence", Long.class)).containsExactly(0L, 3L);
+        assertThat(meterRegistry.get("rental.ledger.replayed.events").summary().max()).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    public void releasedLateFeeIsRecorded() {
+        ledger.append(USER_ID, new RentalLedgerEvent.BooksRented(Collections.singletonList(book(1L))));
+        ledger.append(USER_ID, new RentalLedgerEvent.BooksOverdue(Collections.singletonList(1L), 30));
+        ledger.append(USER_ID, new RentalLedgerEvent.OverdueReleased());
+
+        Rental rebuilt = ledger.load(USER_ID).get();
+
+        assertThat(rebuilt.getLateFee()).isZero();
+        assertThat(rebuilt.getRentalStatus()).isEqualTo(RentalStatus.RENT_AVAILABLE);
+        assertThat(jdbcTemplate.queryForObject("SELECT payload FROM rental_event WHERE sequence = 3", String.class)).contains("\"lateFee\":30");
+    }
+
+    @Test
+    public void rejectedEventIsNotRecorded() {
+        Rental rejected = ledger.append(USER_ID, new RentalLedgerEvent.BooksRented(
+            Arrays.asList(book(1L), book(2L), book(3L), book(4L), book(5L), book(6L))));
+        Rental unchanged = ledger.append(USER_ID, new RentalLedgerEvent.BooksReturned(Collections.singletonList(9L), RENTED));
+
+        assertThat(rejected).isNull();
+        assertThat(unchanged).isNull();
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM rental_event", Integer.class)).isZero();
+        assertThat(ledger.load(USER_ID).get().getRentedItems()).isEmpty();
+    }
+
+    @Test
+    public void userWithoutRentalHasNoLedger() {
+        assertThat(ledger.append(6L, new RentalLedgerEvent.OverdueReleased())).isNull();
+        assertThat(ledger.load(6L)).isEmpty();
+    }
+
+    private static RentedItem book(Long bookId) {
+        return RentedItem.createRentedItem(bookId, "title-" + bookId, RENTED);
+    }
+
+    static ObjectMapper objectMapper() {
+        return new ObjectMapper().registerModule(new JavaTimeModule());
+    }
+
+    static JdbcTemplate database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE rental_event (id BIGINT AUTO_INCREMENT PRIMARY KEY, user_id BIGINT NOT NULL, sequence BIGINT NOT NULL, " +
+            "event_type VARCHAR(50) NOT NULL, payload CLOB NOT NULL, created_at TIMESTAMP NOT NULL, CONSTRAINT ux_rental_event_user_sequence UNIQUE (user_id, sequence))");
+        jdbcTemplate.execute("CREATE TABLE rental_snapshot (user_id BIGINT NOT NULL, sequence BIGINT NOT NULL, state CLOB NOT NULL, " +
+            "created_at TIMESTAMP NOT NULL, PRIMARY KEY (user_id, sequence))");
+        return jdbcTemplate;
+    }
+}
@@ -0,0 +1,153 @@
+package com.skcc.rental.repository.shard;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test class for {@link ShardKeyAspect} and {@link ShardRoutingDataSource}, with one H2 database per shard.
+ */
+public class ShardKeyAspectTest {
+
+    private static final int SHARDS = 3;
+
+    private final ShardMap shardMap = new ShardMap(SHARDS);
+
+    private final List<JdbcDataSource> shards = new ArrayList<>();
+
+    private ShardRoutingDataSource routingDataSource;
+
+    private Rentals rentals;
+
+    @BeforeEach
+    public void setUp() {
+        for (int shard = 0; shard < SHARDS; shard++) {
+            shards.add(database(shard));
+        }
+        routingDataSource = new ShardRoutingDataSource(shards);
+        routingDataSource.afterPropertiesSet();
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new Rentals(dataSource));
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(new ShardKeyAspect(shardMap));
+        rentals = proxyFactory.getProxy();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        routingDataSource.close();
+    }
+
+    @Test
+    public void rentalsAreStoredOnTheShardOfTheirUser() {
+        List<Long> ids = new ArrayList<>();
+        for (long userId = 1; userId <= 30; userId++) {
+            ids.add(rentals.create(userId));
+        }
+
+        for (int shard = 0; shard < SHARDS; shard++) {
+            List<Long> userIds = new JdbcTemplate(shards.get(shard)).queryForList("SELECT user_id FROM rental", Long.class);
+            assertThat(userIds).isNotEmpty();
+            int expectedShard = shard;
+            assertThat(userIds).allMatch(userId -> shardMap.shardOfUser(userId) == expectedShard);
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            assertThat(rentals.userOf(ids.get(i))).isEqualTo(i + 1L);
+        }
+    }
+
+    @Test
+    public void keyIsReadFromAProperty() {
+        Rental rental = new Rental();
+        rental.setUserId(7L);
+
+        long id = rentals.save(rental);
+
+        assertThat(shardMap.shardOfEntity(id)).isEqualTo(shardMap.shardOfUser(7L));
+        assertThat(rentals.userOf(id)).isEqualTo(7L);
+    }
+
+    @Test
+    public void shardCannotChangeWithinATransaction() {
+        long userId = 1;
+        long otherUserId = userId + 1;
+        while (shardMap.shardOfUser(otherUserId) == shardMap.shardOfUser(userId)) {
+            otherUserId++;
+        }
+        long other = otherUserId;
+
+        assertThatThrownBy(() -> rentals.createBoth(userId, rentals, other)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static JdbcDataSource database(int shard) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:shard-" + shard + "-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        // ids interleaved like MariaDB's auto_increment_offset
+        jdbcTemplate.execute("CREATE SEQUENCE rental_id START WITH " + (shard + 1) + " INCREMENT BY " + SHARDS);
+        jdbcTemplate.execute("CREATE TABLE rental (id BIGINT DEFAULT NEXT VALUE FOR rental_id PRIMARY KEY, user_id BIGINT)");
+        return dataSource;
+    }
+
+    public static class Rental {
+
+        private Long userId;
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public void setUserId(Long userId) {
+            this.userId = userId;
+        }
+    }
+
+    public static class Rentals {
+
+        private final JdbcTemplate jdbcTemplate;
+
+        private final TransactionTemplate transactionTemplate;
+
+        public Rentals(LazyConnectionDataSourceProxy dataSource) {
+            this.jdbcTemplate = new JdbcTemplate(dataSource);
+            this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        }
+
+        public long create(@ShardKey Long userId) {
+            return transactionTemplate.execute(status -> insert(userId));
+        }
+
+        public long save(@ShardKey(property = "userId") Rental rental) {
+            return transactionTemplate.execute(status -> insert(rental.getUserId()));
+        }
+
+        public Long userOf(@ShardKey(ShardKey.Type.ENTITY_ID) Long id) {
+            return transactionTemplate.execute(status -> jdbcTemplate.queryForObject("SELECT user_id FROM rental WHERE id = ?", Long.class, id));
+        }
+
+        public void createBoth(@ShardKey Long userId, Rentals self, Long otherUserId) {
+            transactionTemplate.execute(status -> {
+                insert(userId);
+                return self.create(otherUserId);
+            });
+        }
+
+        private long insert(Long userId) {
+            jdbcTemplate.update("INSERT INTO rental (user_id) VALUES (?)", userId);
+            return jdbcTemplate.queryForObject("SELECT MAX(id) FROM rental", Long.class);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.skcc.rental.repository.shard;
+
+import com.skcc.rental.config.ApplicationProperties;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link ShardedQueries}, with one H2 database per shard.
+ */
+public class ShardedQueriesTest {
+
+    private static final int SHARDS = 3;
+
+    private final ShardMap shardMap = new ShardMap(SHARDS);
+
+    private ShardRoutingDataSource routingDataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private ShardedQueries shardedQueries;
+
+    @BeforeEach
+    public void setUp() {
+        List<JdbcDataSource> shards = new ArrayList<>();
+        for (int shard = 0; shard < SHARDS; shard++) {
+            shards.add(database(shard));
+        }
+        // user 10 + id on the shard of the id
+        for (long id = 1; id <= 20; id++) {
+            new JdbcTemplate(shards.get(shardMap.shardOfEntity(id))).update("INSERT INTO rental VALUES (?, ?)", id, 10 + (id * 7) % 20);
+        }
+        routingDataSource = new ShardRoutingDataSource(shards);
+        routingDataSource.afterPropertiesSet();
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        shardedQueries = new ShardedQueries(shardMap, new DataSourceTransactionManager(dataSource), new ApplicationProperties());
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        shardedQueries.shutdown();
+        routingDataSource.close();
+    }
+
+    @Test
+    public void unsortedPageIsOrderedById() {
+        Page<Row> page = shardedQueries.findAll(PageRequest.of(1, 6), this::findAll);
+
+        assertThat(page.getTotalElements()).isEqualTo(20);
+        assertThat(page.getContent()).extracting(Row::getId).containsExactly(7L, 8L, 9L, 10L, 11L, 12L);
+    }
+
+    @Test
+    public void sortedPageMergesTheShards() {
+        Page<Row> page = shardedQueries.findAll(PageRequest.of(2, 4, Sort.by(Sort.Direction.DESC, "userId")), this::findAll);
+
+        List<Long> expected = new ArrayList<>();
+        for (long id = 1; id <= 20; id++) {
+            expected.add(10 + (id * 7) % 20);
+        }
+        expected.sort((left, right) -> Long.compare(right, left));
+        assertThat(page.getContent()).extracting(Row::getUserId).containsExactlyElementsOf(expected.subList(8, 12));
+        assertThat(page.getTotalPages()).isEqualTo(5);
+    }
+
+    @Test
+    public void lastPageIsPartial() {
+        Page<Row> page = shardedQueries.findAll(PageRequest.of(3, 6), this::findAll);
+
+        assertThat(page.getContent()).extracting(Row::getId).containsExactly(19L, 20L);
+        assertThat(page.isLast()).isTrue();
+    }
+
+    @Test
+    public void unpagedReturnsEverything() {
+        Page<Row> page = shardedQueries.findAll(Pageable.unpaged(), this::findAll);
+
+        assertThat(page.getContent()).hasSize(20);
+    }
+
+    /**
+     * What the repository does on one shard.
+     */
+    private Page<Row> findAll(Pageable pageable) {
+        String orderBy = pageable.getSort().stream()
+            .map(order -> ("userId".equals(order.getProperty()) ? "user_id" : order.getProperty()) + " " + order.getDirection())
+            .collect(Collectors.joining(", "));
+        List<Row> rows = jdbcTemplate.query("SELECT id, user_id FROM rental ORDER BY " + orderBy + " LIMIT ?",
+            (resultSet, rowNum) -> new Row(resultSet.getLong("id"), resultSet.getLong("user_id")), pageable.getPageSize());
+        Long total = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM rental", Long.class);
+        return new PageImpl<>(rows, pageable, total);
+    }
+
+    private static JdbcDataSource database(int shard) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:shard-" + shard + "-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        new JdbcTemplate(dataSource).execute("CREATE TABLE rental (id BIGINT PRIMARY KEY, user_id BIGINT)");
+        return dataSource;
+    }
+
+    public static class Row {
+
+        private final Long id;
+
+        private final Long userId;
+
+        Row(Long id, Long userId) {
+            this.id = id;
+            this.userId = userId;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.asList(id, userId).toString();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.skcc.rental.service;
+
+import com.skcc.rental.adaptor.RentalKafkaProducer;
+import com.skcc.rental.config.ApplicationProperties;
+import com.skcc.rental.domain.DueReminderEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test class for {@link DueReminderService}, on an in-memory H2 database.
+ */
+public class DueReminderServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2020, 6, 1);
+
+    private final RentalKafkaProducer rentalKafkaProducer = mock(RentalKafkaProducer.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final List<List<DueReminderEvent>> published = new ArrayList<>();
+
+    private JdbcTemplate jdbcTemplate;
+
+    private DueReminderService dueReminderService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:reminder" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE rental (id BIGINT PRIMARY KEY, user_id BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE rented_item (id BIGINT AUTO_INCREMENT PRIMARY KEY, book_id BIGINT, book_title VARCHAR(255), " +
+            "due_date DATE, rental_id BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE due_reminder_run (reminder_date DATE PRIMARY KEY, last_rental_id BIGINT DEFAULT 0 NOT NULL, " +
+            "reminded_users BIGINT DEFAULT 0 NOT NULL, started_at TIMESTAMP NOT NULL, completed_at TIMESTAMP)");
+        // 대여 1~4는 4권씩 반납 예정, 대여 5는 반납일이 멀어 제외
+        for (long rental = 1; rental <= 5; rental++) {
+            jdbcTemplate.update("INSERT INTO rental (id, user_id) VALUES (?, ?)", rental, rental * 100);
+            for (long book = 1; book <= 4; book++) {
+                LocalDate dueDate = rental == 5 ? DAY.plusDays(10) : DAY.plusDays(book % 3);
+                jdbcTemplate.update("INSERT INTO rented_item (book_id, book_title, due_date, rental_id) VALUES (?, ?, ?, ?)",
+                    rental * 10 + book, "title-" + book, Date.valueOf(dueDate), rental);
+            }
+        }
+        doAnswer(invocation -> published.add(new ArrayList<>(invocation.getArgument(0)))).when(rentalKafkaProducer).remindDue(any());
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getDueReminder().setDaysAhead(2);
+        applicationProperties.getDueReminder().setPageSize(10);
+        dueReminderService = new DueReminderService(new NamedParameterJdbcTemplate(jdbcTemplate), new DataSourceTransactionManager(dataSource),
+            rentalKafkaProducer, applicationProperties, meterRegistry);
+    }
+
+    @Test
+    public void refusesToStartWithTheRentalLedger() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getRentalLedger().setEnabled(true);
+
+        assertThatThrownBy(() -> new DueReminderService(new NamedParameterJdbcTemplate(jdbcTemplate),
+            mock(PlatformTransactionManager.class), rentalKafkaProducer, applicationProperties, meterRegistry))
+            .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void usersAreRemindedOnceWithAllTheirDueBooks() {
+        assertThat(dueReminderService.remind(DAY)).isEqualTo(4);
+
+        assertThat(published).hasSize(2);
+        assertThat(published.get(0)).extracting(DueReminderEvent::getUserId).containsExactly(100L, 200L);
+        Map<Long, Integer> booksByUser = published.stream().flatMap(List::stream)
+            .collect(Collectors.toMap(DueReminderEvent::getUserId, reminder -> reminder.getBooks().size()));
+        assertThat(booksByUser).containsOnlyKeys(100L, 200L, 300L, 400L).containsValues(4);
+        assertThat(published.get(1).get(0).getReminderDate()).isEqualTo(DAY);
+        assertThat(meterRegistry.get("rental.due-reminder.items").counter().count()).isEqualTo(16);
+        assertThat(meterRegistry.get("rental.due-reminder.checkpoint").gauge().value()).isEqualTo(4);
+
+        assertThat(dueReminderService.remind(DAY)).as("a completed day is skipped").isZero();
+        assertThat(published).hasSize(2);
+    }
+
+    @Test
+    public void interruptedRunResumesFromItsCheckpoint() {
+        jdbcTemplate.update("INSERT INTO due_reminder_run (reminder_date, last_rental_id, reminded_users, started_at) VALUES (?, 2, 2, CURRENT_TIMESTAMP)",
+            Date.valueOf(DAY));
+
+        assertThat(dueReminderService.remind(DAY)).isEqualTo(2);
+
+        assertThat(published.stream().flatMap(List::stream).map(DueReminderEvent::getUserId)).containsExactly(300L, 400L);
+        assertThat(jdbcTemplate.queryForObject("SELECT reminded_users FROM due_reminder_run", Long.class)).isEqualTo(4);
+    }
+
+    @Test
+    public void failedPublishKeepsTheCheckpoint() throws Exception {
+        doAnswer(invocation -> {
+            throw new ExecutionException(new IllegalStateException("broker down"));
+        }).when(rentalKafkaProducer).remindDue(any());
+
+        assertThatThrownBy(() -> dueReminderService.remind(DAY)).isInstanceOf(IllegalStateException.class);
+
+        assertThat(jdbcTemplate.queryForObject("SELECT last_rental_id FROM due_reminder_run", Long.class)).isZero();
+    }
+}
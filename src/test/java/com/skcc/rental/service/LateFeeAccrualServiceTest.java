@@ -0,0 +1,160 @@
+package com.skcc.rental.service;
+
+import com.skcc.rental.config.ApplicationProperties;
+import com.skcc.rental.domain.Rental;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link LateFeeAccrualService}, on an in-memory H2 database.
+ */
+public class LateFeeAccrualServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2020, 6, 1);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+
+    private final Cache cache = mock(Cache.class);
+
+    private JdbcTemplate jdbcTemplate;
+
+    private LateFeeAccrualService accrualService;
+
+    @BeforeEach
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:accrual" + System.nanoTime() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE rental (id BIGINT PRIMARY KEY, user_id BIGINT, late_fee BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE overdue_item (id BIGINT AUTO_INCREMENT PRIMARY KEY, book_id BIGINT, due_date DATE, " +
+            "rental_id BIGINT, late_fee_accrued_on DATE)");
+        jdbcTemplate.execute("CREATE TABLE rental_view (user_id BIGINT PRIMARY KEY, rental_id BIGINT)");
+        jdbcTemplate.execute("CREATE TABLE late_fee_accrual_run (accrual_date DATE PRIMARY KEY, last_item_id BIGINT DEFAULT 0 NOT NULL, " +
+            "accrued_items BIGINT DEFAULT 0 NOT NULL, started_at TIMESTAMP NOT NULL, completed_at TIMESTAMP)");
+        for (long rental = 1; rental <= 3; rental++) {
+            jdbcTemplate.update("INSERT INTO rental (id, user_id, late_fee) VALUES (?, ?, 30)", rental, rental * 100);
+            jdbcTemplate.update("INSERT INTO rental_view (user_id, rental_id) VALUES (?, ?)", rental * 100, rental);
+        }
+        overdue(1, DAY.minusDays(3));
+        overdue(1, DAY.minusDays(1));
+        overdue(2, DAY.minusDays(2));
+        overdue(3, DAY);
+
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getLateFeeAccrual().setFeePerDay(10);
+        applicationProperties.getLateFeeAccrual().setBatchSize(2);
+        applicationProperties.getLateFeeAccrual().setCatchUpDays(3);
+        when(entityManagerFactory.getCache()).thenReturn(cache);
+        accrualService = new LateFeeAccrualService(new NamedParameterJdbcTemplate(jdbcTemplate), new DataSourceTransactionManager(dataSource),
+            entityManagerFactory, applicationProperties, meterRegistry);
+    }
+
+    @Test
+    public void onlyChargedRentalsAreEvicted() {
+        accrualService.accrue(DAY);
+
+        verify(cache).evict(Rental.class, 1L);
+        verify(cache).evict(Rental.class, 2L);
+        verify(cache, never()).evict(Rental.class, 3L);
+        verify(cache, never()).evict(Rental.class);
+    }
+
+    @Test
+    public void refusesToStartWithTheRentalGridOrLedger() {
+        ApplicationProperties withGrid = new ApplicationProperties();
+        withGrid.getRentalGrid().setEnabled(true);
+        ApplicationProperties withLedger = new ApplicationProperties();
+        withLedger.getRentalLedger().setEnabled(true);
+
+        for (ApplicationProperties applicationProperties : new ApplicationProperties[]{withGrid, withLedger}) {
+            assertThatThrownBy(() -> new LateFeeAccrualService(new NamedParameterJdbcTemplate(jdbcTemplate),
+                mock(PlatformTransactionManager.class), entityManagerFactory, applicationProperties, meterRegistry))
+                .isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    public void overdueItemsAreChargedOncePerDay() {
+        assertThat(accrualService.accrue(DAY)).isEqualTo(3);
+        assertThat(accrualService.accrue(DAY)).isZero();
+
+        assertThat(lateFees()).containsExactly(50L, 40L, 30L);
+        assertThat(jdbcTemplate.queryForList("SELECT rental_id FROM rental_view ORDER BY rental_id", Long.class))
+            .as("views of charged rentals are projected again")
+            .containsExactly(3L);
+        assertThat(jdbcTemplate.queryForObject("SELECT accrued_items FROM late_fee_accrual_run WHERE accrual_date = ?", Long.class, Date.valueOf(DAY)))
+            .isEqualTo(3);
+        assertThat(meterRegistry.get("rental.late-fee.accrual.items").counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("rental.late-fee.accrual.days").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("rental.late-fee.accrual.progress").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    public void interruptedRunResumesFromItsCheckpoint() {
+        // 첫 배치(항목 1, 2)까지 처리하고 중단된 실행
+        jdbcTemplate.update("UPDATE rental SET late_fee = 50 WHERE id = 1");
+        jdbcTemplate.update("UPDATE overdue_item SET late_fee_accrued_on = ? WHERE id <= 2", Date.valueOf(DAY));
+        jdbcTemplate.update("INSERT INTO late_fee_accrual_run (accrual_date, last_item_id, accrued_items, started_at) VALUES (?, 2, 2, CURRENT_TIMESTAMP)",
+            Date.valueOf(DAY));
+
+        assertThat(accrualService.accrue(DAY)).isEqualTo(1);
+
+        assertThat(lateFees()).containsExactly(50L, 40L, 30L);
+    }
+
+    @Test
+    public void lostCheckpointDoesNotChargeTwice() {
+        jdbcTemplate.update("UPDATE rental SET late_fee = 50 WHERE id = 1");
+        jdbcTemplate.update("UPDATE overdue_item SET late_fee_accrued_on = ? WHERE id <= 2", Date.valueOf(DAY));
+
+        assertThat(accrualService.accrue(DAY)).isEqualTo(1);
+
+        assertThat(lateFees()).containsExactly(50L, 40L, 30L);
+    }
+
+    @Test
+    public void missedDaysAreCaughtUp() {
+        jdbcTemplate.update("INSERT INTO late_fee_accrual_run (accrual_date, started_at, completed_at) VALUES (?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)",
+            Date.valueOf(DAY.minusDays(2)));
+
+        accrualService.accrueDueFees(DAY);
+
+        // 5/31에는 항목 1, 3, 6/1에는 항목 1, 2, 3이 연체 중
+        assertThat(lateFees()).containsExactly(60L, 50L, 30L);
+        assertThat(jdbcTemplate.queryForList("SELECT accrual_date FROM late_fee_accrual_run WHERE completed_at IS NOT NULL ORDER BY accrual_date", Date.class))
+            .containsExactly(Date.valueOf(DAY.minusDays(2)), Date.valueOf(DAY.minusDays(1)), Date.valueOf(DAY));
+
+        accrualService.accrueDueFees(DAY);
+
+        assertThat(lateFees()).containsExactly(60L, 50L, 30L);
+    }
+
+    private void overdue(long rentalId, LocalDate dueDate) {
+        jdbcTemplate.update("INSERT INTO overdue_item (book_id, due_date, rental_id) VALUES (?, ?, ?)", rentalId * 10, Date.valueOf(dueDate), rentalId);
+    }
+
+    private List<Long> lateFees() {
+        return jdbcTemplate.queryForList("SELECT late_fee FROM rental ORDER BY id", Long.class);
+    }
+}
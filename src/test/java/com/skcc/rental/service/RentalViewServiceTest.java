@@ -0,0 +1,222 @@
+package com.skcc.rental.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.skcc.rental.config.ApplicationProperties;
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.domain.RentalView;
+import com.skcc.rental.domain.RentedItem;
+import com.skcc.rental.domain.ReturnedItem;
+import com.skcc.rental.domain.enumeration.RentalStatus;
+import com.skcc.rental.repository.RentalRepository;
+import com.skcc.rental.repository.RentalViewRepository;
+import com.skcc.rental.web.rest.dto.RentalDTO;
+import com.skcc.rental.web.rest.dto.RentalViewDTO;
+import com.skcc.rental.web.rest.dto.ReturnedItemDTO;
+import com.skcc.rental.web.rest.mapper.OverdueItemMapperImpl;
+import com.skcc.rental.web.rest.mapper.RentedItemMapperImpl;
+import com.skcc.rental.web.rest.mapper.ReturnedItemMapperImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.time.LocalDate;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link RentalViewService}.
+ */
+public class RentalViewServiceTest {
+
+    private static final Long USER_ID = 7L;
+
+    private static final Long RENTAL_ID = 70L;
+
+    private final ApplicationProperties applicationProperties = new ApplicationProperties();
+
+    private final RentalRepository rentalRepository = mock(RentalRepository.class);
+
+    private final RentalViewRepository rentalViewRepository = mock(RentalViewRepository.class);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .registerModule(new JavaTimeModule())
+        .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private RentalViewService rentalViewService;
+
+    @BeforeEach
+    public void setUp() {
+        applicationProperties.getRentalView().setMaxReturnedItems(2);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(rentalViewRepository.saveAndFlush(any())).then(invocation -> invocation.getArgument(0));
+        rentalViewService = new RentalViewService(applicationProperties, rentalRepository, rentalViewRepository,
+            new RentedItemMapperImpl(), new OverdueItemMapperImpl(), new ReturnedItemMapperImpl(), objectMapper,
+            transactionManager, meterRegistry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        rentalViewService.shutdown();
+    }
+
+    @Test
+    public void missingViewIsProjectedOnRead() {
+        when(rentalRepository.findByUserId(USER_ID)).thenReturn(Optional.of(rental()));
+
+        Optional<RentalViewDTO> view = rentalViewService.findByUserId(USER_ID);
+
+        assertThat(view).isPresent();
+        assertThat(view.get().getRentalId()).isEqualTo(RENTAL_ID);
+        assertThat(view.get().getRentedItems()).extracting("bookId").containsExactly(1L);
+        assertThat(view.get().getReturnedItems().stream().map(ReturnedItemDTO::getBookId).collect(Collectors.toList()))
+            .as("newest first, limited to max-returned-items")
+            .containsExactly(4L, 3L);
+        RentalView stored = stored();
+        assertThat(stored.getUserId()).isEqualTo(USER_ID);
+        assertThat(stored.getRentalId()).isEqualTo(RENTAL_ID);
+        assertThat(meterRegistry.get("rental.view.reads").tag("result", "miss").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void storedViewIsReadWithoutTheRental() throws Exception {
+        RentalViewDTO document = rentalViewService.project(rental());
+        RentalView view = new RentalView();
+        view.setUserId(USER_ID);
+        view.setRentalId(RENTAL_ID);
+        view.setRentalStatus(RentalStatus.RENT_AVAILABLE);
+        view.setDocument(objectMapper.writeValueAsString(document));
+        when(rentalViewRepository.findById(USER_ID)).thenReturn(Optional.of(view));
+        when(rentalViewRepository.findOneByRentalId(RENTAL_ID)).thenReturn(Optional.of(view));
+
+        assertThat(rentalViewService.findByUserId(USER_ID)).contains(document);
+        assertThat(rentalViewService.findByRentalId(RENTAL_ID).get().getUserId()).isEqualTo(USER_ID);
+
+        verify(rentalRepository, never()).findByUserId(any());
+        verify(rentalRepository, never()).findById(any());
+        assertThat(meterRegistry.get("rental.view.reads").tag("result", "hit").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void rentalByIdCarriesTheItemCounters() {
+        Rental rental = rental();
+        when(rentalRepository.findById(RENTAL_ID)).thenReturn(Optional.of(rental));
+        when(rentalRepository.findByUserId(USER_ID)).thenReturn(Optional.of(rental));
+
+        RentalDTO projected = rentalViewService.findByRentalId(RENTAL_ID).get();
+
+        assertThat(projected).extracting(RentalDTO::getRentedCount, RentalDTO::getOverdueCount, RentalDTO::getReturnedCount)
+            .containsExactly(1, 0, 3);
+        RentalView stored = stored();
+        assertThat(stored).extracting(RentalView::getRentedCount, RentalView::getOverdueCount, RentalView::getReturnedCount)
+            .containsExactly(1, 0, 3);
+        assertThat(rentalViewService.project(rental).getReturnedCount())
+            .as("all the returned items, not only those kept in the document")
+            .isEqualTo(3);
+
+        when(rentalViewRepository.findOneByRentalId(RENTAL_ID)).thenReturn(Optional.of(stored));
+        assertThat(rentalViewService.findByRentalId(RENTAL_ID).get())
+            .extracting(RentalDTO::getRentedCount, RentalDTO::getOverdueCount, RentalDTO::getReturnedCount)
+            .containsExactly(1, 0, 3);
+
+        applicationProperties.getRentalView().setEnabled(false);
+        assertThat(rentalViewService.findByRentalId(RENTAL_ID).get())
+            .extracting(RentalDTO::getRentedCount, RentalDTO::getOverdueCount, RentalDTO::getReturnedCount)
+            .containsExactly(1, 0, 3);
+    }
+
+    @Test
+    public void viewIsRefreshedAfterChange() {
+        Rental rental = rental();
+        rental.setLateFee(30);
+        when(rentalRepository.findByUserId(USER_ID)).thenReturn(Optional.of(rental));
+
+        rentalViewService.onRentalChanged(new RentalChangedEvent(USER_ID));
+
+        ArgumentCaptor<RentalView> captor = ArgumentCaptor.forClass(RentalView.class);
+        verify(rentalViewRepository, timeout(5000)).saveAndFlush(captor.capture());
+        assertThat(captor.getValue().getLateFee()).isEqualTo(30);
+    }
+
+    @Test
+    public void viewIsDeletedWithTheRental() {
+        RentalView view = new RentalView();
+        view.setUserId(USER_ID);
+        when(rentalRepository.findByUserId(USER_ID)).thenReturn(Optional.empty());
+        when(rentalViewRepository.findOneForUpdate(USER_ID)).thenReturn(Optional.of(view));
+
+        rentalViewService.onRentalChanged(new RentalChangedEvent(USER_ID));
+
+        verify(rentalViewRepository, timeout(5000)).delete(view);
+    }
+
+    @Test
+    public void viewIsLockedBeforeTheRentalIsRead() {
+        RentalView view = new RentalView();
+        view.setUserId(USER_ID);
+        when(rentalViewRepository.findOneForUpdate(USER_ID)).thenReturn(Optional.of(view));
+        when(rentalRepository.findByUserId(USER_ID)).thenReturn(Optional.of(rental()));
+
+        assertThat(rentalViewService.refresh(USER_ID)).containsSame(view);
+
+        InOrder inOrder = inOrder(rentalViewRepository, rentalRepository);
+        inOrder.verify(rentalViewRepository).findOneForUpdate(USER_ID);
+        inOrder.verify(rentalRepository).findByUserId(USER_ID);
+        inOrder.verify(rentalViewRepository).saveAndFlush(view);
+    }
+
+    @Test
+    public void concurrentlyCreatedViewIsRefreshedUnderItsLock() {
+        Rental older = rental();
+        Rental newer = rental();
+        newer.setLateFee(30);
+        RentalView created = new RentalView();
+        created.setUserId(USER_ID);
+        // the other refresh inserted the row first, this one's insert fails and the row can be locked on the retry
+        when(rentalViewRepository.findOneForUpdate(USER_ID)).thenReturn(Optional.empty(), Optional.of(created));
+        when(rentalRepository.findByUserId(USER_ID)).thenReturn(Optional.of(older), Optional.of(newer));
+        when(rentalViewRepository.saveAndFlush(any()))
+            .thenThrow(new DataIntegrityViolationException("duplicate rental_view"))
+            .then(invocation -> invocation.getArgument(0));
+
+        Optional<RentalView> view = rentalViewService.refresh(USER_ID);
+
+        assertThat(view).containsSame(created);
+        assertThat(created.getLateFee()).isEqualTo(30);
+    }
+
+    private RentalView stored() {
+        ArgumentCaptor<RentalView> captor = ArgumentCaptor.forClass(RentalView.class);
+        verify(rentalViewRepository).saveAndFlush(captor.capture());
+        return captor.getValue();
+    }
+
+    private static Rental rental() {
+        Rental rental = Rental.createRental(USER_ID);
+        rental.setId(RENTAL_ID);
+        rental.addRentedItem(RentedItem.createRentedItem(1L, "title-1", LocalDate.of(2020, 5, 1)));
+        rental.addReturnedItem(ReturnedItem.createReturnedItem(2L, "title-2", LocalDate.of(2020, 4, 1)));
+        rental.addReturnedItem(ReturnedItem.createReturnedItem(3L, "title-3", LocalDate.of(2020, 4, 2)));
+        rental.addReturnedItem(ReturnedItem.createReturnedItem(4L, "title-4", LocalDate.of(2020, 4, 3)));
+        return rental;
+    }
+}
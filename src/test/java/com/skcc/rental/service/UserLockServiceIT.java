@@ -0,0 +1,169 @@
+package com.skcc.rental.service;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.skcc.rental.config.ApplicationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Locks users from two cluster members, the way two rental instances behind the gateway do.
+ */
+public class UserLockServiceIT {
+
+    private static HazelcastInstance first;
+
+    private static HazelcastInstance second;
+
+    private static SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private static UserLockService firstLocks;
+
+    private static UserLockService secondLocks;
+
+    @BeforeAll
+    public static void startCluster() {
+        first = Hazelcast.newHazelcastInstance(memberConfig("user-lock-first"));
+        second = Hazelcast.newHazelcastInstance(memberConfig("user-lock-second"));
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getUserLock().setWaitTimeoutMs(200);
+        firstLocks = new UserLockService(first, applicationProperties, meterRegistry);
+        secondLocks = new UserLockService(second, applicationProperties, meterRegistry);
+    }
+
+    @AfterAll
+    public static void stopCluster() {
+        second.shutdown();
+        first.shutdown();
+    }
+
+    @Test
+    public void sameUserIsSerializedAcrossMembers() throws Exception {
+        double timeoutsBefore = meterRegistry.get("rental.user.lock.timeouts").counter().count();
+        long waitsBefore = waits();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> inTransaction(() -> {
+            firstLocks.lock(1L);
+            locked.countDown();
+            await(release);
+        }));
+        assertThat(locked.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> CompletableFuture.runAsync(() -> inTransaction(() -> secondLocks.lock(1L))).join())
+            .hasCauseInstanceOf(CannotAcquireLockException.class);
+        // other users are not blocked, on either member
+        CompletableFuture.runAsync(() -> inTransaction(() -> secondLocks.lock(2L))).get(10, TimeUnit.SECONDS);
+        CompletableFuture.runAsync(() -> inTransaction(() -> firstLocks.lock(1025L))).get(10, TimeUnit.SECONDS);
+
+        release.countDown();
+        holder.get(10, TimeUnit.SECONDS);
+        CompletableFuture.runAsync(() -> inTransaction(() -> secondLocks.lock(1L))).get(10, TimeUnit.SECONDS);
+
+        assertThat(meterRegistry.get("rental.user.lock.timeouts").counter().count()).isEqualTo(timeoutsBefore + 1);
+        assertThat(waits()).isEqualTo(waitsBefore + 5);
+    }
+
+    @Test
+    public void ownerTakesTheLockLocally() {
+        long userId = LongStream.range(100, 1000).filter(id -> first.getPartitionService().getPartition(id).getOwner().localMember())
+            .findFirst().getAsLong();
+        long localBefore = meterRegistry.get("rental.user.lock.wait").tag("partition", "local").timer().count();
+
+        inTransaction(() -> firstLocks.lock(userId));
+
+        assertThat(meterRegistry.get("rental.user.lock.wait").tag("partition", "local").timer().count()).isEqualTo(localBefore + 1);
+    }
+
+    @Test
+    public void sameUserIsSerializedOnOneMember() throws Exception {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> inTransaction(() -> {
+            firstLocks.lock(4L);
+            locked.countDown();
+            await(release);
+        }));
+        assertThat(locked.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> CompletableFuture.runAsync(() -> inTransaction(() -> firstLocks.lock(4L))).join())
+            .hasCauseInstanceOf(CannotAcquireLockException.class);
+
+        release.countDown();
+        holder.get(10, TimeUnit.SECONDS);
+        CompletableFuture.runAsync(() -> inTransaction(() -> firstLocks.lock(4L))).get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void expiredLeaseIsTakenOver() throws Exception {
+        ApplicationProperties shortLease = new ApplicationProperties();
+        shortLease.getUserLock().setLeaseTimeMs(100);
+        UserLockService abandoning = new UserLockService(first, shortLease, new SimpleMeterRegistry());
+        ApplicationProperties patient = new ApplicationProperties();
+        patient.getUserLock().setWaitTimeoutMs(10000);
+        UserLockService waiting = new UserLockService(second, patient, new SimpleMeterRegistry());
+        // a holder that never completes its transaction, like a member that hangs
+        CompletableFuture.runAsync(() -> {
+            TransactionSynchronizationManager.initSynchronization();
+            abandoning.lock(9L);
+            TransactionSynchronizationManager.clearSynchronization();
+        }).get(10, TimeUnit.SECONDS);
+
+        CompletableFuture.runAsync(() -> inTransaction(() -> waiting.lock(9L))).get(15, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void lockRequiresTransaction() {
+        assertThatThrownBy(() -> firstLocks.lock(3L)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static long waits() {
+        return meterRegistry.get("rental.user.lock.wait").timers().stream().mapToLong(timer -> timer.count()).sum();
+    }
+
+    /**
+     * Run the action like a transactional service method, releasing the registered locks at completion.
+     */
+    private static void inTransaction(Runnable action) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            action.run();
+        } finally {
+            TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Config memberConfig(String instanceName) {
+        Config config = new Config();
+        config.setInstanceName(instanceName);
+        config.getNetworkConfig().setPort(5911);
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.getNetworkConfig().getJoin().getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+        config.getNetworkConfig().getInterfaces().setEnabled(true).addInterface("127.0.0.1");
+        return config;
+    }
+}
@@ -0,0 +1,132 @@
+package com.skcc.rental.service.impl;
+
+import com.skcc.rental.adaptor.BookClient;
+import com.skcc.rental.adaptor.RentalKafkaProducer;
+import com.skcc.rental.adaptor.UserClient;
+import com.skcc.rental.config.ApplicationProperties;
+import com.skcc.rental.domain.Rental;
+import com.skcc.rental.repository.RentalRepository;
+import com.skcc.rental.repository.RentedItemRepository;
+import com.skcc.rental.repository.ReturnedItemRepository;
+import com.skcc.rental.repository.grid.RentalEntryProcessor;
+import com.skcc.rental.repository.grid.RentalGrid;
+import com.skcc.rental.repository.ledger.LedgerModeException;
+import com.skcc.rental.repository.ledger.RentalLedger;
+import com.skcc.rental.service.UserLockService;
+import com.skcc.rental.web.rest.dto.BookInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for {@link RentalServiceImpl}, with mocked collaborators.
+ */
+public class RentalServiceImplTest {
+
+    private static final Long USER_ID = 5L;
+
+    private final RentalRepository rentalRepository = mock(RentalRepository.class);
+
+    private final UserLockService userLockService = mock(UserLockService.class);
+
+    private final RentalKafkaProducer rentalKafkaProducer = mock(RentalKafkaProducer.class);
+
+    private RentalServiceImpl rentalService;
+
+    @BeforeEach
+    public void setUp() {
+        rentalService = new RentalServiceImpl(rentalRepository, mock(RentedItemRepository.class), mock(ReturnedItemRepository.class),
+            rentalKafkaProducer, mock(BookClient.class), mock(UserClient.class), userLockService,
+            mock(ApplicationEventPublisher.class), new ApplicationProperties());
+    }
+
+    @Test
+    public void operationsLockTheUser() {
+        Rental rental = Rental.createRental(USER_ID).lateFee(30);
+        when(rentalRepository.findByUserId(USER_ID)).thenReturn(Optional.of(rental));
+        when(rentalRepository.save(any())).then(invocation -> invocation.getArgument(0));
+
+        assertThat(rentalService.releaseOverdue(USER_ID).getLateFee()).isZero();
+
+        verify(userLockService).lock(USER_ID);
+    }
+
+    @Test
+    public void gridOperationsDoNotLockTheUser() {
+        RentalGrid rentalGrid = mock(RentalGrid.class);
+        when(rentalGrid.execute(anyLong(), any(RentalEntryProcessor.class))).thenReturn(Rental.createRental(USER_ID));
+        rentalService.setRentalGrid(rentalGrid);
+
+        assertThat(rentalService.releaseOverdue(USER_ID)).isNotNull();
+
+        verify(rentalGrid).execute(anyLong(), any(RentalEntryProcessor.ReleaseOverdue.class));
+        verify(userLockService, never()).lock(any());
+    }
+
+    @Test
+    public void failedPublishFailsTheRental() throws Exception {
+        Rental rental = Rental.createRental(USER_ID);
+        rental.setId(1L);
+        when(rentalRepository.findByUserId(USER_ID)).thenReturn(Optional.of(rental));
+        RentalKafkaProducer.RentalEvents events = mock(RentalKafkaProducer.RentalEvents.class, RETURNS_SELF);
+        when(rentalKafkaProducer.events()).thenReturn(events);
+        doThrow(new ExecutionException(new TimeoutException("no broker"))).when(events).publish();
+
+        // the exception rolls the rented items back instead of committing them without their events
+        assertThatThrownBy(() -> rentalService.rentBooks(USER_ID, Collections.singletonList(book(1L))))
+            .isInstanceOf(IllegalStateException.class)
+            .hasCauseInstanceOf(TimeoutException.class);
+    }
+
+    @Test
+    public void unavailableRentalIsRefusedWithoutEvents() {
+        when(rentalRepository.findByUserId(USER_ID)).thenReturn(Optional.of(Rental.createRental(USER_ID).lateFee(30)));
+
+        assertThat(rentalService.rentBooks(USER_ID, Collections.singletonList(book(1L)))).isNull();
+
+        verify(rentalRepository, never()).addRentedItems(any(), any());
+        verify(rentalKafkaProducer, never()).events();
+    }
+
+    @Test
+    public void ledgerModeReadsRentalsFromTheLedgerAndRefusesTableWrites() {
+        Rental frozen = Rental.createRental(USER_ID);
+        frozen.setId(1L);
+        Rental current = Rental.createRental(USER_ID).lateFee(30);
+        current.setId(1L);
+        RentalLedger rentalLedger = mock(RentalLedger.class);
+        when(rentalLedger.load(USER_ID)).thenReturn(Optional.of(current));
+        when(rentalRepository.findById(1L)).thenReturn(Optional.of(frozen));
+        rentalService.setRentalLedger(rentalLedger);
+
+        assertThat(rentalService.findOne(1L)).containsSame(current);
+        assertThatThrownBy(() -> rentalService.save(frozen)).isInstanceOf(LedgerModeException.class);
+        assertThatThrownBy(() -> rentalService.delete(1L)).isInstanceOf(LedgerModeException.class);
+
+        verify(rentalRepository, never()).save(any());
+        verify(rentalRepository, never()).deleteById(any());
+    }
+
+    private static BookInfo book(Long id) {
+        BookInfo book = new BookInfo();
+        book.setId(id);
+        book.setTitle("book-" + id);
+        return book;
+    }
+}
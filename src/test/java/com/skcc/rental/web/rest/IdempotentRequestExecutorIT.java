@@ -0,0 +1,188 @@
+package com.skcc.rental.web.rest;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.skcc.rental.config.ApplicationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class for {@link IdempotentRequestExecutor}.
+ */
+public class IdempotentRequestExecutorIT {
+
+    private static HazelcastInstance hazelcastInstance;
+
+    private static IdempotentRequestExecutor executor;
+
+    @BeforeAll
+    public static void startHazelcast() {
+        Config config = new Config();
+        config.setInstanceName("idempotency-test");
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        hazelcastInstance = Hazelcast.newHazelcastInstance(config);
+        executor = new IdempotentRequestExecutor(hazelcastInstance, new ApplicationProperties(), new SimpleMeterRegistry());
+    }
+
+    @AfterAll
+    public static void stopHazelcast() {
+        hazelcastInstance.shutdown();
+    }
+
+    @Test
+    public void completedRequestIsReplayed() {
+        AtomicInteger runs = new AtomicInteger();
+        ResponseEntity<?> first = executor.execute("return:1", "key-1", "[1, 2]", () -> ResponseEntity.ok(runs.incrementAndGet()));
+        ResponseEntity<?> retry = executor.execute("return:1", "key-1", "[1, 2]", () -> ResponseEntity.ok(runs.incrementAndGet()));
+
+        assertThat(runs.get()).isEqualTo(1);
+        assertThat(first.getHeaders().containsKey(IdempotentRequestExecutor.REPLAYED_HEADER)).isFalse();
+        assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(retry.getBody()).isEqualTo(1);
+        assertThat(retry.getHeaders().getFirst(IdempotentRequestExecutor.REPLAYED_HEADER)).isEqualTo("true");
+    }
+
+    @Test
+    public void duplicateWaitsForRequestInProgress() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CompletableFuture<ResponseEntity<?>> first = CompletableFuture.supplyAsync(() ->
+            executor.execute("rent:2", "key-2", "[3]", () -> {
+                started.countDown();
+                await(finish);
+                return ResponseEntity.ok(runs.incrementAndGet());
+            }));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<ResponseEntity<?>> duplicate = CompletableFuture.supplyAsync(() ->
+            executor.execute("rent:2", "key-2", "[3]", () -> ResponseEntity.ok(runs.incrementAndGet())));
+
+        finish.countDown();
+        assertThat(first.get(10, TimeUnit.SECONDS).getBody()).isEqualTo(1);
+        assertThat(duplicate.get(10, TimeUnit.SECONDS).getBody()).isEqualTo(1);
+        assertThat(runs.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void keyReusedWithOtherParametersIsRejected() {
+        executor.execute("return:3", "key-3", "[1]", () -> ResponseEntity.ok().build());
+
+        ResponseEntity<?> response = executor.execute("return:3", "key-3", "[2]", () -> ResponseEntity.ok().build());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @Test
+    public void serverErrorIsNotStored() {
+        AtomicInteger runs = new AtomicInteger();
+        executor.execute("rent:4", "key-4", "[1]", () -> {
+            runs.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        });
+        ResponseEntity<?> retry = executor.execute("rent:4", "key-4", "[1]", () -> ResponseEntity.ok(runs.incrementAndGet()));
+
+        assertThat(runs.get()).isEqualTo(2);
+        assertThat(retry.getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    public void duplicateWithOtherParametersWaitsAndIsRejected() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CompletableFuture<ResponseEntity<?>> first = CompletableFuture.supplyAsync(() ->
+            executor.execute("rent:6", "key-6", "[1]", () -> {
+                started.countDown();
+                await(finish);
+                return ResponseEntity.ok().build();
+            }));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<ResponseEntity<?>> duplicate = CompletableFuture.supplyAsync(() ->
+            executor.execute("rent:6", "key-6", "[2]", () -> ResponseEntity.ok().build()));
+
+        finish.countDown();
+        assertThat(first.get(10, TimeUnit.SECONDS).getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(duplicate.get(10, TimeUnit.SECONDS).getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @Test
+    public void duplicateGivesUpAfterTheWaitTimeout() throws Exception {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getIdempotency().setWaitTimeoutMs(100);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        IdempotentRequestExecutor impatient = new IdempotentRequestExecutor(hazelcastInstance, applicationProperties, meterRegistry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CompletableFuture<ResponseEntity<?>> first = CompletableFuture.supplyAsync(() ->
+            impatient.execute("rent:7", "key-7", "[1]", () -> {
+                started.countDown();
+                await(finish);
+                return ResponseEntity.ok().build();
+            }));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+
+        ResponseEntity<?> duplicate = impatient.execute("rent:7", "key-7", "[1]", () -> ResponseEntity.ok().build());
+
+        finish.countDown();
+        assertThat(duplicate.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+        assertThat(first.get(10, TimeUnit.SECONDS).getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(meterRegistry.get("rental.idempotency.requests").tag("result", "conflict").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void requestOutlivingItsLeaseStillSucceeds() {
+        ApplicationProperties applicationProperties = new ApplicationProperties();
+        applicationProperties.getIdempotency().setLeaseTimeMs(100);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        IdempotentRequestExecutor leased = new IdempotentRequestExecutor(hazelcastInstance, applicationProperties, meterRegistry);
+
+        ResponseEntity<?> response = leased.execute("rent:8", "key-8", "[1]", () -> {
+            // well past the lease, which Hazelcast expires on a scheduler of about a second
+            sleep(2000);
+            return ResponseEntity.ok(8);
+        });
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo(8);
+        assertThat(meterRegistry.get("rental.idempotency.lease.expired").counter().count()).isEqualTo(1);
+        assertThat(leased.execute("rent:8", "key-8", "[1]", () -> ResponseEntity.ok(9)).getBody())
+            .as("the response is stored anyway")
+            .isEqualTo(8);
+    }
+
+    @Test
+    public void requestWithoutKeyAlwaysRuns() {
+        AtomicInteger runs = new AtomicInteger();
+        executor.execute("rent:5", null, "[1]", () -> ResponseEntity.ok(runs.incrementAndGet()));
+        executor.execute("rent:5", null, "[1]", () -> ResponseEntity.ok(runs.incrementAndGet()));
+
+        assertThat(runs.get()).isEqualTo(2);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.skcc.rental.web.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skcc.rental.config.ApplicationProperties;
+import com.skcc.rental.config.KafkaProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test class for the batch publishing of {@link RentalKafkaResource}.
+ */
+public class RentalKafkaResourceTest {
+
+    private final KafkaProperties kafkaProperties = new KafkaProperties();
+
+    private final SseFanOutHub hub = new SseFanOutHub(new ApplicationProperties(), new SimpleMeterRegistry());
+
+    // built like the application's, which ignores unknown properties
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private MockProducer<String, String> batchProducer;
+
+    private MockMvc restMockMvc;
+
+    private void setUp(boolean autoComplete) {
+        batchProducer = new MockProducer<>(autoComplete, new StringSerializer(), new StringSerializer());
+        RentalKafkaResource resource = new RentalKafkaResource(kafkaProperties, hub, objectMapper, props ->
+            "rental-batch-publish".equals(props.get("client.id"))
+                ? batchProducer
+                : new MockProducer<>(true, new StringSerializer(), new StringSerializer()));
+        restMockMvc = MockMvcBuilders.standaloneSetup(resource).build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        hub.shutdown();
+    }
+
+    @Test
+    public void batchReturnsTheOffsetOfEveryMessage() throws Exception {
+        setUp(true);
+
+        publish(false, "[{\"key\":\"1\",\"message\":\"a\"},{\"key\":\"2\",\"message\":\"b\"},{\"message\":\"c\"}]")
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.count").value(3))
+            .andExpect(jsonPath("$.failed").value(0))
+            .andExpect(jsonPath("$.records", hasSize(3)))
+            .andExpect(jsonPath("$.records[2].index").value(2))
+            .andExpect(jsonPath("$.records[2].offset").value(2))
+            .andExpect(jsonPath("$.partitions.0.lastOffset").value(2));
+
+        assertThat(batchProducer.history()).extracting(record -> record.key()).containsExactly("1", "2", null);
+    }
+
+    @Test
+    public void messagesAreReadWithTheApplicationObjectMapper() throws Exception {
+        setUp(true);
+
+        publish(false, "[{\"key\":\"1\",\"message\":\"a\",\"traceId\":\"t-1\"}]")
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.count").value(1))
+            .andExpect(jsonPath("$.failed").value(0));
+    }
+
+    @Test
+    public void summaryOmitsTheRecords() throws Exception {
+        setUp(true);
+
+        restMockMvc.perform(post("/api/rental-kafka/publish/topic-batch/batch?summary=true")
+            .contentType("application/x-ndjson")
+            .content("{\"key\":\"1\",\"message\":\"a\"}\n{\"key\":\"2\",\"message\":\"b\"}\n"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.count").value(2))
+            .andExpect(jsonPath("$.records").doesNotExist())
+            .andExpect(jsonPath("$.partitions.0.count").value(2));
+    }
+
+    @Test
+    public void readingStopsWhileTheInFlightLimitIsReached() throws Exception {
+        // room for two of the messages below
+        kafkaProperties.getBatchPublish().setMaxInFlightBytes(12);
+        setUp(false);
+
+        CompletableFuture<ResultActions> response = CompletableFuture.supplyAsync(() -> {
+            try {
+                return publish(false, "[{\"key\":\"1\",\"message\":\"a\"},{\"key\":\"2\",\"message\":\"b\"},{\"key\":\"3\",\"message\":\"c\"}]");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        awaitSent(2);
+        Thread.sleep(200);
+        assertThat(batchProducer.history()).hasSize(2);
+
+        batchProducer.errorNext(new IllegalStateException("broker down"));
+        awaitSent(3);
+        batchProducer.completeNext();
+        batchProducer.completeNext();
+
+        response.get(10, TimeUnit.SECONDS)
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.count").value(3))
+            .andExpect(jsonPath("$.failed").value(1))
+            .andExpect(jsonPath("$.records[0].error").value("broker down"))
+            .andExpect(jsonPath("$.records[1].offset").value(1));
+    }
+
+    private ResultActions publish(boolean summary, String body) throws Exception {
+        return restMockMvc.perform(post("/api/rental-kafka/publish/topic-batch/batch?summary=" + summary)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(body));
+    }
+
+    private void awaitSent(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && batchProducer.history().size() < count; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(batchProducer.history()).hasSize(count);
+    }
+}
@@ -191,7 +191,6 @@ public class RentalResourceIT {
         // Disconnect from session so that the updates on updatedRental are not directly saved in db
         em.detach(updatedRental);
         updatedRental
-            .userId(UPDATED_USER_ID)
             .rentalStatus(UPDATED_RENTAL_STATUS)
             .lateFee(UPDATED_LATE_FEE);
         RentalDTO rentalDTO = rentalMapper.toDto(updatedRental);
@@ -205,11 +204,33 @@ public class RentalResourceIT {
         List<Rental> rentalList = rentalRepository.findAll();
         assertThat(rentalList).hasSize(databaseSizeBeforeUpdate);
         Rental testRental = rentalList.get(rentalList.size() - 1);
-        assertThat(testRental.getUserId()).isEqualTo(UPDATED_USER_ID);
+        assertThat(testRental.getUserId()).isEqualTo(DEFAULT_USER_ID);
         assertThat(testRental.getRentalStatus()).isEqualTo(UPDATED_RENTAL_STATUS);
         assertThat(testRental.getLateFee()).isEqualTo(UPDATED_LATE_FEE);
     }
 
+    @Test
+    @Transactional
+    public void updateRentalWithAnotherUser() throws Exception {
+        // Initialize the database
+        rentalRepository.saveAndFlush(rental);
+
+        // The user is the natural id of the rental, so this API call must fail
+        Rental updatedRental = rentalRepository.findById(rental.getId()).get();
+        em.detach(updatedRental);
+        updatedRental.userId(UPDATED_USER_ID);
+        RentalDTO rentalDTO = rentalMapper.toDto(updatedRental);
+
+        restRentalMockMvc.perform(put("/api/rentals")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(TestUtil.convertObjectToJsonBytes(rentalDTO)))
+            .andExpect(status().isBadRequest());
+
+        // Validate the Rental in the database
+        em.clear();
+        assertThat(rentalRepository.findById(rental.getId()).get().getUserId()).isEqualTo(DEFAULT_USER_ID);
+    }
+
     @Test
     @Transactional
     public void updateNonExistingRental() throws Exception {
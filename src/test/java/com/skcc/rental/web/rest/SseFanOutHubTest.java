@@ -0,0 +1,171 @@
+package com.skcc.rental.web.rest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.skcc.rental.config.ApplicationProperties;
+import com.skcc.rental.config.KafkaProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Test class for {@link SseFanOutHub}.
+ */
+public class SseFanOutHubTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("topic-fan-out", 0);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final List<MockConsumer<String, String>> consumers = new ArrayList<>();
+
+    private final ApplicationProperties applicationProperties = new ApplicationProperties();
+
+    private SseFanOutHub hub;
+
+    private MockMvc restMockMvc;
+
+    @BeforeEach
+    public void setUp() {
+        hub = hub();
+        KafkaProperties kafkaProperties = new KafkaProperties();
+        Map<String, String> producerProps = new HashMap<>();
+        producerProps.put("key.serializer", StringSerializer.class.getName());
+        producerProps.put("value.serializer", StringSerializer.class.getName());
+        kafkaProperties.setProducer(producerProps);
+        restMockMvc = MockMvcBuilders.standaloneSetup(new RentalKafkaResource(kafkaProperties, hub, new ObjectMapper())).build();
+    }
+
+    private SseFanOutHub hub() {
+        return new SseFanOutHub(applicationProperties, props -> {
+            MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+            consumers.add(consumer);
+            return consumer;
+        }, meterRegistry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        hub.shutdown();
+    }
+
+    @Test
+    public void clientsOfTheSameTopicsShareOneConsumer() throws Exception {
+        MvcResult first = subscribe("topic-fan-out");
+        MvcResult second = subscribe("topic-fan-out");
+
+        assertThat(consumers).hasSize(1);
+        assertThat(meterRegistry.get("rental.sse.subscribers").gauge().value()).isEqualTo(2);
+        assertThat(meterRegistry.get("rental.sse.consumers").gauge().value()).isEqualTo(1);
+
+        MockConsumer<String, String> consumer = consumers.get(0);
+        consumer.schedulePollTask(() -> {
+            consumer.rebalance(Collections.singleton(PARTITION));
+            consumer.updateBeginningOffsets(Collections.singletonMap(PARTITION, 0L));
+            consumer.addRecord(new ConsumerRecord<>(PARTITION.topic(), 0, 0L, null, "value-fan-out"));
+        });
+
+        awaitContent(first, "data:value-fan-out");
+        awaitContent(second, "data:value-fan-out");
+    }
+
+    @Test
+    public void otherTopicsGetTheirOwnConsumer() throws Exception {
+        subscribe("topic-fan-out");
+        subscribe("topic-other");
+
+        assertThat(consumers).hasSize(2);
+        assertThat(meterRegistry.get("rental.sse.consumers").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    public void stalledClientIsDroppedWithoutStarvingTheOthers() throws Exception {
+        hub.shutdown();
+        applicationProperties.getSse().setSenderThreads(1);
+        applicationProperties.getSse().setSendTimeoutMs(100);
+        meterRegistry.clear();
+        hub = hub();
+        CountDownLatch released = new CountDownLatch(1);
+        BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+        List<String> topics = Collections.singletonList(PARTITION.topic());
+        // a client whose connection accepts no more bytes, the first write takes the only sender
+        hub.subscribe(topics, Collections.emptyMap(), new SseEmitter(0L) {
+            @Override
+            public void send(SseEventBuilder builder) throws IOException {
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        try {
+            hub.subscribe(topics, Collections.emptyMap(), new SseEmitter(0L) {
+                @Override
+                public void send(Object object) {
+                    received.add(object);
+                }
+
+                @Override
+                public void send(SseEventBuilder builder) {
+                    // keep-alive
+                }
+            });
+            MockConsumer<String, String> consumer = consumers.get(0);
+            consumer.schedulePollTask(() -> {
+                consumer.rebalance(Collections.singleton(PARTITION));
+                consumer.updateBeginningOffsets(Collections.singletonMap(PARTITION, 0L));
+                consumer.addRecord(new ConsumerRecord<>(PARTITION.topic(), 0, 0L, null, "value-fan-out"));
+            });
+
+            assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo("value-fan-out");
+            assertThat(meterRegistry.get("rental.sse.dropped.subscribers").counter().count()).isEqualTo(1);
+            assertThat(meterRegistry.get("rental.sse.subscribers").gauge().value()).isEqualTo(1);
+        } finally {
+            released.countDown();
+        }
+    }
+
+    private MvcResult subscribe(String topic) throws Exception {
+        return restMockMvc.perform(get("/api/rental-kafka/consume?topic=" + topic))
+            .andExpect(status().isOk())
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    }
+
+    private static void awaitContent(MvcResult mvcResult, String expected) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            if (mvcResult.getResponse().getContentAsString().contains(expected)) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        fail("Expected content " + expected + " not received");
+    }
+}